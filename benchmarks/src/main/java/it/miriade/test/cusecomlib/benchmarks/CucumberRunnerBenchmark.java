@@ -0,0 +1,37 @@
+package it.miriade.test.cusecomlib.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.miriade.test.cusecomlib.cucumber.CucumberRunner;
+
+/**
+ * Benchmark di {@link CucumberRunner#parseTags(String)}.
+ * 
+ * @author svaponi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CucumberRunnerBenchmark {
+
+	private String tags = "wip fun01,fun03 ~fun02";
+
+	@Benchmark
+	public List<String> parseTags() {
+		return CucumberRunner.parseTags(tags);
+	}
+}
@@ -0,0 +1,56 @@
+package it.miriade.test.cusecomlib.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.cucumber.StepContext;
+
+/**
+ * Benchmark di {@link CuseUtil#mergeIntoRegex(String, String)} e {@link CuseUtil#getStepdefName()} (con lo
+ * {@link StepContext} registrato, come durante uno step di Cucumber). Il browser non viene avviato.
+ * 
+ * @author svaponi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CuseUtilBenchmark {
+
+	private CuseUtil util;
+
+	@Setup
+	public void setup() {
+		util = new CuseUtil(Fixtures.config(), Fixtures.yamlSupportFactory());
+		StepContext.set(new StepContext("benchmarks/login.feature", "Login", "Login corretto", "When I click login", 5, "LoginStepdef.click_login()"));
+	}
+
+	@TearDown
+	public void teardown() {
+		StepContext.clear();
+	}
+
+	@Benchmark
+	public String mergeIntoRegex() {
+		return util.mergeIntoRegex("tab_css_selector", "my-favorite-tab");
+	}
+
+	@Benchmark
+	public String getStepdefName() {
+		return CuseUtil.getStepdefName();
+	}
+}
@@ -0,0 +1,76 @@
+package it.miriade.test.cusecomlib.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.WebElement;
+
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.enums.Browser;
+
+/**
+ * Benchmark delle operazioni di {@link CuseUtil} sul browser {@link Browser#FAKE}: con latenza 0 misura il solo costo
+ * della libreria (più il DOM in memoria), con latenza &gt; 0 simula una Selenium Grid.
+ * 
+ * @author svaponi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FakeBrowserBenchmark {
+
+	/**
+	 * Latenza in secondi di ogni comando
+	 */
+	@Param({ "0" })
+	public double latency;
+
+	private CuseUtil util;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		CuseSetupConfiguration config = Fixtures.config();
+		config.targetBrowser(Browser.FAKE);
+		config.fakeLatency(latency);
+		config.timeoutFindElement(0.1);
+		util = new CuseUtil(config, Fixtures.yamlSupportFactory());
+		util.loadPage(getClass().getClassLoader().getResource("benchmarks/login.html").toString());
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() {
+		util.close();
+	}
+
+	@Benchmark
+	public List<WebElement> findByHook() {
+		return util.findBy("login_username");
+	}
+
+	@Benchmark
+	public void setTextByHook() {
+		util.setTextBy("login_password", "secret");
+	}
+
+	@Benchmark
+	public void clickByHook() {
+		util.clickBy("login_click");
+	}
+}
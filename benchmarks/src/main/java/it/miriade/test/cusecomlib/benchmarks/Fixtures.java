@@ -0,0 +1,33 @@
+package it.miriade.test.cusecomlib.benchmarks;
+
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.yaml.YamlSupport;
+import it.miriade.test.cusecomlib.yaml.YamlSupportFactory;
+
+/**
+ * Oggetti condivisi dai benchmark: configurazione e YAML comune presi dalle risorse del modulo.
+ * 
+ * @author svaponi
+ */
+final class Fixtures {
+
+	static final String YAML_CLASSPATH_DIR = "benchmarks/yaml/";
+
+	private Fixtures() {
+		super();
+	}
+
+	static CuseSetupConfiguration config() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.yamlClasspathDir(YAML_CLASSPATH_DIR);
+		return config;
+	}
+
+	static YamlSupportFactory yamlSupportFactory() {
+		return new YamlSupportFactory(config());
+	}
+
+	static YamlSupport commonYaml() {
+		return yamlSupportFactory().getCommonYaml();
+	}
+}
@@ -0,0 +1,48 @@
+package it.miriade.test.cusecomlib.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.miriade.test.cusecomlib.hooks.HtmlHook;
+import it.miriade.test.cusecomlib.hooks.HtmlHookFactory;
+
+/**
+ * Benchmark della risoluzione degli {@link HtmlHook}: per nome dallo YAML e costruzione esplicita.
+ * 
+ * @author svaponi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HtmlHookFactoryBenchmark {
+
+	private HtmlHookFactory hookFactory;
+
+	@Setup
+	public void setup() {
+		hookFactory = new HtmlHookFactory(Fixtures.commonYaml());
+	}
+
+	@Benchmark
+	public HtmlHook buildByName() {
+		return hookFactory.build("login_click");
+	}
+
+	@Benchmark
+	public HtmlHook buildExplicit() {
+		return new HtmlHook("css", ".login-btn");
+	}
+}
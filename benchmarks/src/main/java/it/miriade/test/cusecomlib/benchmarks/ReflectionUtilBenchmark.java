@@ -0,0 +1,56 @@
+package it.miriade.test.cusecomlib.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.miriade.test.cusecomlib.utils.ReflectionUtil;
+
+/**
+ * Benchmark di {@link ReflectionUtil#getStackElement(Class)}. La classe cercata si trova sotto <code>depth</code>
+ * chiamate, per simulare lo stack di uno step di Cucumber.
+ * 
+ * @author svaponi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectionUtilBenchmark {
+
+	@Param({ "10", "50" })
+	private int depth;
+
+	@Benchmark
+	public StackTraceElement getStackElement() {
+		return descend(depth);
+	}
+
+	private static StackTraceElement descend(int depth) {
+		if (depth > 0)
+			return Frame.descend(depth - 1);
+		return ReflectionUtil.getStackElement(ReflectionUtilBenchmark.class);
+	}
+
+	/*
+	 * Frame intermedi di una classe diversa da quella cercata
+	 */
+	private static class Frame {
+		static StackTraceElement descend(int depth) {
+			if (depth > 0)
+				return descend(depth - 1);
+			return ReflectionUtil.getStackElement(ReflectionUtilBenchmark.class);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package it.miriade.test.cusecomlib.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.miriade.test.cusecomlib.times.Times;
+import it.miriade.test.cusecomlib.times.TimesFactory;
+
+/**
+ * Benchmark di {@link TimesFactory#build(Object...)}: tempi letti dallo YAML e tempi espliciti.
+ * 
+ * @author svaponi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimesFactoryBenchmark {
+
+	private TimesFactory timesFactory;
+
+	@Setup
+	public void setup() {
+		timesFactory = new TimesFactory(Fixtures.commonYaml());
+	}
+
+	@Benchmark
+	public Times buildFromYaml() {
+		return timesFactory.build("loading");
+	}
+
+	@Benchmark
+	public Times buildFromNumbers() {
+		return timesFactory.build(500, 10000);
+	}
+}
@@ -0,0 +1,57 @@
+package it.miriade.test.cusecomlib.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.miriade.test.cusecomlib.yaml.YamlSupport;
+
+/**
+ * Benchmark delle letture di {@link YamlSupport}: chiavi complete e template delle chiavi.
+ * 
+ * @author svaponi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YamlSupportBenchmark {
+
+	private YamlSupport yaml;
+
+	@Setup
+	public void setup() {
+		yaml = Fixtures.commonYaml();
+	}
+
+	@Benchmark
+	public Object get() {
+		return yaml.get("hooks.login_click.expr");
+	}
+
+	@Benchmark
+	public Object getTemplate() {
+		return yaml.get("?.?.expr", "hooks", "login_click");
+	}
+
+	@Benchmark
+	public Object getMapTemplate() {
+		return yaml.getMap("?.?", "times", "loading");
+	}
+
+	@Benchmark
+	public Object getListItem() {
+		return yaml.get("enums.loading[1]");
+	}
+}
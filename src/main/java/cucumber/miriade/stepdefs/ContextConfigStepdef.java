@@ -10,9 +10,11 @@ import cucumber.api.java.After;
 import it.miriade.test.cusecomlib.CuseSpringConfiguration;
 import it.miriade.test.cusecomlib.CuseUtil;
 import it.miriade.test.cusecomlib.cucumber.stepdefs.Stepdef;
+import it.miriade.test.cusecomlib.selenium.WebDriverPool;
 
 /**
- * Classe {@link Stepdef} che carica il contesto e definisce gli hooks.
+ * Classe {@link Stepdef} che carica il contesto e definisce gli hooks. Se il {@link WebDriverPool} è abilitato, alla fine
+ * di ogni scenario il browser viene ripulito (vedi {@link CuseUtil#resetBrowser()}).
  * 
  * @author svaponi
  */
@@ -29,6 +31,8 @@ public final class ContextConfigStepdef implements Stepdef {
 		log.info("Scenario \"{}\" {}", scenario.getName(), scenario.isFailed() ? "FAILED" : "SUCCEEDED");
 		if (scenario.isFailed())
 			util.toDoOnFail();
+		if (WebDriverPool.getInstance().isEnabled())
+			util.resetBrowser();
 	}
 
 }
@@ -0,0 +1,375 @@
+package it.miriade.test.cusecomlib;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.miriade.test.cusecomlib.excep.SeleniumElementNotFoundException;
+import it.miriade.test.cusecomlib.hooks.HtmlHook;
+import it.miriade.test.cusecomlib.hooks.HtmlHookFactory;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+import it.miriade.test.cusecomlib.selenium.W3CActions;
+import it.miriade.test.cusecomlib.yaml.YamlSupport;
+
+/**
+ * Sequenza di click, testi e tasti su più hook, inviata al browser con un solo comando delle azioni W3C (vedi
+ * {@link W3CActions}) invece che con un comando per ogni passo. Utile per le interazioni in più passi, es. la
+ * navigazione da tastiera di un menu:
+ *
+ * <pre>
+ * util.batch().click("menu_button").keys(Keys.DOWN, Keys.DOWN, Keys.ENTER).perform();
+ * </pre>
+ *
+ * Gli elementi vengono cercati tutti all'inizio di {@link #perform()} con {@link CuseUtil#findBy(HtmlHook)} (una sola
+ * volta per hook) e l'azione agisce sul primo elemento trovato. Se il driver non supporta le azioni W3C i passi vengono
+ * eseguiti uno alla volta con i comandi standard, con lo stesso risultato: in entrambi i casi i modificatori (SHIFT,
+ * CONTROL, ALT, META) restano premuti fino a {@link Keys#NULL} o alla fine del passo, es.
+ * <code>keys(Keys.chord(Keys.CONTROL, "a"))</code> seleziona tutto.<br/>
+ * Non è thread-safe: va costruita ed eseguita da un solo thread.
+ *
+ * @see CuseUtil#batch()
+ * @author svaponi
+ */
+public class ActionBatch {
+
+	private static final Logger log = LoggerFactory.getLogger(ActionBatch.class);
+
+	// tasti che restano premuti fino a Keys.NULL o alla fine del passo (le varianti LEFT_ hanno lo stesso codice)
+	private static final Set<String> modifiers = new HashSet<>(Arrays.asList(Keys.SHIFT.toString(), Keys.LEFT_SHIFT.toString(), Keys.CONTROL.toString(), Keys.LEFT_CONTROL.toString(), Keys.ALT.toString(),
+			Keys.LEFT_ALT.toString(), Keys.META.toString(), Keys.COMMAND.toString()));
+
+	private enum Kind {
+		CLICK, TYPE, KEYS, PAUSE
+	}
+
+	/**
+	 * Un passo della sequenza
+	 */
+	private static class Step {
+
+		final Kind kind;
+		final HtmlHook hook;
+		final WebElement element;
+		final String text;
+		final long millis;
+
+		Step(Kind kind, HtmlHook hook, String text, long millis) {
+			this(kind, hook, null, text, millis);
+		}
+
+		Step(Kind kind, HtmlHook hook, WebElement element, String text, long millis) {
+			this.kind = kind;
+			this.hook = hook;
+			this.element = element;
+			this.text = text;
+			this.millis = millis;
+		}
+
+		/**
+		 * Elemento su cui agire: quello indicato dal chiamante o il primo trovato dallo hook
+		 */
+		WebElement target(Map<HtmlHook, WebElement> elements) {
+			return element != null ? element : elements.get(hook);
+		}
+	}
+
+	private final CuseUtil util;
+	private final List<Step> steps = new ArrayList<>();
+
+	ActionBatch(CuseUtil util) {
+		super();
+		this.util = util;
+	}
+
+	/**
+	 * Click sul primo elemento identificato dallo hook
+	 *
+	 * @param hook
+	 * @return
+	 */
+	public ActionBatch click(HtmlHook hook) {
+		steps.add(new Step(Kind.CLICK, hook, null, 0));
+		return this;
+	}
+
+	/**
+	 * Come {@link #click(HtmlHook)} però costruisce l'hook dal common.yml
+	 *
+	 * @param hookName
+	 * @return
+	 */
+	public ActionBatch click(String hookName) {
+		return click(HtmlHookFactory.build(util.commonYaml(), hookName));
+	}
+
+	/**
+	 * Come {@link #click(HtmlHook)} però costruisce l'hook dallo {@link YamlSupport} in input
+	 *
+	 * @param yaml
+	 * @param hookName
+	 * @return
+	 */
+	public ActionBatch click(YamlSupport yaml, String hookName) {
+		return click(HtmlHookFactory.build(yaml, hookName));
+	}
+
+	/**
+	 * Click sul primo elemento identificato dallo hook e digitazione del testo. A differenza di
+	 * {@link CuseUtil#setTextBy(HtmlHook, String)} il contenuto dell'elemento non viene pulito.
+	 *
+	 * @param hook
+	 * @param text
+	 *            testo da digitare, può contenere anche i tasti speciali di {@link org.openqa.selenium.Keys}
+	 * @return
+	 */
+	public ActionBatch type(HtmlHook hook, CharSequence... text) {
+		steps.add(new Step(Kind.TYPE, hook, join(text), 0));
+		return this;
+	}
+
+	/**
+	 * Come {@link #type(HtmlHook, CharSequence...)} però costruisce l'hook dal common.yml
+	 *
+	 * @param hookName
+	 * @param text
+	 * @return
+	 */
+	public ActionBatch type(String hookName, CharSequence... text) {
+		return type(HtmlHookFactory.build(util.commonYaml(), hookName), text);
+	}
+
+	/**
+	 * Come {@link #type(HtmlHook, CharSequence...)} però costruisce l'hook dallo {@link YamlSupport} in input
+	 *
+	 * @param yaml
+	 * @param hookName
+	 * @param text
+	 * @return
+	 */
+	public ActionBatch type(YamlSupport yaml, String hookName, CharSequence... text) {
+		return type(HtmlHookFactory.build(yaml, hookName), text);
+	}
+
+	/**
+	 * Come {@link #type(HtmlHook, CharSequence...)} su un elemento già trovato dal chiamante (es.
+	 * {@link CuseUtil#fillForm(YamlSupport, Map, it.miriade.test.cusecomlib.enums.FillMode)}, che scrive in tutti gli
+	 * elementi dello hook)
+	 *
+	 * @param element
+	 * @param text
+	 * @return
+	 */
+	ActionBatch type(WebElement element, CharSequence... text) {
+		steps.add(new Step(Kind.TYPE, null, element, join(text), 0));
+		return this;
+	}
+
+	/**
+	 * Tasti premuti e rilasciati uno dopo l'altro sull'elemento che ha il focus. I modificatori restano premuti fino a
+	 * {@link Keys#NULL} o alla fine del passo, es. <code>keys(Keys.chord(Keys.SHIFT, Keys.TAB))</code>.
+	 *
+	 * @param keys
+	 *            testo o tasti speciali di {@link Keys}
+	 * @return
+	 */
+	public ActionBatch keys(CharSequence... keys) {
+		steps.add(new Step(Kind.KEYS, null, join(keys), 0));
+		return this;
+	}
+
+	/**
+	 * Pausa tra un passo e l'altro, es. per dare tempo ad un dropdown di aprirsi
+	 *
+	 * @param millis
+	 * @return
+	 */
+	public ActionBatch pause(long millis) {
+		steps.add(new Step(Kind.PAUSE, null, null, Math.max(0, millis)));
+		return this;
+	}
+
+	/**
+	 * Esegue la sequenza. Al termine la sequenza è vuota e può essere riutilizzata.
+	 *
+	 * @throws SeleniumElementNotFoundException
+	 *             se uno degli hook non identifica nessun elemento; in questo caso non viene eseguito nessun passo
+	 */
+	public void perform() {
+		if (steps.isEmpty())
+			return;
+		try {
+			CuseMetrics.getInstance().time("batch", null, () -> execute(resolve()));
+		} finally {
+			steps.clear();
+		}
+	}
+
+	private void execute(Map<HtmlHook, WebElement> elements) {
+		WebDriver driver = util.driver();
+		if (!W3CActions.supports(driver) || !W3CActions.perform(driver, encode(elements))) {
+			log.debug("Performing {} steps one by one", steps.size());
+			performOneByOne(driver, elements);
+		}
+	}
+
+	/**
+	 * Cerca il primo elemento di ogni hook della sequenza
+	 */
+	private Map<HtmlHook, WebElement> resolve() {
+		Map<HtmlHook, WebElement> elements = new IdentityHashMap<>();
+		for (Step step : steps)
+			if (step.hook != null && !elements.containsKey(step.hook)) {
+				List<WebElement> found = util.findBy(step.hook);
+				if (found.isEmpty()) {
+					CuseMetrics.getInstance().increment(CuseMetrics.ELEMENTS_NOT_FOUND);
+					throw new SeleniumElementNotFoundException("Element " + step.hook + " not found");
+				}
+				elements.put(step.hook, found.get(0));
+			}
+		return elements;
+	}
+
+	/**
+	 * Traduce i passi nelle sorgenti W3C <code>pointer</code> e <code>key</code>. Ad ogni tick agisce una sola sorgente,
+	 * l'altra attende con una pausa, così che i passi vengano eseguiti nell'ordine in cui sono stati aggiunti.
+	 */
+	private List<Map<String, Object>> encode(Map<HtmlHook, WebElement> elements) {
+		List<Map<String, Object>> pointer = new ArrayList<>();
+		List<Map<String, Object>> keyboard = new ArrayList<>();
+		for (Step step : steps) {
+			switch (step.kind) {
+			case CLICK:
+			case TYPE:
+				Map<String, Object> move = action("pointerMove");
+				move.put("origin", W3CActions.element(step.target(elements)));
+				move.put("x", 0);
+				move.put("y", 0);
+				move.put("duration", 0);
+				pointer.add(move);
+				pointer.add(button("pointerDown"));
+				pointer.add(button("pointerUp"));
+				while (keyboard.size() < pointer.size())
+					keyboard.add(idle(0));
+				if (step.kind == Kind.TYPE)
+					keys(step.text, keyboard, pointer);
+				break;
+			case KEYS:
+				keys(step.text, keyboard, pointer);
+				break;
+			case PAUSE:
+				pointer.add(idle(step.millis));
+				keyboard.add(idle(0));
+				break;
+			}
+		}
+		Map<String, Object> mouse = source("pointer", "mouse", pointer);
+		mouse.put("parameters", new HashMap<>(Collections.singletonMap("pointerType", "mouse")));
+		return Arrays.asList(mouse, source("key", "keyboard", keyboard));
+	}
+
+	/**
+	 * Tasti premuti e rilasciati uno alla volta. Come con {@link WebElement#sendKeys(CharSequence...)} i modificatori
+	 * (SHIFT, CONTROL, ALT, META) restano premuti fino a {@link Keys#NULL} o alla fine del passo, così che es.
+	 * <code>Keys.chord(Keys.CONTROL, "a")</code> selezioni tutto.
+	 */
+	private static void keys(String text, List<Map<String, Object>> keyboard, List<Map<String, Object>> pointer) {
+		Deque<String> held = new ArrayDeque<>();
+		text.codePoints().forEach(codePoint -> {
+			String key = new String(Character.toChars(codePoint));
+			if (key.equals(Keys.NULL.toString()))
+				release(held, keyboard, pointer);
+			else if (modifiers.contains(key)) {
+				if (!held.contains(key)) {
+					held.push(key);
+					key("keyDown", key, keyboard, pointer);
+				}
+			} else {
+				key("keyDown", key, keyboard, pointer);
+				key("keyUp", key, keyboard, pointer);
+			}
+		});
+		release(held, keyboard, pointer);
+	}
+
+	private static void release(Deque<String> held, List<Map<String, Object>> keyboard, List<Map<String, Object>> pointer) {
+		while (!held.isEmpty())
+			key("keyUp", held.pop(), keyboard, pointer);
+	}
+
+	private static void key(String type, String key, List<Map<String, Object>> keyboard, List<Map<String, Object>> pointer) {
+		Map<String, Object> action = action(type);
+		action.put("value", key);
+		keyboard.add(action);
+		pointer.add(idle(0));
+	}
+
+	/**
+	 * Esecuzione dei passi uno alla volta, per i driver che non supportano le azioni W3C
+	 */
+	private void performOneByOne(WebDriver driver, Map<HtmlHook, WebElement> elements) {
+		for (Step step : steps)
+			switch (step.kind) {
+			case CLICK:
+				step.target(elements).click();
+				break;
+			case TYPE:
+				step.target(elements).click();
+				step.target(elements).sendKeys(step.text);
+				break;
+			case KEYS:
+				driver.switchTo().activeElement().sendKeys(step.text);
+				break;
+			case PAUSE:
+				util.waitMillis(step.millis);
+				break;
+			}
+	}
+
+	private static Map<String, Object> source(String type, String id, List<Map<String, Object>> actions) {
+		Map<String, Object> source = new HashMap<>();
+		source.put("type", type);
+		source.put("id", id);
+		source.put(W3CActions.ACTIONS, actions);
+		return source;
+	}
+
+	private static Map<String, Object> action(String type) {
+		Map<String, Object> action = new HashMap<>();
+		action.put("type", type);
+		return action;
+	}
+
+	private static Map<String, Object> button(String type) {
+		Map<String, Object> action = action(type);
+		action.put("button", 0);
+		return action;
+	}
+
+	private static Map<String, Object> idle(long millis) {
+		Map<String, Object> action = action("pause");
+		action.put("duration", millis);
+		return action;
+	}
+
+	private static String join(CharSequence... text) {
+		StringBuilder buf = new StringBuilder();
+		for (CharSequence sequence : text)
+			buf.append(sequence);
+		return buf.toString();
+	}
+
+}
@@ -2,9 +2,13 @@ package it.miriade.test.cusecomlib;
 
 import java.util.regex.Pattern;
 
+import org.openqa.selenium.WebDriver;
+
 import it.miriade.test.cusecomlib.enums.Browser;
 import it.miriade.test.cusecomlib.hooks.HtmlHook;
+import it.miriade.test.cusecomlib.selenium.SeleniumScriptUtil;
 import it.miriade.test.cusecomlib.selenium.SeleniumWebDriverWrapper;
+import it.miriade.test.cusecomlib.selenium.WebDriverPool;
 import it.miriade.test.cusecomlib.times.Times;
 import it.miriade.test.cusecomlib.utils.SetupUtil;
 
@@ -31,7 +35,9 @@ public interface CuseDefaultSpec {
 	 */
 
 	/**
-	 * Proprietà che indica il browser da utilizzare per i test.
+	 * Proprietà che indica il browser da utilizzare per i test. Può contenere più browser separati da virgola, es.
+	 * <code>chrome,firefox,edge</code>: in tal caso il {@link it.miriade.test.cusecomlib.cucumber.CucumberRunner}
+	 * esegue le features su tutti i browser contemporaneamente, un worker per browser.
 	 * 
 	 * @see Browser
 	 */
@@ -63,6 +69,35 @@ public interface CuseDefaultSpec {
 	 */
 	public static final String SCREENSHOTS_DIR = "screenshots.dir";
 
+	/**
+	 * Proprietà che indica quanti screenshot possono essere in attesa di essere salvati in background. Quando la coda è
+	 * piena lo screenshot viene salvato dal thread del test. Il default è 16.
+	 *
+	 * @see it.miriade.test.cusecomlib.screenshots.ScreenshotPipeline
+	 */
+	public static final String SCREENSHOTS_QUEUE_SIZE = "screenshots.queue.size";
+
+	/**
+	 * Proprietà che contiene la larghezza massima in pixel degli screenshot: quelli più larghi vengono ridimensionati
+	 * mantenendo le proporzioni. Il default è 0, ovvero nessun ridimensionamento.
+	 */
+	public static final String SCREENSHOTS_MAX_WIDTH = "screenshots.max.width";
+
+	/**
+	 * Proprietà che indica il formato dei file degli screenshot (png, jpg, ...). Il default è png, ovvero il formato
+	 * restituito dal browser, che viene salvato senza ricodifica.
+	 */
+	public static final String SCREENSHOTS_FORMAT = "screenshots.format";
+
+	/**
+	 * Proprietà che abilita il riuso degli screenshot quasi identici ad uno già salvato: indica il numero massimo di bit
+	 * diversi (da 0 a 64) tra le impronte percettive delle due immagini. Il default è -1, ovvero vengono riusati solo
+	 * gli screenshot identici.
+	 *
+	 * @see it.miriade.test.cusecomlib.screenshots.ScreenshotStore
+	 */
+	public static final String SCREENSHOTS_DEDUP_THRESHOLD = "screenshots.dedup.threshold";
+
 	/**
 	 * Proprietà che indica il comportamento in caso di errore dei test. Se omessa il default è "do-nothing".<br/>
 	 * <strong>SOLO PER DEVELOPER</strong><br/>
@@ -72,6 +107,39 @@ public interface CuseDefaultSpec {
 	 */
 	public static final String WHAT_TO_DO_ON_FAIL = "on.fail";
 
+	/**
+	 * Proprietà che indica il file JSON dove esportare le metriche (latenze delle operazioni del {@link CuseUtil} e
+	 * comandi inviati al browser) alla fine dell'esecuzione del
+	 * {@link it.miriade.test.cusecomlib.cucumber.CucumberRunner}. Se omessa il default è:
+	 * 
+	 * <pre>
+	 * target/cuse-metrics.json
+	 * </pre>
+	 * 
+	 * Se vuota le metriche non vengono esportate.
+	 * 
+	 * @see it.miriade.test.cusecomlib.metrics.CuseMetrics
+	 */
+	public static final String METRICS_FILE = "metrics.file";
+
+	/**
+	 * Proprietà che indica il file dove esportare le metriche nel formato testuale di Prometheus alla fine
+	 * dell'esecuzione del {@link it.miriade.test.cusecomlib.cucumber.CucumberRunner}, ad esempio per il textfile
+	 * collector del node_exporter. Se omessa o vuota le metriche non vengono esportate in questo formato.
+	 * 
+	 * @see it.miriade.test.cusecomlib.metrics.CuseMetrics#toPrometheus()
+	 */
+	public static final String METRICS_PROMETHEUS_FILE = "metrics.prometheus.file";
+
+	/**
+	 * Proprietà che indica la porta locale su cui esporre le metriche nel formato testuale di Prometheus
+	 * (<code>http://localhost:&lt;porta&gt;/metrics</code>) durante l'esecuzione del
+	 * {@link it.miriade.test.cusecomlib.cucumber.CucumberRunner}. Se omessa il default è 0, cioè endpoint disabilitato.
+	 * 
+	 * @see it.miriade.test.cusecomlib.metrics.MetricsEndpoint
+	 */
+	public static final String METRICS_PORT = "metrics.port";
+
 	/**
 	 * Proprietà che indica il file esterno di properties da utilizzare per l'esecuzione corrente dei test.
 	 */
@@ -138,6 +206,102 @@ public interface CuseDefaultSpec {
 	 */
 	public static final String WEBDRIVER_WINDOW_POSITION = "webdriver.window.position";
 
+	/**
+	 * Proprietà che indica quante sessioni inattive del {@link WebDriver} tenere nel {@link WebDriverPool} per essere
+	 * riusate, evitando di avviare un nuovo browser ad ogni inizializzazione. Il default è 0, ovvero pool disabilitato.
+	 */
+	public static final String WEBDRIVER_POOL_SIZE = "webdriver.pool.size";
+
+	/**
+	 * Proprietà che abilita la ricerca degli elementi tramite JavaScript: un solo script individua e filtra gli elementi
+	 * visibili e abilitati, invece di <code>findElements</code> seguito dalla verifica dei singoli elementi. Il default è
+	 * FALSE. Se lo script non trova nulla viene ripetuto fino allo scadere di {@link #WEBDRIVER_TIMEOUTS_FIND}, se
+	 * fallisce viene usata la ricerca standard.
+	 * 
+	 * @see SeleniumScriptUtil#locate(WebDriver, it.miriade.test.cusecomlib.enums.BySelector, String)
+	 */
+	public static final String WEBDRIVER_SCRIPT_LOCATOR = "webdriver.script.locator";
+
+	/**
+	 * Proprietà che abilita le attese esplicite. Il default è FALSE, ovvero il driver aspetta gli elementi con
+	 * l'implicit wait {@link #WEBDRIVER_TIMEOUTS_FIND}, anche quando si verifica che un elemento NON ci sia.<br/>
+	 * Se TRUE l'implicit wait del driver è 0: {@link it.miriade.test.cusecomlib.CuseUtil#findBy(HtmlHook)} ripete la
+	 * ricerca finchè l'elemento compare o scade il timeout dello hook ({@link HtmlHook#TIMEOUT}, se manca vale
+	 * {@link #WEBDRIVER_TIMEOUTS_FIND}), mentre {@link it.miriade.test.cusecomlib.CuseUtil#existsBy(HtmlHook)} risponde
+	 * subito.
+	 */
+	public static final String WEBDRIVER_EXPLICIT_WAIT = "webdriver.explicit.wait";
+
+	/**
+	 * Proprietà che contiene il numero massimo di tentativi di un click o di una scrittura quando l'azione fallisce per
+	 * un errore transitorio, es. l'elemento viene ridisegnato dalla pagina (vedi
+	 * {@link it.miriade.test.cusecomlib.selenium.ActionExecutor}). Ad ogni tentativo l'elemento viene cercato di nuovo.
+	 * Il default è 3, 1 disabilita i tentativi.
+	 */
+	public static final String WEBDRIVER_ACTION_ATTEMPTS = "webdriver.action.attempts";
+
+	/**
+	 * Proprietà che contiene l'attesa iniziale in SECONDI tra un tentativo e l'altro di
+	 * {@link #WEBDRIVER_ACTION_ATTEMPTS}, che raddoppia ad ogni tentativo fino ad 1 secondo. I tentativi si fermano
+	 * comunque dopo {@link #WEBDRIVER_TIMEOUTS_FIND}. Il default è 0.05 secondi.
+	 */
+	public static final String WEBDRIVER_ACTION_BACKOFF = "webdriver.action.backoff";
+
+	/**
+	 * Proprietà che contiene la strategia di caricamento delle pagine: <code>normal</code> (il driver aspetta l'evento
+	 * load, quindi anche immagini, font e script esterni), <code>eager</code> (aspetta solo il DOM) o <code>none</code>
+	 * (non aspetta). Si può indicare un valore per browser, es. <code>eager; ie: normal</code> (vedi
+	 * {@link it.miriade.test.cusecomlib.selenium.BrowserCapabilities}). Il default è normal.
+	 */
+	public static final String WEBDRIVER_PAGE_LOAD_STRATEGY = "webdriver.page.load.strategy";
+
+	/**
+	 * Proprietà che contiene i pattern, separati da virgola, degli URL che il browser non deve scaricare, es.
+	 * <code>*.doubleclick.net, *google-analytics.com*</code>. Il carattere <code>*</code> sta per qualsiasi sequenza di
+	 * caratteri e il pattern viene confrontato sia con l'URL sia con l'host. Si può indicare un valore per browser come
+	 * per {@link #WEBDRIVER_PAGE_LOAD_STRATEGY}. Il default è vuoto, ovvero nessun blocco.<br/>
+	 * Su Chrome, per gli URL https il proxy auto-config riceve solo schema e host (path e query vengono tolti), quindi
+	 * per bloccarli sono affidabili solo i pattern sull'host.
+	 */
+	public static final String WEBDRIVER_BLOCK_URLS = "webdriver.block.urls";
+
+	/**
+	 * Proprietà che contiene il proxy, nella forma <code>host:porta</code>, per gli URL non bloccati da
+	 * {@link #WEBDRIVER_BLOCK_URLS}: il proxy auto-config del blocco sostituisce il proxy di sistema, quindi dietro un
+	 * proxy aziendale va indicato qui. Si può indicare un valore per browser come per
+	 * {@link #WEBDRIVER_PAGE_LOAD_STRATEGY}. Il default è vuoto, ovvero connessione diretta.
+	 */
+	public static final String WEBDRIVER_BLOCK_UPSTREAM_PROXY = "webdriver.block.upstream.proxy";
+
+	/**
+	 * Proprietà che contiene i tipi di risorse, separati da virgola, che il browser non deve scaricare:
+	 * <code>images</code>, <code>media</code>, <code>fonts</code>. Si può indicare un valore per browser come per
+	 * {@link #WEBDRIVER_PAGE_LOAD_STRATEGY}. Il default è vuoto, ovvero nessun blocco.
+	 */
+	public static final String WEBDRIVER_BLOCK_RESOURCES = "webdriver.block.resources";
+
+	/**
+	 * Proprietà che contiene il nome del profilo di avvio del browser: <code>headless-fast</code>,
+	 * <code>headed-debug</code> oppure uno definito nello YAML comune sotto la chiave
+	 * {@link #YAML_SUPPORT_PROFILES_PREFIX} (vedi {@link it.miriade.test.cusecomlib.selenium.BrowserProfile}). Si può
+	 * indicare un valore per browser come per {@link #WEBDRIVER_PAGE_LOAD_STRATEGY}. Il default è vuoto, ovvero il
+	 * browser viene avviato senza opzioni.
+	 */
+	public static final String WEBDRIVER_PROFILE = "webdriver.profile";
+
+	/**
+	 * Proprietà che contiene l'età massima in SECONDI di una sessione del {@link WebDriverPool}, oltre la quale la
+	 * sessione viene chiusa invece che riusata. Il default è 1800 secondi (30 minuti).
+	 */
+	public static final String WEBDRIVER_POOL_MAX_AGE = "webdriver.pool.max.age";
+
+	/**
+	 * Proprietà che contiene la latenza in SECONDI aggiunta ad ogni comando del browser
+	 * {@link it.miriade.test.cusecomlib.enums.Browser#FAKE}, per simulare i tempi di risposta di un browser reale o di
+	 * una Selenium Grid. Il default è 0, ovvero nessuna latenza.
+	 */
+	public static final String WEBDRIVER_FAKE_LATENCY = "webdriver.fake.latency";
+
 	/*
 	 * Parametri e specifiche per lo YAML Support
 	 */
@@ -155,6 +319,24 @@ public interface CuseDefaultSpec {
 	 */
 	public String YAML_SUPPORT_CLASSPATH_DIR = "yaml.classpath.dir";
 
+	/**
+	 * Proprietà che abilita il ricaricamento automatico dei file YAML: la cartella {@value #YAML_SUPPORT_CLASSPATH_DIR}
+	 * (o {@value #YAML_WATCH_DIR}, se indicata) viene osservata con le sue sottocartelle e gli YAML modificati vengono
+	 * riletti senza riavviare i test. Il default è FALSE.
+	 * 
+	 * @see it.miriade.test.cusecomlib.yaml.YamlSupportFactory#watch()
+	 */
+	public String YAML_HOT_RELOAD = "yaml.hot.reload";
+
+	/**
+	 * Proprietà che indica la cartella dei sorgenti degli YAML (es.
+	 * <code>src/test/resources/cucumber/miriade/yaml/</code>) da osservare con {@value #YAML_HOT_RELOAD}, al posto
+	 * della copia nel classpath (es. <code>target/test-classes/...</code>), che Maven aggiorna solo a ogni build. Gli
+	 * YAML modificati vengono riletti direttamente dai sorgenti. Il default è vuoto: viene osservata la cartella nel
+	 * classpath.
+	 */
+	public String YAML_WATCH_DIR = "yaml.watch.dir";
+
 	/**
 	 * Nome standard del file YAML comune a tutte le utility e condiviso tra gli ambienti. Vedi file
 	 * {@value #YAML_SUPPORT_COMMON_FILENAME}.yml nella cartella localizzata dalla property
@@ -183,6 +365,12 @@ public interface CuseDefaultSpec {
 	 */
 	public String YAML_SUPPORT_TIMES_PREFIX = "times";
 
+	/**
+	 * Parent key per i profili del browser (vedi {@link it.miriade.test.cusecomlib.selenium.BrowserProfile}) mappati in
+	 * {@value #YAML_SUPPORT_COMMON_FILENAME} YAML file
+	 */
+	public String YAML_SUPPORT_PROFILES_PREFIX = "profiles";
+
 	/*
 	 * - - - - - - - - - - - - - - - - - - - - - - - - -
 	 * Backdoors (SOLO PER DEVELOPER)
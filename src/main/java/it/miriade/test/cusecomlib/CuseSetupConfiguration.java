@@ -1,11 +1,17 @@
 package it.miriade.test.cusecomlib;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.BiConsumer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.util.StringUtils;
 
+import it.miriade.test.cusecomlib.cucumber.CucumberRunner;
 import it.miriade.test.cusecomlib.cucumber.CucumberSpec;
 import it.miriade.test.cusecomlib.enums.Browser;
 import it.miriade.test.cusecomlib.utils.SetupUtil;
@@ -20,7 +26,7 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
 	/**
-	 * browser di default da usare nei test
+	 * browser di default da usare nei test, anche più di uno separati da virgola
 	 * <blockquote>
 	 * target.browser=chrome
 	 * </blockquote>
@@ -89,21 +95,210 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 	@Value("${" + WEBDRIVER_WINDOW_POSITION + ":maximize}")
 	private String windowPos;
 
+	/**
+	 * Numero di sessioni inattive tenute nel pool per essere riusate (0 disabilita il pool)
+	 * <blockquote>
+	 * webdriver.pool.size=0
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_POOL_SIZE + ":0}")
+	private int poolSize;
+
+	/**
+	 * Età massima in secondi di una sessione del pool
+	 * <blockquote>
+	 * webdriver.pool.max.age=1800
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_POOL_MAX_AGE + ":1800.0}")
+	private double poolMaxAge;
+
+	/**
+	 * Latenza in secondi di ogni comando del browser FAKE
+	 * <blockquote>
+	 * webdriver.fake.latency=0
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_FAKE_LATENCY + ":0.0}")
+	private double fakeLatency;
+
+	/**
+	 * Ricerca degli elementi tramite JavaScript
+	 * <blockquote>
+	 * webdriver.script.locator=false
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_SCRIPT_LOCATOR + ":false}")
+	private boolean scriptLocator;
+
+	/**
+	 * Attese esplicite degli elementi, al posto dell'implicit wait
+	 * <blockquote>
+	 * webdriver.explicit.wait=false
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_EXPLICIT_WAIT + ":false}")
+	private boolean explicitWait;
+
+	/**
+	 * Tentativi di un'azione sugli elementi in caso di errori transitori (elemento stale, non interagibile)
+	 * <blockquote>
+	 * webdriver.action.attempts=3
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_ACTION_ATTEMPTS + ":3}")
+	private int actionAttempts;
+
+	/**
+	 * Attesa iniziale in secondi tra un tentativo e l'altro, raddoppia ad ogni tentativo
+	 * <blockquote>
+	 * webdriver.action.backoff=0.05
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_ACTION_BACKOFF + ":0.05}")
+	private double actionBackoff;
+
+	/**
+	 * Strategia di caricamento delle pagine, eventualmente per browser
+	 * <blockquote>
+	 * webdriver.page.load.strategy=eager; ie: normal
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_PAGE_LOAD_STRATEGY + ":normal}")
+	private String pageLoadStrategy;
+
+	/**
+	 * Pattern degli URL da non scaricare, eventualmente per browser
+	 * <blockquote>
+	 * webdriver.block.urls=*.doubleclick.net, *google-analytics.com*
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_BLOCK_URLS + ":}")
+	private String blockUrls;
+
+	/**
+	 * Proxy per gli URL non bloccati, eventualmente per browser
+	 * <blockquote>
+	 * webdriver.block.upstream.proxy=proxy.example.com:3128
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_BLOCK_UPSTREAM_PROXY + ":}")
+	private String blockUpstreamProxy;
+
+	/**
+	 * Tipi di risorse da non scaricare, eventualmente per browser
+	 * <blockquote>
+	 * webdriver.block.resources=images, media, fonts
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_BLOCK_RESOURCES + ":}")
+	private String blockResources;
+
+	/**
+	 * Profilo di avvio del browser, eventualmente per browser
+	 * <blockquote>
+	 * webdriver.profile=headless-fast
+	 * </blockquote>
+	 */
+	@Value("${" + WEBDRIVER_PROFILE + ":}")
+	private String browserProfile;
+
 	@Value("${" + CLOSE_BROWSER + ":true}")
 	private boolean closeBrowser;
 
 	@Value("${" + YAML_SUPPORT_CLASSPATH_DIR + ":cucumber/miriade/yaml/}")
 	private String yamlClasspathDir;
 
+	/**
+	 * Ricaricamento automatico dei file YAML
+	 * <blockquote>
+	 * yaml.hot.reload=false
+	 * </blockquote>
+	 */
+	@Value("${" + YAML_HOT_RELOAD + ":false}")
+	private boolean yamlHotReload;
+
+	/**
+	 * Cartella dei sorgenti degli YAML da osservare con il ricaricamento automatico, se vuota quella nel classpath
+	 * <blockquote>
+	 * yaml.watch.dir=src/test/resources/cucumber/miriade/yaml/
+	 * </blockquote>
+	 */
+	@Value("${" + YAML_WATCH_DIR + ":}")
+	private String yamlWatchDir;
+
 	@Value("${" + SCREENSHOTS_DIR + ":screenshots/}")
 	private String screenshotDir;
 
+	/**
+	 * Screenshot in attesa di essere salvati in background
+	 * <blockquote>
+	 * screenshots.queue.size=16
+	 * </blockquote>
+	 */
+	@Value("${" + SCREENSHOTS_QUEUE_SIZE + ":16}")
+	private int screenshotQueueSize;
+
+	/**
+	 * Larghezza massima degli screenshot in pixel
+	 * <blockquote>
+	 * screenshots.max.width=0
+	 * </blockquote>
+	 */
+	@Value("${" + SCREENSHOTS_MAX_WIDTH + ":0}")
+	private int screenshotMaxWidth;
+
+	/**
+	 * Formato dei file degli screenshot
+	 * <blockquote>
+	 * screenshots.format=png
+	 * </blockquote>
+	 */
+	@Value("${" + SCREENSHOTS_FORMAT + ":png}")
+	private String screenshotFormat;
+
+	/**
+	 * Soglia per il riuso degli screenshot quasi identici
+	 * <blockquote>
+	 * screenshots.dedup.threshold=-1
+	 * </blockquote>
+	 */
+	@Value("${" + SCREENSHOTS_DEDUP_THRESHOLD + ":-1}")
+	private int screenshotDedupThreshold;
+
 	@Value("${" + WHAT_TO_DO_ON_FAIL + ":do-nothing}")
 	private String onFail;
 
 	@Value("${" + USE_PROPERTY_FILE + ":}")
 	private String useProperties;
 
+	/**
+	 * File JSON dove esportare le metriche
+	 * <blockquote>
+	 * metrics.file=target/cuse-metrics.json
+	 * </blockquote>
+	 */
+	@Value("${" + METRICS_FILE + ":target/cuse-metrics.json}")
+	private String metricsFile;
+
+	/**
+	 * File dove esportare le metriche nel formato di Prometheus
+	 * <blockquote>
+	 * metrics.prometheus.file=
+	 * </blockquote>
+	 */
+	@Value("${" + METRICS_PROMETHEUS_FILE + ":}")
+	private String metricsPrometheusFile;
+
+	/**
+	 * Porta locale dell'endpoint delle metriche
+	 * <blockquote>
+	 * metrics.port=0
+	 * </blockquote>
+	 */
+	@Value("${" + METRICS_PORT + ":0}")
+	private int metricsPort;
+
 	// Cucumber options - - - - - - - - - - - - - - - - - - - -
 
 	@Value("${" + CucumberSpec.OVERRIDE_GLUE + ":" + CucumberSpec.GLUE + "}")
@@ -112,6 +307,9 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 	@Value("${" + CucumberSpec.OVERRIDE_FEATURES + ":" + CucumberSpec.FEATURES + "}")
 	private String cucumberFeaturesPath;
 
+	@Value("${" + CucumberSpec.THREADS + ":1}")
+	private int cucumberThreads;
+
 	/**
 	 * Costruttore senza parametri assegna i valori di default. Assegna gli stessi valori inniettati dallo Spring
 	 * Context.
@@ -129,14 +327,36 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 		pageLoadTimeout = 60.0;
 		scriptTimeout = 60.0;
 		windowPos = "maximize";
+		poolSize = 0;
+		poolMaxAge = 1800.0;
+		fakeLatency = 0.0;
+		scriptLocator = false;
+		explicitWait = false;
+		actionAttempts = 3;
+		actionBackoff = 0.05;
+		pageLoadStrategy = "normal";
+		blockUrls = "";
+		blockUpstreamProxy = "";
+		blockResources = "";
+		browserProfile = "";
 		closeBrowser = true;
 		yamlClasspathDir = "cucumber/miriade/yaml/";
+		yamlHotReload = false;
+		yamlWatchDir = "";
 		screenshotDir = "screenshots/";
+		screenshotQueueSize = 16;
+		screenshotMaxWidth = 0;
+		screenshotFormat = "png";
+		screenshotDedupThreshold = -1;
 		onFail = "do-nothing";
 		useProperties = "";
+		metricsFile = "target/cuse-metrics.json";
+		metricsPrometheusFile = "";
+		metricsPort = 0;
 		// Cucumber options - - - - - - - - - - - - - - - - - - - -
 		cucumberGlueClasspth = CucumberSpec.GLUE;
 		cucumberFeaturesPath = CucumberSpec.FEATURES;
+		cucumberThreads = 1;
 	}
 
 	public CuseSetupConfiguration(String targetBrowser, String targetEnv, String targetTags, String pathChrome, String pathFirefox, String pathIE, String pathEdge, Double findElementTimeout, Double pageLoadTimeout, Double scriptTimeout,
@@ -189,10 +409,45 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 		log.debug(this.toString());
 	}
 
+	/**
+	 * Copia indipendente della configurazione, es. per i worker del {@link CucumberRunner}
+	 * 
+	 * @return
+	 */
+	public CuseSetupConfiguration copy() {
+		try {
+			return clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	@Override
 	protected CuseSetupConfiguration clone() throws CloneNotSupportedException {
 		CuseSetupConfiguration conf = new CuseSetupConfiguration(targetBrowser, targetEnv, targetTags, pathChrome, pathFirefox, pathIE, pathEdge, findElementTimeout, pageLoadTimeout, scriptTimeout, windowPos, closeBrowser, yamlClasspathDir,
 			screenshotDir, onFail, useProperties, cucumberGlueClasspth, cucumberFeaturesPath);
+		conf.poolSize = poolSize;
+		conf.poolMaxAge = poolMaxAge;
+		conf.fakeLatency = fakeLatency;
+		conf.scriptLocator = scriptLocator;
+		conf.explicitWait = explicitWait;
+		conf.actionAttempts = actionAttempts;
+		conf.actionBackoff = actionBackoff;
+		conf.pageLoadStrategy = pageLoadStrategy;
+		conf.blockUrls = blockUrls;
+		conf.blockUpstreamProxy = blockUpstreamProxy;
+		conf.blockResources = blockResources;
+		conf.browserProfile = browserProfile;
+		conf.yamlHotReload = yamlHotReload;
+		conf.yamlWatchDir = yamlWatchDir;
+		conf.screenshotQueueSize = screenshotQueueSize;
+		conf.screenshotMaxWidth = screenshotMaxWidth;
+		conf.screenshotFormat = screenshotFormat;
+		conf.screenshotDedupThreshold = screenshotDedupThreshold;
+		conf.metricsFile = metricsFile;
+		conf.metricsPrometheusFile = metricsPrometheusFile;
+		conf.metricsPort = metricsPort;
+		conf.cucumberThreads = cucumberThreads;
 		return conf;
 	}
 
@@ -203,8 +458,64 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 	public String toString() {
 		return getClass().getSimpleName() + ": {\n\t targetBrowser: \"" + targetBrowser + "\",\n\t targetEnv: \"" + targetEnv + "\",\n\t targetTags: \"" + targetTags + "\",\n\t pathChrome: \"" + pathChrome + "\",\n\t pathFirefox: \"" + pathFirefox
 			+ "\",\n\t pathIE: \"" + pathIE + "\",\n\t pathEdge: \"" + pathEdge + "\",\n\t findElementTimeout: " + findElementTimeout + ",\n\t pageLoadTimeout: " + pageLoadTimeout + ",\n\t scriptTimeout: " + scriptTimeout + ",\n\t windowPos: \""
-			+ windowPos + "\",\n\t closeBrowser: " + closeBrowser + ",\n\t yamlClasspathDir: \"" + yamlClasspathDir + "\",\n\t screenshotDir: \"" + screenshotDir + "\",\n\t onFail: \"" + onFail + "\",\n\t useProperties: \"" + useProperties
-			+ "\",\n\t cucumberGlueClasspth: \"" + cucumberGlueClasspth + "\",\n\t cucumberFeaturesPath: \"" + cucumberFeaturesPath + "\" \n}";
+			+ windowPos + "\",\n\t poolSize: " + poolSize + ",\n\t poolMaxAge: " + poolMaxAge + ",\n\t fakeLatency: " + fakeLatency + ",\n\t scriptLocator: " + scriptLocator + ",\n\t explicitWait: " + explicitWait + ",\n\t actionAttempts: " + actionAttempts + ",\n\t actionBackoff: " + actionBackoff + ",\n\t pageLoadStrategy: \"" + pageLoadStrategy + "\",\n\t blockUrls: \"" + blockUrls + "\",\n\t blockUpstreamProxy: \"" + blockUpstreamProxy + "\",\n\t blockResources: \"" + blockResources + "\",\n\t browserProfile: \"" + browserProfile + "\",\n\t closeBrowser: " + closeBrowser + ",\n\t yamlClasspathDir: \"" + yamlClasspathDir + "\",\n\t yamlHotReload: " + yamlHotReload + ",\n\t yamlWatchDir: \"" + yamlWatchDir + "\",\n\t screenshotDir: \"" + screenshotDir + "\",\n\t screenshotQueueSize: " + screenshotQueueSize + ",\n\t screenshotMaxWidth: " + screenshotMaxWidth + ",\n\t screenshotFormat: \"" + screenshotFormat + "\",\n\t screenshotDedupThreshold: " + screenshotDedupThreshold + ",\n\t onFail: \"" + onFail + "\",\n\t useProperties: \"" + useProperties
+			+ "\",\n\t metricsFile: \"" + metricsFile + "\",\n\t metricsPrometheusFile: \"" + metricsPrometheusFile + "\",\n\t metricsPort: " + metricsPort + ",\n\t cucumberGlueClasspth: \"" + cucumberGlueClasspth + "\",\n\t cucumberFeaturesPath: \"" + cucumberFeaturesPath + "\",\n\t cucumberThreads: " + cucumberThreads + " \n}";
+	}
+
+	/**
+	 * Esporta la configurazione come {@link Properties}, con le stesse chiavi usate per leggerla (vedi
+	 * {@link CuseDefaultSpec}). Serve per passare la configurazione corrente ad un altro processo, ad esempio ai worker
+	 * del {@link CucumberRunner} come System Properties. I valori nulli vengono omessi.
+	 * 
+	 * @return
+	 */
+	public Properties toProperties() {
+		Properties props = new Properties();
+		BiConsumer<String, Object> put = (key, value) -> {
+			if (value != null)
+				props.setProperty(key, value.toString());
+		};
+		put.accept(TARGET_BROWSER, targetBrowser);
+		put.accept(TARGET_ENVIRONMENT, targetEnv);
+		put.accept(TARGET_TAGS, targetTags);
+		put.accept(WEBDRIVER_PATH_CHROME, pathChrome);
+		put.accept(WEBDRIVER_PATH_FIREFOX, pathFirefox);
+		put.accept(WEBDRIVER_PATH_IE, pathIE);
+		put.accept(WEBDRIVER_PATH_EDGE, pathEdge);
+		put.accept(WEBDRIVER_TIMEOUTS_FIND, findElementTimeout);
+		put.accept(WEBDRIVER_TIMEOUTS_LOAD, pageLoadTimeout);
+		put.accept(WEBDRIVER_TIMEOUTS_SCRIPT, scriptTimeout);
+		put.accept(WEBDRIVER_WINDOW_POSITION, windowPos);
+		put.accept(WEBDRIVER_POOL_SIZE, poolSize);
+		put.accept(WEBDRIVER_POOL_MAX_AGE, poolMaxAge);
+		put.accept(WEBDRIVER_FAKE_LATENCY, fakeLatency);
+		put.accept(WEBDRIVER_SCRIPT_LOCATOR, scriptLocator);
+		put.accept(WEBDRIVER_EXPLICIT_WAIT, explicitWait);
+		put.accept(WEBDRIVER_ACTION_ATTEMPTS, actionAttempts);
+		put.accept(WEBDRIVER_ACTION_BACKOFF, actionBackoff);
+		put.accept(WEBDRIVER_PAGE_LOAD_STRATEGY, pageLoadStrategy);
+		put.accept(WEBDRIVER_BLOCK_URLS, blockUrls);
+		put.accept(WEBDRIVER_BLOCK_UPSTREAM_PROXY, blockUpstreamProxy);
+		put.accept(WEBDRIVER_BLOCK_RESOURCES, blockResources);
+		put.accept(WEBDRIVER_PROFILE, browserProfile);
+		put.accept(CLOSE_BROWSER, closeBrowser);
+		put.accept(YAML_SUPPORT_CLASSPATH_DIR, yamlClasspathDir);
+		put.accept(YAML_HOT_RELOAD, yamlHotReload);
+		put.accept(YAML_WATCH_DIR, yamlWatchDir);
+		put.accept(SCREENSHOTS_DIR, screenshotDir);
+		put.accept(SCREENSHOTS_QUEUE_SIZE, screenshotQueueSize);
+		put.accept(SCREENSHOTS_MAX_WIDTH, screenshotMaxWidth);
+		put.accept(SCREENSHOTS_FORMAT, screenshotFormat);
+		put.accept(SCREENSHOTS_DEDUP_THRESHOLD, screenshotDedupThreshold);
+		put.accept(WHAT_TO_DO_ON_FAIL, onFail);
+		put.accept(USE_PROPERTY_FILE, StringUtils.hasText(useProperties) ? useProperties : null);
+		put.accept(METRICS_FILE, metricsFile);
+		put.accept(METRICS_PROMETHEUS_FILE, metricsPrometheusFile);
+		put.accept(METRICS_PORT, metricsPort);
+		put.accept(CucumberSpec.OVERRIDE_GLUE, cucumberGlueClasspth);
+		put.accept(CucumberSpec.OVERRIDE_FEATURES, cucumberFeaturesPath);
+		put.accept(CucumberSpec.THREADS, cucumberThreads);
+		return props;
 	}
 
 	public String targetBrowser() {
@@ -219,6 +530,31 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 		this.targetBrowser = brw.name();
 	}
 
+	/**
+	 * @return
+	 * 		Browser su cui eseguire i test, nell'ordine in cui sono indicati in {@link CuseDefaultSpec#TARGET_BROWSER}
+	 * @throws IllegalArgumentException
+	 *             se uno dei browser non è valido
+	 */
+	public List<Browser> targetBrowsers() throws IllegalArgumentException {
+		List<Browser> browsers = new ArrayList<>();
+		if (targetBrowser != null)
+			for (String name : targetBrowser.split(","))
+				if (StringUtils.hasText(name))
+					try {
+						Browser brw = Browser.valueOf(name.trim().toUpperCase());
+						if (!browsers.contains(brw))
+							browsers.add(brw);
+					} catch (IllegalArgumentException e) {
+						throw new IllegalArgumentException("Invalid browser: " + name.trim());
+					}
+		return browsers;
+	}
+
+	public void targetBrowsers(Browser... brws) {
+		this.targetBrowser = StringUtils.arrayToCommaDelimitedString(brws);
+	}
+
 	public String targetEnv() {
 		return targetEnv;
 	}
@@ -324,6 +660,151 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 		this.windowPos = windowPos;
 	}
 
+	/**
+	 * @return
+	 * 		Numero di sessioni inattive tenute nel pool, vedi {@link CuseDefaultSpec#WEBDRIVER_POOL_SIZE}
+	 */
+	public int poolSize() {
+		return poolSize;
+	}
+
+	public void poolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * @return
+	 * 		Età massima in secondi di una sessione del pool, vedi {@link CuseDefaultSpec#WEBDRIVER_POOL_MAX_AGE}
+	 */
+	public double poolMaxAge() {
+		return poolMaxAge;
+	}
+
+	public void poolMaxAge(double poolMaxAge) {
+		this.poolMaxAge = poolMaxAge;
+	}
+
+	/**
+	 * @return
+	 * 		Latenza in secondi di ogni comando del browser FAKE, vedi {@link CuseDefaultSpec#WEBDRIVER_FAKE_LATENCY}
+	 */
+	public double fakeLatency() {
+		return fakeLatency;
+	}
+
+	public void fakeLatency(double fakeLatency) {
+		this.fakeLatency = fakeLatency;
+	}
+
+	/**
+	 * @return
+	 * 		TRUE se gli elementi vengono cercati tramite JavaScript, vedi {@link CuseDefaultSpec#WEBDRIVER_SCRIPT_LOCATOR}
+	 */
+	public boolean scriptLocator() {
+		return scriptLocator;
+	}
+
+	public void scriptLocator(boolean scriptLocator) {
+		this.scriptLocator = scriptLocator;
+	}
+
+	/**
+	 * @return
+	 * 		TRUE se gli elementi vengono attesi con attese esplicite, vedi {@link CuseDefaultSpec#WEBDRIVER_EXPLICIT_WAIT}
+	 */
+	public boolean explicitWait() {
+		return explicitWait;
+	}
+
+	public void explicitWait(boolean explicitWait) {
+		this.explicitWait = explicitWait;
+	}
+
+	/**
+	 * @return
+	 * 		Tentativi di un'azione sugli elementi, vedi {@link CuseDefaultSpec#WEBDRIVER_ACTION_ATTEMPTS}
+	 */
+	public int actionAttempts() {
+		return actionAttempts;
+	}
+
+	public void actionAttempts(int actionAttempts) {
+		this.actionAttempts = actionAttempts;
+	}
+
+	/**
+	 * @return
+	 * 		Attesa iniziale in secondi tra un tentativo e l'altro di un'azione, vedi
+	 *         {@link CuseDefaultSpec#WEBDRIVER_ACTION_BACKOFF}
+	 */
+	public double actionBackoff() {
+		return actionBackoff;
+	}
+
+	public void actionBackoff(double actionBackoff) {
+		this.actionBackoff = actionBackoff;
+	}
+
+	/**
+	 * @return
+	 * 		Strategia di caricamento delle pagine, vedi {@link CuseDefaultSpec#WEBDRIVER_PAGE_LOAD_STRATEGY}
+	 */
+	public String pageLoadStrategy() {
+		return pageLoadStrategy;
+	}
+
+	public void pageLoadStrategy(String pageLoadStrategy) {
+		this.pageLoadStrategy = pageLoadStrategy;
+	}
+
+	/**
+	 * @return
+	 * 		Pattern degli URL da non scaricare, vedi {@link CuseDefaultSpec#WEBDRIVER_BLOCK_URLS}
+	 */
+	public String blockUrls() {
+		return blockUrls;
+	}
+
+	public void blockUrls(String blockUrls) {
+		this.blockUrls = blockUrls;
+	}
+
+	/**
+	 * @return
+	 * 		Proxy per gli URL non bloccati, vedi {@link CuseDefaultSpec#WEBDRIVER_BLOCK_UPSTREAM_PROXY}
+	 */
+	public String blockUpstreamProxy() {
+		return blockUpstreamProxy;
+	}
+
+	public void blockUpstreamProxy(String blockUpstreamProxy) {
+		this.blockUpstreamProxy = blockUpstreamProxy;
+	}
+
+	/**
+	 * @return
+	 * 		Tipi di risorse da non scaricare, vedi {@link CuseDefaultSpec#WEBDRIVER_BLOCK_RESOURCES}
+	 */
+	public String blockResources() {
+		return blockResources;
+	}
+
+	public void blockResources(String blockResources) {
+		this.blockResources = blockResources;
+	}
+
+	/**
+	 * @return
+	 * 		Profilo di avvio del browser, vedi {@link CuseDefaultSpec#WEBDRIVER_PROFILE}
+	 */
+	public String browserProfile() {
+		return browserProfile;
+	}
+
+	public void browserProfile(String browserProfile) {
+		this.browserProfile = browserProfile;
+	}
+
 	public boolean closeBrowser() {
 		return closeBrowser;
 	}
@@ -348,6 +829,91 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 		this.screenshotDir = screenshotDir;
 	}
 
+	/**
+	 * @return
+	 * 		Screenshot in attesa di essere salvati in background, vedi {@link CuseDefaultSpec#SCREENSHOTS_QUEUE_SIZE}
+	 */
+	public int screenshotQueueSize() {
+		return screenshotQueueSize;
+	}
+
+	public void screenshotQueueSize(int screenshotQueueSize) {
+		this.screenshotQueueSize = screenshotQueueSize;
+	}
+
+	/**
+	 * @return
+	 * 		Larghezza massima degli screenshot in pixel, vedi {@link CuseDefaultSpec#SCREENSHOTS_MAX_WIDTH}
+	 */
+	public int screenshotMaxWidth() {
+		return screenshotMaxWidth;
+	}
+
+	public void screenshotMaxWidth(int screenshotMaxWidth) {
+		this.screenshotMaxWidth = screenshotMaxWidth;
+	}
+
+	/**
+	 * @return
+	 * 		Formato dei file degli screenshot, vedi {@link CuseDefaultSpec#SCREENSHOTS_FORMAT}
+	 */
+	public String screenshotFormat() {
+		return StringUtils.hasText(screenshotFormat) ? screenshotFormat : "png";
+	}
+
+	public void screenshotFormat(String screenshotFormat) {
+		this.screenshotFormat = screenshotFormat;
+	}
+
+	/**
+	 * @return
+	 * 		Soglia per il riuso degli screenshot quasi identici, vedi {@link CuseDefaultSpec#SCREENSHOTS_DEDUP_THRESHOLD}
+	 */
+	public int screenshotDedupThreshold() {
+		return screenshotDedupThreshold;
+	}
+
+	public void screenshotDedupThreshold(int screenshotDedupThreshold) {
+		this.screenshotDedupThreshold = screenshotDedupThreshold;
+	}
+
+	/**
+	 * @return
+	 * 		File JSON dove esportare le metriche, vuoto se disabilitato, vedi {@link CuseDefaultSpec#METRICS_FILE}
+	 */
+	public String metricsFile() {
+		return metricsFile;
+	}
+
+	public void metricsFile(String metricsFile) {
+		this.metricsFile = metricsFile;
+	}
+
+	/**
+	 * @return
+	 * 		File dove esportare le metriche nel formato di Prometheus, vuoto se disabilitato, vedi
+	 *         {@link CuseDefaultSpec#METRICS_PROMETHEUS_FILE}
+	 */
+	public String metricsPrometheusFile() {
+		return metricsPrometheusFile;
+	}
+
+	public void metricsPrometheusFile(String metricsPrometheusFile) {
+		this.metricsPrometheusFile = metricsPrometheusFile;
+	}
+
+	/**
+	 * @return
+	 * 		Porta locale dell'endpoint delle metriche, 0 se disabilitato, vedi {@link CuseDefaultSpec#METRICS_PORT}
+	 */
+	public int metricsPort() {
+		return metricsPort;
+	}
+
+	public void metricsPort(int metricsPort) {
+		this.metricsPort = metricsPort;
+	}
+
 	public void onFail(String onFail) {
 		this.onFail = onFail;
 	}
@@ -356,6 +922,31 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 		return yamlClasspathDir;
 	}
 
+	/**
+	 * @return
+	 * 		TRUE se i file YAML modificati vengono ricaricati, vedi {@link CuseDefaultSpec#YAML_HOT_RELOAD}
+	 */
+	public boolean yamlHotReload() {
+		return yamlHotReload;
+	}
+
+	public void yamlHotReload(boolean yamlHotReload) {
+		this.yamlHotReload = yamlHotReload;
+	}
+
+	/**
+	 * @return
+	 * 		cartella dei sorgenti degli YAML osservata dal ricaricamento automatico, vedi
+	 *         {@link CuseDefaultSpec#YAML_WATCH_DIR}
+	 */
+	public String yamlWatchDir() {
+		return yamlWatchDir;
+	}
+
+	public void yamlWatchDir(String yamlWatchDir) {
+		this.yamlWatchDir = yamlWatchDir;
+	}
+
 	public String useProperties() {
 		return useProperties;
 	}
@@ -399,4 +990,16 @@ public class CuseSetupConfiguration implements CuseDefaultSpec, InitializingBean
 		this.cucumberFeaturesPath = "classpath:" + cucumberFeaturesClasspath;
 	}
 
+	/**
+	 * @return
+	 * 		Numero di worker con cui eseguire le features in parallelo, vedi {@link CucumberSpec#THREADS}
+	 */
+	public int cucumberThreads() {
+		return cucumberThreads;
+	}
+
+	public void cucumberThreads(int cucumberThreads) {
+		this.cucumberThreads = cucumberThreads;
+	}
+
 }
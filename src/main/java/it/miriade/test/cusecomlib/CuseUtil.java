@@ -3,40 +3,65 @@ package it.miriade.test.cusecomlib;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.FileUtils;
-import org.openqa.selenium.By;
 import org.openqa.selenium.Cookie;
 import org.openqa.selenium.JavascriptException;
 import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriver.Timeouts;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import it.miriade.test.cusecomlib.cucumber.StepContext;
+import it.miriade.test.cusecomlib.cucumber.StepContextPlugin;
 import it.miriade.test.cusecomlib.cucumber.stepdefs.Stepdef;
 import it.miriade.test.cusecomlib.enums.BySelector;
-import it.miriade.test.cusecomlib.excep.PollingTimeoutException;
+import it.miriade.test.cusecomlib.enums.FillMode;
+import it.miriade.test.cusecomlib.excep.FormFillException;
 import it.miriade.test.cusecomlib.excep.SeleniumElementNotFoundException;
 import it.miriade.test.cusecomlib.excep.YamlInvalidValueException;
 import it.miriade.test.cusecomlib.hooks.HtmlHook;
 import it.miriade.test.cusecomlib.hooks.HtmlHookFactory;
+import it.miriade.test.cusecomlib.hooks.HtmlNamedHook;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics.Sample;
+import it.miriade.test.cusecomlib.screenshots.ScreenshotNaming;
+import it.miriade.test.cusecomlib.screenshots.ScreenshotPipeline;
+import it.miriade.test.cusecomlib.screenshots.ScreenshotStore;
+import it.miriade.test.cusecomlib.selenium.ActionExecutor;
 import it.miriade.test.cusecomlib.selenium.SeleniumDebugUtil;
+import it.miriade.test.cusecomlib.selenium.SeleniumScriptUtil;
 import it.miriade.test.cusecomlib.selenium.SeleniumWebDriverWrapper;
+import it.miriade.test.cusecomlib.selenium.W3CActions;
+import it.miriade.test.cusecomlib.times.DomChangeSleeper;
+import it.miriade.test.cusecomlib.times.PollingEngine;
+import it.miriade.test.cusecomlib.times.PollingEngine.Sleeper;
 import it.miriade.test.cusecomlib.times.Times;
 import it.miriade.test.cusecomlib.times.TimesFactory;
 import it.miriade.test.cusecomlib.times.WhileTrueAction;
@@ -48,7 +73,10 @@ import it.miriade.test.cusecomlib.yaml.YamlSupportFactory;
  * Utility per l'utilizzo del {@link WebDriver} di Selenium.<br/>
  * Oggetto che espone metodi per navigare e maneggiare il DOM della pagina web, ovvero un refactoring Java della
  * libreria utilizzata in Ruby <a href="https://github.com/sbos61/Xover">Xover</a>. Internamente si appoggia al
- * {@link SeleniumWebDriverWrapper}.
+ * {@link SeleniumWebDriverWrapper}.<br/>
+ * Le latenze delle operazioni principali e i comandi inviati al browser vengono misurati da {@link CuseMetrics}.<br/>
+ * Click e scritture sono eseguiti dall'{@link ActionExecutor}, che cerca di nuovo l'elemento e ripete l'azione se la
+ * pagina lo ridisegna nel frattempo.
  * 
  * @see SeleniumWebDriverWrapper
  * @author svaponi
@@ -70,20 +98,37 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	 */
 	public static final boolean return_only_good_elems = true;
 
+	/**
+	 * Intervallo in millisecondi tra una ricerca e l'altra durante le attese esplicite, vedi
+	 * {@link CuseDefaultSpec#WEBDRIVER_EXPLICIT_WAIT}
+	 */
+	public static final long explicit_wait_polling = 100;
+
 	private static final Pattern queryStringParserRegex = Pattern.compile("[\\?&]([^&=]+)=([^&=]+)");
 	private static final Pattern queryStringRegex = Pattern.compile("^([^?]*)?(.*)$");
-	private static final NumberFormat decimal = new DecimalFormat("#0.00");
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
 	// oggetti sicuramente not null
 	private final SeleniumWebDriverWrapper wrapper;
 	private final CuseSetupConfiguration config;
+	private final CuseMetrics metrics = CuseMetrics.getInstance();
+
+	// orologio e attese delle ricerche, dei tentativi e dei polling
+	private final LongSupplier nanoClock;
+	private final Sleeper sleeper;
 
 	// oggetti che possono essere null (se non uso YAML)
 	private YamlSupportFactory yamlSupportFactory;
 	private YamlSupport commonYaml;
 	private YamlSupport targetEnvYaml;
 
+	// creato alla prima azione sugli elementi
+	private ActionExecutor executor;
+
+	// creati al primo screenshot
+	private volatile ScreenshotPipeline screenshotPipeline;
+	private ScreenshotNaming screenshotNaming;
+
 	/**
 	 * @param config
 	 *            {@link CuseSetupConfiguration}
@@ -92,6 +137,8 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 		super();
 		this.config = config;
 		this.wrapper = new SeleniumWebDriverWrapper(config);
+		this.nanoClock = System::nanoTime;
+		this.sleeper = PollingEngine.THREAD_SLEEPER;
 	}
 
 	/**
@@ -101,22 +148,42 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	 *            {@link YamlSupportFactory} per inizializzare gli {@link YamlSupport}
 	 */
 	public CuseUtil(CuseSetupConfiguration config, YamlSupportFactory yamlSupportFactory) {
+		this(config, yamlSupportFactory, System::nanoTime, PollingEngine.THREAD_SLEEPER);
+	}
+
+	/**
+	 * @param config
+	 *            {@link CuseSetupConfiguration}
+	 * @param yamlSupportFactory
+	 *            {@link YamlSupportFactory} per inizializzare gli {@link YamlSupport}
+	 * @param nanoClock
+	 *            orologio monotono in nanosecondi delle attese esplicite, dei tentativi e dei polling
+	 * @param sleeper
+	 *            strategia di attesa tra una ricerca, un tentativo o una ripetizione e l'altra
+	 */
+	CuseUtil(CuseSetupConfiguration config, YamlSupportFactory yamlSupportFactory, LongSupplier nanoClock, Sleeper sleeper) {
 		super();
 		this.config = config;
-		this.wrapper = new SeleniumWebDriverWrapper(config);
+		this.wrapper = new SeleniumWebDriverWrapper(config, yamlSupportFactory);
 		// se uso YamlSupportFactory deve essere not null! Altrimenti uso altro costruttore
 		Assert.notNull(yamlSupportFactory, "yamlSupportFactory is null");
 		this.yamlSupportFactory = yamlSupportFactory;
+		this.nanoClock = nanoClock;
+		this.sleeper = sleeper;
 	}
 
 	/**
 	 * Metodo che implementa l'interfaccia {@link Closeable}. Questo metodo viene ricunosciuto da Spring che lo usare
-	 * per distruggere l'oggeto alla fine del lifecycle. Nel nostro caso chiuderà il browser.
+	 * per distruggere l'oggeto alla fine del lifecycle. Nel nostro caso chiuderà il browser, dopo aver salvato gli
+	 * screenshot ancora in coda.
 	 * 
 	 * @see SeleniumWebDriverWrapper#close()
+	 * @see ScreenshotPipeline#close()
 	 */
 	@Override
 	public void close() {
+		if (screenshotPipeline != null)
+			screenshotPipeline.close();
 		wrapper.close();
 	}
 
@@ -136,11 +203,25 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	}
 
 	/**
-	 * Ritorna l'istanza sottostante del {@link WebDriver}. Se non c'è nessun driver attivo lo inizializza.
+	 * Riporta il browser ad uno stato pulito (cookies, storage, finestre secondarie) senza chiuderlo, ad esempio in un
+	 * hook <code>@After</code> tra uno scenario e l'altro.
+	 * 
+	 * @see SeleniumWebDriverWrapper#reset()
+	 */
+	public void resetBrowser() {
+		wrapper.reset();
+	}
+
+	/**
+	 * Ritorna l'istanza sottostante del {@link WebDriver}. Se non c'è nessun driver attivo lo inizializza, leggendo
+	 * nel frattempo gli YAML in background (vedi {@link YamlSupportFactory#preload()}).
 	 */
 	public WebDriver driver() {
-		if (!wrapper.isActive())
+		if (!wrapper.isActive()) {
+			if (yamlSupportFactory != null)
+				yamlSupportFactory.preload();
 			wrapper.setup();
+		}
 		return wrapper.get();
 	}
 
@@ -232,12 +313,18 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	// ========================================================================
 
 	/**
-	 * Ritorna true se esiste almeno un elemento identificato dal input.
+	 * Ritorna true se esiste almeno un elemento identificato dal input. Con le attese esplicite (vedi
+	 * {@link CuseSetupConfiguration#explicitWait()}) risponde subito, senza aspettare che l'elemento compaia.
 	 * 
 	 * @param hook
 	 */
 	public boolean existsBy(HtmlHook hook) {
-		return !findBy(hook).isEmpty();
+		if (!config.explicitWait())
+			return !findBy(hook).isEmpty();
+		return metrics.time("existsBy", hookName(hook), () -> {
+			metrics.increment(CuseMetrics.ELEMENT_LOOKUPS);
+			return !lookup(hook, false).isEmpty();
+		});
 	}
 
 	/**
@@ -247,7 +334,7 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	 *            mappa con i valori per costruire un {@link HtmlHook}, vedi {@link HtmlHook#HtmlHook(Map)}
 	 */
 	public boolean existsBy(Map<String, ?> map) {
-		return !findBy(new HtmlHook(map)).isEmpty();
+		return existsBy(new HtmlHook(map));
 	}
 
 	/**
@@ -301,54 +388,225 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	// ========================================================================
 
 	/**
-	 * Ritorna un array degli elementi identificati dal hook.
+	 * Ritorna un array degli elementi identificati dal hook. Se {@link CuseSetupConfiguration#scriptLocator()} la
+	 * ricerca e il filtro degli elementi avvengono con un solo script (vedi
+	 * {@link SeleniumScriptUtil#locate(WebDriver, BySelector, String)}); se non trova nulla lo script viene ripetuto
+	 * fino allo scadere di {@link CuseSetupConfiguration#timeoutFindElement()}, come farebbe l'attesa implicita del
+	 * driver, mentre se fallisce si torna alla ricerca standard.<br/>
+	 * Con le attese esplicite (vedi {@link CuseSetupConfiguration#explicitWait()}) l'attesa implicita è 0 e la ricerca
+	 * viene ripetuta ogni {@link HtmlHook#poll} secondi (default {@value #explicit_wait_polling}ms) finchè trova qualcosa
+	 * o scade il timeout dello hook (vedi {@link HtmlHook#timeout}). Se lo hook ha {@link HtmlHook#stableFor} gli
+	 * elementi vengono restituiti solo dopo essere rimasti fermi per quel tempo.<br/>
+	 * Se lo hook indica come aspettare ({@link HtmlHook#timeout}, {@link HtmlHook#poll} o {@link HtmlHook#stableFor})
+	 * viene atteso in modo esplicito anche con l'attesa implicita: questa viene azzerata per la durata della ricerca e
+	 * poi ripristinata (due comandi in più verso il driver).
 	 * 
 	 * @param hook
 	 * @return
 	 */
 	public List<WebElement> findBy(HtmlHook hook) {
-		List<WebElement> el;
-		switch (hook.by) {
+		return metrics.time("findBy", hookName(hook), () -> {
+			metrics.increment(CuseMetrics.ELEMENT_LOOKUPS);
+			if (!config.explicitWait())
+				return hasWaits(hook) ? withoutImplicitWait(() -> waitFor(hook)) : lookup(hook, true);
+			List<WebElement> el = lookup(hook, false);
+			if (!el.isEmpty() && hook.stableFor == null)
+				return el;
+			return waitFor(hook);
+		});
+	}
+
+	private static boolean hasWaits(HtmlHook hook) {
+		return hook.timeout != null || hook.poll != null || hook.stableFor != null;
+	}
+
+	/**
+	 * Esegue la ricerca con l'attesa implicita del driver a 0, poi la riporta a
+	 * {@link CuseSetupConfiguration#timeoutFindElement()}
+	 */
+	private <T> T withoutImplicitWait(Supplier<T> search) {
+		Timeouts timeouts = driver().manage().timeouts();
+		timeouts.implicitlyWait(0, TimeUnit.MILLISECONDS);
+		try {
+			return search.get();
+		} finally {
+			timeouts.implicitlyWait((long) (config.timeoutFindElement() * 1000), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Attesa esplicita: ripete {@link #lookup(HtmlHook, boolean)} finchè trova qualcosa (fermo per {@link HtmlHook#stableFor}) o
+	 * scade il timeout
+	 * 
+	 * @return elementi trovati, vuoto se scade il timeout
+	 */
+	private List<WebElement> waitFor(HtmlHook hook) {
+		long timeout = (long) ((hook.timeout != null ? hook.timeout : config.timeoutFindElement()) * 1000);
+		if (timeout <= 0)
+			return Collections.emptyList();
+		Stability stability = new Stability(hook.stableFor == null ? 0 : (long) (hook.stableFor * 1000), nanoClock);
+		long deadline = nanoClock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		for (;;) {
+			try {
+				List<WebElement> el = stability.check(lookup(hook, false));
+				if (el != null)
+					return el;
+			} catch (StaleElementReferenceException e) {
+				// la pagina può cambiare mentre filtro gli elementi
+			}
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - nanoClock.getAsLong());
+			if (remaining <= 0 || !sleep(Math.min(pollMillis(hook), remaining)))
+				break;
+		}
+		log.debug("Element {} not found in {}ms", hook, timeout);
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Attende con lo {@link Sleeper} di questo {@link CuseUtil}
+	 * 
+	 * @return FALSE se il thread è stato interrotto
+	 */
+	private boolean sleep(long millis) {
+		try {
+			sleeper.sleep(millis);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private static long pollMillis(HtmlHook hook) {
+		return hook.poll == null ? explicit_wait_polling : Math.max(1, (long) (hook.poll * 1000));
+	}
+
+	/**
+	 * Verifica che il risultato della ricerca resti lo stesso (stessi elementi, primo elemento nella stessa posizione)
+	 * per almeno <code>stableMillis</code>
+	 */
+	private static class Stability {
+
+		private final long stableMillis;
+		private final LongSupplier nanoClock;
+		private List<WebElement> elements;
+		private Point location;
+		private long since;
+
+		Stability(long stableMillis, LongSupplier nanoClock) {
+			this.stableMillis = stableMillis;
+			this.nanoClock = nanoClock;
+		}
+
+		/**
+		 * @return gli elementi se sono stabili, null altrimenti
+		 */
+		List<WebElement> check(List<WebElement> found) {
+			if (found.isEmpty()) {
+				elements = null;
+				return null;
+			}
+			if (stableMillis <= 0)
+				return found;
+			Point current = found.get(0).getLocation();
+			long now = nanoClock.getAsLong();
+			if (!found.equals(elements) || !current.equals(location)) {
+				elements = found;
+				location = current;
+				since = now;
+				return null;
+			}
+			return TimeUnit.NANOSECONDS.toMillis(now - since) >= stableMillis ? found : null;
+		}
+	}
+
+	/**
+	 * Esegue l'azione e, se non riesce ad agire su nessun elemento, la ripete fino a {@link HtmlHook#retries} volte,
+	 * attendendo {@link HtmlHook#poll} tra un tentativo e l'altro
+	 * 
+	 * @param hook
+	 * @param action
+	 *            azione che torna TRUE se è riuscita ad agire su almeno un elemento
+	 * @throws SeleniumElementNotFoundException
+	 *             se tutti i tentativi falliscono senza errori transitori
+	 * @throws RuntimeException
+	 *             l'errore transitorio dell'ultimo tentativo (es. elemento stale o click intercettato, vedi
+	 *             {@link ActionExecutor#isTransient(Throwable)}): l'elemento è stato trovato, quindi non viene contato
+	 *             tra quelli non trovati
+	 */
+	private void withRetries(HtmlHook hook, BooleanSupplier action) {
+		int retries = hook.retries == null ? 0 : hook.retries;
+		for (int attempt = 0;; attempt++) {
+			RuntimeException cause = null;
+			try {
+				if (action.getAsBoolean())
+					return;
+			} catch (RuntimeException e) {
+				if (!ActionExecutor.isTransient(e))
+					throw e;
+				cause = e;
+			}
+			if (attempt >= retries || Thread.currentThread().isInterrupted()) {
+				if (!throw_ex_if_not_found)
+					return;
+				if (cause != null)
+					throw cause;
+				metrics.increment(CuseMetrics.ELEMENTS_NOT_FOUND);
+				throw new SeleniumElementNotFoundException("Element " + hook + " not found");
+			}
+			metrics.increment(CuseMetrics.ACTION_RETRIES);
+			log.debug("Retrying on element {} ({}/{})", hook, attempt + 1, retries);
+			sleep(pollMillis(hook));
+		}
+	}
+
+	/**
+	 * Una ricerca degli elementi, che aspetta solo l'eventuale attesa implicita del driver
+	 * 
+	 * @param implicitWait
+	 *            TRUE se è attiva l'attesa implicita, che la ricerca con lo script deve imitare
+	 */
+	private List<WebElement> lookup(HtmlHook hook, boolean implicitWait) {
+		if (config.scriptLocator() && return_only_good_elems) {
+			List<WebElement> el = locate(hook, implicitWait);
+			if (el != null)
+				return el;
+		}
 		/*
 		 * driver().findElements(By....)
 		 * This method is affected by the 'implicit wait' times in force at the time of execution. When implicitly
 		 * waiting, this method will return as soon as there are more than 0 items in the found collection, or will
 		 * return an empty list if the timeout is reached.
 		 */
-		case CSS:
-			el = driver().findElements(By.cssSelector(hook.expr));
-			break;
-		case ID:
-			el = driver().findElements(By.id(hook.expr));
-			break;
-		case CLASS:
-			el = driver().findElements(By.className(hook.expr));
-			break;
-		case NAME:
-			el = driver().findElements(By.name(hook.expr));
-			break;
-		case TAG_NAME:
-			el = driver().findElements(By.tagName(hook.expr));
-			break;
-		case TEXT:
-			el = driver().findElements(By.linkText(hook.expr));
-			break;
-		case PARTIAL_TEXT:
-			el = driver().findElements(By.partialLinkText(hook.expr));
-			break;
-		case XPATH:
-			el = driver().findElements(By.xpath(hook.expr));
-			break;
-		default:
-			throw new RuntimeException("Missing element " + hook);
-		}
+		List<WebElement> el = driver().findElements(hook.locator());
 		if (return_only_good_elems)
-			return el.stream().filter(e -> isGoodElement(e)) // filters only good elements
-				.collect(Collectors.toList()); // transforms stream to collection
+			// un solo executeScript per tutti gli elementi, invece di isDisplayed e isEnabled su ognuno
+			return SeleniumScriptUtil.filterGoodElements(driver(), el, this::isGoodElement);
 		else
 			return el;
 	}
 
+	/**
+	 * Ricerca con lo script. Lo script non aspetta, perciò con l'attesa implicita viene ripetuto ogni
+	 * {@link HtmlHook#poll} secondi finchè trova qualcosa o scade {@link CuseSetupConfiguration#timeoutFindElement()};
+	 * con le attese esplicite è {@link #waitFor(HtmlHook)} a ripeterlo.
+	 * 
+	 * @return elementi trovati, vuoto se scade il timeout, null se lo script non è eseguibile
+	 */
+	private List<WebElement> locate(HtmlHook hook, boolean implicitWait) {
+		List<WebElement> el = SeleniumScriptUtil.locate(driver(), hook.by, hook.expr);
+		if (el == null || !el.isEmpty() || !implicitWait)
+			return el;
+		long deadline = nanoClock.getAsLong() + TimeUnit.MILLISECONDS.toNanos((long) (config.timeoutFindElement() * 1000));
+		while (el != null && el.isEmpty()) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - nanoClock.getAsLong());
+			if (remaining <= 0 || !sleep(Math.min(pollMillis(hook), remaining)))
+				break;
+			el = SeleniumScriptUtil.locate(driver(), hook.by, hook.expr);
+		}
+		return el;
+	}
+
 	/**
 	 * Ritorna un array degli elementi identificati dal input.
 	 * 
@@ -413,24 +671,14 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	// ========================================================================
 
 	/**
-	 * Invia un click sull'elemento identificato dal hook.
+	 * Invia un click sull'elemento identificato dal hook. Se l'elemento viene ridisegnato prima del click, viene cercato
+	 * di nuovo (vedi {@link ActionExecutor}); se il click non arriva a nessun elemento viene ripetuto fino a
+	 * {@link HtmlHook#retries} volte.
 	 * 
 	 * @param hook
 	 */
 	public void clickBy(HtmlHook hook) {
-		boolean found = false;
-		for (WebElement el : findBy(hook.by, hook.expr))
-			if (isGoodElement(el))
-				try {
-					el.click();
-					found = true;
-				} catch (Exception e) {
-					log.error("Exception catched while clicking on element " + hook + ": {}", e.getMessage());
-				}
-
-		if (!found && throw_ex_if_not_found) {
-			throw new RuntimeException("Element " + hook + " not found");
-		}
+		metrics.time("clickBy", hookName(hook), () -> withRetries(hook, () -> executor().perform(hook, () -> goodElements(hook), WebElement::click)));
 	}
 
 	/**
@@ -636,38 +884,199 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 		appendTextBy(HtmlHookFactory.build(yaml, hookName), value);
 	}
 
+	// Batch
+	// =================================================================================
+
+	/**
+	 * Inizia una sequenza di click, testi e tasti da inviare al browser con un solo comando, es.
+	 * 
+	 * <pre>
+	 * util.batch().type("login_username", "mario").click("login_click").perform();
+	 * </pre>
+	 * 
+	 * @return {@link ActionBatch} vuota
+	 */
+	public ActionBatch batch() {
+		return new ActionBatch(this);
+	}
+
+	// Fill form
+	// =================================================================================
+
+	/**
+	 * Compila un form in modalità {@link FillMode#FAITHFUL}: per ogni hook del common.yml imposta il value indicato.
+	 * 
+	 * @param values
+	 *            valore di ogni campo, per nome dello hook
+	 * @throws FormFillException
+	 *             se uno o più campi non sono stati compilati, dopo aver provato tutti gli altri
+	 */
+	public void fillForm(Map<String, String> values) {
+		fillForm(values, FillMode.FAITHFUL);
+	}
+
+	/**
+	 * Compila un form: per ogni hook del common.yml imposta il value indicato.
+	 * 
+	 * @param values
+	 *            valore di ogni campo, per nome dello hook
+	 * @param mode
+	 *            {@link FillMode}
+	 * @throws FormFillException
+	 *             se uno o più campi non sono stati compilati, dopo aver provato tutti gli altri
+	 */
+	public void fillForm(Map<String, String> values, FillMode mode) {
+		fillForm(commonYaml(), values, mode);
+	}
+
+	/**
+	 * Come {@link CuseUtil#fillForm(Map, FillMode)} però utilizza lo {@link YamlSupport} in input per costruire gli
+	 * hook. Con {@link FillMode#FAST} tutti i campi vengono compilati con un solo comando del browser, quindi vengono
+	 * ignorati attese e tentativi degli hook. Con {@link FillMode#FAITHFUL} i campi già presenti vengono scritti con un
+	 * solo comando delle azioni W3C, se il driver le supporta, gli altri uno alla volta. <br/>
+	 * <strong>ATTENZIONE</strong>: lo YAML deve avere la struttura standard (vedi documentazione)
+	 * 
+	 * @param yaml
+	 * @param values
+	 *            valore di ogni campo, per nome dello hook
+	 * @param mode
+	 *            {@link FillMode}
+	 * @throws FormFillException
+	 *             se uno o più campi non sono stati compilati, dopo aver provato tutti gli altri
+	 */
+	public void fillForm(YamlSupport yaml, Map<String, String> values, FillMode mode) {
+		Sample sample = metrics.start("fillForm", null);
+		try {
+			Map<String, String> failures = new HashMap<>();
+			Map<String, HtmlHook> hooks = new LinkedHashMap<>();
+			for (String hookName : values.keySet())
+				try {
+					hooks.put(hookName, HtmlHookFactory.build(yaml, hookName));
+				} catch (RuntimeException e) {
+					failures.put(hookName, e.getMessage());
+				}
+
+			List<String> names = new ArrayList<>(hooks.keySet());
+			List<String> errors = null;
+			Set<String> typed = Collections.emptySet();
+			if (mode == FillMode.FAST && !names.isEmpty()) {
+				errors = SeleniumScriptUtil.fill(driver(), new ArrayList<>(hooks.values()), names.stream().map(values::get).collect(Collectors.toList()));
+				if (errors == null)
+					log.debug("Fill script not available, filling {} fields one by one", names.size());
+			} else if (mode == FillMode.FAITHFUL && names.size() > 1 && W3CActions.supports(driver()))
+				typed = typeAll(hooks, values);
+			for (int i = 0; i < names.size(); i++) {
+				String hookName = names.get(i);
+				if (errors != null) {
+					if (errors.get(i) != null)
+						failures.put(hookName, errors.get(i));
+					continue;
+				}
+				if (typed.contains(hookName))
+					continue;
+				try {
+					textBy(hooks.get(hookName), values.get(hookName), false);
+				} catch (RuntimeException e) {
+					failures.put(hookName, e.getMessage());
+				}
+			}
+
+			if (!failures.isEmpty()) {
+				metrics.increment(CuseMetrics.FORM_FILL_FAILURES);
+				// nello stesso ordine dei campi in input
+				Map<String, String> report = new LinkedHashMap<>();
+				for (String hookName : values.keySet())
+					if (failures.containsKey(hookName))
+						report.put(hookName, failures.get(hookName));
+				throw new FormFillException(report);
+			}
+		} finally {
+			sample.close();
+		}
+	}
+
+	/**
+	 * Compilazione {@link FillMode#FAITHFUL} dei campi trovati subito: ogni elemento di ogni campo viene pulito, poi
+	 * click e testo di tutti gli elementi vengono inviati con un solo comando delle azioni W3C (vedi
+	 * {@link ActionBatch}). I campi non trovati o non puliti restano da compilare uno alla volta, con attese e tentativi
+	 * dello hook.
+	 * 
+	 * @return nomi degli hook compilati, vuoto se il comando è fallito
+	 */
+	private Set<String> typeAll(Map<String, HtmlHook> hooks, Map<String, String> values) {
+		ActionBatch batch = batch();
+		Set<String> typed = new LinkedHashSet<>();
+		hooks.forEach((hookName, hook) -> {
+			try {
+				// come setTextBy, in tutti gli elementi dello hook
+				List<WebElement> el = goodElements(hook);
+				if (el.isEmpty())
+					return;
+				el.forEach(WebElement::clear);
+				el.forEach(element -> batch.type(element, values.get(hookName)));
+				typed.add(hookName);
+			} catch (RuntimeException e) {
+				log.debug("Field {} will be filled alone: {}", hookName, e.getMessage());
+			}
+		});
+		try {
+			batch.perform();
+			return typed;
+		} catch (WebDriverException e) {
+			log.debug("Cannot fill {} fields with one command, filling them one by one: {}", typed.size(), e.getMessage());
+			return Collections.emptySet();
+		}
+	}
+
 	// set/append text private methods
 
 	/**
 	 * Metodo sottostante usato sia per il {@link #setTextBy(HtmlHook, String)} che per
-	 * {@link #appendTextBy(HtmlHook, String)}
+	 * {@link #appendTextBy(HtmlHook, String)}. Se la scrittura fallisce viene ripetuta fino a {@link HtmlHook#retries}
+	 * volte.
 	 * 
 	 * @param hook
 	 * @param value
 	 */
 	private void textBy(HtmlHook hook, String value, boolean append) {
-		boolean found = false;
-		for (WebElement el : findBy(hook.by, hook.expr))
-			// filtro solo gli elementi "buoni" (necessario per Firefox)
-			if (isGoodElement(el)) {
+		metrics.time(append ? "appendTextBy" : "setTextBy", hookName(hook), () -> {
+			withRetries(hook, () -> executor().perform(hook, () -> goodElements(hook), el -> {
 				// se non appendo allora pulisco l'input prima di scrivere
 				if (!append)
 					try {
 						el.clear();
-					} catch (Exception e) {
+					} catch (RuntimeException e) {
+						if (ActionExecutor.isTransient(e))
+							throw e;
 						log.error("Exception catched while clearing text on element " + hook + ": {}", e.getMessage());
 					}
-				try {
-					el.sendKeys(value);
-					found = true;
-				} catch (Exception e) {
-					log.error("Exception catched while setting text to element " + hook + ": {}", e.getMessage());
-				}
-			}
+				el.sendKeys(value);
+			}));
+		});
+	}
 
-		if (!found && throw_ex_if_not_found) {
-			throw new SeleniumElementNotFoundException("Element " + hook + " not found");
-		}
+	private ActionExecutor executor() {
+		if (executor == null)
+			executor = new ActionExecutor(config, nanoClock, sleeper);
+		return executor;
+	}
+
+	/**
+	 * @return elementi trovati da {@link #findBy(HtmlHook)}, filtrando solo quelli "buoni" (necessario per Firefox) se
+	 *         findBy non lo ha già fatto
+	 */
+	private List<WebElement> goodElements(HtmlHook hook) {
+		List<WebElement> el = findBy(hook);
+		if (return_only_good_elems)
+			return el;
+		return el.stream().filter(this::isGoodElement).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return nome dello hook per le metriche, null se lo hook non viene dallo YAML
+	 */
+	private static String hookName(HtmlHook hook) {
+		return hook instanceof HtmlNamedHook ? ((HtmlNamedHook) hook).getName() : null;
 	}
 
 	/**
@@ -711,7 +1120,7 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	 */
 	public void loadPage(String url) {
 		log.info("Loading page {}", url);
-		driver().get(url);
+		metrics.time("loadPage", null, () -> driver().get(url));
 	}
 
 	/**
@@ -779,35 +1188,64 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	// Screenshots
 	// =================================================================================
 
-	static final SimpleDateFormat screenshotDateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss");
-	static final String screenshotBasepath = "screenshots/";
+	static final DateTimeFormatter timestampFormat = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
 
 	public String timestamp() {
-		return screenshotDateFormat.format(new Date());
+		return timestampFormat.format(LocalDateTime.now());
 	}
 
 	/**
-	 * Salva uno screenshot in formato png
+	 * Salva uno screenshot e attende che sia scritto su disco.
 	 * 
-	 * @return torna il {@link File} dell'immagine
+	 * @return torna il {@link File} dell'immagine, null in caso di errore
+	 * @see #takeScreenshotAsync()
 	 */
 	public File takeScreenshot() {
 		try {
-			File tmpFile = ((TakesScreenshot) driver()).getScreenshotAs(OutputType.FILE);
-			log.debug("Temp screenshot: {}", tmpFile.getAbsolutePath());
-			String stepdefName = getStepdefName();
-			File screenshot = new File(screenshotBasepath + stepdefName + "." + timestamp() + ".png");
-			FileUtils.forceMkdirParent(screenshot);
-			FileUtils.copyFile(tmpFile, screenshot);
-			log.info("New screenshot: {}", screenshot.getName());
-			return screenshot;
-		} catch (IOException e) {
-			e.printStackTrace();
-			log.error("Screenshot error: {}", e.getMessage());
+			return takeScreenshotAsync().join();
+		} catch (CompletionException e) {
+			log.error("Screenshot error: {}", e.getCause().getMessage());
 		}
 		return null;
 	}
 
+	/**
+	 * Cattura uno screenshot e lo salva in background tramite la {@link ScreenshotPipeline}: il thread del test si
+	 * ferma solo il tempo di ricevere l'immagine dal browser, mentre ricodifica e scrittura avvengono in un altro
+	 * thread. Le immagini identiche sono salvate una sola volta (vedi {@link ScreenshotStore}). Gli screenshot in coda
+	 * vengono salvati anche alla {@link #close()}.<br/>
+	 * Il file viene creato nella cartella {@link CuseDefaultSpec#SCREENSHOTS_DIR} con un nome univoco anche tra thread e
+	 * worker paralleli, vedi {@link ScreenshotNaming}.
+	 * 
+	 * @return future completato con il {@link File} dell'immagine
+	 */
+	public CompletableFuture<File> takeScreenshotAsync() {
+		ScreenshotPipeline pipeline = screenshotPipeline();
+		try {
+			return metrics.time("takeScreenshot", null, () -> {
+				byte[] png = ((TakesScreenshot) driver()).getScreenshotAs(OutputType.BYTES);
+				File screenshot = screenshotNaming.next(getStepdefName(), StepContext.current(), pipeline.format());
+				return pipeline.submit(png, screenshot);
+			});
+		} catch (RuntimeException e) {
+			CompletableFuture<File> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	private ScreenshotPipeline screenshotPipeline() {
+		if (screenshotPipeline == null)
+			synchronized (this) {
+				if (screenshotPipeline == null) {
+					screenshotNaming = new ScreenshotNaming(config.screenshotDir());
+					screenshotPipeline = new ScreenshotPipeline(config.screenshotQueueSize(), config.screenshotMaxWidth(), config.screenshotFormat(),
+						new ScreenshotStore(screenshotNaming.dir(), config.screenshotDedupThreshold()));
+				}
+			}
+		return screenshotPipeline;
+	}
+
 	// Metodi Wait
 	// =================================================================================
 
@@ -818,11 +1256,13 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	 *            durata dell'interruzione in millisecondi
 	 */
 	public void waitMillis(long millis) {
-		try {
-			Thread.sleep(millis);
-		} catch (InterruptedException e) {
-			log.error(e.getMessage());
-		}
+		metrics.time("wait", null, () -> {
+			try {
+				sleeper.sleep(millis);
+			} catch (InterruptedException e) {
+				log.error(e.getMessage());
+			}
+		});
 	}
 
 	/**
@@ -972,8 +1412,12 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 
 	/**
 	 * Come {@link #polling(WhileTrueAction, Object...)} con in più il messaggio da stampare nel log ad ogni esecuzione.
+	 * Il polling è eseguito dal {@link PollingEngine}; se {@link Times#wakeOnDomChange} e il browser è attivo, le
+	 * attese terminano non appena il DOM cambia (vedi {@link DomChangeSleeper}). Se manca {@link Times#maxWaitingTime}
+	 * il polling scade dopo {@link CuseSetupConfiguration#timeoutFindElement()}.
 	 * 
 	 * @see WhileTrueAction
+	 * @see PollingEngine
 	 * @param logMessage
 	 *            messaggio da riportare nel log
 	 * @param action
@@ -982,27 +1426,11 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	 *            contiene i tempi del polling
 	 */
 	public void pollingWithLog(String logMessage, WhileTrueAction action, Times times) {
-
-		log.debug("Inizio polling \"{}\" - {}", logMessage, times);
-
-		if (times.startAfter == null)
-			log.info("{}...", logMessage);
-		else
-			log.info("{}... (comincio dopo {}s)", logMessage, decimal.format((double) times.startAfter / 1000));
-
-		// times.start_after = secondi dopo di cui cominciare il polling
-		if (times.startAfter != null && times.startAfter > 0)
-			waitMillis(times.startAfter);
-
-		double waiting_time = 0;
-		while (action.isTrue() && waiting_time < times.maxWaitingTime) {
-			waitMillis(times.delay);
-			waiting_time += times.delay;
-			log.info("{}... ({}s)", logMessage, decimal.format((double) waiting_time / 1000));
-		}
-
-		if (waiting_time >= times.maxWaitingTime)
-			throw new PollingTimeoutException("Ho aspettato troppo! (limite " + decimal.format(times.maxWaitingTime) + "s)");
+		Times bounded = times.maxWaitingTime != null ? times : times.withMaxWaitingTime((long) (config.timeoutFindElement() * 1000));
+		if (bounded != times)
+			log.debug("Polling \"{}\" senza {}, uso {}ms", logMessage, Times.MAX_WAITING_TIME, bounded.maxWaitingTime);
+		PollingEngine engine = new PollingEngine(nanoClock, bounded.wakeOnDomChange && wrapper.isActive() ? new DomChangeSleeper(wrapper.get()) : sleeper);
+		metrics.time("polling", null, () -> engine.poll(logMessage, action, bounded));
 	}
 
 	/**
@@ -1048,7 +1476,7 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 			throw new YamlInvalidValueException("Manca la regex con chiave \"" + regexkey + "\"");
 
 		// sostituisco eventuali '\\1' (usati in Ruby) con '$1' (usati in Java)
-		String javaAdaptedRegexp = regex.replaceAll("\\", "$");
+		String javaAdaptedRegexp = regex.replaceAll("\\\\(\\d)", "\\$$1");
 		return input.replaceAll("^(.*)$", javaAdaptedRegexp);
 	}
 
@@ -1057,11 +1485,15 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 
 	/**
 	 * Trova lo stepdef che sta girando nel momento dell'invocazione, e torna il nome in stringa formattato per essere
-	 * usato nei log e/o testo delle eccezioni.
+	 * usato nei log e/o testo delle eccezioni. Il nome viene letto dallo {@link StepContext} registrato da
+	 * {@link StepContextPlugin}; solo se manca si cerca lo stepdef nello stacktrace.
 	 * 
 	 * @return torna il nome della classe e il metodo dello stepdef
 	 */
 	public static String getStepdefName() {
+		StepContext context = StepContext.current();
+		if (context != null && context.getStepdefName() != null)
+			return context.getStepdefName();
 		try {
 			StackTraceElement stepdef = getStepdefStackElement();
 			return ReflectionUtil.formatClassAndMethod(stepdef);
@@ -1071,7 +1503,8 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	}
 
 	/**
-	 * Cerca nello stacktrace lo stepdef che sta girando nel momento dell'invocazione.
+	 * Cerca nello stacktrace lo stepdef che sta girando nel momento dell'invocazione. Quando possibile preferire
+	 * {@link #getStepdefName()}, che non ispeziona lo stack.
 	 * 
 	 * @return
 	 */
@@ -1091,6 +1524,11 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	 * @param reason
 	 */
 	public void failStep(String reason) {
+		StepContext context = StepContext.current();
+		if (context != null && context.getStep() != null) {
+			failStep(context.describe(), reason);
+			return;
+		}
 		StackTraceElement caller = ReflectionUtil.getStackElement(Stepdef.class);
 		failStep(ReflectionUtil.formatClassMethodAndLineNumber(caller), reason);
 	}
@@ -1148,10 +1586,15 @@ public class CuseUtil implements CuseDefaultSpec, Closeable {
 	 * <li>debug => lancia la {@link SeleniumDebugUtil}</li>
 	 * <li>freeze => blocca lo schermo finchè non premo invio</li>
 	 * <li>exit => termina brutalmente l'esecuzine dei test</li>
+	 * <li>screenshot => salva uno screenshot in background, senza bloccare i test</li>
 	 * <ul>
 	 */
 	public final void toDoOnFail() {
 		switch (config.onFail()) {
+		case "screenshot":
+			takeScreenshotAsync();
+			break;
+
 		case "debug":
 			debug();
 			break;
@@ -1,18 +1,51 @@
 package it.miriade.test.cusecomlib.cucumber;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
 import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.enums.Browser;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+import it.miriade.test.cusecomlib.metrics.MetricsEndpoint;
 
 /**
  * Classe wrapper per invocare Cucumber con parametri custom (non hardcoded in @CucumberOptions). Per informazione sui
@@ -27,11 +60,18 @@ public class CucumberRunner {
 	public static final byte success = 0x0;
 	public static final byte error = 0x1;
 	private static final Logger log = LoggerFactory.getLogger(CucumberRunner.class);
-	private static final String[] defaultPlugins = { "--plugin", CucumberSpec.PLUGIN_PRETTY, "--plugin", CucumberSpec.PLUGIN_HTML, "--plugin", CucumberSpec.PLUGIN_JSON };
+	private static final String[] defaultPlugins = { "--plugin", CucumberSpec.PLUGIN_PRETTY, "--plugin", CucumberSpec.PLUGIN_HTML, "--plugin", CucumberSpec.PLUGIN_JSON, "--plugin", CucumberSpec.PLUGIN_STEP_CONTEXT };
+	private static final String FEATURE_EXT = ".feature";
+	private static final String CLASSPATH_PREFIX = "classpath:";
 
 	private CuseSetupConfiguration config;
 	private byte exitstatus;
 
+	/**
+	 * Worker in esecuzione, le cui metriche vengono mostrate dall'endpoint, vedi {@link #liveMetrics()}
+	 */
+	private List<CucumberWorker> running;
+
 	@Autowired
 	public CucumberRunner(CuseSetupConfiguration config) {
 		super();
@@ -57,7 +97,15 @@ public class CucumberRunner {
 	}
 
 	/**
-	 * Lancia Cucumber con parametri contenuti in {@link CuseSetupConfiguration}.
+	 * Lancia Cucumber con parametri contenuti in {@link CuseSetupConfiguration}. Se
+	 * {@link CuseSetupConfiguration#targetBrowsers()} contiene più browser le features vengono eseguite su tutti
+	 * contemporaneamente, vedi {@link #runBrowsers(CuseSetupConfiguration, List)}. Altrimenti se
+	 * {@link CuseSetupConfiguration#cucumberThreads()} è maggiore di 1 le features vengono suddivise tra più worker
+	 * eseguiti in parallelo, vedi {@link #runParallel(CuseSetupConfiguration, int)}.<br/>
+	 * Durante l'esecuzione le metriche raccolte da {@link CuseMetrics} sono esposte sulla porta
+	 * {@link CuseSetupConfiguration#metricsPort()} (vedi {@link MetricsEndpoint}), comprese quelle dei worker paralleli
+	 * in esecuzione (vedi {@link #liveMetrics()}), al termine vengono esportate nei file
+	 * {@link CuseSetupConfiguration#metricsFile()} e {@link CuseSetupConfiguration#metricsPrometheusFile()}.
 	 * 
 	 * @param config
 	 *            oggetto che incapsula la configurazione dell'ambiente
@@ -65,6 +113,57 @@ public class CucumberRunner {
 	 */
 	public byte run(CuseSetupConfiguration config) {
 
+		int threads = config.cucumberThreads() > 0 ? config.cucumberThreads() : Runtime.getRuntime().availableProcessors();
+		List<Browser> browsers = config.targetBrowsers();
+		byte status;
+		if (browsers.size() > 1 && config.cucumberThreads() > 1)
+			log.warn("{} = {} ignored: running one worker per browser {}", CucumberSpec.THREADS, config.cucumberThreads(), browsers);
+		MetricsEndpoint endpoint = MetricsEndpoint.start(config.metricsPort(), this::liveMetrics);
+		try {
+			if (browsers.size() > 1)
+				status = runBrowsers(config, browsers);
+			else
+				status = threads > 1 ? runParallel(config, threads) : runSequential(config);
+		} finally {
+			// null se l'endpoint non è stato avviato
+			if (endpoint != null)
+				endpoint.close();
+		}
+		exportMetrics(config.metricsFile(), config.metricsPrometheusFile());
+		return status;
+	}
+
+	/**
+	 * Esporta le metriche della JVM in formato JSON (vedi {@link CuseMetrics#writeJson(File)}) e nel formato di
+	 * Prometheus (vedi {@link CuseMetrics#writePrometheus(File)})
+	 * 
+	 * @param metricsFile
+	 *            file JSON da scrivere, se vuoto non viene scritto
+	 * @param prometheusFile
+	 *            file Prometheus da scrivere, se vuoto non viene scritto
+	 */
+	static void exportMetrics(String metricsFile, String prometheusFile) {
+		if (StringUtils.hasText(metricsFile))
+			try {
+				CuseMetrics.getInstance().writeJson(new File(metricsFile));
+				log.info("Metrics exported to {}", metricsFile);
+			} catch (IOException e) {
+				log.warn("Cannot export metrics to {}: {}", metricsFile, e.getMessage());
+			}
+		if (StringUtils.hasText(prometheusFile))
+			try {
+				CuseMetrics.getInstance().writePrometheus(new File(prometheusFile));
+				log.info("Metrics exported to {}", prometheusFile);
+			} catch (IOException e) {
+				log.warn("Cannot export metrics to {}: {}", prometheusFile, e.getMessage());
+			}
+	}
+
+	/*
+	 * Esecuzione di Cucumber nel processo corrente
+	 */
+	private byte runSequential(CuseSetupConfiguration config) {
+
 		// args saranno gli argomenti che passo a Cucumber come se l'invocazione avvenisse da riga di comando
 		List<String> args = buildArgs(config);
 
@@ -82,6 +181,243 @@ public class CucumberRunner {
 		return exitstatus;
 	}
 
+	/**
+	 * Suddivide le features tra <code>threads</code> worker e li esegue in parallelo, ognuno nel proprio processo (vedi
+	 * {@link CucumberWorker}). Al termine i report JSON dei worker vengono uniti nel report di default
+	 * ({@link CucumberSpec#PLUGIN_JSON}) e lo stato di uscita è di errore se almeno un worker è fallito.<br/>
+	 * Se le features non sono suddivisibili (es. un singolo file) l'esecuzione torna sequenziale.
+	 * 
+	 * @param config
+	 *            oggetto che incapsula la configurazione dell'ambiente
+	 * @param threads
+	 *            numero massimo di worker
+	 * @return
+	 */
+	public byte runParallel(CuseSetupConfiguration config, int threads) {
+
+		List<List<String>> groups;
+		try {
+			groups = splitFeatures(findFeatures(config.cucumberFeaturesPath()), threads);
+		} catch (IOException e) {
+			log.warn("Cannot list features in {}: {}", config.cucumberFeaturesPath(), e.getMessage());
+			groups = Collections.emptyList();
+		}
+
+		if (groups.size() < 2) {
+			log.info("Nothing to split among workers, running sequentially");
+			return runSequential(config);
+		}
+
+		List<CucumberWorker> workers = new ArrayList<>();
+		for (int i = 0; i < groups.size(); i++)
+			workers.add(new CucumberWorker(String.valueOf(i + 1), config, groups.get(i)));
+
+		exitstatus = runWorkers(workers, false);
+		return exitstatus;
+	}
+
+	/**
+	 * Esegue tutte le features su più browser contemporaneamente, un worker per browser (vedi
+	 * {@link #browserWorkers(CuseSetupConfiguration, List)}). Ogni worker esegue le features in modo sequenziale.
+	 * 
+	 * @param config
+	 *            oggetto che incapsula la configurazione dell'ambiente
+	 * @param browsers
+	 *            browser su cui eseguire le features
+	 * @return stato di uscita complessivo, di errore se almeno un browser è fallito
+	 */
+	public byte runBrowsers(CuseSetupConfiguration config, List<Browser> browsers) {
+		log.info("Running on {} browsers: {}", browsers.size(), browsers);
+		exitstatus = runWorkers(browserWorkers(config, browsers), true);
+		return exitstatus;
+	}
+
+	/**
+	 * Un worker per browser, identificato dal nome del browser (es. <code>target/cucumber-workers/chrome</code>), con
+	 * una copia della configurazione in cui {@link CuseSetupConfiguration#targetBrowser()} è il solo browser del
+	 * worker.
+	 * 
+	 * @param config
+	 * @param browsers
+	 * @return
+	 */
+	static List<CucumberWorker> browserWorkers(CuseSetupConfiguration config, List<Browser> browsers) {
+		List<CucumberWorker> workers = new ArrayList<>();
+		for (Browser browser : browsers) {
+			CuseSetupConfiguration copy = config.copy();
+			copy.targetBrowser(browser);
+			workers.add(new CucumberWorker(browser.name().toLowerCase(), copy, Collections.singletonList(config.cucumberFeaturesPath())));
+		}
+		return workers;
+	}
+
+	/**
+	 * Avvia i worker, ne attende la fine e unisce i report JSON in quello di default. Il riepilogo dei worker viene
+	 * riportato nel log e scritto in {@link CucumberSpec#SUMMARY}.
+	 * 
+	 * @param workers
+	 * @return stato di uscita complessivo
+	 */
+	protected byte runWorkers(List<CucumberWorker> workers) {
+		return runWorkers(workers, false);
+	}
+
+	/**
+	 * Come {@link #runWorkers(List)}, se <code>byBrowser</code> i worker eseguono le stesse features su browser diversi
+	 * e nel report unito ogni feature viene attribuita al proprio worker, vedi {@link #mergeJsonReports(Map, File)}.
+	 * 
+	 * @param workers
+	 * @param byBrowser
+	 * @return stato di uscita complessivo
+	 */
+	protected byte runWorkers(List<CucumberWorker> workers, boolean byBrowser) {
+		byte status = success;
+		synchronized (this) {
+			running = workers;
+		}
+		try {
+			for (CucumberWorker worker : workers)
+				worker.start();
+			for (CucumberWorker worker : workers)
+				if (worker.waitFor() != success)
+					status = error;
+		} catch (IOException e) {
+			log.info("Cucumber worker failed to start: {}", e.getMessage());
+			status = error;
+		} catch (InterruptedException e) {
+			log.info("Cucumber workers interrupted");
+			Thread.currentThread().interrupt();
+			status = error;
+		} finally {
+			workers.forEach(CucumberWorker::destroy);
+		}
+
+		File report = new File(CucumberSpec.PLUGIN_JSON.substring("json:".length()));
+		try {
+			if (byBrowser) {
+				Map<String, File> reports = new LinkedHashMap<>();
+				workers.forEach(worker -> reports.put(worker.id(), worker.jsonReport()));
+				mergeJsonReports(reports, report);
+			} else
+				mergeJsonReports(workers.stream().map(CucumberWorker::jsonReport).collect(Collectors.toList()), report);
+		} catch (IOException e) {
+			log.warn("Cannot merge JSON reports into {}: {}", report, e.getMessage());
+		}
+
+		// insieme a liveMetrics(), così che l'endpoint non veda mai le metriche dei worker contate due volte
+		synchronized (this) {
+			for (CucumberWorker worker : workers)
+				if (worker.metricsFile().isFile())
+					try {
+						CuseMetrics.getInstance().mergeJson(worker.metricsFile());
+					} catch (IOException | RuntimeException e) {
+						log.warn("Cannot merge metrics of worker {}: {}", worker.id(), e.getMessage());
+					}
+			running = null;
+		}
+
+		JsonArray summary = summarize(workers);
+		for (JsonElement item : summary) {
+			JsonObject worker = item.getAsJsonObject();
+			JsonObject scenarios = worker.getAsJsonObject("scenarios");
+			log.info("Worker {} ({}): {} in {}s, scenarios passed: {}, failed: {}, skipped: {}", worker.get("worker").getAsString(), worker.get("browser").getAsString(), worker.get("status").getAsString().toUpperCase(),
+					worker.get("elapsed").getAsLong() / 1000.0, scenarios.get("passed"), scenarios.get("failed"), scenarios.get("skipped"));
+		}
+		try {
+			writeJson(summary, new File(CucumberSpec.SUMMARY));
+		} catch (IOException e) {
+			log.warn("Cannot write summary to {}: {}", CucumberSpec.SUMMARY, e.getMessage());
+		}
+
+		log.info("Cucumber workers terminated with status: {}", status);
+		return status;
+	}
+
+	/**
+	 * Metriche mostrate dall'endpoint: quelle della JVM più, durante l'esecuzione parallela, le ultime esportate da ogni
+	 * worker (vedi {@link CucumberSpec#METRICS_INTERVAL}).
+	 * 
+	 * @return
+	 */
+	synchronized CuseMetrics liveMetrics() {
+		if (running == null)
+			return CuseMetrics.getInstance();
+		return CuseMetrics.getInstance().mergedWith(running.stream().map(CucumberWorker::metricsFile).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Riepilogo dei worker terminati: identificativo, browser, stato, durata in millisecondi e numero di scenari
+	 * passati, falliti e saltati, letti dal report JSON del worker. Uno scenario è fallito se uno dei suoi step o hook è
+	 * fallito, è saltato se non è nè passato nè fallito (es. step non definiti).
+	 * 
+	 * @param workers
+	 * @return array JSON con un oggetto per worker
+	 */
+	public static JsonArray summarize(List<CucumberWorker> workers) {
+		JsonArray summary = new JsonArray();
+		for (CucumberWorker worker : workers) {
+			int[] counts = new int[3];
+			if (worker.jsonReport().isFile())
+				try (Reader reader = new InputStreamReader(new FileInputStream(worker.jsonReport()), StandardCharsets.UTF_8)) {
+					JsonElement json = new JsonParser().parse(reader);
+					if (json.isJsonArray())
+						for (JsonElement feature : json.getAsJsonArray())
+							for (JsonElement element : array(feature.getAsJsonObject(), "elements"))
+								if ("scenario".equals(string(element.getAsJsonObject(), "type")))
+									counts[outcome(element.getAsJsonObject())]++;
+				} catch (IOException | RuntimeException e) {
+					log.warn("Cannot read JSON report of worker {}: {}", worker.id(), e.getMessage());
+				}
+			JsonObject scenarios = new JsonObject();
+			scenarios.addProperty("passed", counts[0]);
+			scenarios.addProperty("failed", counts[1]);
+			scenarios.addProperty("skipped", counts[2]);
+			JsonObject item = new JsonObject();
+			item.addProperty("worker", worker.id());
+			item.addProperty("browser", worker.config().targetBrowser());
+			item.addProperty("status", worker.exitstatus() == success ? "passed" : "failed");
+			item.addProperty("elapsed", worker.elapsed());
+			item.addProperty("features", worker.features().size());
+			item.add("scenarios", scenarios);
+			summary.add(item);
+		}
+		return summary;
+	}
+
+	/**
+	 * Entry point dei processi worker (vedi {@link CucumberWorker}): invoca Cucumber con gli argomenti in input, esporta
+	 * le metriche e termina la JVM con il suo stato di uscita. Se è impostata {@link CucumberSpec#METRICS_INTERVAL} le
+	 * metriche vengono esportate anche durante l'esecuzione.
+	 * 
+	 * @param args
+	 *            argomenti di Cucumber
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		String metricsFile = System.getProperty(CuseDefaultSpec.METRICS_FILE);
+		long interval = Long.getLong(CucumberSpec.METRICS_INTERVAL, 0);
+		ScheduledExecutorService exporter = null;
+		if (StringUtils.hasText(metricsFile) && interval > 0) {
+			exporter = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "metrics-exporter");
+				thread.setDaemon(true);
+				return thread;
+			});
+			exporter.scheduleWithFixedDelay(() -> {
+				try {
+					CuseMetrics.getInstance().writeJson(new File(metricsFile));
+				} catch (IOException | RuntimeException e) {
+					log.debug("Cannot export metrics to {}: {}", metricsFile, e.getMessage());
+				}
+			}, interval, interval, TimeUnit.SECONDS);
+		}
+		byte status = cucumber.api.cli.Main.run(args, Thread.currentThread().getContextClassLoader());
+		if (exporter != null)
+			exporter.shutdownNow();
+		exportMetrics(metricsFile, null);
+		System.exit(status);
+	}
+
 	/**
 	 * Costruisce gli argomenti da pasare a Cucumber. Vedi
 	 * <a href="https://cucumber.io/docs/reference/jvm">documentazione</a> online.
@@ -90,6 +426,20 @@ public class CucumberRunner {
 	 * @return
 	 */
 	public static List<String> buildArgs(CuseSetupConfiguration config) {
+		return buildArgs(config, Arrays.asList(defaultPlugins), Collections.singletonList(config.cucumberFeaturesPath()));
+	}
+
+	/**
+	 * Come {@link #buildArgs(CuseSetupConfiguration)} con plugin e features in input al posto di quelli di default.
+	 * 
+	 * @param config
+	 * @param plugins
+	 *            argomenti <code>--plugin</code> da passare a Cucumber
+	 * @param features
+	 *            path delle features da eseguire
+	 * @return
+	 */
+	public static List<String> buildArgs(CuseSetupConfiguration config, List<String> plugins, List<String> features) {
 
 		// args saranno gli argomenti che passo a Cucumber come se l'invocazione avvenisse da riga di comando
 		List<String> args = new ArrayList<String>();
@@ -110,18 +460,201 @@ public class CucumberRunner {
 		});
 
 		// .. poi attacco la configurazione dei plugin di output ..
-		args.addAll(Arrays.asList(defaultPlugins));
+		args.addAll(plugins);
 
 		// .. poi imposto dove cercare il "glue code" ..
 		args.add("--glue");
 		args.add(config.cucumberGlueClasspth());
 
-		// .. alla fine va il path dove cercare i features (ultimo parametro senza nome)
-		args.add(config.cucumberFeaturesPath());
+		// .. alla fine vanno i path dove cercare i features (ultimi parametri senza nome)
+		args.addAll(features);
 
 		return args;
 	}
 
+	/*
+	 * Gestione delle features per l'esecuzione parallela
+	 */
+
+	/**
+	 * Cerca i file {@value #FEATURE_EXT} nel path in input (anche nelle sub directories). Il path può essere una
+	 * directory del filesystem oppure una directory del classpath con prefisso {@value #CLASSPATH_PREFIX}. Se il path
+	 * identifica già una singola feature (eventualmente con il numero di riga) non viene suddiviso.
+	 * 
+	 * @param featuresPath
+	 * @return mappa ordinata con il path di ogni feature (nel formato accettato da Cucumber) e la sua dimensione in
+	 *         byte, usata come stima della durata
+	 * @throws IOException
+	 */
+	public static Map<String, Long> findFeatures(String featuresPath) throws IOException {
+		Map<String, Long> features = new LinkedHashMap<>();
+		if (featuresPath.contains(FEATURE_EXT)) {
+			features.put(featuresPath, 0L);
+
+		} else if (featuresPath.startsWith(CLASSPATH_PREFIX)) {
+			String base = StringUtils.trimTrailingCharacter(featuresPath.substring(CLASSPATH_PREFIX.length()), '/');
+			Resource[] resources = new PathMatchingResourcePatternResolver().getResources("classpath*:" + base + "/**/*" + FEATURE_EXT);
+			for (Resource resource : resources) {
+				String url = resource.getURL().toString();
+				int idx = url.lastIndexOf(base + "/");
+				if (idx >= 0)
+					features.put(CLASSPATH_PREFIX + url.substring(idx), resource.contentLength());
+			}
+
+		} else {
+			Path dir = Paths.get(featuresPath);
+			if (Files.isDirectory(dir))
+				try (Stream<Path> paths = Files.walk(dir)) {
+					for (Path path : paths.filter(p -> p.toString().endsWith(FEATURE_EXT)).sorted().collect(Collectors.toList()))
+						features.put(path.toString().replace(File.separatorChar, '/'), Files.size(path));
+				}
+		}
+		return features;
+	}
+
+	/**
+	 * Suddivide le features in al massimo <code>n</code> gruppi bilanciati secondo il loro peso: le features vengono
+	 * assegnate in ordine di peso decrescente al gruppo più leggero.
+	 * 
+	 * @param features
+	 *            features con il relativo peso, vedi {@link #findFeatures(String)}
+	 * @param n
+	 *            numero massimo di gruppi
+	 * @return gruppi non vuoti di features
+	 */
+	public static List<List<String>> splitFeatures(Map<String, Long> features, int n) {
+		int size = Math.min(n, features.size());
+		List<List<String>> groups = new ArrayList<>();
+		long[] weights = new long[size];
+		for (int i = 0; i < size; i++)
+			groups.add(new ArrayList<>());
+
+		features.entrySet().stream().sorted(Map.Entry.<String, Long> comparingByValue(Comparator.reverseOrder())).forEachOrdered(feature -> {
+			int lightest = 0;
+			for (int i = 1; i < size; i++)
+				if (weights[i] < weights[lightest])
+					lightest = i;
+			groups.get(lightest).add(feature.getKey());
+			weights[lightest] += feature.getValue();
+		});
+		return groups;
+	}
+
+	/**
+	 * Unisce i report JSON di Cucumber in input (array di features) in un unico report. I report mancanti, ad esempio di
+	 * worker terminati prima di scriverlo, vengono saltati.
+	 * 
+	 * @param reports
+	 * @param target
+	 *            report da scrivere
+	 * @throws IOException
+	 */
+	public static void mergeJsonReports(List<File> reports, File target) throws IOException {
+		JsonArray merged = new JsonArray();
+		for (File report : reports)
+			merged.addAll(readJsonReport(report));
+		writeJson(merged, target);
+	}
+
+	/**
+	 * Come {@link #mergeJsonReports(List, File)} per report che contengono le stesse features, ad esempio eseguite su
+	 * browser diversi: ogni feature viene attribuita al worker del proprio report, in modo che id e uri non collidano e
+	 * si possa distinguere il browser. L'identificativo del worker viene anteposto all'id di feature e scenari (
+	 * <code>chrome;login</code>), all'uri (<code>chrome/login.feature</code>) e al nome della feature (
+	 * <code>[chrome] Login</code>) e aggiunto come tag (<code>@chrome</code>) a feature e scenari.
+	 * 
+	 * @param reports
+	 *            report per identificativo del worker
+	 * @param target
+	 *            report da scrivere
+	 * @throws IOException
+	 */
+	public static void mergeJsonReports(Map<String, File> reports, File target) throws IOException {
+		JsonArray merged = new JsonArray();
+		for (Map.Entry<String, File> report : reports.entrySet())
+			for (JsonElement feature : readJsonReport(report.getValue()))
+				if (feature.isJsonObject()) {
+					attribute(feature.getAsJsonObject(), report.getKey());
+					merged.add(feature);
+				}
+		writeJson(merged, target);
+	}
+
+	private static JsonArray readJsonReport(File report) throws IOException {
+		if (!report.isFile()) {
+			log.warn("Missing JSON report {}", report);
+			return new JsonArray();
+		}
+		try (Reader reader = new InputStreamReader(new FileInputStream(report), StandardCharsets.UTF_8)) {
+			JsonElement json = new JsonParser().parse(reader);
+			return json.isJsonArray() ? json.getAsJsonArray() : new JsonArray();
+		}
+	}
+
+	/**
+	 * Attribuisce la feature del report JSON e i suoi scenari al worker
+	 */
+	private static void attribute(JsonObject feature, String worker) {
+		String name = string(feature, "name");
+		if (name != null)
+			feature.addProperty("name", "[" + worker + "] " + name);
+		String uri = string(feature, "uri");
+		if (uri != null)
+			feature.addProperty("uri", worker + "/" + uri);
+		tag(feature, worker);
+		for (JsonElement scenario : array(feature, "elements"))
+			if (scenario.isJsonObject())
+				tag(scenario.getAsJsonObject(), worker);
+	}
+
+	private static void tag(JsonObject json, String worker) {
+		String id = string(json, "id");
+		if (id != null)
+			json.addProperty("id", worker + ";" + id);
+		JsonObject tag = new JsonObject();
+		tag.addProperty("name", "@" + worker);
+		if (json.has("line"))
+			tag.add("line", json.get("line"));
+		JsonArray tags = array(json, "tags");
+		tags.add(tag);
+		json.add("tags", tags);
+	}
+
+	private static void writeJson(JsonElement json, File target) throws IOException {
+		File parent = target.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs())
+			throw new IOException("Impossibile creare la directory " + parent);
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(target), StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(json, writer);
+		}
+	}
+
+	/**
+	 * Esito dello scenario del report JSON: 0 passato, 1 fallito, 2 saltato
+	 */
+	private static int outcome(JsonObject scenario) {
+		boolean passed = true;
+		for (String key : Arrays.asList("before", "steps", "after"))
+			for (JsonElement step : array(scenario, key)) {
+				JsonObject result = step.getAsJsonObject().getAsJsonObject("result");
+				String status = result == null ? null : string(result, "status");
+				if ("failed".equals(status))
+					return 1;
+				passed &= "passed".equals(status);
+			}
+		return passed ? 0 : 2;
+	}
+
+	private static JsonArray array(JsonObject json, String key) {
+		JsonElement value = json.get(key);
+		return value != null && value.isJsonArray() ? value.getAsJsonArray() : new JsonArray();
+	}
+
+	private static String string(JsonObject json, String key) {
+		JsonElement value = json.get(key);
+		return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+	}
+
 	/*
 	 * Gestione dei tags
 	 */
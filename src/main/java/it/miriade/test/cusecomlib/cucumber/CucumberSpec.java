@@ -27,6 +27,11 @@ public interface CucumberSpec {
 	 */
 	public String PLUGIN_JSON = "json:target/cucumber.json";
 
+	/**
+	 * Plugin che registra lo step in esecuzione, vedi {@link StepContext}
+	 */
+	public String PLUGIN_STEP_CONTEXT = "it.miriade.test.cusecomlib.cucumber.StepContextPlugin";
+
 	/**
 	 * Classpath to test-steps implementation
 	 */
@@ -77,4 +82,45 @@ public interface CucumberSpec {
 	 * Vedi <a href="https://cucumber.io/docs/reference#gherkin">https://cucumber.io/docs/reference#gherkin</a>
 	 */
 	public String OVERRIDE_FEATURES = "cucumber.features";
+
+	/*
+	 * Esecuzione parallela
+	 */
+
+	/**
+	 * Proprietà che indica il numero di worker con cui eseguire le features in parallelo. Il default è 1, ovvero
+	 * esecuzione sequenziale nel processo corrente. Con 0 viene usato il numero di core della macchina.<br/>
+	 * Ogni worker è un processo Java separato (Cucumber 1.x non permette di eseguire più runtime nella stessa JVM), con
+	 * il proprio contesto di Spring e quindi il proprio CuseUtil e browser.
+	 */
+	public String THREADS = "cucumber.threads";
+
+	/**
+	 * System Property impostata su ogni worker con il suo identificativo. Non è valorizzata nelle esecuzioni
+	 * sequenziali.
+	 */
+	public String WORKER_ID = "cucumber.worker.id";
+
+	/**
+	 * System Property impostata sui worker quando il runner espone le metriche (vedi
+	 * {@link it.miriade.test.cusecomlib.CuseDefaultSpec#METRICS_PORT}): ogni quanti secondi il worker esporta le proprie
+	 * metriche, così che l'endpoint del runner le mostri mentre i worker sono in esecuzione.
+	 */
+	public String METRICS_INTERVAL = "cucumber.worker.metrics.interval";
+
+	/**
+	 * Default di {@link #METRICS_INTERVAL}, in secondi
+	 */
+	public long DEFAULT_METRICS_INTERVAL = 5;
+
+	/**
+	 * Directory dove ogni worker scrive i propri report (una sotto-directory per worker)
+	 */
+	public String WORKERS_DIR = "target/cucumber-workers";
+
+	/**
+	 * Riepilogo JSON dell'esecuzione parallela: stato, durata e scenari passati e falliti di ogni worker (e quindi di
+	 * ogni browser, vedi {@link it.miriade.test.cusecomlib.CuseDefaultSpec#TARGET_BROWSER})
+	 */
+	public String SUMMARY = WORKERS_DIR + "/summary.json";
 }
\ No newline at end of file
@@ -0,0 +1,227 @@
+package it.miriade.test.cusecomlib.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+
+/**
+ * Worker dell'esecuzione parallela del {@link CucumberRunner}. Ogni worker esegue un sottoinsieme delle features in un
+ * processo Java separato, che eredita il classpath del processo corrente e riceve la {@link CuseSetupConfiguration}
+ * come System Properties. In questo modo ogni worker ha il proprio contesto di Spring, e quindi il proprio CuseUtil e
+ * browser.<br/>
+ * I report (json e html) e il log del worker sono scritti nella directory {@link #reportDir()}.
+ *
+ * @see CucumberSpec#THREADS
+ * @author svaponi
+ */
+public class CucumberWorker {
+
+	private static final Logger log = LoggerFactory.getLogger(CucumberWorker.class);
+
+	/**
+	 * Prefissi delle System Properties della JVM che non vanno passate ai worker
+	 */
+	private static final List<String> jvmPropertyPrefixes = Arrays.asList("java.", "javax.", "sun.", "jdk.", "os.", "user.", "file.", "line.", "path.", "awt.", "surefire.", "basedir", "localRepository");
+
+	private final String id;
+	private final CuseSetupConfiguration config;
+	private final List<String> features;
+	private final File reportDir;
+
+	private Process process;
+	private long startedAt;
+	private long elapsed;
+	private byte exitstatus;
+
+	/**
+	 * @param id
+	 *            identificativo del worker, usato anche come nome della sua directory dei report
+	 * @param config
+	 *            configurazione da passare al processo del worker
+	 * @param features
+	 *            path delle features da eseguire, nello stesso formato di {@link CuseSetupConfiguration#cucumberFeaturesPath()}
+	 */
+	public CucumberWorker(String id, CuseSetupConfiguration config, List<String> features) {
+		super();
+		this.id = id;
+		this.config = config;
+		this.features = features;
+		this.reportDir = new File(CucumberSpec.WORKERS_DIR, id);
+	}
+
+	/**
+	 * JSON-like syntax
+	 */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ": {\n\t id: \"" + id + "\",\n\t features: " + features.size() + ",\n\t exitstatus: " + exitstatus + ",\n\t elapsed: " + elapsed + " \n}";
+	}
+
+	public String id() {
+		return id;
+	}
+
+	public CuseSetupConfiguration config() {
+		return config;
+	}
+
+	public List<String> features() {
+		return features;
+	}
+
+	/**
+	 * @return directory dove il worker scrive i report e il log
+	 */
+	public File reportDir() {
+		return reportDir;
+	}
+
+	/**
+	 * @return report JSON prodotto dal worker
+	 */
+	public File jsonReport() {
+		return new File(reportDir, "cucumber.json");
+	}
+
+	/**
+	 * @return metriche esportate dal worker, vedi {@link CuseMetrics}
+	 */
+	public File metricsFile() {
+		return new File(reportDir, "metrics.json");
+	}
+
+	/**
+	 * @return file con lo STDOUT e STDERR del processo del worker
+	 */
+	public File logFile() {
+		return new File(reportDir, "worker.log");
+	}
+
+	/**
+	 * @return durata in millisecondi dell'esecuzione (valorizzata dopo {@link #waitFor()})
+	 */
+	public long elapsed() {
+		return elapsed;
+	}
+
+	/**
+	 * @return stato di uscita del processo (valorizzato dopo {@link #waitFor()})
+	 */
+	public byte exitstatus() {
+		return exitstatus;
+	}
+
+	/**
+	 * Lancia il processo del worker senza attenderne la fine.
+	 *
+	 * @return
+	 * @throws IOException
+	 *             se non è possibile avviare il processo
+	 */
+	public CucumberWorker start() throws IOException {
+		if (!reportDir.isDirectory() && !reportDir.mkdirs())
+			throw new IOException("Impossibile creare la directory " + reportDir);
+
+		List<String> command = buildCommand();
+		log.debug("Worker {} command: {}", id, StringUtils.collectionToDelimitedString(command, " "));
+		log.info("Starting worker {} with {} feature{}, log: {}", id, features.size(), features.size() == 1 ? "" : "s", logFile());
+
+		startedAt = System.currentTimeMillis();
+		process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(logFile()).start();
+		return this;
+	}
+
+	/**
+	 * Attende la fine del processo del worker.
+	 *
+	 * @return stato di uscita del worker
+	 * @throws InterruptedException
+	 *             se il thread corrente viene interrotto, in tal caso il processo del worker viene terminato
+	 */
+	public byte waitFor() throws InterruptedException {
+		try {
+			int status = process.waitFor();
+			exitstatus = status == 0 ? CucumberRunner.success : CucumberRunner.error;
+		} catch (InterruptedException e) {
+			process.destroy();
+			exitstatus = CucumberRunner.error;
+			throw e;
+		} finally {
+			elapsed = System.currentTimeMillis() - startedAt;
+		}
+		log.info("Worker {} terminated with status {} in {}s", id, exitstatus, elapsed / 1000);
+		return exitstatus;
+	}
+
+	/**
+	 * Termina il processo del worker, se attivo.
+	 */
+	public void destroy() {
+		if (process != null && process.isAlive())
+			process.destroy();
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	/**
+	 * Costruisce la riga di comando: stesso java e classpath del processo corrente, System Properties dell'utente,
+	 * configurazione, e infine gli argomenti di Cucumber.
+	 */
+	private List<String> buildCommand() {
+		List<String> command = new ArrayList<>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+
+		Properties props = new Properties();
+		for (Entry<Object, Object> entry : System.getProperties().entrySet())
+			if (!isJvmProperty(entry.getKey().toString()))
+				props.put(entry.getKey(), entry.getValue());
+		props.putAll(config.toProperties());
+		props.setProperty(CucumberSpec.THREADS, "1");
+		props.setProperty(CucumberSpec.WORKER_ID, id);
+		if (StringUtils.hasText(config.metricsFile()) || StringUtils.hasText(config.metricsPrometheusFile()) || config.metricsPort() > 0)
+			props.setProperty(CuseDefaultSpec.METRICS_FILE, metricsFile().getPath());
+		// endpoint e file Prometheus sono del runner, che unisce le metriche dei worker
+		props.setProperty(CuseDefaultSpec.METRICS_PROMETHEUS_FILE, "");
+		props.setProperty(CuseDefaultSpec.METRICS_PORT, "0");
+		if (config.metricsPort() > 0)
+			// l'endpoint del runner legge le metriche esportate periodicamente dal worker
+			props.setProperty(CucumberSpec.METRICS_INTERVAL, String.valueOf(CucumberSpec.DEFAULT_METRICS_INTERVAL));
+		for (String key : props.stringPropertyNames())
+			command.add("-D" + key + "=" + props.getProperty(key));
+
+		command.add(CucumberRunner.class.getName());
+		command.addAll(CucumberRunner.buildArgs(config, pluginsFor(reportDir), features));
+		return command;
+	}
+
+	private static boolean isJvmProperty(String key) {
+		for (String prefix : jvmPropertyPrefixes)
+			if (key.startsWith(prefix))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Plugin del worker: gli stessi di default, ma con i report nella directory del worker
+	 */
+	static List<String> pluginsFor(File reportDir) {
+		String dir = reportDir.getPath().replace(File.separatorChar, '/');
+		return Arrays.asList("--plugin", CucumberSpec.PLUGIN_PRETTY, "--plugin", "html:" + dir + "/html", "--plugin", "json:" + dir + "/cucumber.json", "--plugin", CucumberSpec.PLUGIN_STEP_CONTEXT);
+	}
+}
@@ -0,0 +1,170 @@
+package it.miriade.test.cusecomlib.cucumber;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Contesto dello step di Cucumber in esecuzione: feature, scenario, step e stepdef che lo implementa. Viene registrato
+ * da {@link StepContextPlugin} prima di ogni step e permette di sapere quale step sta girando senza ispezionare lo
+ * stack delle chiamate.<br/>
+ * Il contesto è legato al thread che esegue Cucumber ed è ereditato dai thread creati durante lo step; per i thread di
+ * un pool (creati prima dello step) usare {@link #wrap(Runnable)}. I worker paralleli (vedi {@link CucumberWorker})
+ * sono processi separati con il proprio {@link StepContextPlugin}.
+ *
+ * @author svaponi
+ */
+public final class StepContext {
+
+	private static final InheritableThreadLocal<StepContext> current = new InheritableThreadLocal<>();
+
+	/**
+	 * Location Java degli stepdef, es. <code>CommonStepdef.open_page(String)</code>
+	 */
+	private static final Pattern methodLocation = Pattern.compile("^(?:.*\\.)?([^.(]+)\\.([^.(]+)\\(.*\\)$");
+
+	private final String featureUri;
+	private final String feature;
+	private final String scenario;
+	private final String step;
+	private final Integer stepLine;
+	private final String stepdefLocation;
+	private final String stepdefName;
+
+	/**
+	 * @param featureUri
+	 *            path del file .feature
+	 * @param feature
+	 *            nome della feature
+	 * @param scenario
+	 *            nome dello scenario
+	 * @param step
+	 *            testo dello step, keyword compresa
+	 * @param stepLine
+	 *            riga dello step nel file .feature
+	 * @param stepdefLocation
+	 *            location dello stepdef restituita da Cucumber, null se lo step non è definito
+	 */
+	public StepContext(String featureUri, String feature, String scenario, String step, Integer stepLine, String stepdefLocation) {
+		super();
+		this.featureUri = featureUri;
+		this.feature = feature;
+		this.scenario = scenario;
+		this.step = step;
+		this.stepLine = stepLine;
+		this.stepdefLocation = stepdefLocation;
+		this.stepdefName = stepdefName(stepdefLocation);
+	}
+
+	/**
+	 * JSON-like syntax
+	 */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ": {\n\t featureUri: \"" + featureUri + "\",\n\t feature: \"" + feature + "\",\n\t scenario: \"" + scenario + "\",\n\t step: \"" + step + "\",\n\t stepLine: " + stepLine + ",\n\t stepdefLocation: \""
+			+ stepdefLocation + "\" \n}";
+	}
+
+	/*
+	 * Contesto del thread corrente
+	 */
+
+	/**
+	 * @return contesto dello step in esecuzione nel thread corrente, null se nessuno step è in esecuzione (es. fuori
+	 *         da Cucumber oppure senza {@link StepContextPlugin})
+	 */
+	public static StepContext current() {
+		return current.get();
+	}
+
+	/**
+	 * Imposta il contesto del thread corrente, se null lo rimuove
+	 *
+	 * @param context
+	 */
+	public static void set(StepContext context) {
+		if (context == null)
+			current.remove();
+		else
+			current.set(context);
+	}
+
+	/**
+	 * Rimuove il contesto del thread corrente
+	 */
+	public static void clear() {
+		current.remove();
+	}
+
+	/**
+	 * Cattura il contesto del thread corrente e lo rende disponibile al thread che eseguirà il task.
+	 *
+	 * @param task
+	 * @return
+	 */
+	public static Runnable wrap(Runnable task) {
+		StepContext context = current();
+		return () -> {
+			StepContext previous = current();
+			set(context);
+			try {
+				task.run();
+			} finally {
+				set(previous);
+			}
+		};
+	}
+
+	/*
+	 * Getters
+	 */
+
+	public String getFeatureUri() {
+		return featureUri;
+	}
+
+	public String getFeature() {
+		return feature;
+	}
+
+	public String getScenario() {
+		return scenario;
+	}
+
+	public String getStep() {
+		return step;
+	}
+
+	public Integer getStepLine() {
+		return stepLine;
+	}
+
+	public String getStepdefLocation() {
+		return stepdefLocation;
+	}
+
+	/**
+	 * @return nome dello stepdef nel formato <code>${simpleClassName}#${methodName}</code> (lo stesso di
+	 *         {@link it.miriade.test.cusecomlib.utils.ReflectionUtil#formatClassAndMethod(StackTraceElement)}), oppure
+	 *         la location di Cucumber se non è un metodo (es. lambda di Java 8). Null se lo step non è definito.
+	 */
+	public String getStepdefName() {
+		return stepdefName;
+	}
+
+	private static String stepdefName(String location) {
+		if (location == null)
+			return null;
+		Matcher match = methodLocation.matcher(location);
+		return match.matches() ? match.group(1) + "#" + match.group(2) : location;
+	}
+
+	/**
+	 * @return descrizione dello step per log ed eccezioni, es.
+	 *         <code>CommonStepdef#open_page "Dato apro la pagina" (common.feature:12)</code>
+	 */
+	public String describe() {
+		String stepdef = getStepdefName();
+		String file = featureUri == null ? "" : featureUri.substring(featureUri.lastIndexOf('/') + 1);
+		return (stepdef == null ? "" : stepdef + " ") + "\"" + step + "\" (" + file + ":" + stepLine + ")";
+	}
+}
@@ -0,0 +1,132 @@
+package it.miriade.test.cusecomlib.cucumber;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Match;
+import gherkin.formatter.model.Result;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+
+/**
+ * Plugin di Cucumber che registra lo {@link StepContext} dello step in esecuzione. Va configurato come
+ * <code>--plugin</code> (vedi {@link CucumberSpec#PLUGIN_STEP_CONTEXT}); {@link CucumberRunner} lo aggiunge sempre,
+ * anche ai worker paralleli.<br/>
+ * Cucumber annuncia gli step di uno scenario (e del background) prima di eseguirli e invoca
+ * {@link #match(Match)} subito prima di ognuno di essi: gli step annunciati vengono accodati e il match li consuma
+ * nello stesso ordine. Il contesto dell'ultimo step resta valido fino alla fine dello scenario, così è disponibile
+ * anche negli hook <code>@After</code>.
+ *
+ * @author svaponi
+ */
+public class StepContextPlugin implements Formatter, Reporter {
+
+	private final Deque<Step> pending = new ArrayDeque<>();
+	private String uri;
+	private String feature;
+	private String scenario;
+
+	/*
+	 * Formatter
+	 */
+
+	@Override
+	public void uri(String uri) {
+		this.uri = uri;
+	}
+
+	@Override
+	public void feature(Feature feature) {
+		this.feature = feature.getName();
+	}
+
+	@Override
+	public void startOfScenarioLifeCycle(Scenario scenario) {
+		this.scenario = scenario.getName();
+		pending.clear();
+		StepContext.set(new StepContext(uri, feature, this.scenario, null, scenario.getLine(), null));
+	}
+
+	@Override
+	public void scenario(Scenario scenario) {
+		this.scenario = scenario.getName();
+	}
+
+	@Override
+	public void step(Step step) {
+		pending.add(step);
+	}
+
+	@Override
+	public void endOfScenarioLifeCycle(Scenario scenario) {
+		pending.clear();
+		StepContext.clear();
+	}
+
+	@Override
+	public void done() {
+		StepContext.clear();
+	}
+
+	@Override
+	public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+	}
+
+	@Override
+	public void scenarioOutline(ScenarioOutline scenarioOutline) {
+	}
+
+	@Override
+	public void examples(Examples examples) {
+	}
+
+	@Override
+	public void background(Background background) {
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void eof() {
+	}
+
+	/*
+	 * Reporter
+	 */
+
+	@Override
+	public void match(Match match) {
+		Step step = pending.poll();
+		if (step != null)
+			StepContext.set(new StepContext(uri, feature, scenario, step.getKeyword() + step.getName(), step.getLine(), match.getLocation()));
+	}
+
+	@Override
+	public void before(Match match, Result result) {
+	}
+
+	@Override
+	public void result(Result result) {
+	}
+
+	@Override
+	public void after(Match match, Result result) {
+	}
+
+	@Override
+	public void embedding(String mimeType, byte[] data) {
+	}
+
+	@Override
+	public void write(String text) {
+	}
+}
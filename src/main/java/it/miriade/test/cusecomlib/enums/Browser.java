@@ -1,10 +1,12 @@
 package it.miriade.test.cusecomlib.enums;
 
 /**
- * Enumeration identificativa delle tipologie di browser per i quli svolgere i test.
+ * Enumeration identificativa delle tipologie di browser per i quli svolgere i test. {@link #FAKE} è un browser
+ * in-process senza interfaccia grafica (vedi {@link it.miriade.test.cusecomlib.selenium.FakeWebDriver}), che non
+ * richiede alcun webdriver ed è pensato per i benchmark della libreria e per la CI.
  * 
  * @author svaponi
  */
 public enum Browser {
-	CHROME, FIREFOX, IE, EDGE
+	CHROME, FIREFOX, IE, EDGE, FAKE
 }
\ No newline at end of file
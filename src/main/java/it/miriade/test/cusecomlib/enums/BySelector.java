@@ -1,10 +1,41 @@
 package it.miriade.test.cusecomlib.enums;
 
+import org.openqa.selenium.By;
 import org.springframework.util.Assert;
 
 public enum BySelector {
 	XPATH, CSS, ID, CLASS, NAME, TAG_NAME, TEXT, PARTIAL_TEXT;
 
+	/**
+	 * Costruisce il {@link By} di Selenium corrispondente al selettore.
+	 * 
+	 * @param expr
+	 *            espressione del selettore
+	 * @return {@link By}
+	 */
+	public By toBy(String expr) {
+		switch (this) {
+		case CSS:
+			return By.cssSelector(expr);
+		case ID:
+			return By.id(expr);
+		case CLASS:
+			return By.className(expr);
+		case NAME:
+			return By.name(expr);
+		case TAG_NAME:
+			return By.tagName(expr);
+		case TEXT:
+			return By.linkText(expr);
+		case PARTIAL_TEXT:
+			return By.partialLinkText(expr);
+		case XPATH:
+			return By.xpath(expr);
+		default:
+			throw new IllegalStateException("Unsupported selector " + this);
+		}
+	}
+
 	public static BySelector get(String a) {
 		Assert.notNull(a, "Invalid value for BySelector");
 		String by = a.startsWith(":") ? a.substring(1) : a;
@@ -0,0 +1,27 @@
+package it.miriade.test.cusecomlib.enums;
+
+/**
+ * Modalità di compilazione dei form, vedi {@link it.miriade.test.cusecomlib.CuseUtil#fillForm(java.util.Map, FillMode)}.
+ * In entrambe le modalità il valore di un campo viene scritto in tutti gli elementi identificati dal suo hook, come fa
+ * {@link it.miriade.test.cusecomlib.CuseUtil#setTextBy(it.miriade.test.cusecomlib.hooks.HtmlHook, String)}.
+ * 
+ * @author svaponi
+ */
+public enum FillMode {
+
+	/**
+	 * Tutti i campi vengono compilati con un solo script JavaScript, che imposta i valori e genera gli eventi
+	 * <code>input</code> e <code>change</code>, senza eventi della tastiera. Se lo script non è eseguibile si passa a
+	 * {@link #FAITHFUL}.
+	 */
+	FAST,
+
+	/**
+	 * Ogni campo viene pulito e compilato con i comandi del browser, come farebbe l'utente (eventi della tastiera
+	 * compresi). Se il driver supporta le azioni W3C, click e testo dei campi già presenti vengono inviati con un solo
+	 * comando (vedi {@link it.miriade.test.cusecomlib.ActionBatch}); gli altri campi vengono compilati uno alla volta,
+	 * rispettando attese e tentativi degli hook come
+	 * {@link it.miriade.test.cusecomlib.CuseUtil#setTextBy(it.miriade.test.cusecomlib.hooks.HtmlHook, String)}.
+	 */
+	FAITHFUL
+}
@@ -0,0 +1,37 @@
+package it.miriade.test.cusecomlib.excep;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import it.miriade.test.cusecomlib.CuseUtil;
+
+/**
+ * Lanciata al termine di una invocazione di {@link CuseUtil#fillForm(Map)} se uno o più campi non sono stati
+ * compilati. Riporta tutti i campi falliti insieme, non solo il primo.
+ * 
+ * @author svaponi
+ */
+public class FormFillException extends CuseException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Map<String, String> failures;
+
+	/**
+	 * @param failures
+	 *            motivo del fallimento di ogni campo non compilato, per nome dello hook
+	 */
+	public FormFillException(Map<String, String> failures) {
+		super("Cannot fill " + failures.size() + " field(s): " + failures);
+		this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+	}
+
+	/**
+	 * @return motivo del fallimento di ogni campo non compilato, per nome dello hook
+	 */
+	public Map<String, String> getFailures() {
+		return failures;
+	}
+
+}
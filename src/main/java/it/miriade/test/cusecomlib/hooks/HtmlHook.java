@@ -2,6 +2,8 @@ package it.miriade.test.cusecomlib.hooks;
 
 import java.util.Map;
 
+import org.openqa.selenium.By;
+
 import it.miriade.test.cusecomlib.CuseUtil;
 import it.miriade.test.cusecomlib.enums.BySelector;
 
@@ -26,6 +28,26 @@ public class HtmlHook {
 	 */
 	public static final String EXPR = "expr";
 
+	/**
+	 * key del tempo massimo di attesa dell'elemento, in secondi (opzionale)
+	 */
+	public static final String TIMEOUT = "timeout";
+
+	/**
+	 * key del numero di volte che un'azione sull'elemento viene ripetuta se fallisce (opzionale)
+	 */
+	public static final String RETRIES = "retries";
+
+	/**
+	 * key dell'intervallo tra una ricerca e l'altra dell'elemento, in secondi (opzionale)
+	 */
+	public static final String POLL = "poll";
+
+	/**
+	 * key del tempo per cui l'elemento deve restare fermo prima di essere usato, in secondi (opzionale)
+	 */
+	public static final String STABLE_FOR = "stable_for";
+
 	/**
 	 * Tipologia dell'espressione, ovvero come interpretare {@link #expr}. Tutte le tipologie sono incapsulate in
 	 * {@link BySelector}.
@@ -37,6 +59,35 @@ public class HtmlHook {
 	 */
 	final public String expr;
 
+	/**
+	 * Tempo massimo di attesa dell'elemento in secondi, null se vale quello di default
+	 * {@link it.miriade.test.cusecomlib.CuseDefaultSpec#WEBDRIVER_TIMEOUTS_FIND}. Vale anche senza le attese esplicite
+	 * (vedi {@link it.miriade.test.cusecomlib.CuseUtil#findBy(HtmlHook)}).
+	 */
+	final public Double timeout;
+
+	/**
+	 * Numero di volte che clickBy e setTextBy vengono ripetuti se non riescono ad agire sull'elemento, null se mai
+	 */
+	final public Integer retries;
+
+	/**
+	 * Intervallo in secondi tra una ricerca e l'altra durante l'attesa, null se vale quello di default
+	 * {@link it.miriade.test.cusecomlib.CuseUtil#explicit_wait_polling}
+	 */
+	final public Double poll;
+
+	/**
+	 * Tempo in secondi per cui l'elemento deve essere presente e fermo (stessi elementi, stessa posizione) prima di
+	 * essere restituito, null se viene restituito appena compare. Serve per gli elementi animati.
+	 */
+	final public Double stableFor;
+
+	/**
+	 * {@link By} di Selenium costruito una sola volta da {@link #by} e {@link #expr}
+	 */
+	private final By locator;
+
 	/**
 	 * Costruisce un {@link HtmlHook} con la tipologia e l'espressione in input.
 	 * 
@@ -49,6 +100,11 @@ public class HtmlHook {
 		super();
 		this.by = by;
 		this.expr = expr;
+		this.timeout = null;
+		this.retries = null;
+		this.poll = null;
+		this.stableFor = null;
+		this.locator = locator(by, expr);
 	}
 
 	/**
@@ -65,7 +121,8 @@ public class HtmlHook {
 
 	/**
 	 * Costruisce un {@link HtmlHook} con i dati in mappa. La mappa deve contenere le chiavi {@value #BY} e {@value #EXPR}
-	 * con rispettivamente la tipologia e l'espressione che costituiscono l'hook.
+	 * con rispettivamente la tipologia e l'espressione che costituiscono l'hook, e può contenere le chiavi opzionali
+	 * {@value #TIMEOUT}, {@value #RETRIES}, {@value #POLL} e {@value #STABLE_FOR}.
 	 * 
 	 * @param map
 	 */
@@ -75,6 +132,76 @@ public class HtmlHook {
 			throw new IllegalArgumentException("Invalid hook Map");
 		this.by = BySelector.get((String) map.get(BY));
 		this.expr = (String) map.get(EXPR);
+		this.timeout = seconds(map, TIMEOUT);
+		this.retries = count(map, RETRIES);
+		this.poll = seconds(map, POLL);
+		this.stableFor = seconds(map, STABLE_FOR);
+		this.locator = locator(by, expr);
+	}
+
+	/**
+	 * @return
+	 * 		il {@link By} di Selenium che identifica l'elemento
+	 * @throws IllegalArgumentException
+	 *             se manca l'espressione
+	 */
+	public By locator() {
+		if (locator == null)
+			throw new IllegalArgumentException("Missing expression " + this);
+		return locator;
+	}
+
+	private static By locator(BySelector by, String expr) {
+		return by == null || expr == null ? null : by.toBy(expr);
+	}
+
+	/**
+	 * @return valore numerico della chiave, null se mancante
+	 * @throws IllegalArgumentException
+	 *             se il valore non è un numero maggiore o uguale a 0
+	 */
+	private static Double seconds(Map<String, ?> map, String key) {
+		Object value = map.get(key);
+		if (value == null)
+			return null;
+		try {
+			double seconds = value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+			if (seconds >= 0)
+				return seconds;
+		} catch (NumberFormatException e) {
+			// sotto
+		}
+		throw new IllegalArgumentException("Invalid hook " + key + ": " + value);
+	}
+
+	/**
+	 * @return valore intero della chiave, null se mancante
+	 * @throws IllegalArgumentException
+	 *             se il valore non è un intero maggiore o uguale a 0
+	 */
+	private static Integer count(Map<String, ?> map, String key) {
+		Double value = seconds(map, key);
+		if (value == null)
+			return null;
+		if (value != Math.rint(value) || value > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid hook " + key + ": " + map.get(key));
+		return value.intValue();
+	}
+
+	/**
+	 * @return chiavi opzionali valorizzate, in JSON-like syntax
+	 */
+	String options() {
+		StringBuilder options = new StringBuilder();
+		if (timeout != null)
+			options.append(",\n\t ").append(TIMEOUT).append(": ").append(timeout);
+		if (retries != null)
+			options.append(",\n\t ").append(RETRIES).append(": ").append(retries);
+		if (poll != null)
+			options.append(",\n\t ").append(POLL).append(": ").append(poll);
+		if (stableFor != null)
+			options.append(",\n\t ").append(STABLE_FOR).append(": ").append(stableFor);
+		return options.toString();
 	}
 
 	/**
@@ -82,7 +209,7 @@ public class HtmlHook {
 	 */
 	@Override
 	public String toString() {
-		return getClass().getSimpleName() + ": {\n\t " + BY + ": \"" + by + "\",\n\t " + EXPR + ": \"" + expr + "\" \n}";
+		return getClass().getSimpleName() + ": {\n\t " + BY + ": \"" + by + "\",\n\t " + EXPR + ": \"" + expr + "\"" + options() + " \n}";
 	}
 
 }
\ No newline at end of file
@@ -44,12 +44,14 @@ public class HtmlHookFactory {
 	 *             se manca lo YAML
 	 */
 	public HtmlHook build(String hookName) throws UnsupportedOperationException {
-		return new HtmlNamedHook(yaml(), hookName);
+		return build(yaml(), hookName);
 	}
 
 	/**
 	 * Estrae un oggetto {@link HtmlHook} dallo {@link YamlSupport} in input.
-	 * <strong>ATTENZIONE</strong>: lo YAML deve avere la struttura standard (vedi documentazione)
+	 * <strong>ATTENZIONE</strong>: lo YAML deve avere la struttura standard (vedi documentazione)<br/>
+	 * Ogni hook viene costruito una sola volta per YAML, insieme al suo {@link HtmlHook#locator()}, e poi riusato finchè
+	 * lo YAML non viene ricaricato: le invocazioni successive non allocano nulla.
 	 * 
 	 * @param yaml
 	 * @param hookName
@@ -58,7 +60,7 @@ public class HtmlHookFactory {
 	 *             se manca lo YAML
 	 */
 	public static HtmlHook build(YamlSupport yaml, String hookName) throws UnsupportedOperationException {
-		return new HtmlNamedHook(yaml, hookName);
+		return yaml.cached(CuseDefaultSpec.YAML_SUPPORT_HOOKS_PREFIX, hookName, HtmlNamedHook::new);
 	}
 
 }
\ No newline at end of file
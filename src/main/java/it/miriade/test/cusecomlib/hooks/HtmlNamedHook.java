@@ -19,11 +19,18 @@ public class HtmlNamedHook extends HtmlHook {
 		name = hookName;
 	}
 
+	/**
+	 * @return nome dello hook nello YAML
+	 */
+	public String getName() {
+		return name;
+	}
+
 	/**
 	 * JSON-like syntax
 	 */
 	@Override
 	public String toString() {
-		return getClass().getSimpleName() + ": {\n\t name: \"" + name + "\",\n\t " + BY + ": \"" + by + "\",\n\t " + EXPR + ": \"" + expr + "\" \n}";
+		return getClass().getSimpleName() + ": {\n\t name: \"" + name + "\",\n\t " + BY + ": \"" + by + "\",\n\t " + EXPR + ": \"" + expr + "\"" + options() + " \n}";
 	}
 }
\ No newline at end of file
@@ -0,0 +1,523 @@
+package it.miriade.test.cusecomlib.metrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.cucumber.CucumberRunner;
+
+/**
+ * Metriche delle operazioni del {@link CuseUtil}, condivise da tutta la JVM. Per ogni operazione (findBy, clickBy,
+ * setTextBy, loadPage, wait, polling, takeScreenshot, ...) e per ogni hook con nome raccoglie la distribuzione delle
+ * latenze in un {@link LatencyHistogram}; conta inoltre i comandi inviati al WebDriver (round-trip), sia per tipo di
+ * comando che per operazione del {@link CuseUtil} che li ha generati.<br/>
+ * Oltre ai timer delle operazioni tiene dei contatori (es. {@link #SESSIONS_CREATED}, {@link #POLLING_TIMEOUTS},
+ * {@link #ELEMENTS_NOT_FOUND}, {@link #YAML_CACHE_HITS}) e dei gauge che descrivono lo stato attuale della JVM (es.
+ * {@link #SESSIONS_ACTIVE}, {@link #YAML_CACHE_SIZE}).<br/>
+ * Alla fine di {@link CucumberRunner#run()} le metriche vengono esportate in JSON nel file
+ * {@link CuseDefaultSpec#METRICS_FILE}; nelle esecuzioni parallele ogni worker esporta le proprie e il runner le unisce.
+ * Per i sistemi di monitoraggio le metriche sono disponibili anche nel formato testuale di Prometheus, vedi
+ * {@link #toPrometheus()} e {@link MetricsEndpoint}.
+ *
+ * <pre>
+ * CuseMetrics.getInstance().time("login", null, () -> {
+ * 	...
+ * });
+ * </pre>
+ *
+ * @author svaponi
+ */
+public class CuseMetrics {
+
+	/**
+	 * Operazione a cui vengono attribuiti i round-trip eseguiti fuori dalle operazioni del {@link CuseUtil}
+	 */
+	public static final String NO_OPERATION = "other";
+
+	/*
+	 * Contatori
+	 */
+
+	/** Sessioni del WebDriver avviate */
+	public static final String SESSIONS_CREATED = "webdriver_sessions_created";
+	/** Sessioni del WebDriver prese dal {@link it.miriade.test.cusecomlib.selenium.WebDriverPool} */
+	public static final String SESSIONS_REUSED = "webdriver_sessions_reused";
+	/** Sessioni del WebDriver restituite al {@link it.miriade.test.cusecomlib.selenium.WebDriverPool} */
+	public static final String SESSIONS_RELEASED = "webdriver_sessions_released";
+	/** Sessioni del WebDriver chiuse */
+	public static final String SESSIONS_QUIT = "webdriver_sessions_quit";
+	/** Inizializzazioni del WebDriver fallite */
+	public static final String SETUP_FAILURES = "webdriver_setup_failures";
+	/** Valutazioni della condizione del polling */
+	public static final String POLLING_ITERATIONS = "polling_iterations";
+	/** Polling terminati per scadenza del tempo massimo */
+	public static final String POLLING_TIMEOUTS = "polling_timeouts";
+	/** Ricerche di elementi nella pagina */
+	public static final String ELEMENT_LOOKUPS = "element_lookups";
+	/** Azioni fallite perchè l'elemento non è stato trovato */
+	public static final String ELEMENTS_NOT_FOUND = "elements_not_found";
+	/** Azioni su un elemento ripetute perchè fallite, vedi {@link it.miriade.test.cusecomlib.hooks.HtmlHook#retries} */
+	public static final String ACTION_RETRIES = "action_retries";
+	/** Azioni su un elemento ripetute per un errore transitorio, vedi {@link it.miriade.test.cusecomlib.selenium.ActionExecutor} */
+	public static final String ACTION_TRANSIENT_RETRIES = "action_transient_retries";
+	/** Azioni su un elemento abbandonate dopo tutti i tentativi per errori transitori */
+	public static final String ACTION_TRANSIENT_FAILURES = "action_transient_failures";
+	/** Compilazioni di form con almeno un campo fallito, vedi {@link CuseUtil#fillForm(java.util.Map)} */
+	public static final String FORM_FILL_FAILURES = "form_fill_failures";
+	/** YAML trovati nella cache */
+	public static final String YAML_CACHE_HITS = "yaml_cache_hits";
+	/** YAML letti perchè non presenti nella cache */
+	public static final String YAML_CACHE_MISSES = "yaml_cache_misses";
+	/** Letture di YAML fallite */
+	public static final String YAML_LOAD_FAILURES = "yaml_load_failures";
+	/** YAML ricaricati perchè modificati */
+	public static final String YAML_RELOADS = "yaml_reloads";
+
+	/*
+	 * Gauge
+	 */
+
+	/** Sessioni del WebDriver aperte e in uso */
+	public static final String SESSIONS_ACTIVE = "webdriver_sessions_active";
+	/** YAML presenti nelle cache */
+	public static final String YAML_CACHE_SIZE = "yaml_cache_size";
+
+	/*
+	 * Timer (operazioni)
+	 */
+
+	/** Inizializzazione del WebDriver */
+	public static final String SETUP = "webdriverSetup";
+	/** Chiusura del WebDriver */
+	public static final String QUIT = "webdriverQuit";
+
+	private static final CuseMetrics instance = new CuseMetrics();
+
+	private final ConcurrentMap<String, LatencyHistogram> operations = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> hooks = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LongAdder> commands = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LongAdder> roundTrips = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+
+	// operazione più esterna in esecuzione nel thread corrente, a cui attribuire i round-trip
+	private final ThreadLocal<String> current = new ThreadLocal<>();
+
+	/**
+	 * Misura di una operazione in corso, viene registrata alla {@link #close()}
+	 */
+	public final class Sample implements AutoCloseable {
+
+		private final String operation;
+		private final String hook;
+		private final boolean outermost;
+		private final long start = System.nanoTime();
+
+		private Sample(String operation, String hook) {
+			this.operation = operation;
+			this.hook = hook;
+			this.outermost = current.get() == null;
+			if (outermost)
+				current.set(operation);
+		}
+
+		@Override
+		public void close() {
+			record(operation, hook, System.nanoTime() - start);
+			if (outermost)
+				current.remove();
+		}
+	}
+
+	protected CuseMetrics() {
+		super();
+	}
+
+	public static CuseMetrics getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Inizia la misura di una operazione. Le operazioni annidate (es. il findBy eseguito da un clickBy) vengono misurate
+	 * entrambe, mentre i round-trip sono attribuiti solo alla più esterna.
+	 *
+	 * @param operation
+	 *            nome dell'operazione
+	 * @param hook
+	 *            nome dello hook su cui agisce l'operazione, null se non ha un nome
+	 * @return misura da chiudere al termine dell'operazione
+	 */
+	public Sample start(String operation, String hook) {
+		return new Sample(operation, hook);
+	}
+
+	/**
+	 * Esegue l'azione misurandola come operazione, vedi {@link #start(String, String)}
+	 *
+	 * @param operation
+	 *            nome dell'operazione
+	 * @param hook
+	 *            nome dello hook su cui agisce l'operazione, null se non ha un nome
+	 * @param action
+	 * @return risultato dell'azione
+	 */
+	public <T> T time(String operation, String hook, Supplier<T> action) {
+		Sample sample = start(operation, hook);
+		try {
+			return action.get();
+		} finally {
+			sample.close();
+		}
+	}
+
+	/**
+	 * Esegue l'azione misurandola come operazione, vedi {@link #start(String, String)}
+	 *
+	 * @param operation
+	 *            nome dell'operazione
+	 * @param hook
+	 *            nome dello hook su cui agisce l'operazione, null se non ha un nome
+	 * @param action
+	 */
+	public void time(String operation, String hook, Runnable action) {
+		Sample sample = start(operation, hook);
+		try {
+			action.run();
+		} finally {
+			sample.close();
+		}
+	}
+
+	/**
+	 * Registra la latenza di una operazione
+	 *
+	 * @param operation
+	 * @param hook
+	 *            nome dello hook, null se non ha un nome
+	 * @param nanos
+	 */
+	public void record(String operation, String hook, long nanos) {
+		operations.computeIfAbsent(operation, k -> new LatencyHistogram()).record(nanos);
+		if (hook != null)
+			hooks.computeIfAbsent(hook, k -> new ConcurrentHashMap<>()).computeIfAbsent(operation, k -> new LatencyHistogram()).record(nanos);
+	}
+
+	/**
+	 * Conta un comando inviato al WebDriver, attribuendolo all'operazione in corso nel thread corrente
+	 *
+	 * @param command
+	 *            nome del comando, vedi {@link org.openqa.selenium.remote.DriverCommand}
+	 */
+	public void roundTrip(String command) {
+		commands.computeIfAbsent(command, k -> new LongAdder()).increment();
+		String operation = current.get();
+		roundTrips.computeIfAbsent(operation == null ? NO_OPERATION : operation, k -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Incrementa di 1 un contatore
+	 *
+	 * @param counter
+	 *            nome del contatore, es. {@link #POLLING_TIMEOUTS}
+	 */
+	public void increment(String counter) {
+		counters.computeIfAbsent(counter, k -> new LongAdder()).increment();
+	}
+
+	/**
+	 * @param counter
+	 * @return valore del contatore, 0 se mai incrementato
+	 */
+	public long counter(String counter) {
+		LongAdder count = counters.get(counter);
+		return count == null ? 0 : count.sum();
+	}
+
+	/**
+	 * Ritorna il gauge, creandolo se non esiste. Il valore va aggiornato da chi lo usa, es.
+	 * <code>gauge(SESSIONS_ACTIVE).incrementAndGet()</code>.
+	 *
+	 * @param gauge
+	 *            nome del gauge, es. {@link #SESSIONS_ACTIVE}
+	 * @return
+	 */
+	public AtomicLong gauge(String gauge) {
+		return gauges.computeIfAbsent(gauge, k -> new AtomicLong());
+	}
+
+	/**
+	 * @param operation
+	 * @return latenze dell'operazione, null se mai eseguita
+	 */
+	public LatencyHistogram operation(String operation) {
+		return operations.get(operation);
+	}
+
+	/**
+	 * @param hook
+	 * @param operation
+	 * @return latenze dell'operazione sullo hook, null se mai eseguita
+	 */
+	public LatencyHistogram hook(String hook, String operation) {
+		Map<String, LatencyHistogram> byOperation = hooks.get(hook);
+		return byOperation == null ? null : byOperation.get(operation);
+	}
+
+	/**
+	 * @return numero totale di comandi inviati al WebDriver
+	 */
+	public long roundTrips() {
+		return commands.values().stream().mapToLong(LongAdder::sum).sum();
+	}
+
+	/**
+	 * @param operation
+	 * @return numero di comandi inviati al WebDriver durante l'operazione
+	 */
+	public long roundTrips(String operation) {
+		LongAdder count = roundTrips.get(operation);
+		return count == null ? 0 : count.sum();
+	}
+
+	/**
+	 * Azzera tutte le metriche accumulate. I gauge descrivono lo stato attuale (es. sessioni aperte) e non vengono
+	 * azzerati.
+	 */
+	public void reset() {
+		operations.clear();
+		hooks.clear();
+		commands.clear();
+		roundTrips.clear();
+		counters.clear();
+	}
+
+	/*
+	 * JSON
+	 */
+
+	/**
+	 * JSON con le sezioni <code>operations</code>, <code>hooks</code> (hook → operazione → latenze),
+	 * <code>roundTrips</code> (per operazione), <code>commands</code> (per comando del WebDriver),
+	 * <code>counters</code> e <code>gauges</code>. Le latenze sono in millisecondi, vedi
+	 * {@link LatencyHistogram#toJson()}.
+	 *
+	 * @return
+	 */
+	public JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		JsonObject ops = new JsonObject();
+		new TreeMap<>(operations).forEach((name, histogram) -> ops.add(name, histogram.toJson()));
+		json.add("operations", ops);
+		JsonObject hks = new JsonObject();
+		new TreeMap<>(hooks).forEach((name, byOperation) -> {
+			JsonObject hook = new JsonObject();
+			new TreeMap<>(byOperation).forEach((operation, histogram) -> hook.add(operation, histogram.toJson()));
+			hks.add(name, hook);
+		});
+		json.add("hooks", hks);
+		json.addProperty("totalRoundTrips", roundTrips());
+		json.add("roundTrips", counters(roundTrips));
+		json.add("commands", counters(commands));
+		json.add("counters", counters(counters));
+		JsonObject levels = new JsonObject();
+		new TreeMap<>(gauges).forEach((name, value) -> levels.addProperty(name, value.get()));
+		json.add("gauges", levels);
+		return json;
+	}
+
+	private static JsonObject counters(Map<String, LongAdder> counters) {
+		JsonObject json = new JsonObject();
+		new TreeMap<>(counters).forEach((name, count) -> json.addProperty(name, count.sum()));
+		return json;
+	}
+
+	/**
+	 * Aggiunge le metriche esportate con {@link #toJson()}, ad esempio da un worker parallelo. I gauge descrivono lo
+	 * stato dell'altra JVM e vengono ignorati.
+	 *
+	 * @param json
+	 */
+	public void merge(JsonObject json) {
+		if (json.has("operations"))
+			for (Entry<String, JsonElement> op : json.getAsJsonObject("operations").entrySet())
+				operations.computeIfAbsent(op.getKey(), k -> new LatencyHistogram()).add(LatencyHistogram.fromJson(op.getValue().getAsJsonObject()));
+		if (json.has("hooks"))
+			for (Entry<String, JsonElement> hook : json.getAsJsonObject("hooks").entrySet())
+				for (Entry<String, JsonElement> op : hook.getValue().getAsJsonObject().entrySet())
+					hooks.computeIfAbsent(hook.getKey(), k -> new ConcurrentHashMap<>()).computeIfAbsent(op.getKey(), k -> new LatencyHistogram())
+						.add(LatencyHistogram.fromJson(op.getValue().getAsJsonObject()));
+		mergeCounters(json, "roundTrips", roundTrips);
+		mergeCounters(json, "commands", commands);
+		mergeCounters(json, "counters", counters);
+	}
+
+	private static void mergeCounters(JsonObject json, String key, ConcurrentMap<String, LongAdder> counters) {
+		if (json.has(key))
+			for (Entry<String, JsonElement> counter : json.getAsJsonObject(key).entrySet())
+				counters.computeIfAbsent(counter.getKey(), k -> new LongAdder()).add(counter.getValue().getAsLong());
+	}
+
+	/**
+	 * Nuove metriche con quelle correnti (gauge compresi) più quelle scritte con {@link #writeJson(File)} nei file in
+	 * input, ad esempio dai worker paralleli ancora in esecuzione. Le metriche correnti non vengono modificate. I file
+	 * mancanti o illeggibili vengono ignorati.
+	 *
+	 * @param files
+	 * @return
+	 */
+	public CuseMetrics mergedWith(List<File> files) {
+		CuseMetrics merged = new CuseMetrics();
+		merged.merge(toJson());
+		gauges.forEach((name, value) -> merged.gauge(name).set(value.get()));
+		for (File file : files)
+			if (file.isFile())
+				try {
+					merged.mergeJson(file);
+				} catch (IOException | RuntimeException e) {
+					// verrà letto alla prossima richiesta
+				}
+		return merged;
+	}
+
+	/**
+	 * Scrive le metriche in formato JSON. Il file viene sostituito in modo atomico, quindi può essere letto in qualsiasi
+	 * momento (es. dal runner mentre il worker è in esecuzione).
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeJson(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs())
+			throw new IOException("Impossibile creare la directory " + parent);
+		File temp = new File(parent, "." + file.getName() + ".tmp");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(toJson(), writer);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Aggiunge le metriche scritte con {@link #writeJson(File)}
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void mergeJson(File file) throws IOException {
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			JsonElement json = new JsonParser().parse(reader);
+			if (json.isJsonObject())
+				merge(json.getAsJsonObject());
+		}
+	}
+
+	/*
+	 * Prometheus
+	 */
+
+	/**
+	 * Metriche nel formato testuale di Prometheus (versione 0.0.4), con prefisso <code>cuse_</code>:
+	 * <ul>
+	 * <li>i contatori come <code>cuse_&lt;nome&gt;_total</code> e i gauge come <code>cuse_&lt;nome&gt;</code></li>
+	 * <li>le latenze come summary <code>cuse_operation_seconds{operation}</code> e
+	 * <code>cuse_hook_seconds{hook,operation}</code>, con i quantili 0.5, 0.9, 0.99 e 0.999</li>
+	 * <li>i round-trip come <code>cuse_webdriver_round_trips_total{operation}</code> e
+	 * <code>cuse_webdriver_commands_total{command}</code></li>
+	 * </ul>
+	 *
+	 * @return
+	 */
+	public String toPrometheus() {
+		StringBuilder text = new StringBuilder(4096);
+		new TreeMap<>(counters).forEach((name, count) -> {
+			String metric = "cuse_" + metricName(name) + "_total";
+			text.append("# TYPE ").append(metric).append(" counter\n");
+			text.append(metric).append(' ').append(count.sum()).append('\n');
+		});
+		new TreeMap<>(gauges).forEach((name, value) -> {
+			String metric = "cuse_" + metricName(name);
+			text.append("# TYPE ").append(metric).append(" gauge\n");
+			text.append(metric).append(' ').append(value.get()).append('\n');
+		});
+		if (!operations.isEmpty()) {
+			text.append("# TYPE cuse_operation_seconds summary\n");
+			new TreeMap<>(operations).forEach((name, histogram) -> summary(text, "cuse_operation_seconds", "operation=\"" + labelValue(name) + "\"", histogram));
+		}
+		if (!hooks.isEmpty()) {
+			text.append("# TYPE cuse_hook_seconds summary\n");
+			new TreeMap<>(hooks).forEach((hook, byOperation) -> new TreeMap<>(byOperation).forEach((operation, histogram) -> summary(text, "cuse_hook_seconds",
+				"hook=\"" + labelValue(hook) + "\",operation=\"" + labelValue(operation) + "\"", histogram)));
+		}
+		labelledCounters(text, "cuse_webdriver_round_trips_total", "operation", roundTrips);
+		labelledCounters(text, "cuse_webdriver_commands_total", "command", commands);
+		return text.toString();
+	}
+
+	private static void summary(StringBuilder text, String metric, String labels, LatencyHistogram histogram) {
+		for (double quantile : new double[] { 0.5, 0.9, 0.99, 0.999 })
+			text.append(metric).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ").append(seconds(histogram.percentile(quantile * 100))).append('\n');
+		text.append(metric).append("_sum{").append(labels).append("} ").append(seconds(histogram.sum())).append('\n');
+		text.append(metric).append("_count{").append(labels).append("} ").append(histogram.count()).append('\n');
+	}
+
+	private static void labelledCounters(StringBuilder text, String metric, String label, Map<String, LongAdder> counters) {
+		if (counters.isEmpty())
+			return;
+		text.append("# TYPE ").append(metric).append(" counter\n");
+		new TreeMap<>(counters).forEach((name, count) -> text.append(metric).append('{').append(label).append("=\"").append(labelValue(name)).append("\"} ").append(count.sum()).append('\n'));
+	}
+
+	private static double seconds(long nanos) {
+		return (double) nanos / TimeUnit.SECONDS.toNanos(1);
+	}
+
+	static String metricName(String name) {
+		return name.replaceAll("[^a-zA-Z0-9_]", "_");
+	}
+
+	static String labelValue(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Scrive le metriche nel formato testuale di Prometheus, vedi {@link #toPrometheus()}. Il file viene sostituito in
+	 * modo atomico, quindi può essere letto in qualsiasi momento (es. dal textfile collector del node_exporter).
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writePrometheus(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs())
+			throw new IOException("Impossibile creare la directory " + parent);
+		File temp = new File(parent, "." + file.getName() + ".tmp");
+		Files.write(temp.toPath(), toPrometheus().getBytes(StandardCharsets.UTF_8));
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
@@ -0,0 +1,202 @@
+package it.miriade.test.cusecomlib.metrics;
+
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Istogramma delle latenze in nanosecondi, sullo stile di HdrHistogram: i valori sono raccolti in bucket a scala
+ * log-lineare (64 sotto-bucket per ogni potenza di 2), quindi ogni percentile ha un errore relativo inferiore al 2% con
+ * una occupazione di memoria fissa e indipendente dal numero di campioni. Copre valori da 1ns a circa 36 minuti; i
+ * valori maggiori finiscono nell'ultimo bucket.<br/>
+ * La registrazione è lock-free e può avvenire da più thread. Gli istogrammi si possono unire senza perdita di
+ * precisione (vedi {@link #add(LatencyHistogram)}), anche dopo essere stati esportati in JSON.
+ *
+ * @author svaponi
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_SHIFT = 34;
+	private static final int BUCKETS = 2 * SUB_BUCKETS + MAX_SHIFT * SUB_BUCKETS;
+	private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Registra una latenza
+	 *
+	 * @param nanos
+	 *            latenza in nanosecondi, i valori negativi vengono considerati 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		min.accumulateAndGet(value, Math::min);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * Aggiunge i campioni di un altro istogramma
+	 *
+	 * @param other
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other.counts.get(i);
+			if (c > 0)
+				counts.addAndGet(i, c);
+		}
+		count.add(other.count.sum());
+		sum.add(other.sum.sum());
+		min.accumulateAndGet(other.min.get(), Math::min);
+		max.accumulateAndGet(other.max.get(), Math::max);
+	}
+
+	/**
+	 * @return numero di campioni
+	 */
+	public long count() {
+		return count.sum();
+	}
+
+	/**
+	 * @return latenza minima in nanosecondi, 0 se vuoto
+	 */
+	public long min() {
+		return count() == 0 ? 0 : min.get();
+	}
+
+	/**
+	 * @return latenza massima in nanosecondi
+	 */
+	public long max() {
+		return max.get();
+	}
+
+	/**
+	 * @return latenza media in nanosecondi, 0 se vuoto
+	 */
+	public double mean() {
+		long n = count();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * @return somma delle latenze in nanosecondi
+	 */
+	public long sum() {
+		return sum.sum();
+	}
+
+	/**
+	 * @param percentile
+	 *            da 0 a 100
+	 * @return latenza in nanosecondi sotto la quale ricade la percentuale indicata dei campioni, 0 se vuoto
+	 */
+	public long percentile(double percentile) {
+		long n = count();
+		if (n == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(n * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				// valore centrale del bucket, limitato dagli estremi osservati
+				return Math.max(min(), Math.min(max(), (lowest(i) + highest(i)) / 2));
+		}
+		return max();
+	}
+
+	/*
+	 * Indici dei bucket
+	 */
+
+	static int index(long value) {
+		if (value < 2 * SUB_BUCKETS)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		if (shift > MAX_SHIFT)
+			return BUCKETS - 1;
+		return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	static long lowest(int index) {
+		if (index < 2 * SUB_BUCKETS)
+			return index;
+		int shift = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+		long sub = (index - 2 * SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		return sub << shift;
+	}
+
+	static long highest(int index) {
+		if (index < 2 * SUB_BUCKETS)
+			return index;
+		int shift = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+		return lowest(index) + (1L << shift) - 1;
+	}
+
+	/*
+	 * JSON
+	 */
+
+	/**
+	 * Esporta l'istogramma: numero di campioni, statistiche e percentili in millisecondi, più i bucket non vuoti (indice
+	 * e conteggio) per poterlo ricostruire con {@link #fromJson(JsonObject)}
+	 *
+	 * @return
+	 */
+	public JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		json.addProperty("count", count());
+		json.addProperty("min", min() / NANOS_PER_MILLI);
+		json.addProperty("mean", mean() / NANOS_PER_MILLI);
+		json.addProperty("p50", percentile(50) / NANOS_PER_MILLI);
+		json.addProperty("p90", percentile(90) / NANOS_PER_MILLI);
+		json.addProperty("p99", percentile(99) / NANOS_PER_MILLI);
+		json.addProperty("p999", percentile(99.9) / NANOS_PER_MILLI);
+		json.addProperty("max", max() / NANOS_PER_MILLI);
+		json.addProperty("sum", sum() / NANOS_PER_MILLI);
+		JsonObject buckets = new JsonObject();
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = counts.get(i);
+			if (c > 0)
+				buckets.addProperty(String.valueOf(i), c);
+		}
+		json.add("buckets", buckets);
+		return json;
+	}
+
+	/**
+	 * Ricostruisce un istogramma esportato con {@link #toJson()}
+	 *
+	 * @param json
+	 * @return
+	 */
+	public static LatencyHistogram fromJson(JsonObject json) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		long n = json.get("count").getAsLong();
+		if (n == 0)
+			return histogram;
+		for (Entry<String, JsonElement> bucket : json.getAsJsonObject("buckets").entrySet())
+			histogram.counts.addAndGet(Integer.parseInt(bucket.getKey()), bucket.getValue().getAsLong());
+		histogram.count.add(n);
+		histogram.sum.add(Math.round(json.get("sum").getAsDouble() * NANOS_PER_MILLI));
+		histogram.min.set(Math.round(json.get("min").getAsDouble() * NANOS_PER_MILLI));
+		histogram.max.set(Math.round(json.get("max").getAsDouble() * NANOS_PER_MILLI));
+		return histogram;
+	}
+
+}
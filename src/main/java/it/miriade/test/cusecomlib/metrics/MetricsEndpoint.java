@@ -0,0 +1,134 @@
+package it.miriade.test.cusecomlib.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+
+/**
+ * Endpoint HTTP locale che espone le {@link CuseMetrics} nel formato testuale di Prometheus (vedi
+ * {@link CuseMetrics#toPrometheus()}) all'indirizzo <code>http://localhost:&lt;porta&gt;/metrics</code>, così che uno
+ * scraper locale le possa raccogliere durante l'esecuzione. Ascolta solo sull'interfaccia di loopback.
+ *
+ * <pre>
+ * try (MetricsEndpoint endpoint = MetricsEndpoint.start(9464, CuseMetrics.getInstance())) {
+ * 	...
+ * }
+ * </pre>
+ *
+ * @see CuseDefaultSpec#METRICS_PORT
+ * @author svaponi
+ */
+public class MetricsEndpoint implements Closeable {
+
+	/**
+	 * Path dell'endpoint
+	 */
+	public static final String PATH = "/metrics";
+
+	/**
+	 * Content-Type del formato testuale di Prometheus
+	 */
+	static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final Logger log = LoggerFactory.getLogger(MetricsEndpoint.class);
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Supplier<CuseMetrics> metrics;
+
+	private MetricsEndpoint(int port, Supplier<CuseMetrics> metrics) throws IOException {
+		super();
+		this.metrics = metrics;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "metrics-endpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.createContext(PATH, this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Avvia l'endpoint
+	 *
+	 * @param port
+	 *            porta su cui ascoltare, 0 per non avviare l'endpoint
+	 * @param metrics
+	 * @return endpoint avviato, null se la porta è 0 o non è disponibile
+	 */
+	public static MetricsEndpoint start(int port, CuseMetrics metrics) {
+		return start(port, () -> metrics);
+	}
+
+	/**
+	 * Avvia l'endpoint con metriche calcolate ad ogni richiesta, es. unendo quelle dei worker paralleli in esecuzione
+	 * (vedi {@link CuseMetrics#mergedWith(java.util.List)})
+	 *
+	 * @param port
+	 *            porta su cui ascoltare, 0 per non avviare l'endpoint
+	 * @param metrics
+	 * @return endpoint avviato, null se la porta è 0 o non è disponibile
+	 */
+	public static MetricsEndpoint start(int port, Supplier<CuseMetrics> metrics) {
+		if (port <= 0)
+			return null;
+		try {
+			MetricsEndpoint endpoint = new MetricsEndpoint(port, metrics);
+			log.info("Metrics available at http://localhost:{}{}", endpoint.port(), PATH);
+			return endpoint;
+		} catch (IOException e) {
+			log.warn("Cannot start metrics endpoint on port {}: {}", port, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return porta su cui ascolta l'endpoint
+	 */
+	public int port() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = metrics.get().toPrometheus().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Ferma l'endpoint
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+}
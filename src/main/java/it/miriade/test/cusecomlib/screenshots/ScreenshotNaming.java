@@ -0,0 +1,106 @@
+package it.miriade.test.cusecomlib.screenshots;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.springframework.util.StringUtils;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+import it.miriade.test.cusecomlib.cucumber.CucumberSpec;
+import it.miriade.test.cusecomlib.cucumber.StepContext;
+
+/**
+ * Genera i nomi dei file degli screenshot nella cartella {@link CuseDefaultSpec#SCREENSHOTS_DIR}. Il nome è composto da
+ * stepdef, scenario, timestamp al millisecondo, worker (vedi {@link CucumberSpec#WORKER_ID}) e un numero progressivo
+ * dell'esecuzione, es.
+ *
+ * <pre>
+ * LoginStepdef#login.Login_con_utente_valido.20170321_101502_042.w2.0007.png
+ * </pre>
+ *
+ * Il progressivo è condiviso da tutte le istanze della JVM e il worker distingue i processi paralleli, quindi due
+ * screenshot non hanno mai lo stesso nome, anche se catturati nello stesso millisecondo. Thread-safe.
+ *
+ * @author svaponi
+ */
+public class ScreenshotNaming {
+
+	/**
+	 * Formato del timestamp nel nome degli screenshot
+	 */
+	public static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+
+	/**
+	 * Lunghezza massima del nome dello scenario nel nome del file
+	 */
+	static final int MAX_SCENARIO_LENGTH = 50;
+
+	private static final AtomicLong sequence = new AtomicLong();
+	private static final Pattern invalidChars = Pattern.compile("[^A-Za-z0-9#_\\-]+");
+
+	private final File dir;
+	private final String worker;
+	private final Clock clock;
+
+	/**
+	 * @param dir
+	 *            cartella degli screenshot, se vuota viene usata quella di default <code>screenshots/</code>
+	 */
+	public ScreenshotNaming(String dir) {
+		this(dir, System.getProperty(CucumberSpec.WORKER_ID), Clock.systemDefaultZone());
+	}
+
+	/**
+	 * @param dir
+	 *            cartella degli screenshot, se vuota viene usata quella di default <code>screenshots/</code>
+	 * @param worker
+	 *            identificativo del worker, null se l'esecuzione non è parallela
+	 * @param clock
+	 */
+	public ScreenshotNaming(String dir, String worker, Clock clock) {
+		super();
+		this.dir = new File(StringUtils.hasText(dir) ? dir : "screenshots/");
+		this.worker = StringUtils.hasText(worker) ? sanitize(worker) : null;
+		this.clock = clock;
+	}
+
+	/**
+	 * @return cartella degli screenshot
+	 */
+	public File dir() {
+		return dir;
+	}
+
+	/**
+	 * @param stepdefName
+	 *            nome dello stepdef che cattura lo screenshot
+	 * @param context
+	 *            step in esecuzione, null se non disponibile
+	 * @param extension
+	 *            estensione del file
+	 * @return nuovo file, diverso da tutti quelli generati in precedenza
+	 */
+	public File next(String stepdefName, StepContext context, String extension) {
+		StringBuilder name = new StringBuilder(128).append(sanitize(stepdefName));
+		if (context != null && StringUtils.hasText(context.getScenario())) {
+			String scenario = sanitize(context.getScenario());
+			name.append('.').append(scenario.length() > MAX_SCENARIO_LENGTH ? scenario.substring(0, MAX_SCENARIO_LENGTH) : scenario);
+		}
+		name.append('.').append(TIMESTAMP.format(LocalDateTime.now(clock)));
+		if (worker != null)
+			name.append(".w").append(worker);
+		name.append('.').append(String.format("%04d", sequence.incrementAndGet()));
+		name.append('.').append(extension);
+		return new File(dir, name.toString());
+	}
+
+	static String sanitize(String text) {
+		String sanitized = invalidChars.matcher(text == null ? "" : text.trim()).replaceAll("_");
+		return sanitized.isEmpty() ? "_" : sanitized;
+	}
+
+}
@@ -0,0 +1,224 @@
+package it.miriade.test.cusecomlib.screenshots;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+
+/**
+ * Pipeline asincrona per il salvataggio degli screenshot. Il thread del test cattura i byte PNG dal browser e li passa
+ * alla pipeline, che in background li ricodifica (formato e larghezza massima, vedi
+ * {@link CuseDefaultSpec#SCREENSHOTS_FORMAT} e {@link CuseDefaultSpec#SCREENSHOTS_MAX_WIDTH}) e li salva nello
+ * {@link ScreenshotStore}: gli screenshot identici (o quasi identici) ad uno già salvato non vengono nè ricodificati nè
+ * riscritti.<br/>
+ * La coda è limitata (vedi {@link CuseDefaultSpec#SCREENSHOTS_QUEUE_SIZE}): quando è piena lo screenshot viene
+ * salvato dal thread chiamante, così un test che cattura più screenshot di quanti se ne riescano a scrivere rallenta
+ * invece di accumulare immagini in memoria. {@link #close()} attende il salvataggio degli screenshot in coda.
+ *
+ * <pre>
+ * pipeline.submit(png, new File("screenshots/login.png")).thenAccept(file -&gt; log.info("Salvato {}", file));
+ * </pre>
+ *
+ * @author svaponi
+ */
+public class ScreenshotPipeline implements Closeable {
+
+	/**
+	 * Attesa massima in secondi per il salvataggio degli screenshot in coda durante la {@link #close()}
+	 */
+	public static final long CLOSE_TIMEOUT = 30;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final ThreadPoolExecutor executor;
+	private final Set<CompletableFuture<File>> pending = ConcurrentHashMap.newKeySet();
+	private final int maxWidth;
+	private final String format;
+	private final String options;
+	private final ScreenshotStore store;
+
+	/**
+	 * @param queueSize
+	 *            numero massimo di screenshot in attesa di essere salvati
+	 * @param maxWidth
+	 *            larghezza massima in pixel, gli screenshot più larghi vengono ridimensionati (0 = nessun limite)
+	 * @param format
+	 *            formato dei file salvati (png, jpg, ...), vedi {@link ImageIO#getWriterFormatNames()}
+	 * @param store
+	 *            archivio dove salvare le immagini
+	 */
+	public ScreenshotPipeline(int queueSize, int maxWidth, String format, ScreenshotStore store) {
+		super();
+		this.maxWidth = maxWidth;
+		this.format = format == null ? "png" : format.toLowerCase();
+		if (!Arrays.asList(ImageIO.getWriterFormatNames()).contains(this.format))
+			throw new IllegalArgumentException("Unsupported screenshot format: " + format);
+		this.options = this.format + ":" + Math.max(0, maxWidth);
+		this.store = store;
+		this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)), task -> {
+			Thread thread = new Thread(task, "screenshot-writer");
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * @return formato dei file salvati, da usare come estensione
+	 */
+	public String format() {
+		return format;
+	}
+
+	/**
+	 * Accoda il salvataggio dello screenshot. Se la coda è piena (o la pipeline è chiusa) lo screenshot viene salvato
+	 * dal thread chiamante.
+	 *
+	 * @param png
+	 *            screenshot in formato PNG, come restituito da <code>getScreenshotAs(OutputType.BYTES)</code>
+	 * @param target
+	 *            file di destinazione
+	 * @return future completato con il file salvato (che può essere uno screenshot precedente identico), oppure con
+	 *         eccezione se il salvataggio fallisce
+	 */
+	public CompletableFuture<File> submit(byte[] png, File target) {
+		if (executor.isShutdown())
+			return CompletableFuture.completedFuture(write(png, target));
+		CompletableFuture<File> future = CompletableFuture.supplyAsync(() -> write(png, target), executor);
+		pending.add(future);
+		future.whenComplete((file, e) -> pending.remove(future));
+		return future;
+	}
+
+	/**
+	 * Attende il salvataggio di tutti gli screenshot in coda
+	 *
+	 * @param timeout
+	 * @param unit
+	 * @return TRUE se tutti gli screenshot sono stati salvati (anche con errore), FALSE se scade il timeout
+	 */
+	public boolean flush(long timeout, TimeUnit unit) {
+		CompletableFuture<?>[] futures = pending.toArray(new CompletableFuture<?>[0]);
+		try {
+			CompletableFuture.allOf(futures).get(timeout, unit);
+		} catch (ExecutionException e) {
+			// l'errore è già stato loggato da write()
+		} catch (TimeoutException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return numero di screenshot in attesa di essere salvati
+	 */
+	public int pendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Salva gli screenshot in coda (attende al massimo {@value #CLOSE_TIMEOUT} secondi) e ferma il thread della
+	 * pipeline. Gli screenshot inviati dopo la chiusura vengono salvati in modo sincrono.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS))
+				log.warn("{} screenshots not saved after {}s", pending.size(), CLOSE_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private File write(byte[] png, File target) {
+		CuseMetrics.Sample sample = CuseMetrics.getInstance().start("screenshotWrite", null);
+		try {
+			String key = ScreenshotStore.key(png, options);
+			File blob = store.find(key, format);
+			BufferedImage image = null;
+			Long fingerprint = null;
+			if (blob == null && store.perceptual()) {
+				image = decode(png);
+				fingerprint = ScreenshotStore.fingerprint(image);
+				blob = store.findSimilar(fingerprint);
+			}
+			if (blob == null)
+				blob = store.add(key, format, encode(png, image), fingerprint);
+			else
+				log.debug("Screenshot {} same as: {}", target.getName(), blob.getName());
+			store.link(blob, target);
+			log.info("New screenshot: {}", target.getName());
+			return target;
+		} catch (IOException e) {
+			log.error("Screenshot error: {}", e.getMessage());
+			throw new UncheckedIOException(e);
+		} finally {
+			sample.close();
+		}
+	}
+
+	private static BufferedImage decode(byte[] png) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+		if (image == null)
+			throw new IOException("Invalid PNG screenshot");
+		return image;
+	}
+
+	/**
+	 * Ricodifica lo screenshot nel formato e alla larghezza massima configurati. Se non serve alcuna trasformazione
+	 * ritorna i byte originali.
+	 *
+	 * @param png
+	 * @param image
+	 *            lo screenshot già decodificato, null se non ancora decodificato
+	 */
+	byte[] encode(byte[] png, BufferedImage image) throws IOException {
+		if (format.equals("png") && maxWidth <= 0)
+			return png;
+		if (image == null)
+			image = decode(png);
+		if (format.equals("png") && image.getWidth() <= maxWidth)
+			return png;
+
+		int width = maxWidth > 0 && image.getWidth() > maxWidth ? maxWidth : image.getWidth();
+		int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+		// JPEG e BMP non supportano la trasparenza
+		int type = format.equals("png") || format.equals("gif") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage scaled = new BufferedImage(width, height, type);
+		Graphics2D g = scaled.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(png.length);
+		ImageIO.write(scaled, format, out);
+		return out.toByteArray();
+	}
+
+}
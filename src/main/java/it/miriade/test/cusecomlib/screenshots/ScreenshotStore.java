@@ -0,0 +1,222 @@
+package it.miriade.test.cusecomlib.screenshots;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+
+/**
+ * Archivio degli screenshot indirizzato per contenuto. Ogni immagine viene salvata una sola volta nella cartella
+ * {@value #OBJECTS_DIR}, con il nome dato dallo SHA-256 del contenuto; i file con il nome dello screenshot sono
+ * hard link a queste immagini (copie se il file system non supporta gli hard link). Così migliaia di screenshot della
+ * stessa pagina occupano lo spazio, e richiedono la scrittura, di uno solo.<br/>
+ * Con una soglia (vedi {@link CuseDefaultSpec#SCREENSHOTS_DEDUP_THRESHOLD}) vengono riusate anche le immagini quasi
+ * identiche: per ogni immagine si calcola una impronta percettiva a 64 bit (difference hash) e se un'immagine già
+ * salvata ha un'impronta che differisce al massimo di <i>threshold</i> bit viene riusata quella. Le impronte sono
+ * tenute in memoria, quindi valgono solo per le immagini salvate dall'archivio corrente.
+ *
+ * @author svaponi
+ */
+public class ScreenshotStore {
+
+	/**
+	 * Sottocartella che contiene le immagini indirizzate per contenuto
+	 */
+	public static final String OBJECTS_DIR = ".objects";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final File objects;
+	private final int threshold;
+	private final List<Fingerprint> fingerprints = new ArrayList<>();
+
+	private static class Fingerprint {
+
+		final long hash;
+		final File blob;
+
+		Fingerprint(long hash, File blob) {
+			this.hash = hash;
+			this.blob = blob;
+		}
+	}
+
+	/**
+	 * @param dir
+	 *            cartella degli screenshot
+	 * @param threshold
+	 *            numero massimo di bit diversi tra le impronte di due immagini quasi identiche, da 0 a 64; se negativo
+	 *            vengono riusate solo le immagini identiche
+	 */
+	public ScreenshotStore(File dir, int threshold) {
+		super();
+		this.objects = new File(dir, OBJECTS_DIR);
+		this.threshold = Math.min(threshold, 64);
+	}
+
+	/**
+	 * @return TRUE se vengono riusate anche le immagini quasi identiche
+	 */
+	public boolean perceptual() {
+		return threshold >= 0;
+	}
+
+	/**
+	 * Chiave del contenuto: SHA-256 dei byte e delle opzioni con cui verranno codificati
+	 *
+	 * @param content
+	 * @param options
+	 *            opzioni di codifica (es. formato e dimensione), immagini uguali codificate in modo diverso hanno
+	 *            chiavi diverse
+	 * @return
+	 */
+	public static String key(byte[] content, String options) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(options.getBytes());
+			byte[] hash = digest.digest(content);
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for (byte b : hash)
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Impronta percettiva a 64 bit (difference hash): l'immagine viene ridotta a 9x8 pixel in scala di grigi e ogni bit
+	 * indica se un pixel è più luminoso del successivo sulla stessa riga.
+	 *
+	 * @param image
+	 * @return
+	 */
+	public static long fingerprint(BufferedImage image) {
+		int[][] gray = new int[8][9];
+		int width = image.getWidth(), height = image.getHeight();
+		// media dei pixel di ogni cella, per non dipendere dai singoli pixel campionati
+		long[][] sum = new long[8][9];
+		int[][] count = new int[8][9];
+		int stepX = Math.max(1, width / 90), stepY = Math.max(1, height / 80);
+		for (int y = 0; y < height; y += stepY) {
+			int row = y * 8 / height;
+			for (int x = 0; x < width; x += stepX) {
+				int col = x * 9 / width;
+				int rgb = image.getRGB(x, y);
+				sum[row][col] += ((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114;
+				count[row][col]++;
+			}
+		}
+		for (int row = 0; row < 8; row++)
+			for (int col = 0; col < 9; col++)
+				gray[row][col] = count[row][col] == 0 ? 0 : (int) (sum[row][col] / count[row][col]);
+		long hash = 0;
+		for (int row = 0; row < 8; row++)
+			for (int col = 0; col < 8; col++)
+				hash = (hash << 1) | (gray[row][col] > gray[row][col + 1] ? 1 : 0);
+		return hash;
+	}
+
+	/**
+	 * @param key
+	 *            vedi {@link #key(byte[], String)}
+	 * @param extension
+	 * @return l'immagine salvata con la chiave, null se non esiste
+	 */
+	public File find(String key, String extension) {
+		File blob = blob(key, extension);
+		return blob.isFile() ? blob : null;
+	}
+
+	/**
+	 * @param fingerprint
+	 *            vedi {@link #fingerprint(BufferedImage)}
+	 * @return l'immagine salvata con l'impronta più vicina, se entro la soglia, altrimenti null
+	 */
+	public synchronized File findSimilar(long fingerprint) {
+		if (!perceptual())
+			return null;
+		File similar = null;
+		int best = threshold + 1;
+		for (Fingerprint saved : fingerprints) {
+			int distance = Long.bitCount(saved.hash ^ fingerprint);
+			if (distance < best) {
+				best = distance;
+				similar = saved.blob;
+			}
+		}
+		return similar;
+	}
+
+	/**
+	 * Salva l'immagine nell'archivio, se non è già presente
+	 *
+	 * @param key
+	 *            vedi {@link #key(byte[], String)}
+	 * @param extension
+	 * @param content
+	 *            immagine codificata
+	 * @param fingerprint
+	 *            impronta dell'immagine, ignorata se null o se non viene usata la soglia
+	 * @return l'immagine salvata
+	 * @throws IOException
+	 */
+	public File add(String key, String extension, byte[] content, Long fingerprint) throws IOException {
+		File blob = blob(key, extension);
+		if (!blob.isFile()) {
+			Files.createDirectories(blob.getParentFile().toPath());
+			// scrivo su un file temporaneo e poi lo rinomino, così l'immagine non è mai incompleta
+			Path tmp = Files.createTempFile(blob.getParentFile().toPath(), ".screenshot", ".tmp");
+			Files.write(tmp, content);
+			Files.move(tmp, blob.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		if (fingerprint != null && perceptual())
+			synchronized (this) {
+				fingerprints.add(new Fingerprint(fingerprint, blob));
+			}
+		return blob;
+	}
+
+	/**
+	 * Crea il file dello screenshot come hard link all'immagine salvata, oppure come copia se il file system non
+	 * supporta gli hard link. Se il file esiste già viene sostituito.
+	 *
+	 * @param blob
+	 *            immagine salvata nell'archivio
+	 * @param target
+	 *            file dello screenshot
+	 * @return target
+	 * @throws IOException
+	 */
+	public File link(File blob, File target) throws IOException {
+		Path path = target.toPath();
+		Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+		Files.deleteIfExists(path);
+		try {
+			Files.createLink(path, blob.toPath());
+		} catch (FileAlreadyExistsException e) {
+			// salvato in parallelo con lo stesso nome
+			Files.copy(blob.toPath(), path, StandardCopyOption.REPLACE_EXISTING);
+		} catch (UnsupportedOperationException | IOException e) {
+			log.debug("Cannot link {}, copying it: {}", target.getName(), e.getMessage());
+			Files.copy(blob.toPath(), path, StandardCopyOption.REPLACE_EXISTING);
+		}
+		return target;
+	}
+
+	private File blob(String key, String extension) {
+		return new File(new File(objects, key.substring(0, 2)), key + "." + extension);
+	}
+
+}
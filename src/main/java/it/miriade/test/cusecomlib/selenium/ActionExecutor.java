@@ -0,0 +1,164 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.openqa.selenium.InvalidElementStateException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+import it.miriade.test.cusecomlib.times.Backoff;
+import it.miriade.test.cusecomlib.times.PollingEngine;
+import it.miriade.test.cusecomlib.times.PollingEngine.Sleeper;
+import it.miriade.test.cusecomlib.times.Times;
+
+/**
+ * Esegue un'azione (click, scrittura, ...) sugli elementi restituiti da una ricerca, resistendo ai re-render delle
+ * pagine dinamiche: se l'azione fallisce per un errore transitorio (vedi {@link #isTransient(Throwable)}) gli elementi
+ * vengono cercati di nuovo e l'azione viene ripetuta, con attese crescenti ({@link Backoff#EXPONENTIAL}), fino a
+ * {@link CuseDefaultSpec#WEBDRIVER_ACTION_ATTEMPTS} tentativi e comunque entro
+ * {@link CuseDefaultSpec#WEBDRIVER_TIMEOUTS_FIND}.<br/>
+ * L'azione viene ripetuta solo finchè non è riuscita su nessun elemento, per non ripetere un click già arrivato. Se i
+ * tentativi finiscono viene rilanciato l'ultimo errore transitorio, così che il chiamante ne conosca la causa; gli
+ * altri errori vengono solo loggati, come faceva il {@link it.miriade.test.cusecomlib.CuseUtil} storicamente.<br/>
+ * I tentativi sono contati in {@link CuseMetrics#ACTION_TRANSIENT_RETRIES} e gli abbandoni in
+ * {@link CuseMetrics#ACTION_TRANSIENT_FAILURES}. Thread-safe.
+ *
+ * @author svaponi
+ */
+public class ActionExecutor {
+
+	/**
+	 * Attesa massima in millisecondi tra un tentativo e l'altro
+	 */
+	public static final long MAX_BACKOFF = 1000;
+
+	private static final Logger log = LoggerFactory.getLogger(ActionExecutor.class);
+
+	private final int attempts;
+	private final Times times;
+	private final LongSupplier nanoClock;
+	private final Sleeper sleeper;
+	private final CuseMetrics metrics = CuseMetrics.getInstance();
+
+	/**
+	 * @param config
+	 *            configurazione da cui leggere tentativi, attesa iniziale e tempo massimo
+	 */
+	public ActionExecutor(CuseSetupConfiguration config) {
+		this(config, System::nanoTime, PollingEngine.THREAD_SLEEPER);
+	}
+
+	/**
+	 * @param config
+	 *            configurazione da cui leggere tentativi, attesa iniziale e tempo massimo
+	 * @param nanoClock
+	 *            orologio monotono in nanosecondi
+	 * @param sleeper
+	 *            strategia di attesa
+	 */
+	public ActionExecutor(CuseSetupConfiguration config, LongSupplier nanoClock, Sleeper sleeper) {
+		this(config.actionAttempts(), (long) (config.actionBackoff() * 1000), (long) (config.timeoutFindElement() * 1000), nanoClock, sleeper);
+	}
+
+	/**
+	 * @param attempts
+	 *            numero massimo di tentativi, almeno 1
+	 * @param backoff
+	 *            attesa iniziale tra un tentativo e l'altro (ms), raddoppia ad ogni tentativo fino a {@value #MAX_BACKOFF}
+	 * @param budget
+	 *            tempo massimo (ms) oltre il quale non si fanno altri tentativi
+	 * @param nanoClock
+	 *            orologio monotono in nanosecondi
+	 * @param sleeper
+	 *            strategia di attesa
+	 */
+	public ActionExecutor(int attempts, long backoff, long budget, LongSupplier nanoClock, Sleeper sleeper) {
+		super();
+		this.attempts = Math.max(1, attempts);
+		this.times = new Times(Math.max(0, backoff), Math.max(0, budget), null, Backoff.EXPONENTIAL, MAX_BACKOFF, null, false);
+		this.nanoClock = nanoClock;
+		this.sleeper = sleeper;
+	}
+
+	/**
+	 * Esegue l'azione su tutti gli elementi trovati da <code>resolve</code>.
+	 *
+	 * @param target
+	 *            descrizione degli elementi per i log, es. lo hook
+	 * @param resolve
+	 *            ricerca degli elementi, invocata ad ogni tentativo
+	 * @param action
+	 *            azione da eseguire su ogni elemento
+	 * @return TRUE se l'azione è riuscita su almeno un elemento, FALSE se non è stato trovato nessun elemento o l'azione
+	 *         è fallita su tutti per errori non transitori
+	 * @throws RuntimeException
+	 *             l'ultimo errore transitorio, se l'azione non è riuscita entro i tentativi e il tempo massimo
+	 */
+	public boolean perform(Object target, Supplier<List<WebElement>> resolve, Consumer<WebElement> action) {
+		long start = nanoClock.getAsLong();
+		long delay = 0;
+		for (int attempt = 1;; attempt++) {
+			boolean done = false;
+			RuntimeException transientError = null;
+			for (WebElement el : resolve.get())
+				try {
+					action.accept(el);
+					done = true;
+				} catch (RuntimeException e) {
+					if (!done && isTransient(e)) {
+						// gli elementi trovati non sono più validi: li cerco di nuovo
+						transientError = e;
+						break;
+					}
+					log.error("Exception catched on element " + target + ": {}", e.getMessage());
+				}
+			if (done || transientError == null)
+				return done;
+
+			// la prima attesa è quella iniziale, poi cresce
+			delay = attempt == 1 ? times.delay() : times.backoff.next(delay, times);
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - start);
+			if (attempt >= attempts || elapsed + delay > times.maxWaitingTime || Thread.currentThread().isInterrupted()) {
+				metrics.increment(CuseMetrics.ACTION_TRANSIENT_FAILURES);
+				log.error("Giving up on element " + target + " after {} attempts in {}ms: {}", attempt, elapsed, transientError.getMessage());
+				throw transientError;
+			}
+			metrics.increment(CuseMetrics.ACTION_TRANSIENT_RETRIES);
+			log.debug("Retrying on element {} in {}ms ({}/{}): {}", target, delay, attempt, attempts, transientError.getMessage());
+			try {
+				sleeper.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Errori dopo i quali ha senso cercare di nuovo l'elemento e ripetere l'azione: elemento non più nel DOM
+	 * ({@link StaleElementReferenceException}), non visibile o non interagibile ({@link InvalidElementStateException} e
+	 * sottoclassi) oppure coperto da un altro elemento (in Selenium 3 è un {@link WebDriverException} generico, che
+	 * riconosco dal messaggio del driver).
+	 *
+	 * @param e
+	 * @return
+	 */
+	public static boolean isTransient(Throwable e) {
+		if (e instanceof StaleElementReferenceException || e instanceof InvalidElementStateException)
+			return true;
+		if (!(e instanceof WebDriverException) || e.getMessage() == null)
+			return false;
+		String message = e.getMessage();
+		return message.contains("is not clickable at point") || message.contains("would receive the click") || message.contains("element click intercepted");
+	}
+
+}
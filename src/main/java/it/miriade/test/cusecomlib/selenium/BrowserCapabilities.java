@@ -0,0 +1,395 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.firefox.FirefoxOptions;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.enums.Browser;
+
+/**
+ * Capabilities con cui viene avviato il browser: strategia di caricamento delle pagine (vedi
+ * {@link CuseDefaultSpec#WEBDRIVER_PAGE_LOAD_STRATEGY}), risorse da non scaricare (vedi
+ * {@link CuseDefaultSpec#WEBDRIVER_BLOCK_URLS} e {@link CuseDefaultSpec#WEBDRIVER_BLOCK_RESOURCES}), così che
+ * {@link org.openqa.selenium.WebDriver#get(String)} non aspetti analytics, font e pubblicità, e
+ * {@link BrowserProfile} di avvio.<br/>
+ * Ogni proprietà può avere un valore diverso per browser, separando i valori con il punto e virgola e facendo
+ * precedere dal nome del browser quelli specifici, es. <code>eager; ie: normal</code>.<br/>
+ * Come vengono applicati i blocchi dipende dal browser:
+ * <ul>
+ * <li>gli URL sono bloccati da un proxy auto-config (PAC) che li manda su una porta chiusa, su Chrome e Firefox; gli
+ * altri vanno direttamente al server oppure al proxy indicato da {@link CuseDefaultSpec#WEBDRIVER_BLOCK_UPSTREAM_PROXY}.
+ * Su Chrome il PAC riceve gli URL https senza path e query, quindi per questi valgono solo i pattern sull'host;</li>
+ * <li>immagini e font sono bloccati con le preferenze di Chrome e Firefox, i media (audio e video) con il PAC in base
+ * all'estensione del file, quindi su Chrome solo quelli in http, e in più non partono in automatico;</li>
+ * <li>il browser {@link Browser#FAKE} risponde vuoto alle richieste bloccate;</li>
+ * <li>IE ed Edge non supportano i blocchi, che vengono ignorati.</li>
+ * </ul>
+ *
+ * @author svaponi
+ */
+public class BrowserCapabilities {
+
+	/**
+	 * Strategie di caricamento delle pagine, come da specifica W3C
+	 */
+	public static final String NORMAL = "normal", EAGER = "eager", NONE = "none";
+
+	/**
+	 * Tipi di risorse che possono essere bloccati
+	 */
+	public static final String IMAGES = "images", MEDIA = "media", FONTS = "fonts";
+
+	/**
+	 * Capability con i pattern compilati degli URL bloccati dal browser {@link Browser#FAKE}
+	 */
+	static final String FAKE_BLOCKED_URLS = "cuse:blockedUrls";
+
+	private static final Logger log = LoggerFactory.getLogger(BrowserCapabilities.class);
+	private static final Pattern browserPrefix = Pattern.compile("^\\s*(\\w+)\\s*:(.*)$");
+	private static final List<String> strategies = Arrays.asList(NORMAL, EAGER, NONE);
+	private static final Pattern scheme = Pattern.compile("^[\\w*]+://");
+
+	// pattern con un path già segnalati, per non ripetere l'avviso ad ogni sessione
+	private static final Set<String> warnedPaths = ConcurrentHashMap.newKeySet();
+
+	// estensioni dei tipi di risorse, usate dal PAC per i media e dal browser fake che non ha preferenze
+	private static final Map<String, List<String>> extensions = new HashMap<>();
+	static {
+		extensions.put(IMAGES, Arrays.asList("*.png*", "*.jpg*", "*.jpeg*", "*.gif*", "*.webp*", "*.svg*", "*.ico*"));
+		extensions.put(MEDIA, Arrays.asList("*.mp4*", "*.webm*", "*.ogg*", "*.mp3*", "*.wav*"));
+		extensions.put(FONTS, Arrays.asList("*.woff*", "*.ttf*", "*.otf*", "*.eot*"));
+	}
+
+	private final Browser browser;
+	private final String pageLoadStrategy;
+	private final List<String> blockedUrls;
+	private final String upstreamProxy;
+	private final Set<String> blockedResources;
+	private final BrowserProfile profile;
+	// pattern bloccati dal PAC e, compilati una volta sola, dal browser fake
+	private final List<String> proxiedUrls;
+	private final List<Pattern> fakeBlockedUrls;
+	private File sessionCacheDir;
+
+	private BrowserCapabilities(Browser browser, String pageLoadStrategy, List<String> blockedUrls, String upstreamProxy, Set<String> blockedResources, BrowserProfile profile) {
+		super();
+		this.browser = browser;
+		this.pageLoadStrategy = pageLoadStrategy;
+		this.blockedUrls = blockedUrls;
+		this.upstreamProxy = upstreamProxy;
+		this.blockedResources = blockedResources;
+		this.profile = profile;
+		this.proxiedUrls = new ArrayList<>(blockedUrls);
+		if (blockedResources.contains(MEDIA))
+			proxiedUrls.addAll(extensions.get(MEDIA));
+		List<String> fake = new ArrayList<>(blockedUrls);
+		for (String resource : blockedResources)
+			fake.addAll(extensions.get(resource));
+		this.fakeBlockedUrls = browser == Browser.FAKE ? compile(fake) : Collections.emptyList();
+	}
+
+	/**
+	 * Legge dalla configurazione i valori per il browser, senza {@link BrowserProfile}
+	 *
+	 * @param browser
+	 * @param config
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             se la strategia o uno dei tipi di risorse non è valido
+	 */
+	public static BrowserCapabilities of(Browser browser, CuseSetupConfiguration config) throws IllegalArgumentException {
+		return of(browser, config, null);
+	}
+
+	/**
+	 * Legge dalla configurazione i valori per il browser
+	 *
+	 * @param browser
+	 * @param config
+	 * @param profile
+	 *            profilo di avvio del browser, può essere null
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             se la strategia o uno dei tipi di risorse non è valido
+	 */
+	public static BrowserCapabilities of(Browser browser, CuseSetupConfiguration config, BrowserProfile profile) throws IllegalArgumentException {
+		String strategy = forBrowser(config.pageLoadStrategy(), browser).toLowerCase();
+		Assert.isTrue(strategy.isEmpty() || strategies.contains(strategy), "Invalid '" + CuseDefaultSpec.WEBDRIVER_PAGE_LOAD_STRATEGY + "' property: '" + strategy + "'");
+		Set<String> resources = new LinkedHashSet<>();
+		for (String resource : list(forBrowser(config.blockResources(), browser))) {
+			Assert.isTrue(extensions.containsKey(resource.toLowerCase()), "Invalid '" + CuseDefaultSpec.WEBDRIVER_BLOCK_RESOURCES + "' property: '" + resource + "'");
+			resources.add(resource.toLowerCase());
+		}
+		return new BrowserCapabilities(browser, strategy, list(forBrowser(config.blockUrls(), browser)), forBrowser(config.blockUpstreamProxy(), browser), resources, profile);
+	}
+
+	/**
+	 * @return strategia di caricamento delle pagine, vuota se quella di default del driver
+	 */
+	public String pageLoadStrategy() {
+		return pageLoadStrategy;
+	}
+
+	/**
+	 * @return pattern degli URL bloccati
+	 */
+	public List<String> blockedUrls() {
+		return Collections.unmodifiableList(blockedUrls);
+	}
+
+	/**
+	 * @return proxy (<code>host:porta</code>) per gli URL non bloccati, vuoto se connessione diretta
+	 */
+	public String upstreamProxy() {
+		return upstreamProxy;
+	}
+
+	/**
+	 * @return tipi di risorse bloccati
+	 */
+	public Set<String> blockedResources() {
+		return Collections.unmodifiableSet(blockedResources);
+	}
+
+	/**
+	 * @return profilo di avvio del browser, null se non definito
+	 */
+	public BrowserProfile profile() {
+		return profile;
+	}
+
+	/**
+	 * @return cartella della cache su disco della sessione creata con l'ultima chiamata a {@link #toCapabilities()},
+	 *         null se non prevista dal profilo
+	 * @see BrowserProfile#sessionCacheDir(Browser)
+	 */
+	public File sessionCacheDir() {
+		return sessionCacheDir;
+	}
+
+	/**
+	 * Capabilities da passare al costruttore del driver, locale o remoto. Ogni chiamata prepara una nuova cartella
+	 * della cache su disco, vedi {@link #sessionCacheDir()}.
+	 *
+	 * @return
+	 */
+	public DesiredCapabilities toCapabilities() {
+		DesiredCapabilities capabilities;
+		sessionCacheDir = null;
+		switch (browser) {
+		case CHROME:
+			capabilities = DesiredCapabilities.chrome();
+			ChromeOptions chrome = new ChromeOptions();
+			Map<String, Object> prefs = new HashMap<>();
+			if (blockedResources.contains(IMAGES))
+				prefs.put("profile.managed_default_content_settings.images", 2);
+			if (blockedResources.contains(MEDIA))
+				chrome.addArguments("--autoplay-policy=user-gesture-required");
+			if (blockedResources.contains(FONTS))
+				chrome.addArguments("--disable-remote-fonts");
+			if (profile != null) {
+				sessionCacheDir = profile.sessionCacheDir(browser);
+				profile.applyTo(chrome, prefs, sessionCacheDir);
+			}
+			if (!prefs.isEmpty())
+				chrome.setExperimentalOption("prefs", prefs);
+			capabilities.setCapability(ChromeOptions.CAPABILITY, chrome);
+			break;
+		case FIREFOX:
+			capabilities = DesiredCapabilities.firefox();
+			FirefoxOptions firefox = new FirefoxOptions();
+			if (blockedResources.contains(IMAGES))
+				firefox.addPreference("permissions.default.image", 2);
+			if (blockedResources.contains(MEDIA)) {
+				firefox.addPreference("media.autoplay.enabled", false);
+				firefox.addPreference("media.autoplay.default", 1);
+			}
+			if (blockedResources.contains(FONTS)) {
+				firefox.addPreference("browser.display.use_document_fonts", 0);
+				firefox.addPreference("gfx.downloadable_fonts.enabled", false);
+			}
+			if (profile != null) {
+				sessionCacheDir = profile.sessionCacheDir(browser);
+				profile.applyTo(firefox, sessionCacheDir);
+			}
+			if (!blockedResources.isEmpty() || profile != null)
+				firefox.addTo(capabilities);
+			break;
+		case IE:
+			capabilities = DesiredCapabilities.internetExplorer();
+			break;
+		case EDGE:
+			capabilities = DesiredCapabilities.edge();
+			break;
+		case FAKE:
+			capabilities = new DesiredCapabilities(FakeWebDriver.BROWSER_NAME, "", null);
+			capabilities.setCapability(FAKE_BLOCKED_URLS, fakeBlockedUrls);
+			break;
+		default:
+			throw new IllegalStateException("No capabilities for " + browser);
+		}
+
+		if (!pageLoadStrategy.isEmpty())
+			capabilities.setCapability(CapabilityType.PAGE_LOAD_STRATEGY, pageLoadStrategy);
+
+		if (!proxiedUrls.isEmpty())
+			if (browser == Browser.CHROME || browser == Browser.FIREFOX) {
+				if (browser == Browser.CHROME) {
+					for (String pattern : blockedUrls)
+						if (hasPath(pattern) && warnedPaths.add(pattern))
+							log.warn("'{}' pattern '{}' has a path: Chrome strips path and query from https URLs, only host patterns are reliable", CuseDefaultSpec.WEBDRIVER_BLOCK_URLS, pattern);
+					if (blockedResources.contains(MEDIA) && warnedPaths.add(MEDIA))
+						log.warn("'{}' {}: Chrome strips path and query from https URLs, only http media are blocked", CuseDefaultSpec.WEBDRIVER_BLOCK_RESOURCES, MEDIA);
+				}
+				capabilities.setCapability(CapabilityType.PROXY, new Proxy().setProxyAutoconfigUrl(pac(proxiedUrls, upstreamProxy)));
+			} else if (!blockedUrls.isEmpty() && browser != Browser.FAKE)
+				log.warn("'{}' is not supported by {}, ignored", CuseDefaultSpec.WEBDRIVER_BLOCK_URLS, browser);
+		if (!blockedResources.isEmpty() && (browser == Browser.IE || browser == Browser.EDGE))
+			log.warn("'{}' is not supported by {}, ignored", CuseDefaultSpec.WEBDRIVER_BLOCK_RESOURCES, browser);
+
+		return capabilities;
+	}
+
+	/**
+	 * Sessioni del browser avviate con gli stessi valori sono intercambiabili (vedi {@link WebDriverPool})
+	 */
+	@Override
+	public String toString() {
+		return pageLoadStrategy + "|" + blockedUrls + "|" + upstreamProxy + "|" + blockedResources + "|" + (profile == null ? "" : profile.name());
+	}
+
+	/**
+	 * Valore della proprietà per il browser: quello preceduto dal nome del browser se presente, altrimenti quello senza
+	 * prefisso, altrimenti vuoto.
+	 *
+	 * @param spec
+	 *            es. <code>eager; ie: normal</code>
+	 * @param browser
+	 * @return
+	 */
+	static String forBrowser(String spec, Browser browser) {
+		String value = "";
+		if (spec == null)
+			return value;
+		for (String part : spec.split(";")) {
+			Matcher match = browserPrefix.matcher(part);
+			if (match.matches() && isBrowser(match.group(1))) {
+				if (match.group(1).equalsIgnoreCase(browser.name()))
+					return match.group(2).trim();
+			} else if (StringUtils.hasText(part)) {
+				value = part.trim();
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Compila i pattern degli URL per {@link #matches(List, String, String)}. Nei pattern <code>*</code> sta per
+	 * qualsiasi sequenza di caratteri.
+	 *
+	 * @param patterns
+	 * @return
+	 */
+	static List<Pattern> compile(List<String> patterns) {
+		List<Pattern> compiled = new ArrayList<>(patterns.size());
+		for (String pattern : patterns)
+			compiled.add(Pattern.compile(Pattern.quote(pattern).replace("*", "\\E.*\\Q"), Pattern.CASE_INSENSITIVE));
+		return compiled;
+	}
+
+	/**
+	 * Indica se l'URL corrisponde ad uno dei pattern, confrontato sia con l'URL intero sia con l'host.
+	 *
+	 * @param patterns
+	 *            pattern compilati con {@link #compile(List)}
+	 * @param url
+	 * @param host
+	 * @return
+	 */
+	static boolean matches(List<Pattern> patterns, String url, String host) {
+		for (Pattern regex : patterns)
+			if (regex.matcher(url).matches() || (host != null && regex.matcher(host).matches()))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Indica se il pattern, oltre all'host, vincola il path o la query dell'URL
+	 *
+	 * @param pattern
+	 * @return
+	 */
+	static boolean hasPath(String pattern) {
+		String rest = scheme.matcher(pattern).replaceFirst("");
+		int slash = rest.indexOf('/');
+		if (slash < 0)
+			return rest.contains("?");
+		return !rest.substring(slash + 1).replace("*", "").isEmpty();
+	}
+
+	/**
+	 * Proxy auto-config che manda gli URL bloccati su una porta chiusa (la connessione fallisce subito) e gli altri
+	 * direttamente al server, o al proxy indicato, come data URL.
+	 *
+	 * @param patterns
+	 * @param upstreamProxy
+	 *            <code>host:porta</code>, vuoto per la connessione diretta
+	 * @return
+	 */
+	static String pac(List<String> patterns, String upstreamProxy) {
+		StringBuilder script = new StringBuilder("function FindProxyForURL(url, host) {");
+		for (String pattern : patterns) {
+			String quoted = quote(pattern);
+			script.append(" if (shExpMatch(url, ").append(quoted).append(") || shExpMatch(host, ").append(quoted).append(")) return 'PROXY 127.0.0.1:9';");
+		}
+		script.append(" return ").append(StringUtils.hasText(upstreamProxy) ? quote("PROXY " + upstreamProxy.trim()) : "'DIRECT'").append("; }");
+		return "data:application/x-ns-proxy-autoconfig;base64," + Base64.getEncoder().encodeToString(script.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	private static String quote(String value) {
+		return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+	}
+
+	private static boolean isBrowser(String name) {
+		for (Browser brw : Browser.values())
+			if (brw.name().equalsIgnoreCase(name))
+				return true;
+		return false;
+	}
+
+	private static List<String> list(String value) {
+		List<String> list = new ArrayList<>();
+		for (String item : value.split(","))
+			if (StringUtils.hasText(item))
+				list.add(item.trim());
+		return list;
+	}
+
+}
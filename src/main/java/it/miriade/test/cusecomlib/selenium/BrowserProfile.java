@@ -0,0 +1,349 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.firefox.FirefoxOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+import it.miriade.test.cusecomlib.cucumber.CucumberSpec;
+import it.miriade.test.cusecomlib.enums.Browser;
+import it.miriade.test.cusecomlib.excep.YamlInvalidKeyException;
+import it.miriade.test.cusecomlib.yaml.YamlSupport;
+
+/**
+ * Profilo di avvio del browser, scelto per nome con la proprietà {@link CuseDefaultSpec#WEBDRIVER_PROFILE}: modalità
+ * headless, dimensione della finestra, cartella della cache su disco, servizi in background disattivati e opzioni e
+ * preferenze specifiche di Chrome e Firefox. Viene applicato da {@link BrowserCapabilities} alle opzioni del driver,
+ * quindi vale sia per i driver locali sia per quelli remoti; IE ed Edge lo ignorano, tranne la finestra.<br/>
+ * Ci sono due profili predefiniti, {@value #HEADLESS_FAST} per la CI e {@value #HEADED_DEBUG} per il debug in locale.
+ * La cache su disco di ogni sessione sta in una sottocartella propria di <code>cache_dir</code>, chiamata con l'id del
+ * worker (vedi {@link CucumberSpec#WORKER_ID}) o il nome del browser e un UUID, così che sessioni concorrenti non la
+ * condividano; la sottocartella viene cancellata quando la sessione viene chiusa.<br/>
+ * I profili si possono definire o modificare nello YAML comune, sotto la chiave
+ * {@link CuseDefaultSpec#YAML_SUPPORT_PROFILES_PREFIX}: i valori dello YAML sostituiscono quelli del profilo
+ * predefinito con lo stesso nome. Esempio:
+ *
+ * <pre>
+ * profiles:
+ *     headless-fast:
+ *         window: 1920,1080
+ *         chrome:
+ *             arguments: [--lang=it-IT]
+ *             preferences:
+ *                 intl.accept_languages: it-IT
+ *     ci-firefox:
+ *         headless: true
+ *         cache_dir: target/firefox-cache
+ *         disable_background: true
+ * </pre>
+ *
+ * @author svaponi
+ */
+public class BrowserProfile {
+
+	/**
+	 * Profilo headless con GPU, estensioni, sandbox e servizi in background disattivati, finestra 1366x768
+	 */
+	public static final String HEADLESS_FAST = "headless-fast";
+
+	/**
+	 * Profilo con il browser visibile e gli strumenti di sviluppo aperti, finestra 1280x1024
+	 */
+	public static final String HEADED_DEBUG = "headed-debug";
+
+	/*
+	 * Chiavi dello YAML
+	 */
+	static final String HEADLESS = "headless", WINDOW = "window", CACHE_DIR = "cache_dir", DISABLE_BACKGROUND = "disable_background", ARGUMENTS = "arguments", PREFERENCES = "preferences";
+
+	private static final Logger log = LoggerFactory.getLogger(BrowserProfile.class);
+
+	// cartella della cache di ogni sessione avviata, da cancellare alla chiusura
+	private static final Map<WebDriver, File> sessionCacheDirs = Collections.synchronizedMap(new WeakHashMap<>());
+
+	// servizi in background di Chrome che rallentano l'avvio e occupano memoria
+	private static final List<String> chromeBackground = Arrays.asList("--disable-background-networking", "--disable-background-timer-throttling", "--disable-backgrounding-occluded-windows", "--disable-renderer-backgrounding",
+			"--disable-component-update", "--disable-default-apps", "--disable-sync", "--disable-client-side-phishing-detection", "--metrics-recording-only", "--no-first-run", "--no-default-browser-check");
+
+	// servizi in background di Firefox
+	private static final Map<String, Object> firefoxBackground = new LinkedHashMap<>();
+	static {
+		firefoxBackground.put("app.update.auto", false);
+		firefoxBackground.put("app.update.enabled", false);
+		firefoxBackground.put("browser.shell.checkDefaultBrowser", false);
+		firefoxBackground.put("browser.safebrowsing.malware.enabled", false);
+		firefoxBackground.put("browser.safebrowsing.phishing.enabled", false);
+		firefoxBackground.put("datareporting.healthreport.uploadEnabled", false);
+		firefoxBackground.put("datareporting.policy.dataSubmissionEnabled", false);
+		firefoxBackground.put("toolkit.telemetry.enabled", false);
+		firefoxBackground.put("extensions.update.enabled", false);
+		firefoxBackground.put("network.prefetch-next", false);
+	}
+
+	private final String name;
+	private boolean headless;
+	private String window;
+	private String cacheDir;
+	private boolean disableBackground;
+	private final Map<Browser, List<String>> arguments = new LinkedHashMap<>();
+	private final Map<Browser, Map<String, Object>> preferences = new LinkedHashMap<>();
+
+	private BrowserProfile(String name) {
+		super();
+		this.name = name;
+		for (Browser browser : Arrays.asList(Browser.CHROME, Browser.FIREFOX)) {
+			arguments.put(browser, new ArrayList<>());
+			preferences.put(browser, new LinkedHashMap<>());
+		}
+	}
+
+	/**
+	 * Costruisce il profilo partendo da quello predefinito con lo stesso nome (se esiste) e applicando i valori dello
+	 * YAML (se presenti).
+	 *
+	 * @param name
+	 *            nome del profilo
+	 * @param yaml
+	 *            YAML comune, può essere null
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             se il profilo non è nè predefinito nè nello YAML
+	 */
+	public static BrowserProfile of(String name, YamlSupport yaml) throws IllegalArgumentException {
+		Assert.hasText(name, "Missing profile name");
+		BrowserProfile profile = new BrowserProfile(name);
+		boolean found = profile.defaults();
+		Map<String, ?> values = null;
+		if (yaml != null)
+			try {
+				values = yaml.getMap("?.?", CuseDefaultSpec.YAML_SUPPORT_PROFILES_PREFIX, name);
+			} catch (YamlInvalidKeyException e) {
+				// profilo non definito nello YAML
+			}
+		Assert.isTrue(found || values != null, "Unknown browser profile '" + name + "'");
+		if (values != null)
+			profile.override(values);
+		return profile;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public boolean headless() {
+		return headless;
+	}
+
+	/**
+	 * @return dimensione della finestra all'avvio (<code>larghezza,altezza</code> oppure <code>maximize</code>), null
+	 *         se non definita
+	 */
+	public String window() {
+		return window;
+	}
+
+	/**
+	 * @return cartella che contiene le cache su disco delle sessioni, null se non definita
+	 */
+	public String cacheDir() {
+		return cacheDir;
+	}
+
+	/**
+	 * Nuova cartella della cache su disco per una sessione, dentro {@link #cacheDir()}:
+	 * <code>&lt;cache_dir&gt;/&lt;id del worker o browser&gt;-&lt;uuid&gt;</code>
+	 *
+	 * @param browser
+	 * @return null se il profilo non ha una cache su disco
+	 */
+	public File sessionCacheDir(Browser browser) {
+		if (!StringUtils.hasText(cacheDir))
+			return null;
+		String owner = System.getProperty(CucumberSpec.WORKER_ID);
+		if (!StringUtils.hasText(owner))
+			owner = browser.name().toLowerCase();
+		return new File(cacheDir, owner + "-" + UUID.randomUUID()).getAbsoluteFile();
+	}
+
+	public boolean disableBackground() {
+		return disableBackground;
+	}
+
+	/**
+	 * @param browser
+	 * @return TRUE se la dimensione della finestra viene impostata dalle opzioni di avvio del browser, quindi il driver
+	 *         non la deve cambiare dopo l'avvio
+	 */
+	public boolean sizesWindow(Browser browser) {
+		return (browser == Browser.CHROME || browser == Browser.FIREFOX) && size() != null;
+	}
+
+	/**
+	 * Applica il profilo alle opzioni di Chrome
+	 *
+	 * @param options
+	 * @param prefs
+	 *            preferenze di Chrome, già impostate da {@link BrowserCapabilities}
+	 * @param sessionCacheDir
+	 *            cartella della cache della sessione (vedi {@link #sessionCacheDir(Browser)}), può essere null
+	 */
+	void applyTo(ChromeOptions options, Map<String, Object> prefs, File sessionCacheDir) {
+		if (headless)
+			options.addArguments("--headless", "--disable-gpu");
+		int[] size = size();
+		if (size != null)
+			options.addArguments("--window-size=" + size[0] + "," + size[1]);
+		if (sessionCacheDir != null)
+			options.addArguments("--disk-cache-dir=" + sessionCacheDir.getPath());
+		if (disableBackground)
+			options.addArguments(chromeBackground);
+		options.addArguments(arguments.get(Browser.CHROME));
+		prefs.putAll(preferences.get(Browser.CHROME));
+	}
+
+	/**
+	 * Applica il profilo alle opzioni di Firefox
+	 *
+	 * @param options
+	 * @param sessionCacheDir
+	 *            cartella della cache della sessione (vedi {@link #sessionCacheDir(Browser)}), può essere null
+	 */
+	void applyTo(FirefoxOptions options, File sessionCacheDir) {
+		if (headless)
+			options.addArguments("-headless");
+		int[] size = size();
+		if (size != null)
+			options.addArguments("-width", String.valueOf(size[0]), "-height", String.valueOf(size[1]));
+		if (sessionCacheDir != null)
+			options.addPreference("browser.cache.disk.parent_directory", sessionCacheDir.getPath());
+		if (disableBackground)
+			firefoxBackground.forEach((key, value) -> preference(options, key, value));
+		options.addArguments(arguments.get(Browser.FIREFOX));
+		preferences.get(Browser.FIREFOX).forEach((key, value) -> preference(options, key, value));
+	}
+
+	/**
+	 * JSON-like syntax
+	 */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ": {\n\t name: \"" + name + "\",\n\t headless: " + headless + ",\n\t window: \"" + window + "\",\n\t cacheDir: \"" + cacheDir + "\",\n\t disableBackground: " + disableBackground + ",\n\t arguments: "
+				+ arguments + ",\n\t preferences: " + preferences + " \n}";
+	}
+
+	/**
+	 * Associa alla sessione la cartella della sua cache, da cancellare con {@link #deleteCacheDir(WebDriver)}
+	 *
+	 * @param driver
+	 * @param sessionCacheDir
+	 *            può essere null
+	 */
+	static void bindCacheDir(WebDriver driver, File sessionCacheDir) {
+		if (sessionCacheDir != null)
+			sessionCacheDirs.put(driver, sessionCacheDir);
+	}
+
+	/**
+	 * Cancella la cartella della cache della sessione, da chiamare dopo averla chiusa. Con i driver remoti la cartella
+	 * è sul nodo remoto, quindi in locale non c'è nulla da cancellare.
+	 *
+	 * @param driver
+	 */
+	static void deleteCacheDir(WebDriver driver) {
+		File dir = sessionCacheDirs.remove(driver);
+		if (dir != null && FileSystemUtils.deleteRecursively(dir))
+			log.debug("Deleted browser cache {}", dir);
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	/**
+	 * Valori dei profili predefiniti
+	 *
+	 * @return TRUE se il profilo è predefinito
+	 */
+	private boolean defaults() {
+		switch (name) {
+		case HEADLESS_FAST:
+			headless = true;
+			window = "1366,768";
+			cacheDir = "target/browser-cache";
+			disableBackground = true;
+			arguments.get(Browser.CHROME).addAll(Arrays.asList("--disable-extensions", "--no-sandbox", "--disable-dev-shm-usage", "--mute-audio"));
+			preferences.get(Browser.FIREFOX).put("media.volume_scale", "0.0");
+			return true;
+		case HEADED_DEBUG:
+			headless = false;
+			window = "1280,1024";
+			disableBackground = false;
+			arguments.get(Browser.CHROME).add("--auto-open-devtools-for-tabs");
+			arguments.get(Browser.FIREFOX).add("-devtools");
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void override(Map<String, ?> values) {
+		if (values.get(HEADLESS) != null)
+			headless = Boolean.parseBoolean(String.valueOf(values.get(HEADLESS)));
+		if (values.containsKey(WINDOW))
+			window = values.get(WINDOW) == null ? null : String.valueOf(values.get(WINDOW));
+		if (values.containsKey(CACHE_DIR))
+			cacheDir = values.get(CACHE_DIR) == null ? null : String.valueOf(values.get(CACHE_DIR));
+		if (values.get(DISABLE_BACKGROUND) != null)
+			disableBackground = Boolean.parseBoolean(String.valueOf(values.get(DISABLE_BACKGROUND)));
+		for (Browser browser : arguments.keySet()) {
+			Object options = values.get(browser.name().toLowerCase());
+			if (!(options instanceof Map))
+				continue;
+			Object args = ((Map<String, ?>) options).get(ARGUMENTS);
+			if (args instanceof List) {
+				arguments.get(browser).clear();
+				((List<?>) args).forEach(arg -> arguments.get(browser).add(String.valueOf(arg)));
+			}
+			Object prefs = ((Map<String, ?>) options).get(PREFERENCES);
+			if (prefs instanceof Map)
+				preferences.get(browser).putAll((Map<String, Object>) prefs);
+		}
+	}
+
+	/**
+	 * Larghezza e altezza della finestra, null se non definita o massimizzata
+	 */
+	private int[] size() {
+		if (!StringUtils.hasText(window) || "maximize".equalsIgnoreCase(window.trim()))
+			return null;
+		String[] coord = window.split(",");
+		Assert.isTrue(coord.length == 2, "Invalid window of browser profile '" + name + "': '" + window + "'");
+		return new int[] { Integer.parseInt(coord[0].trim()), Integer.parseInt(coord[1].trim()) };
+	}
+
+	private static void preference(FirefoxOptions options, String key, Object value) {
+		if (value instanceof Boolean)
+			options.addPreference(key, (Boolean) value);
+		else if (value instanceof Integer)
+			options.addPreference(key, (Integer) value);
+		else
+			options.addPreference(key, String.valueOf(value));
+	}
+
+}
@@ -0,0 +1,74 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+
+/**
+ * {@link CommandExecutor} che conta i comandi inviati al WebDriver (vedi {@link CuseMetrics#roundTrip(String)}) e li
+ * delega all'executor originale del driver.
+ *
+ * @author svaponi
+ */
+public class CountingCommandExecutor implements CommandExecutor {
+
+	private static final Logger log = LoggerFactory.getLogger(CountingCommandExecutor.class);
+
+	private final CommandExecutor delegate;
+	private final CuseMetrics metrics;
+
+	public CountingCommandExecutor(CommandExecutor delegate, CuseMetrics metrics) {
+		super();
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Response execute(Command command) throws IOException {
+		metrics.roundTrip(command.getName());
+		return delegate.execute(command);
+	}
+
+	/**
+	 * @return executor originale del driver
+	 */
+	public CommandExecutor getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Installa il conteggio dei comandi sul driver, se è un {@link RemoteWebDriver} (lo sono tutti i driver locali di
+	 * Selenium) e non è già installato. Va invocato dopo l'avvio della sessione.
+	 *
+	 * @param driver
+	 * @param metrics
+	 * @return TRUE se il driver conta i comandi
+	 */
+	public static boolean install(WebDriver driver, CuseMetrics metrics) {
+		if (!(driver instanceof RemoteWebDriver))
+			return false;
+		RemoteWebDriver remote = (RemoteWebDriver) driver;
+		if (remote.getCommandExecutor() instanceof CountingCommandExecutor)
+			return true;
+		try {
+			// setCommandExecutor è protected
+			Method setter = RemoteWebDriver.class.getDeclaredMethod("setCommandExecutor", CommandExecutor.class);
+			setter.setAccessible(true);
+			setter.invoke(remote, new CountingCommandExecutor(remote.getCommandExecutor(), metrics));
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			log.debug("Cannot count WebDriver commands: {}", e.getMessage());
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,789 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.ElementNotVisibleException;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.ScriptException;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.html.DisabledElement;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.HtmlAnchor;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+import com.gargoylesoftware.htmlunit.html.HtmlInput;
+import com.gargoylesoftware.htmlunit.html.HtmlOption;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.html.HtmlTextArea;
+import com.gargoylesoftware.htmlunit.html.impl.SelectableTextInput;
+import com.gargoylesoftware.htmlunit.javascript.SimpleScriptable;
+import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLElement;
+import com.gargoylesoftware.htmlunit.util.Cookie;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.NativeArray;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+import net.sourceforge.htmlunit.corejs.javascript.TopLevel;
+import net.sourceforge.htmlunit.corejs.javascript.Undefined;
+
+/**
+ * {@link CommandExecutor} del {@link FakeWebDriver}: esegue i comandi del protocollo di Selenium su un DOM in memoria
+ * gestito da un {@link WebClient} di HtmlUnit, senza passare da HTTP.<br/>
+ * Gli elementi restituiti al driver sono registrati con un id univoco; quando la pagina corrente cambia il registro
+ * viene svuotato e gli elementi della pagina precedente diventano "stale". La ricerca rispetta l'implicit wait come un
+ * browser reale. Le richieste agli URL bloccati dalle {@link BrowserCapabilities} ricevono una risposta vuota. I comandi
+ * non supportati sollevano {@link UnsupportedCommandException}.
+ *
+ * @author svaponi
+ */
+class FakeCommandExecutor implements CommandExecutor {
+
+	/**
+	 * Chiave con cui il protocollo JSON Wire identifica gli elementi
+	 */
+	private static final String ELEMENT_KEY = "ELEMENT";
+
+	/**
+	 * Handle dell'unica finestra gestita
+	 */
+	private static final String WINDOW_HANDLE = "fake-window";
+
+	/**
+	 * Pagina iniziale della sessione
+	 */
+	private static final String BLANK_URL = "about:blank";
+
+	/**
+	 * Intervallo di polling della ricerca durante l'implicit wait
+	 */
+	private static final long FIND_POLLING_MILLIS = 50;
+
+	/**
+	 * PNG 1x1 trasparente restituito come screenshot
+	 */
+	private static final String BLANK_PNG = "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAQAAAC1HAwCAAAAC0lEQVR42mNkYAAAAAYAAjCB0C8AAAAASUVORK5CYII=";
+
+	private final long latencyMillis;
+	private final AtomicLong commands = new AtomicLong();
+	private final AtomicLong blockedRequests = new AtomicLong();
+
+	private WebClient client;
+	private String sessionId;
+	private long implicitWaitMillis;
+	private Map<String, Object> windowSize = size(1280, 1024);
+	private Map<String, Object> windowPosition = position(0, 0);
+
+	private Page registryPage;
+	private long lastElementId;
+	private final Map<String, DomElement> elements = new HashMap<>();
+	private final Map<DomElement, String> elementIds = new IdentityHashMap<>();
+
+	/**
+	 * @param latencyMillis
+	 *            latenza in millisecondi aggiunta ad ogni comando
+	 */
+	FakeCommandExecutor(long latencyMillis) {
+		super();
+		this.latencyMillis = latencyMillis;
+	}
+
+	/**
+	 * @return numero di comandi eseguiti
+	 */
+	long getCommandCount() {
+		return commands.get();
+	}
+
+	/**
+	 * @return numero di richieste bloccate
+	 */
+	long getBlockedCount() {
+		return blockedRequests.get();
+	}
+
+	/**
+	 * @return attesa implicita in millisecondi
+	 */
+	long getImplicitWaitMillis() {
+		return implicitWaitMillis;
+	}
+
+	@Override
+	public synchronized Response execute(Command command) throws IOException {
+		commands.incrementAndGet();
+		if (latencyMillis > 0)
+			try {
+				Thread.sleep(latencyMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+		String name = command.getName();
+		Map<String, ?> params = command.getParameters();
+		if (!DriverCommand.NEW_SESSION.equals(name) && client == null)
+			throw new NoSuchSessionException("Session is closed");
+
+		Response response = new Response();
+		response.setStatus(ErrorCodes.SUCCESS);
+		try {
+			response.setValue(dispatch(name, params));
+		} catch (ScriptException e) {
+			throw new JavascriptException(e.getMessage(), e);
+		} catch (WebDriverException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw new WebDriverException("Command " + name + " failed: " + e.getMessage(), e);
+		}
+		response.setSessionId(sessionId);
+		return response;
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	private Object dispatch(String name, Map<String, ?> params) throws IOException {
+		switch (name) {
+
+		/*
+		 * Sessione e finestra
+		 */
+		case DriverCommand.NEW_SESSION:
+			Object desired = params.get("desiredCapabilities");
+			start(desired instanceof Capabilities ? (Capabilities) desired : new DesiredCapabilities());
+			Map<String, Object> capabilities = new HashMap<>();
+			capabilities.put("browserName", FakeWebDriver.BROWSER_NAME);
+			if (desired instanceof Capabilities && ((Capabilities) desired).getCapability(CapabilityType.PAGE_LOAD_STRATEGY) != null)
+				capabilities.put(CapabilityType.PAGE_LOAD_STRATEGY, ((Capabilities) desired).getCapability(CapabilityType.PAGE_LOAD_STRATEGY));
+			capabilities.put("javascriptEnabled", true);
+			capabilities.put("takesScreenshot", true);
+			capabilities.put("cssSelectorsEnabled", true);
+			return capabilities;
+		case DriverCommand.QUIT:
+		case DriverCommand.CLOSE:
+			stop();
+			return null;
+		case DriverCommand.GET_CURRENT_WINDOW_HANDLE:
+			return WINDOW_HANDLE;
+		case DriverCommand.GET_WINDOW_HANDLES:
+			return Collections.singletonList(WINDOW_HANDLE);
+		case DriverCommand.SWITCH_TO_WINDOW:
+			Object handle = params.containsKey("handle") ? params.get("handle") : params.get("name");
+			if (!WINDOW_HANDLE.equals(handle))
+				throw new NoSuchWindowException("No window: " + handle);
+			return null;
+		case DriverCommand.SET_CURRENT_WINDOW_SIZE:
+			windowSize = size(params.get("width"), params.get("height"));
+			return null;
+		case DriverCommand.GET_CURRENT_WINDOW_SIZE:
+			return windowSize;
+		case DriverCommand.SET_CURRENT_WINDOW_POSITION:
+			windowPosition = position(params.get("x"), params.get("y"));
+			return null;
+		case DriverCommand.GET_CURRENT_WINDOW_POSITION:
+			return windowPosition;
+		case DriverCommand.MAXIMIZE_CURRENT_WINDOW:
+			return null;
+		case DriverCommand.SET_TIMEOUT:
+			if ("implicit".equals(params.get("type")))
+				implicitWaitMillis = ((Number) params.get("ms")).longValue();
+			return null;
+		case DriverCommand.IMPLICITLY_WAIT:
+			implicitWaitMillis = ((Number) params.get("ms")).longValue();
+			return null;
+		case DriverCommand.SET_SCRIPT_TIMEOUT:
+			return null;
+
+		/*
+		 * Navigazione
+		 */
+		case DriverCommand.GET:
+			client.getPage((String) params.get("url"));
+			return null;
+		case DriverCommand.GO_BACK:
+			client.getCurrentWindow().getHistory().back();
+			return null;
+		case DriverCommand.GO_FORWARD:
+			client.getCurrentWindow().getHistory().forward();
+			return null;
+		case DriverCommand.REFRESH:
+			page().refresh();
+			return null;
+		case DriverCommand.GET_CURRENT_URL:
+			return page().getUrl().toString();
+		case DriverCommand.GET_TITLE:
+			return page().getTitleText();
+		case DriverCommand.GET_PAGE_SOURCE:
+			return page().asXml();
+		case DriverCommand.SCREENSHOT:
+			return BLANK_PNG;
+
+		/*
+		 * Ricerca
+		 */
+		case DriverCommand.FIND_ELEMENT:
+			return findOne(page(), params);
+		case DriverCommand.FIND_ELEMENTS:
+			return findAll(page(), params);
+		case DriverCommand.FIND_CHILD_ELEMENT:
+			return findOne(element(params), params);
+		case DriverCommand.FIND_CHILD_ELEMENTS:
+			return findAll(element(params), params);
+
+		/*
+		 * Elementi
+		 */
+		case DriverCommand.CLICK_ELEMENT:
+			DomElement clicked = element(params);
+			if (!clicked.isDisplayed())
+				throw new ElementNotVisibleException("Element is not visible: " + clicked);
+			clicked.click();
+			return null;
+		case DriverCommand.SEND_KEYS_TO_ELEMENT:
+			// come nei browser reali i modificatori vengono rilasciati alla fine di sendKeys
+			type(htmlElement(params), (CharSequence[]) params.get("value"), new HashSet<>());
+			return null;
+		case DriverCommand.CLEAR_ELEMENT:
+			DomElement cleared = element(params);
+			if (cleared instanceof HtmlInput)
+				((HtmlInput) cleared).setValueAttribute("");
+			else if (cleared instanceof HtmlTextArea)
+				((HtmlTextArea) cleared).setText("");
+			return null;
+		case DriverCommand.GET_ELEMENT_TEXT:
+			return element(params).asText();
+		case DriverCommand.GET_ELEMENT_TAG_NAME:
+			return element(params).getTagName();
+		case DriverCommand.GET_ELEMENT_ATTRIBUTE:
+			return attribute(element(params), (String) params.get("name"));
+		case DriverCommand.IS_ELEMENT_DISPLAYED:
+			return element(params).isDisplayed();
+		case DriverCommand.IS_ELEMENT_ENABLED:
+			DomElement enabled = element(params);
+			return !(enabled instanceof DisabledElement && ((DisabledElement) enabled).isDisabled());
+		case DriverCommand.IS_ELEMENT_SELECTED:
+			return selected(element(params));
+		case DriverCommand.GET_ELEMENT_LOCATION:
+			HTMLElement located = layout(element(params));
+			return position(located.getPosX(), located.getPosY());
+		case DriverCommand.GET_ELEMENT_SIZE:
+			HTMLElement sized = layout(element(params));
+			return size(sized.getOffsetWidth(), sized.getOffsetHeight());
+
+		/*
+		 * Azioni W3C
+		 */
+		case W3CActions.ACTIONS:
+			performActions((List<?>) params.get(W3CActions.ACTIONS));
+			return null;
+
+		/*
+		 * JavaScript
+		 */
+		case DriverCommand.EXECUTE_SCRIPT:
+			return executeScript((String) params.get("script"), (List<?>) params.get("args"));
+
+		/*
+		 * Cookies
+		 */
+		case DriverCommand.GET_ALL_COOKIES:
+			List<Map<String, Object>> cookies = new ArrayList<>();
+			for (Cookie cookie : client.getCookieManager().getCookies())
+				cookies.add(toMap(cookie));
+			return cookies;
+		case DriverCommand.GET_COOKIE:
+			Cookie cookie = client.getCookieManager().getCookie((String) params.get("name"));
+			return cookie == null ? null : toMap(cookie);
+		case DriverCommand.ADD_COOKIE:
+			client.getCookieManager().addCookie(toCookie(params.get("cookie")));
+			return null;
+		case DriverCommand.DELETE_COOKIE:
+			Cookie deleted = client.getCookieManager().getCookie((String) params.get("name"));
+			if (deleted != null)
+				client.getCookieManager().removeCookie(deleted);
+			return null;
+		case DriverCommand.DELETE_ALL_COOKIES:
+			client.getCookieManager().clearCookies();
+			return null;
+
+		default:
+			throw new UnsupportedCommandException(name);
+		}
+	}
+
+	private void start(Capabilities desired) throws IOException {
+		client = new WebClient(BrowserVersion.CHROME);
+		client.getOptions().setThrowExceptionOnScriptError(false);
+		client.getOptions().setThrowExceptionOnFailingStatusCode(false);
+		client.getOptions().setPrintContentOnFailingStatusCode(false);
+		Object blocked = desired.getCapability(BrowserCapabilities.FAKE_BLOCKED_URLS);
+		if (blocked instanceof List && !((List<?>) blocked).isEmpty())
+			block(((List<?>) blocked).stream().filter(Pattern.class::isInstance).map(Pattern.class::cast).collect(Collectors.toList()));
+		sessionId = UUID.randomUUID().toString();
+		client.getPage(BLANK_URL);
+	}
+
+	/**
+	 * Le richieste agli URL bloccati (vedi {@link BrowserCapabilities}) ricevono una risposta vuota senza arrivare in
+	 * rete, come se il browser le avesse scartate.
+	 */
+	private void block(List<Pattern> patterns) {
+		new WebConnectionWrapper(client) {
+			@Override
+			public WebResponse getResponse(WebRequest request) throws IOException {
+				URL url = request.getUrl();
+				if (!BrowserCapabilities.matches(patterns, url.toString(), url.getHost()))
+					return super.getResponse(request);
+				blockedRequests.incrementAndGet();
+				return new WebResponse(new WebResponseData(new byte[0], 204, "No Content", Collections.emptyList()), request, 0);
+			}
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} catch (IOException | RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException(e);
+				}
+			}
+		};
+	}
+
+	private void stop() {
+		if (client != null)
+			client.close();
+		client = null;
+		registryPage = null;
+		elements.clear();
+		elementIds.clear();
+	}
+
+	/**
+	 * Pagina HTML corrente. Se la pagina è cambiata dall'ultima invocazione il registro degli elementi viene svuotato.
+	 */
+	private HtmlPage page() {
+		Page page = client.getCurrentWindow().getEnclosedPage();
+		if (page != registryPage) {
+			elements.clear();
+			elementIds.clear();
+			registryPage = page;
+		}
+		if (!(page instanceof HtmlPage))
+			throw new WebDriverException("Current page is not HTML: " + page);
+		return (HtmlPage) page;
+	}
+
+	/**
+	 * Elemento registrato con l'id indicato dal parametro "id" del comando
+	 */
+	private DomElement element(Map<String, ?> params) {
+		HtmlPage page = page();
+		DomElement element = elements.get(params.get("id"));
+		// isAttachedToPage resta TRUE anche dopo che l'elemento è stato rimosso dal DOM
+		if (element == null || !element.isAttachedToPage() || !page.isAncestorOf(element))
+			throw new StaleElementReferenceException("Element is no longer attached to the DOM: " + params.get("id"));
+		return element;
+	}
+
+	private HtmlElement htmlElement(Map<String, ?> params) {
+		DomElement element = element(params);
+		if (!(element instanceof HtmlElement))
+			throw new WebDriverException("Element is not an HTML element: " + element);
+		return (HtmlElement) element;
+	}
+
+	/**
+	 * Registra l'elemento (se non già registrato) e ne restituisce la rappresentazione JSON Wire
+	 */
+	private Map<String, Object> register(DomElement element) {
+		String id = elementIds.get(element);
+		if (id == null) {
+			id = Long.toString(++lastElementId);
+			elements.put(id, element);
+			elementIds.put(element, id);
+		}
+		return Collections.singletonMap(ELEMENT_KEY, id);
+	}
+
+	private Map<String, Object> findOne(DomNode context, Map<String, ?> params) {
+		List<Map<String, Object>> found = findAll(context, params);
+		if (found.isEmpty())
+			throw new NoSuchElementException("Unable to locate element: {\"method\":\"" + params.get("using") + "\",\"selector\":\"" + params.get("value") + "\"}");
+		return found.get(0);
+	}
+
+	/**
+	 * Ricerca degli elementi che rispetta l'implicit wait: finchè non trova nulla riprova fino al timeout
+	 */
+	private List<Map<String, Object>> findAll(DomNode context, Map<String, ?> params) {
+		String using = (String) params.get("using");
+		String value = (String) params.get("value");
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(implicitWaitMillis);
+		List<DomElement> found = find(context, using, value);
+		while (found.isEmpty() && System.nanoTime() < deadline) {
+			try {
+				Thread.sleep(FIND_POLLING_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			found = find(context, using, value);
+		}
+		List<Map<String, Object>> result = new ArrayList<>(found.size());
+		for (DomElement element : found)
+			result.add(register(element));
+		return result;
+	}
+
+	private static List<DomElement> find(DomNode context, String using, String value) {
+		List<DomElement> found = new ArrayList<>();
+		switch (using) {
+		case "css selector":
+			try {
+				addElements(found, context.querySelectorAll(value));
+			} catch (RuntimeException e) {
+				throw new InvalidSelectorException("Invalid CSS selector: " + value, e);
+			}
+			return found;
+		case "xpath":
+			try {
+				addElements(found, context.getByXPath(value));
+			} catch (RuntimeException e) {
+				throw new InvalidSelectorException("Invalid XPath expression: " + value, e);
+			}
+			return found;
+		case "id":
+			for (DomElement element : context.getDomElementDescendants())
+				if (value.equals(element.getId()))
+					found.add(element);
+			return found;
+		case "name":
+			for (DomElement element : context.getDomElementDescendants())
+				if (value.equals(element.getAttribute("name")))
+					found.add(element);
+			return found;
+		case "class name":
+			for (DomElement element : context.getDomElementDescendants())
+				for (String className : element.getAttribute("class").split("\\s+"))
+					if (value.equals(className)) {
+						found.add(element);
+						break;
+					}
+			return found;
+		case "tag name":
+			for (DomElement element : context.getDomElementDescendants())
+				if (value.equalsIgnoreCase(element.getTagName()))
+					found.add(element);
+			return found;
+		case "link text":
+			for (DomElement element : context.getDomElementDescendants())
+				if (element instanceof HtmlAnchor && value.equals(element.asText().trim()))
+					found.add(element);
+			return found;
+		case "partial link text":
+			for (DomElement element : context.getDomElementDescendants())
+				if (element instanceof HtmlAnchor && element.asText().contains(value))
+					found.add(element);
+			return found;
+		default:
+			throw new InvalidSelectorException("Unsupported locator strategy: " + using);
+		}
+	}
+
+	private static void addElements(List<DomElement> target, Collection<?> nodes) {
+		for (Object node : nodes)
+			if (node instanceof DomElement)
+				target.add((DomElement) node);
+	}
+
+	/**
+	 * Esegue le azioni W3C tick per tick, nell'ordine delle sorgenti. Supporta le sorgenti <code>key</code> (i tasti
+	 * vengono digitati nell'elemento con il focus, vedi {@link #type(HtmlElement, CharSequence[], Set)}) e
+	 * <code>pointer</code> (click con il tasto sinistro su un elemento indicato come <code>origin</code>), più le
+	 * <code>pause</code> di entrambe.
+	 */
+	private void performActions(List<?> sources) throws IOException {
+		int ticks = 0;
+		for (Object source : sources)
+			ticks = Math.max(ticks, ((List<?>) ((Map<?, ?>) source).get(W3CActions.ACTIONS)).size());
+		DomElement pointer = null, pressed = null;
+		Set<Character> held = new HashSet<>();
+		for (int tick = 0; tick < ticks; tick++)
+			for (Object source : sources) {
+				List<?> actions = (List<?>) ((Map<?, ?>) source).get(W3CActions.ACTIONS);
+				if (tick >= actions.size())
+					continue;
+				Map<?, ?> action = (Map<?, ?>) actions.get(tick);
+				switch ((String) action.get("type")) {
+				case "pause":
+					Number duration = (Number) action.get("duration");
+					if (duration != null && duration.longValue() > 0)
+						try {
+							Thread.sleep(duration.longValue());
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					break;
+				case "keyDown":
+					String key = (String) action.get("value");
+					DomElement focused = page().getFocusedElement();
+					if (isModifier(key.charAt(0)))
+						held.add(key.charAt(0));
+					else if (focused instanceof HtmlElement)
+						type((HtmlElement) focused, new CharSequence[] { key }, held);
+					break;
+				case "keyUp":
+					held.remove(((String) action.get("value")).charAt(0));
+					break;
+				case "pointerMove":
+					if (!(action.get("origin") instanceof Map))
+						throw new UnsupportedCommandException("pointerMove without element origin");
+					pointer = element(Collections.singletonMap("id", ((Map<?, ?>) action.get("origin")).get(W3CActions.ELEMENT_KEY)));
+					break;
+				case "pointerDown":
+					pressed = pointer;
+					break;
+				case "pointerUp":
+					if (pressed != null && pressed == pointer) {
+						if (!pressed.isDisplayed())
+							throw new ElementNotVisibleException("Element is not visible: " + pressed);
+						pressed.click();
+					}
+					pressed = null;
+					break;
+				default:
+					throw new UnsupportedCommandException("Action " + action.get("type"));
+				}
+			}
+	}
+
+	/**
+	 * Digita i caratteri nell'elemento: i tasti speciali di {@link Keys} vengono ignorati tranne ENTER/RETURN, che
+	 * vengono digitati come "a capo" (e quindi inviano il form se l'elemento è un campo di testo), e i modificatori, che
+	 * restano premuti fino a {@link Keys#NULL}. Con SHIFT le lettere diventano maiuscole, con CONTROL o META la
+	 * <code>a</code> seleziona tutto il testo e gli altri tasti vengono ignorati.
+	 *
+	 * @param held
+	 *            modificatori premuti, aggiornato con quelli della sequenza
+	 */
+	private static void type(HtmlElement element, CharSequence[] keys, Set<Character> held) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (CharSequence sequence : keys)
+			text.append(sequence);
+		StringBuilder chunk = new StringBuilder();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			boolean command = held.contains(Keys.CONTROL.charAt(0)) || held.contains(Keys.META.charAt(0));
+			if (c == Keys.NULL.charAt(0) || isModifier(c) || command || c == Keys.ENTER.charAt(0) || c == Keys.RETURN.charAt(0) || c == '\n') {
+				if (chunk.length() > 0)
+					element.type(chunk.toString());
+				chunk.setLength(0);
+			}
+			if (c == Keys.NULL.charAt(0))
+				held.clear();
+			else if (isModifier(c))
+				held.add(c);
+			else if (command) {
+				if (Character.toLowerCase(c) == 'a' && element instanceof SelectableTextInput)
+					((SelectableTextInput) element).select();
+			} else if (c == Keys.ENTER.charAt(0) || c == Keys.RETURN.charAt(0) || c == '\n')
+				element.type('\n');
+			else if (Keys.getKeyFromUnicode(c) == null)
+				chunk.append(held.contains(Keys.SHIFT.charAt(0)) ? Character.toUpperCase(c) : c);
+		}
+		if (chunk.length() > 0)
+			element.type(chunk.toString());
+	}
+
+	private static boolean isModifier(char c) {
+		return c == Keys.SHIFT.charAt(0) || c == Keys.CONTROL.charAt(0) || c == Keys.ALT.charAt(0) || c == Keys.META.charAt(0);
+	}
+
+	private static String attribute(DomElement element, String name) {
+		if ("value".equals(name)) {
+			if (element instanceof HtmlInput)
+				return ((HtmlInput) element).getValueAttribute();
+			if (element instanceof HtmlTextArea)
+				return ((HtmlTextArea) element).getText();
+		}
+		if ("checked".equals(name) || "selected".equals(name))
+			return selected(element) ? "true" : null;
+		if ("disabled".equals(name))
+			return element instanceof DisabledElement && ((DisabledElement) element).isDisabled() ? "true" : null;
+		String value = element.getAttribute(name);
+		return value == DomElement.ATTRIBUTE_NOT_DEFINED ? null : value;
+	}
+
+	private static boolean selected(DomElement element) {
+		if (element instanceof HtmlInput)
+			return ((HtmlInput) element).isChecked();
+		if (element instanceof HtmlOption)
+			return ((HtmlOption) element).isSelected();
+		return false;
+	}
+
+	/**
+	 * Esegue lo script come corpo di una funzione anonima (come fanno i browser reali) passando gli argomenti in
+	 * <code>arguments</code>.
+	 */
+	private Object executeScript(String script, List<?> args) {
+		HtmlPage page = page();
+		Object function = page.executeJavaScript("(function() {" + script + "\n})").getJavaScriptResult();
+		if (!(function instanceof Function))
+			throw new JavascriptException("Cannot compile script: " + script);
+		ScriptableObject window = page.getEnclosingWindow().getScriptableObject();
+		Object[] jsArgs = new Object[args == null ? 0 : args.size()];
+		for (int i = 0; i < jsArgs.length; i++)
+			jsArgs[i] = toJavaScript(window, args.get(i));
+		Object result = client.getJavaScriptEngine().callFunction(page, (Function) function, window, window, jsArgs);
+		return fromJavaScript(result);
+	}
+
+	private Object toJavaScript(ScriptableObject scope, Object value) {
+		if (value instanceof Map && ((Map<?, ?>) value).containsKey(ELEMENT_KEY))
+			return element(Collections.singletonMap("id", ((Map<?, ?>) value).get(ELEMENT_KEY))).getScriptableObject();
+		if (value instanceof Collection) {
+			List<Object> values = new ArrayList<>();
+			for (Object item : (Collection<?>) value)
+				values.add(toJavaScript(scope, item));
+			NativeArray array = new NativeArray(values.toArray());
+			ScriptRuntime.setBuiltinProtoAndParent(array, scope, TopLevel.Builtins.Array);
+			return array;
+		}
+		return value;
+	}
+
+	private Object fromJavaScript(Object value) {
+		if (value == null || value instanceof Undefined)
+			return null;
+		if (value instanceof Boolean || value instanceof String)
+			return value;
+		if (value instanceof CharSequence)
+			return value.toString();
+		if (value instanceof Number) {
+			double number = ((Number) value).doubleValue();
+			if (number == Math.rint(number) && !Double.isInfinite(number))
+				return (long) number;
+			return number;
+		}
+		if (value instanceof SimpleScriptable && ((SimpleScriptable) value).getDomNodeOrNull() instanceof DomElement)
+			return register((DomElement) ((SimpleScriptable) value).getDomNodeOrNull());
+		if (value instanceof NativeArray) {
+			NativeArray array = (NativeArray) value;
+			List<Object> list = new ArrayList<>();
+			for (int i = 0; i < array.getLength(); i++)
+				list.add(fromJavaScript(array.get(i, array)));
+			return list;
+		}
+		if (value instanceof Scriptable && value instanceof Map) {
+			Map<String, Object> map = new LinkedHashMap<>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+				map.put(String.valueOf(entry.getKey()), fromJavaScript(entry.getValue()));
+			return map;
+		}
+		return value.toString();
+	}
+
+	private Map<String, Object> toMap(Cookie cookie) {
+		Map<String, Object> map = new HashMap<>();
+		map.put("name", cookie.getName());
+		map.put("value", cookie.getValue());
+		map.put("path", cookie.getPath());
+		map.put("domain", cookie.getDomain());
+		map.put("secure", cookie.isSecure());
+		map.put("httpOnly", cookie.isHttpOnly());
+		if (cookie.getExpires() != null)
+			map.put("expiry", TimeUnit.MILLISECONDS.toSeconds(cookie.getExpires().getTime()));
+		return map;
+	}
+
+	private Cookie toCookie(Object value) {
+		if (value instanceof org.openqa.selenium.Cookie) {
+			org.openqa.selenium.Cookie cookie = (org.openqa.selenium.Cookie) value;
+			return new Cookie(domain(cookie.getDomain()), cookie.getName(), cookie.getValue(), cookie.getPath() == null ? "/" : cookie.getPath(), cookie.getExpiry(), cookie.isSecure(), cookie.isHttpOnly());
+		}
+		Map<?, ?> map = (Map<?, ?>) value;
+		String path = map.get("path") == null ? "/" : (String) map.get("path");
+		Date expires = map.get("expiry") == null ? null : new Date(TimeUnit.SECONDS.toMillis(((Number) map.get("expiry")).longValue()));
+		return new Cookie(domain((String) map.get("domain")), (String) map.get("name"), (String) map.get("value"), path, expires, Boolean.TRUE.equals(map.get("secure")), Boolean.TRUE.equals(map.get("httpOnly")));
+	}
+
+	/**
+	 * Dominio del cookie: se non indicato quello della pagina corrente (localhost per le pagine senza host)
+	 */
+	private String domain(String domain) {
+		if (domain != null)
+			return domain;
+		URL url = page().getUrl();
+		return url.getHost() == null || url.getHost().isEmpty() ? "localhost" : url.getHost();
+	}
+
+	/**
+	 * Layout approssimato calcolato da HtmlUnit sugli stili della pagina
+	 */
+	private static HTMLElement layout(DomElement element) {
+		Object scriptable = element.getScriptableObject();
+		if (!(scriptable instanceof HTMLElement))
+			throw new UnsupportedCommandException("No layout for element: " + element);
+		return (HTMLElement) scriptable;
+	}
+
+	private static Map<String, Object> size(Object width, Object height) {
+		Map<String, Object> map = new HashMap<>();
+		map.put("width", ((Number) width).longValue());
+		map.put("height", ((Number) height).longValue());
+		return map;
+	}
+
+	private static Map<String, Object> position(Object x, Object y) {
+		Map<String, Object> map = new HashMap<>();
+		map.put("x", ((Number) x).longValue());
+		map.put("y", ((Number) y).longValue());
+		return map;
+	}
+
+}
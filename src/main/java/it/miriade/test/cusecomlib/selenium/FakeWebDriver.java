@@ -0,0 +1,88 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+import it.miriade.test.cusecomlib.enums.Browser;
+
+/**
+ * {@link WebDriver} in-process per il browser {@link Browser#FAKE}. Non avvia alcun browser nè webdriver: i comandi
+ * del protocollo di Selenium vengono eseguiti direttamente su un DOM in memoria (HtmlUnit, con JavaScript abilitato)
+ * dal {@link FakeCommandExecutor}.<br/>
+ * Poichè estende {@link RemoteWebDriver} si comporta come un driver reale per la libreria (ricerca tramite
+ * CSS/XPath/id/name/linkText, click, sendKeys, JavaScript, cookies, screenshot), ma senza i tempi e la variabilità di un
+ * browser vero. Serve per misurare le prestazioni della libreria e per eseguire i test in CI su macchine senza
+ * browser.<br/>
+ * La latenza (vedi {@link CuseDefaultSpec#WEBDRIVER_FAKE_LATENCY}) viene aggiunta ad ogni comando e permette di
+ * simulare i tempi di risposta di un browser reale o di una Selenium Grid. Esempio:
+ *
+ * <pre>
+ * WebDriver driver = new FakeWebDriver(50);
+ * driver.get("file:///path/to/page.html");
+ * driver.findElement(By.id("login")).click();
+ * </pre>
+ *
+ * @author svaponi
+ */
+public class FakeWebDriver extends RemoteWebDriver {
+
+	/**
+	 * Nome del browser restituito nelle capabilities
+	 */
+	public static final String BROWSER_NAME = "fake";
+
+	// l'executor del driver può essere sostituito, vedi CountingCommandExecutor
+	private final FakeCommandExecutor executor;
+
+	public FakeWebDriver() {
+		this(0);
+	}
+
+	/**
+	 * @param latencyMillis
+	 *            latenza in millisecondi aggiunta ad ogni comando
+	 */
+	public FakeWebDriver(long latencyMillis) {
+		this(latencyMillis, new DesiredCapabilities(BROWSER_NAME, "", null));
+	}
+
+	/**
+	 * @param latencyMillis
+	 *            latenza in millisecondi aggiunta ad ogni comando
+	 * @param capabilities
+	 *            capabilities della sessione, es. gli URL bloccati (vedi {@link BrowserCapabilities})
+	 */
+	public FakeWebDriver(long latencyMillis, Capabilities capabilities) {
+		this(new FakeCommandExecutor(latencyMillis), capabilities);
+	}
+
+	private FakeWebDriver(FakeCommandExecutor executor, Capabilities capabilities) {
+		super(executor, capabilities);
+		this.executor = executor;
+	}
+
+	/**
+	 * @return numero di comandi eseguiti dalla creazione del driver
+	 */
+	public long getCommandCount() {
+		return executor.getCommandCount();
+	}
+
+	/**
+	 * @return numero di richieste scartate perchè bloccate (vedi {@link BrowserCapabilities})
+	 */
+	public long getBlockedCount() {
+		return executor.getBlockedCount();
+	}
+
+	/**
+	 * @return attesa implicita in millisecondi impostata sul driver
+	 */
+	public long getImplicitWaitMillis() {
+		return executor.getImplicitWaitMillis();
+	}
+
+}
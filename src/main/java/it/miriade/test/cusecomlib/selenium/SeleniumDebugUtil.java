@@ -152,9 +152,17 @@ public class SeleniumDebugUtil {
 					case "sendKeys":
 					case "key":
 					case "keys":
-						Keys keysToSend = Keys.valueOf(args[1]);
-						seleniumUtil.driver().switchTo().activeElement().sendKeys(keysToSend);
-						System.out.printf("Sent key: %s\n", keysToSend);
+						// più tasti in un solo comando, es. "keys DOWN DOWN ENTER" oppure "keys CONTROL a": i
+						// modificatori restano premuti fino alla fine, gli argomenti che non sono Keys vengono digitati
+						CharSequence[] keysToSend = new CharSequence[args.length - 1];
+						for (int i = 1; i < args.length; i++)
+							try {
+								keysToSend[i - 1] = Keys.valueOf(args[i].toUpperCase());
+							} catch (IllegalArgumentException e) {
+								keysToSend[i - 1] = args[i];
+							}
+						seleniumUtil.batch().keys(keysToSend).perform();
+						System.out.printf("Sent keys: %s\n", Arrays.asList(args).subList(1, args.length));
 						break;
 					default:
 						System.err.println("Comando inesistente");
@@ -0,0 +1,208 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.miriade.test.cusecomlib.enums.BySelector;
+import it.miriade.test.cusecomlib.hooks.HtmlHook;
+
+/**
+ * Utility che delegano al browser, tramite JavaScript, operazioni che altrimenti richiederebbero un comando del
+ * {@link WebDriver} per ogni elemento. Ogni comando è una chiamata HTTP al driver (costosa soprattutto con i driver
+ * remoti), perciò verificare lo stato di N elementi con un solo script invece che con 2N comandi riduce sensibilmente i
+ * tempi.<br/>
+ * Se lo script non è eseguibile (driver senza JavaScript, errore nello script) si torna ai comandi standard.
+ *
+ * @author svaponi
+ */
+public class SeleniumScriptUtil {
+
+	private static final Logger log = LoggerFactory.getLogger(SeleniumScriptUtil.class);
+
+	/**
+	 * Funzione JavaScript che ritorna TRUE se l'elemento è visibile e abilitato. Visibile: ha dimensioni, non è nascosto
+	 * da <code>visibility</code> e non è trasparente; abilitato: non è un controllo disabilitato (anche tramite un
+	 * fieldset disabilitato). Ritorna null se lo stato dell'elemento non è valutabile.
+	 */
+	static final String IS_GOOD_FUNCTION = "function isGood(el) { try { var st = window.getComputedStyle(el);"
+		+ " var visible = !!(el.offsetWidth || el.offsetHeight || el.getClientRects().length) && st.visibility !== 'hidden' && st.visibility !== 'collapse' && st.opacity !== '0';"
+		+ " var disabled = el.disabled === true; try { disabled = disabled || el.matches(':disabled'); } catch (e) {}"
+		+ " return visible && !disabled; } catch (e) { return null; } }";
+
+	/**
+	 * Script che ritorna, per ogni elemento di arguments[0], TRUE se è visibile e abilitato.
+	 */
+	static final String PROBE_SCRIPT = IS_GOOD_FUNCTION + " var els = arguments[0], res = [];"
+		+ " for (var i = 0; i < els.length; i++) res.push(isGood(els[i])); return res;";
+
+	/**
+	 * Funzione JavaScript che cerca gli elementi e ritorna solo quelli visibili e abilitati: <code>by</code> è il nome
+	 * del {@link BySelector}, <code>expr</code> l'espressione. La semantica di ogni selettore è quella del corrispondente
+	 * {@link By} di Selenium (es. {@link BySelector#TEXT} confronta il testo dei link senza spazi iniziali e finali).
+	 */
+	static final String LOCATE_FUNCTION = "function locate(by, expr) { var found = [], i;"
+		+ " function text(el) { return (el.innerText || el.textContent || '').replace(/^\\s+|\\s+$/g, ''); }"
+		+ " function all(list) { for (var j = 0; j < list.length; j++) found.push(list[j]); }"
+		+ " function links(match) { var a = document.getElementsByTagName('a'); for (var j = 0; j < a.length; j++) if (match(text(a[j]))) found.push(a[j]); }"
+		+ " switch (by) {"
+		+ " case 'CSS': all(document.querySelectorAll(expr)); break;"
+		+ " case 'ID': var ids = document.querySelectorAll('[id]'); for (i = 0; i < ids.length; i++) if (ids[i].id === expr) found.push(ids[i]); break;"
+		+ " case 'CLASS': all(document.getElementsByClassName(expr)); break;"
+		+ " case 'NAME': all(document.getElementsByName(expr)); break;"
+		+ " case 'TAG_NAME': all(document.getElementsByTagName(expr)); break;"
+		+ " case 'TEXT': links(function(t) { return t === expr; }); break;"
+		+ " case 'PARTIAL_TEXT': links(function(t) { return t.indexOf(expr) >= 0; }); break;"
+		+ " case 'XPATH': var snap = document.evaluate(expr, document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+		+ " for (i = 0; i < snap.snapshotLength; i++) if (snap.snapshotItem(i).nodeType === 1) found.push(snap.snapshotItem(i)); break;"
+		+ " default: throw new Error('Unsupported selector ' + by); }"
+		+ " var res = []; for (i = 0; i < found.length; i++) if (isGood(found[i])) res.push(found[i]); return res; }";
+
+	/**
+	 * Script che cerca gli elementi e ritorna solo quelli visibili e abilitati: arguments[0] è il nome del
+	 * {@link BySelector}, arguments[1] l'espressione.
+	 */
+	static final String LOCATE_SCRIPT = IS_GOOD_FUNCTION + " " + LOCATE_FUNCTION + " return locate(arguments[0], arguments[1]);";
+
+	/**
+	 * Script che compila più campi: arguments[0] è una lista di terne (selettore, espressione, valore). Per ogni campo
+	 * imposta il valore su tutti gli elementi trovati, tramite il setter nativo della proprietà <code>value</code>
+	 * (così che lo vedano anche i framework che la intercettano, es. React), e genera gli eventi <code>input</code> e
+	 * <code>change</code>. Ritorna, per ogni campo, null se è stato compilato oppure il motivo del fallimento.
+	 */
+	static final String FILL_SCRIPT = IS_GOOD_FUNCTION + " " + LOCATE_FUNCTION
+		+ " function fire(el, type) { var ev = document.createEvent('HTMLEvents'); ev.initEvent(type, true, true); el.dispatchEvent(ev); }"
+		+ " function setValue(el, value) { var setter = null;"
+		+ " try { var d = Object.getOwnPropertyDescriptor(Object.getPrototypeOf(el), 'value'); setter = d && d.set; } catch (e) {}"
+		+ " if (setter) setter.call(el, value); else el.value = value; fire(el, 'input'); fire(el, 'change'); }"
+		+ " var fields = arguments[0], res = [];"
+		+ " for (var f = 0; f < fields.length; f++) { try { var els = locate(fields[f][0], fields[f][1]);"
+		+ " if (!els.length) { res.push('not found'); continue; }"
+		+ " for (var k = 0; k < els.length; k++) setValue(els[k], fields[f][2]); res.push(null);"
+		+ " } catch (e) { res.push(String(e && e.message || e)); } } return res;";
+
+	private SeleniumScriptUtil() {
+		super();
+	}
+
+	/**
+	 * Filtra gli elementi visibili e abilitati con un solo comando <code>executeScript</code>. Se lo script fallisce
+	 * oppure il driver non supporta JavaScript usa <code>fallback</code> su ogni elemento, altrimenti solo sugli elementi
+	 * che lo script non è riuscito a valutare.
+	 *
+	 * @param driver
+	 * @param elements
+	 *            elementi da filtrare
+	 * @param fallback
+	 *            verifica del singolo elemento da usare se lo script non è eseguibile
+	 * @return gli elementi buoni, nello stesso ordine dell'input
+	 */
+	public static List<WebElement> filterGoodElements(WebDriver driver, List<WebElement> elements, Predicate<WebElement> fallback) {
+		if (elements.isEmpty())
+			return elements;
+		List<Boolean> probe = probe(driver, elements);
+		if (probe == null)
+			return elements.stream().filter(fallback).collect(Collectors.toList());
+
+		List<WebElement> good = new ArrayList<>(elements.size());
+		for (int i = 0; i < elements.size(); i++) {
+			Boolean isGood = probe.get(i);
+			if (isGood == null ? fallback.test(elements.get(i)) : isGood)
+				good.add(elements.get(i));
+		}
+		return good;
+	}
+
+	/**
+	 * Cerca gli elementi visibili e abilitati identificati da selettore ed espressione con un solo comando
+	 * <code>executeScript</code>, invece di <code>findElements</code> seguito dalla verifica degli elementi.
+	 *
+	 * @param driver
+	 * @param by
+	 * @param expr
+	 * @return gli elementi trovati, oppure null se lo script non è eseguibile
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<WebElement> locate(WebDriver driver, BySelector by, String expr) {
+		if (!(driver instanceof JavascriptExecutor))
+			return null;
+		try {
+			Object result = ((JavascriptExecutor) driver).executeScript(LOCATE_SCRIPT, by.name(), expr);
+			if (result instanceof List && ((List<?>) result).stream().allMatch(e -> e instanceof WebElement))
+				return (List<WebElement>) result;
+			log.debug("Unexpected locate result: {}", result);
+		} catch (WebDriverException e) {
+			log.debug("Locate script failed for {} {}: {}", by, expr, e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Verifica visibilità e abilitazione degli elementi con un solo comando.
+	 *
+	 * @param driver
+	 * @param elements
+	 * @return un booleano per ogni elemento (null se lo stato dell'elemento non è valutabile), oppure null se lo script
+	 *         non è eseguibile
+	 */
+	public static List<Boolean> probe(WebDriver driver, List<WebElement> elements) {
+		if (!(driver instanceof JavascriptExecutor))
+			return null;
+		try {
+			Object result = ((JavascriptExecutor) driver).executeScript(PROBE_SCRIPT, elements);
+			if (result instanceof List && ((List<?>) result).size() == elements.size()) {
+				List<Boolean> probe = new ArrayList<>(elements.size());
+				for (Object value : (List<?>) result)
+					probe.add(value instanceof Boolean ? (Boolean) value : null);
+				return probe;
+			}
+			log.debug("Unexpected probe result: {}", result);
+		} catch (WebDriverException e) {
+			log.debug("Probe script failed: {}", e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Compila più campi con un solo comando <code>executeScript</code>, senza eventi della tastiera: i valori vengono
+	 * impostati direttamente e vengono generati solo gli eventi <code>input</code> e <code>change</code>.
+	 *
+	 * @param driver
+	 * @param hooks
+	 *            hook dei campi
+	 * @param values
+	 *            valore di ogni campo, nello stesso ordine degli hook
+	 * @return per ogni campo null se è stato compilato oppure il motivo del fallimento; null se lo script non è
+	 *         eseguibile
+	 */
+	public static List<String> fill(WebDriver driver, List<HtmlHook> hooks, List<String> values) {
+		if (!(driver instanceof JavascriptExecutor))
+			return null;
+		List<List<String>> fields = new ArrayList<>(hooks.size());
+		for (int i = 0; i < hooks.size(); i++)
+			fields.add(Arrays.asList(hooks.get(i).by.name(), hooks.get(i).expr, values.get(i)));
+		try {
+			Object result = ((JavascriptExecutor) driver).executeScript(FILL_SCRIPT, fields);
+			if (result instanceof List && ((List<?>) result).size() == hooks.size()) {
+				List<String> errors = new ArrayList<>(hooks.size());
+				for (Object error : (List<?>) result)
+					errors.add(error == null ? null : error.toString());
+				return errors;
+			}
+			log.debug("Unexpected fill result: {}", result);
+		} catch (WebDriverException e) {
+			log.debug("Fill script failed: {}", e.getMessage());
+		}
+		return null;
+	}
+}
@@ -3,6 +3,7 @@ package it.miriade.test.cusecomlib.selenium;
 import java.io.Closeable;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -14,7 +15,6 @@ import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.edge.EdgeDriver;
 import org.openqa.selenium.firefox.FirefoxDriver;
 import org.openqa.selenium.ie.InternetExplorerDriver;
-import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,10 +25,16 @@ import it.miriade.test.cusecomlib.CuseDefaultSpec;
 import it.miriade.test.cusecomlib.CuseSetupConfiguration;
 import it.miriade.test.cusecomlib.enums.Browser;
 import it.miriade.test.cusecomlib.excep.SeleniumSetupException;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics.Sample;
+import it.miriade.test.cusecomlib.yaml.YamlSupport;
+import it.miriade.test.cusecomlib.yaml.YamlSupportFactory;
 
 /**
  * Si occupa di inizializzare il {@link WebDriver} di Selenium ed incapsula le sue caratteristiche (browser, modalità
- * remote, ecc..).
+ * remote, ecc..).<br/>
+ * Il ciclo di vita delle sessioni (tempo di inizializzazione, sessioni aperte, chiuse e riusate dal pool) è registrato
+ * nelle {@link CuseMetrics}.
  * 
  * @author svaponi
  */
@@ -40,19 +46,34 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 	 */
 
 	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final CuseMetrics metrics = CuseMetrics.getInstance();
 	private static final Pattern isRemoteRegex = Pattern.compile("^.*(http[s]?://(.*))$");
 
 	private CuseSetupConfiguration config;
+	private YamlSupportFactory yamlSupportFactory;
 	private WebDriver driver;
 	private Browser browser;
+	private BrowserCapabilities capabilities;
 	private boolean isRemote;
 	private boolean disableCloseBrowser;
+	private String poolKey;
+	private boolean reused;
 
 	public SeleniumWebDriverWrapper(CuseSetupConfiguration config) {
 		super();
 		this.config = config;
 	}
 
+	/**
+	 * @param config
+	 * @param yamlSupportFactory
+	 *            {@link YamlSupportFactory} per leggere i {@link BrowserProfile} definiti nello YAML comune
+	 */
+	public SeleniumWebDriverWrapper(CuseSetupConfiguration config, YamlSupportFactory yamlSupportFactory) {
+		this(config);
+		this.yamlSupportFactory = yamlSupportFactory;
+	}
+
 	/**
 	 * JSON-like syntax
 	 */
@@ -76,7 +97,8 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 	 * </pre>
 	 * 
 	 * Nell'esempio andiamo ad inizializzare il wrapper ed utilizzarlo in un blocco try-with-resources. Alla fine del
-	 * blocco, poichè è {@link Closeable}, il driver viene chiuso e di conseguenza alche il browser.
+	 * blocco, poichè è {@link Closeable}, il driver viene chiuso e di conseguenza alche il browser.<br/>
+	 * Se il {@link WebDriverPool} è abilitato il driver viene invece restituito al pool, vedi {@link #release()}.
 	 *
 	 * @see #quit()
 	 */
@@ -84,21 +106,71 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 	public void close() {
 		if (disableCloseBrowser) {
 			log.warn("BROWSER STAYS OPEN because of \"{}\" = false", CLOSE_BROWSER);
+		} else if (isPooled()) {
+			release();
 		} else {
 			quit();
 		}
 	}
 
+	/**
+	 * Restituisce il {@link WebDriver} al {@link WebDriverPool}, che lo ripulisce e lo tiene pronto per la prossima
+	 * inizializzazione. Se il pool non è abilitato equivale a {@link #quit()}.
+	 */
+	public void release() {
+		if (!isPooled()) {
+			quit();
+			return;
+		}
+		log.info("Releasing {} browser to pool...", browser);
+		if (driver != null) {
+			WebDriverPool.getInstance().release(poolKey, driver);
+			metrics.increment(CuseMetrics.SESSIONS_RELEASED);
+			detach();
+		}
+	}
+
+	/**
+	 * Riporta il browser ad uno stato pulito (cookies, local e session storage, finestre secondarie) senza chiuderlo.
+	 * Utile tra uno scenario e l'altro.
+	 * 
+	 * @see WebDriverPool#reset(WebDriver)
+	 */
+	public void reset() {
+		if (isActive())
+			WebDriverPool.getInstance().reset(driver);
+	}
+
+	/**
+	 * Indica se il {@link WebDriver} viene preso e restituito al {@link WebDriverPool}
+	 * 
+	 * @return
+	 */
+	public boolean isPooled() {
+		return poolKey != null && WebDriverPool.getInstance().isEnabled();
+	}
+
 	/**
 	 * Chiude il {@link WebDriver} e di conseguenza anche il browser associato.
 	 */
 	public void quit() {
 		log.info("Quitting {} browser...", browser);
 		if (isActive()) {
-			driver.quit();
-			driver = null;
+			metrics.time(CuseMetrics.QUIT, null, () -> {
+				if (poolKey != null)
+					WebDriverPool.getInstance().unregister(driver);
+				driver.quit();
+			});
+			BrowserProfile.deleteCacheDir(driver);
+			metrics.increment(CuseMetrics.SESSIONS_QUIT);
+			detach();
 		} else {
 			log.debug("WebDriver already closed");
+			// sessione terminata da sola (es. browser chiuso a mano)
+			if (driver != null) {
+				BrowserProfile.deleteCacheDir(driver);
+				detach();
+			}
 		}
 	}
 
@@ -109,8 +181,10 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 		log.info("Closing {} window...", browser);
 		if (isActive()) {
 			driver.close();
-			if (!isActive())
-				driver = null;
+			if (!isActive()) {
+				BrowserProfile.deleteCacheDir(driver);
+				detach();
+			}
 		} else {
 			log.debug("WebDriver already closed");
 		}
@@ -166,12 +240,15 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 
 		log.debug("Inizio setup del WebDriver...");
 
+		Sample sample = metrics.start(CuseMetrics.SETUP, null);
 		try {
 
 			Assert.notNull(config, "Missing setup configuration");
 
 			String targetBrowser = config.targetBrowser();
 			disableCloseBrowser = !config.closeBrowser();
+			if (config.poolSize() > 0)
+				WebDriverPool.getInstance().configure(config.poolSize(), (long) (config.poolMaxAge() * 1000));
 
 			/*
 			 * Inizializzazione del WebDriver
@@ -181,12 +258,20 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 			 */
 
 			Assert.hasText(targetBrowser, "Missing '" + TARGET_BROWSER + "' property");
-			try {
-				browser = Browser.valueOf(targetBrowser.toUpperCase());
-				log.info("Browser to use: {}", browser.name());
-			} catch (Exception e) {
-				throw new RuntimeException("Invalid browser: " + targetBrowser);
-			}
+			List<Browser> browsers = config.targetBrowsers();
+			Assert.notEmpty(browsers, "Missing '" + TARGET_BROWSER + "' property");
+			browser = browsers.get(0);
+			if (browsers.size() > 1)
+				log.warn("Multiple browsers in '{}', using {}: to run all of them use CucumberRunner", TARGET_BROWSER, browser);
+			log.info("Browser to use: {}", browser.name());
+
+			/*
+			 * Profilo, strategia di caricamento e risorse bloccate, vedi BrowserCapabilities
+			 */
+			capabilities = BrowserCapabilities.of(browser, config, profile());
+			if (capabilities.profile() != null)
+				log.info("Browser profile: {}", capabilities.profile().name());
+			log.debug("Page load strategy: \"{}\", blocked URLs: {}, blocked resources: {}", capabilities.pageLoadStrategy(), capabilities.blockedUrls(), capabilities.blockedResources());
 
 			Matcher match;
 			switch (browser) {
@@ -195,18 +280,18 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 				validateWebDriverPath(WEBDRIVER_PATH_CHROME, pathChrome);
 				match = isRemoteRegex.matcher(pathChrome);
 				isRemote = match.matches();
+				if (acquireFromPool(pathChrome))
+					break;
 				if (isRemote)
 					try {
 						URL url = new URL(match.group(1));
 						log.info("Using remote driver, URL: {}", url);
-						DesiredCapabilities capabilities = DesiredCapabilities.chrome();
-						// ADD CAPABILITIES HERE...
-						driver = new RemoteWebDriver(url, capabilities);
+						driver = new RemoteWebDriver(url, capabilities.toCapabilities());
 					} catch (MalformedURLException e) {
 						throw new RuntimeException("Impossibile caricare il driver di Chrome: " + e.getMessage());
 					}
 				else
-					driver = new ChromeDriver();
+					driver = new ChromeDriver(capabilities.toCapabilities());
 
 				break;
 
@@ -215,18 +300,18 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 				validateWebDriverPath(WEBDRIVER_PATH_FIREFOX, pathFirefox);
 				match = isRemoteRegex.matcher(pathFirefox);
 				isRemote = match.matches();
+				if (acquireFromPool(pathFirefox))
+					break;
 				if (isRemote)
 					try {
 						URL url = new URL(match.group(1));
 						log.info("Using remote driver, URL {}", url);
-						DesiredCapabilities capabilities = DesiredCapabilities.firefox();
-						// ADD CAPABILITIES HERE...
-						driver = new RemoteWebDriver(url, capabilities);
+						driver = new RemoteWebDriver(url, capabilities.toCapabilities());
 					} catch (MalformedURLException e) {
 						throw new RuntimeException("Impossibile caricare il driver di Firefox: " + e.getMessage());
 					}
 				else
-					driver = new FirefoxDriver();
+					driver = new FirefoxDriver(capabilities.toCapabilities());
 				break;
 
 			case IE:
@@ -234,18 +319,18 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 				validateWebDriverPath(WEBDRIVER_PATH_IE, pathIE);
 				match = isRemoteRegex.matcher(pathIE);
 				isRemote = match.matches();
+				if (acquireFromPool(pathIE))
+					break;
 				if (isRemote)
 					try {
 						URL url = new URL(match.group(1));
 						log.info("Using remote driver, URL {}", url);
-						DesiredCapabilities capabilities = DesiredCapabilities.internetExplorer();
-						// ADD CAPABILITIES HERE...
-						driver = new RemoteWebDriver(url, capabilities);
+						driver = new RemoteWebDriver(url, capabilities.toCapabilities());
 					} catch (MalformedURLException e) {
 						throw new RuntimeException("Impossibile caricare il driver di InternetExplorer: " + e.getMessage());
 					}
 				else
-					driver = new InternetExplorerDriver();
+					driver = new InternetExplorerDriver(capabilities.toCapabilities());
 				break;
 
 			case EDGE:
@@ -253,18 +338,26 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 				validateWebDriverPath(WEBDRIVER_PATH_EDGE, pathEdge);
 				match = isRemoteRegex.matcher(pathEdge);
 				isRemote = match.matches();
+				if (acquireFromPool(pathEdge))
+					break;
 				if (isRemote)
 					try {
 						URL url = new URL(match.group(1));
 						log.info("Using remote driver, URL {}", url);
-						DesiredCapabilities capabilities = DesiredCapabilities.edge();
-						// ADD CAPABILITIES HERE...
-						driver = new RemoteWebDriver(url, capabilities);
+						driver = new RemoteWebDriver(url, capabilities.toCapabilities());
 					} catch (MalformedURLException e) {
 						throw new RuntimeException("Impossibile caricare il driver di Edge: " + e.getMessage());
 					}
 				else
-					driver = new EdgeDriver();
+					driver = new EdgeDriver(capabilities.toCapabilities());
+				break;
+
+			case FAKE:
+				isRemote = false;
+				if (acquireFromPool("fake"))
+					break;
+				log.info("Using fake driver, latency {}s", config.fakeLatency());
+				driver = new FakeWebDriver((long) (config.fakeLatency() * 1000), capabilities.toCapabilities());
 				break;
 
 			default:
@@ -272,6 +365,13 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 				// metodo valueOf() per inizializzare la var browser)
 				throw new IllegalStateException("No driver matched");
 			}
+			if (!reused)
+				BrowserProfile.bindCacheDir(driver, capabilities.sessionCacheDir());
+			if (poolKey != null)
+				WebDriverPool.getInstance().register(driver);
+			CountingCommandExecutor.install(driver, metrics);
+			metrics.increment(reused ? CuseMetrics.SESSIONS_REUSED : CuseMetrics.SESSIONS_CREATED);
+			metrics.gauge(CuseMetrics.SESSIONS_ACTIVE).incrementAndGet();
 
 			/*
 			 * Timeouts
@@ -279,7 +379,8 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 			Double findElementTimeout = config.timeoutFindElement();
 			Assert.notNull(findElementTimeout, "Missing '" + WEBDRIVER_TIMEOUTS_FIND + "' property");
 			Assert.isTrue(findElementTimeout > 0, "Invalid '" + WEBDRIVER_TIMEOUTS_FIND + "' property");
-			driver.manage().timeouts().implicitlyWait((long) (findElementTimeout * 1000), TimeUnit.MILLISECONDS);
+			// con le attese esplicite il driver non aspetta mai, vedi CuseUtil.findBy
+			driver.manage().timeouts().implicitlyWait(config.explicitWait() ? 0 : (long) (findElementTimeout * 1000), TimeUnit.MILLISECONDS);
 
 			Double pageLoadTimeout = config.timeoutPageLoad();
 			Assert.notNull(pageLoadTimeout, "Missing '" + WEBDRIVER_TIMEOUTS_LOAD + "' property");
@@ -296,6 +397,14 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 			 */
 
 			String windowPos = config.windowPos();
+			// la finestra del profilo vince, se l'ha già impostata il browser all'avvio non serve cambiarla
+			BrowserProfile profile = capabilities.profile();
+			if (profile != null && profile.window() != null) {
+				if (profile.sizesWindow(browser))
+					windowPos = null;
+				else
+					windowPos = "maximize".equalsIgnoreCase(profile.window().trim()) ? "maximize" : "0,0," + profile.window();
+			}
 			if (StringUtils.hasText(windowPos))
 				if ("maximize".equalsIgnoreCase(windowPos)) {
 
@@ -317,7 +426,10 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 				}
 
 		} catch (Throwable e) {
+			metrics.increment(CuseMetrics.SETUP_FAILURES);
 			throw new SeleniumSetupException("Failed to initialize WebDriver! " + e.getMessage());
+		} finally {
+			sample.close();
 		}
 	}
 
@@ -325,6 +437,56 @@ public class SeleniumWebDriverWrapper implements CuseDefaultSpec, Closeable {
 	 * Private methods
 	 */
 
+	/**
+	 * Il wrapper non usa più il driver (chiuso o restituito al pool)
+	 */
+	private void detach() {
+		driver = null;
+		metrics.gauge(CuseMetrics.SESSIONS_ACTIVE).decrementAndGet();
+	}
+
+	/**
+	 * Profilo di avvio del browser (vedi {@link CuseDefaultSpec#WEBDRIVER_PROFILE}), cercato anche nello YAML comune se
+	 * disponibile
+	 * 
+	 * @return null se non è definito un profilo per il browser
+	 */
+	private BrowserProfile profile() {
+		String name = BrowserCapabilities.forBrowser(config.browserProfile(), browser);
+		if (!StringUtils.hasText(name))
+			return null;
+		YamlSupport yaml = null;
+		if (yamlSupportFactory != null)
+			try {
+				yaml = yamlSupportFactory.getCommonYaml();
+			} catch (IllegalArgumentException e) {
+				log.debug("Browser profiles from YAML unavailable: {}", e.getMessage());
+			}
+		return BrowserProfile.of(name, yaml);
+	}
+
+	/**
+	 * Se il {@link WebDriverPool} è abilitato calcola la chiave della sessione (browser, path del webdriver e
+	 * {@link BrowserCapabilities}) e prova a prendere una sessione inattiva dal pool.
+	 * 
+	 * @param path
+	 *            path del webdriver letto dalla configurazione
+	 * @return TRUE se il driver è stato preso dal pool, FALSE se va creato
+	 */
+	private boolean acquireFromPool(String path) {
+		reused = false;
+		if (!WebDriverPool.getInstance().isEnabled()) {
+			poolKey = null;
+			return false;
+		}
+		poolKey = browser + "|" + path + "|" + capabilities;
+		driver = WebDriverPool.getInstance().acquire(poolKey);
+		reused = driver != null;
+		if (reused)
+			log.info("Reusing {} browser from pool", browser);
+		return reused;
+	}
+
 	/**
 	 * Si occupa di settare correttamente il path del webdriver, eventualmente lanciando una eccezione se ci sono
 	 * errori.
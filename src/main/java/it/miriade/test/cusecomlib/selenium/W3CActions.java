@@ -0,0 +1,154 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.CommandInfo;
+import org.openqa.selenium.remote.ErrorHandler;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.RemoteWebElement;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Invio al driver di una sequenza di azioni di mouse e tastiera con un solo comando <code>POST /actions</code> del
+ * protocollo W3C WebDriver. Selenium 3.0.1 non espone questo comando (le {@link org.openqa.selenium.interactions.Actions}
+ * inviano un comando per ogni passo), perciò viene aggiunto all'executor del driver al primo utilizzo.<br/>
+ * Se il driver non supporta il comando (driver non {@link RemoteWebDriver} o che parla il vecchio protocollo JSON Wire)
+ * {@link #perform(WebDriver, List)} ritorna FALSE e il driver viene ricordato, così che i chiamanti possano eseguire i
+ * passi uno alla volta senza riprovare ogni volta.
+ *
+ * @see <a href="https://www.w3.org/TR/webdriver/#actions">W3C WebDriver - Actions</a>
+ * @author svaponi
+ */
+public class W3CActions {
+
+	/**
+	 * Nome del comando
+	 */
+	public static final String ACTIONS = "actions";
+
+	/**
+	 * Chiave con cui il protocollo W3C identifica gli elementi
+	 */
+	public static final String ELEMENT_KEY = "element-6066-11e4-a52e-4f735466cecf";
+
+	private static final Logger log = LoggerFactory.getLogger(W3CActions.class);
+
+	// driver che hanno rifiutato il comando
+	private static final Map<WebDriver, Boolean> unsupported = Collections.synchronizedMap(new WeakHashMap<>());
+
+	// executor HTTP a cui il comando è già stato aggiunto
+	private static final Map<CommandExecutor, Boolean> defined = Collections.synchronizedMap(new WeakHashMap<>());
+
+	// HttpCommandExecutor.defineCommand, che è protected; null se non accessibile
+	private static final Method DEFINE_COMMAND = defineCommand();
+
+	private W3CActions() {
+		super();
+	}
+
+	/**
+	 * @param driver
+	 * @return FALSE se il driver sicuramente non supporta le azioni W3C
+	 */
+	public static boolean supports(WebDriver driver) {
+		return driver instanceof RemoteWebDriver && !unsupported.containsKey(driver);
+	}
+
+	/**
+	 * Esegue le azioni con un solo comando.
+	 *
+	 * @param driver
+	 * @param sources
+	 *            sorgenti di input (<code>key</code>, <code>pointer</code>, ...) con le rispettive azioni, come da
+	 *            specifica W3C
+	 * @return TRUE se le azioni sono state eseguite, FALSE se il driver non supporta il comando
+	 * @throws WebDriverException
+	 *             se il driver supporta il comando ma le azioni falliscono
+	 */
+	public static boolean perform(WebDriver driver, List<Map<String, Object>> sources) {
+		if (!supports(driver))
+			return false;
+		RemoteWebDriver remote = (RemoteWebDriver) driver;
+		if (!define(remote.getCommandExecutor())) {
+			unsupported.put(driver, Boolean.TRUE);
+			return false;
+		}
+		try {
+			Response response = remote.getCommandExecutor().execute(new Command(remote.getSessionId(), ACTIONS, Collections.singletonMap(ACTIONS, sources)));
+			new ErrorHandler(true).throwIfResponseFailed(response, 0);
+			return true;
+		} catch (UnsupportedCommandException | UnsupportedOperationException e) {
+			log.debug("W3C actions not supported by {}: {}", remote.getCapabilities().getBrowserName(), e.getMessage());
+			unsupported.put(driver, Boolean.TRUE);
+			return false;
+		} catch (IOException e) {
+			throw new WebDriverException(e);
+		}
+	}
+
+	/**
+	 * @param el
+	 * @return riferimento all'elemento da usare come <code>origin</code> di un <code>pointerMove</code>
+	 */
+	public static Map<String, Object> element(WebElement el) {
+		if (!(el instanceof RemoteWebElement))
+			throw new WebDriverException("Not a remote element: " + el);
+		String id = ((RemoteWebElement) el).getId();
+		Map<String, Object> ref = new HashMap<>();
+		ref.put(ELEMENT_KEY, id);
+		// per i driver che leggono ancora la chiave del protocollo JSON Wire
+		ref.put("ELEMENT", id);
+		return ref;
+	}
+
+	/**
+	 * Aggiunge il comando agli executor HTTP, che altrimenti non lo saprebbero codificare
+	 */
+	private static boolean define(CommandExecutor executor) {
+		while (executor instanceof CountingCommandExecutor)
+			executor = ((CountingCommandExecutor) executor).getDelegate();
+		if (!(executor instanceof HttpCommandExecutor))
+			// es. FakeCommandExecutor, che lo gestisce direttamente
+			return true;
+		if (defined.containsKey(executor))
+			return true;
+		if (DEFINE_COMMAND == null)
+			return false;
+		try {
+			DEFINE_COMMAND.invoke(executor, ACTIONS, new CommandInfo("/session/:sessionId/actions", HttpMethod.POST));
+			defined.put(executor, Boolean.TRUE);
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			log.debug("Cannot define W3C actions command: {}", e.getMessage());
+			return false;
+		}
+	}
+
+	private static Method defineCommand() {
+		try {
+			Method define = HttpCommandExecutor.class.getDeclaredMethod("defineCommand", String.class, CommandInfo.class);
+			define.setAccessible(true);
+			return define;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			log.debug("Cannot access HttpCommandExecutor.defineCommand: {}", e.getMessage());
+			return null;
+		}
+	}
+
+}
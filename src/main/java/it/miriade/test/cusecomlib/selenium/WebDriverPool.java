@@ -0,0 +1,280 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.miriade.test.cusecomlib.CuseDefaultSpec;
+
+/**
+ * Pool di sessioni del {@link WebDriver}. L'avvio di un browser è il costo fisso più alto di una esecuzione, perciò
+ * invece di chiudere il driver il {@link SeleniumWebDriverWrapper} lo restituisce al pool, che lo ripulisce (cookies,
+ * storage, finestre) e lo tiene inattivo in attesa della prossima richiesta con la stessa chiave (browser e
+ * capabilities).<br/>
+ * Le sessioni non più attive oppure più vecchie di {@link CuseDefaultSpec#WEBDRIVER_POOL_MAX_AGE} vengono chiuse invece
+ * di essere riusate. Alla chiusura della JVM tutte le sessioni inattive vengono chiuse.
+ * <br/>
+ * Il pool è thread-safe e il numero di sessioni inattive è limitato da {@link CuseDefaultSpec#WEBDRIVER_POOL_SIZE}.
+ *
+ * @author svaponi
+ */
+public class WebDriverPool {
+
+	private static final Logger log = LoggerFactory.getLogger(WebDriverPool.class);
+	private static final WebDriverPool instance = new WebDriverPool(0, 0);
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(instance::shutdown, "webdriver-pool-shutdown"));
+	}
+
+	/**
+	 * Script che svuota local e session storage della pagina corrente
+	 */
+	private static final String clearStorageScript = "try { window.localStorage.clear(); } catch (e) {} try { window.sessionStorage.clear(); } catch (e) {}";
+
+	private final Map<String, Deque<WebDriver>> idle = new HashMap<>();
+	private final Map<WebDriver, Long> createdAt = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private volatile int maxIdle;
+	private volatile long maxAgeMillis;
+
+	/**
+	 * @param maxIdle
+	 *            numero massimo di sessioni inattive, se 0 il pool è disabilitato
+	 * @param maxAgeMillis
+	 *            età massima in millisecondi di una sessione, se 0 nessun limite
+	 */
+	public WebDriverPool(int maxIdle, long maxAgeMillis) {
+		super();
+		this.maxIdle = maxIdle;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * @return istanza condivisa dai {@link SeleniumWebDriverWrapper} della JVM
+	 */
+	public static WebDriverPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * JSON-like syntax
+	 */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ": {\n\t maxIdle: " + maxIdle + ",\n\t idle: " + idleCount() + ",\n\t hits: " + hits + ",\n\t misses: " + misses + ",\n\t evictions: " + evictions + " \n}";
+	}
+
+	/**
+	 * Aggiorna i limiti del pool. Se il numero di sessioni inattive si riduce, quelle in eccesso vengono chiuse al
+	 * prossimo {@link #release(String, WebDriver)}.
+	 *
+	 * @param maxIdle
+	 * @param maxAgeMillis
+	 */
+	public void configure(int maxIdle, long maxAgeMillis) {
+		this.maxIdle = maxIdle;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	public boolean isEnabled() {
+		return maxIdle > 0;
+	}
+
+	/**
+	 * Ritorna una sessione inattiva registrata con la chiave in input, scartando quelle non più attive o troppo
+	 * vecchie.
+	 *
+	 * @param key
+	 *            chiave che identifica browser e capabilities della sessione
+	 * @return la sessione, oppure null se non ce ne sono di disponibili (il chiamante deve crearne una nuova e
+	 *         registrarla con {@link #register(WebDriver)})
+	 */
+	public WebDriver acquire(String key) {
+		while (true) {
+			WebDriver driver;
+			synchronized (idle) {
+				Deque<WebDriver> sessions = idle.get(key);
+				driver = sessions == null ? null : sessions.pollFirst();
+			}
+			if (driver == null) {
+				misses.incrementAndGet();
+				log.debug("WebDriver pool miss for {}", key);
+				return null;
+			}
+			if (isExpired(driver) || !isHealthy(driver)) {
+				evict(driver);
+				continue;
+			}
+			hits.incrementAndGet();
+			log.debug("WebDriver pool hit for {}", key);
+			return driver;
+		}
+	}
+
+	/**
+	 * Registra una sessione appena creata, per poterne calcolare l'età. Se la sessione è già registrata non fa nulla.
+	 *
+	 * @param driver
+	 */
+	public void register(WebDriver driver) {
+		createdAt.putIfAbsent(driver, System.currentTimeMillis());
+	}
+
+	/**
+	 * Dimentica una sessione chiusa al di fuori del pool.
+	 *
+	 * @param driver
+	 */
+	public void unregister(WebDriver driver) {
+		createdAt.remove(driver);
+	}
+
+	/**
+	 * Restituisce la sessione al pool: se è ancora valida viene ripulita (vedi {@link #reset(WebDriver)}) e tenuta
+	 * inattiva, altrimenti (pool pieno, sessione scaduta o non attiva) viene chiusa.
+	 *
+	 * @param key
+	 *            chiave che identifica browser e capabilities della sessione
+	 * @param driver
+	 */
+	public void release(String key, WebDriver driver) {
+		if (driver == null)
+			return;
+		if (!isEnabled() || isExpired(driver) || !reset(driver)) {
+			evict(driver);
+			return;
+		}
+		synchronized (idle) {
+			if (idleCount() < maxIdle) {
+				idle.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(driver);
+				log.debug("WebDriver session returned to pool for {}", key);
+				return;
+			}
+		}
+		evict(driver);
+	}
+
+	/**
+	 * Riporta la sessione ad uno stato pulito: chiude le finestre secondarie, svuota local e session storage, cancella i
+	 * cookies e naviga su <code>about:blank</code>.
+	 *
+	 * @param driver
+	 * @return FALSE se la sessione non risponde e quindi non è riusabile
+	 */
+	public boolean reset(WebDriver driver) {
+		try {
+			Set<String> handles = driver.getWindowHandles();
+			String main = handles.iterator().next();
+			for (String handle : handles)
+				if (!handle.equals(main)) {
+					driver.switchTo().window(handle);
+					driver.close();
+				}
+			driver.switchTo().window(main);
+			if (driver instanceof JavascriptExecutor)
+				try {
+					((JavascriptExecutor) driver).executeScript(clearStorageScript);
+				} catch (RuntimeException e) {
+					log.debug("Cannot clear storage: {}", e.getMessage());
+				}
+			driver.manage().deleteAllCookies();
+			driver.get("about:blank");
+			return true;
+		} catch (RuntimeException e) {
+			log.debug("Cannot reset WebDriver session: {}", e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Chiude tutte le sessioni inattive. Invocato alla chiusura della JVM.
+	 */
+	public void shutdown() {
+		List<WebDriver> drivers = new ArrayList<>();
+		synchronized (idle) {
+			idle.values().forEach(drivers::addAll);
+			idle.clear();
+		}
+		drivers.forEach(this::quit);
+		if (hits.get() + misses.get() > 0)
+			log.info("WebDriver pool stats: hits={}, misses={}, evictions={}", hits, misses, evictions);
+	}
+
+	/**
+	 * @return numero di sessioni inattive nel pool
+	 */
+	public int idleCount() {
+		synchronized (idle) {
+			return idle.values().stream().mapToInt(Deque::size).sum();
+		}
+	}
+
+	/**
+	 * @return numero di richieste soddisfatte con una sessione del pool
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return numero di richieste per cui non c'era una sessione disponibile
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return numero di sessioni chiuse dal pool perchè non riusabili
+	 */
+	public long evictions() {
+		return evictions.get();
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	private boolean isExpired(WebDriver driver) {
+		Long created = createdAt.get(driver);
+		return maxAgeMillis > 0 && created != null && System.currentTimeMillis() - created > maxAgeMillis;
+	}
+
+	private boolean isHealthy(WebDriver driver) {
+		try {
+			return !driver.getWindowHandles().isEmpty();
+		} catch (RuntimeException e) {
+			log.debug("Unhealthy WebDriver session: {}", e.getMessage());
+			return false;
+		}
+	}
+
+	private void evict(WebDriver driver) {
+		evictions.incrementAndGet();
+		quit(driver);
+	}
+
+	private void quit(WebDriver driver) {
+		createdAt.remove(driver);
+		try {
+			driver.quit();
+		} catch (RuntimeException e) {
+			log.debug("Cannot quit WebDriver session: {}", e.getMessage());
+		}
+		BrowserProfile.deleteCacheDir(driver);
+	}
+}
@@ -0,0 +1,75 @@
+package it.miriade.test.cusecomlib.times;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Strategia con cui il {@link PollingEngine} calcola l'intervallo tra una ripetizione e l'altra del polling. Nello YAML
+ * si imposta con la chiave {@value Times#BACKOFF} dei {@link Times}, esempio:
+ *
+ * <pre>
+ * times:
+ *   loading:
+ *     delay: 100
+ *     max_waiting_time: 10000
+ *     backoff: exponential
+ *     factor: 2
+ *     max_delay: 1000
+ * </pre>
+ *
+ * @author svaponi
+ */
+public enum Backoff {
+
+	/**
+	 * Intervallo costante pari a {@link Times#delay} (comportamento storico)
+	 */
+	FIXED,
+
+	/**
+	 * Intervallo che parte da {@link Times#delay} e viene moltiplicato per {@link Times#factor} ad ogni ripetizione,
+	 * fino a {@link Times#maxDelay}
+	 */
+	EXPONENTIAL,
+
+	/**
+	 * Come {@link #EXPONENTIAL}, ma l'intervallo è scelto a caso tra {@link Times#delay} e il valore esponenziale, per
+	 * non sincronizzare più polling sullo stesso evento
+	 */
+	JITTER;
+
+	/**
+	 * Calcola l'intervallo della prossima ripetizione.
+	 *
+	 * @param previous
+	 *            intervallo appena atteso (ms)
+	 * @param times
+	 *            tempi del polling
+	 * @return prossimo intervallo (ms)
+	 */
+	public long next(long previous, Times times) {
+		long base = times.delay();
+		if (this == FIXED)
+			return base;
+		long max = times.maxDelay != null ? times.maxDelay : Long.MAX_VALUE;
+		long grown = (long) Math.min((double) max, Math.max(previous, base) * times.factor());
+		if (this == JITTER && grown > base)
+			return ThreadLocalRandom.current().nextLong(base, grown + 1);
+		return grown;
+	}
+
+	/**
+	 * Come {@link #valueOf(String)} ma case-insensitive e con {@link #FIXED} di default.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public static Backoff parse(String name) {
+		if (name == null || name.trim().isEmpty())
+			return FIXED;
+		try {
+			return valueOf(name.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid backoff: " + name);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package it.miriade.test.cusecomlib.times;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link PollingEngine.Sleeper} che attende nel browser tramite un <code>MutationObserver</code>: l'attesa termina
+ * non appena il DOM della pagina cambia, oppure allo scadere dell'intervallo. In questo modo una condizione che si
+ * avvera subito dopo un controllo non deve aspettare tutto l'intervallo del polling.<br/>
+ * Se lo script asincrono fallisce (es. per un cambio di pagina o un driver senza supporto a JavaScript) attende il
+ * tempo rimanente con {@link Thread#sleep(long)}.<br/>
+ * <strong>ATTENZIONE</strong>: l'intervallo deve essere inferiore al timeout degli script
+ * ({@code webdriver.timeouts.script}).
+ *
+ * @see Times#wakeOnDomChange
+ * @author svaponi
+ */
+public class DomChangeSleeper implements PollingEngine.Sleeper {
+
+	private static final Logger log = LoggerFactory.getLogger(DomChangeSleeper.class);
+
+	/**
+	 * Script asincrono: argomento 0 è l'intervallo massimo in ms, l'ultimo argomento è la callback di Selenium
+	 */
+	static final String script = "var done = arguments[arguments.length - 1], t, o = new MutationObserver(function() { clearTimeout(t); o.disconnect(); done(true); });"
+		+ " o.observe(document, { childList: true, subtree: true, attributes: true, characterData: true });"
+		+ " t = setTimeout(function() { o.disconnect(); done(false); }, arguments[0]);";
+
+	private final WebDriver driver;
+
+	public DomChangeSleeper(WebDriver driver) {
+		super();
+		this.driver = driver;
+	}
+
+	@Override
+	public void sleep(long millis) throws InterruptedException {
+		long start = System.nanoTime();
+		if (driver instanceof JavascriptExecutor)
+			try {
+				Object changed = ((JavascriptExecutor) driver).executeAsyncScript(script, millis);
+				log.trace("DOM changed: {}", changed);
+				return;
+			} catch (WebDriverException e) {
+				log.debug("Cannot wait for DOM changes: {}", e.getMessage());
+			}
+		long remaining = millis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		if (remaining > 0)
+			Thread.sleep(remaining);
+	}
+}
@@ -0,0 +1,149 @@
+package it.miriade.test.cusecomlib.times;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.excep.PollingTimeoutException;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+
+/**
+ * Motore del polling usato da {@link CuseUtil#pollingWithLog(String, WhileTrueAction, Times)}. Il tempo trascorso è
+ * misurato con un orologio monotono ({@link System#nanoTime()}) e non sommando gli intervalli, quindi il tempo massimo
+ * {@link Times#maxWaitingTime} è una scadenza rigida anche quando {@link WhileTrueAction#isTrue()} è lento: l'ultima
+ * attesa viene accorciata per non sforare la scadenza.<br/>
+ * L'intervallo tra una ripetizione e l'altra è calcolato dal {@link Backoff} dei {@link Times}, mentre l'attesa vera e
+ * propria è delegata ad uno {@link Sleeper}, che può terminare in anticipo (vedi {@link DomChangeSleeper}).<br/>
+ * Le ripetizioni e le scadenze sono contate nelle {@link CuseMetrics} ({@link CuseMetrics#POLLING_ITERATIONS} e
+ * {@link CuseMetrics#POLLING_TIMEOUTS}).
+ *
+ * @author svaponi
+ */
+public class PollingEngine {
+
+	/**
+	 * Strategia di attesa tra una ripetizione e l'altra del polling.
+	 */
+	@FunctionalInterface
+	public interface Sleeper {
+
+		/**
+		 * Attende al massimo <code>millis</code> millisecondi, eventualmente ritornando prima.
+		 *
+		 * @param millis
+		 * @throws InterruptedException
+		 */
+		void sleep(long millis) throws InterruptedException;
+	}
+
+	/**
+	 * Attesa semplice con {@link Thread#sleep(long)}
+	 */
+	public static final Sleeper THREAD_SLEEPER = Thread::sleep;
+
+	private static final Logger log = LoggerFactory.getLogger(PollingEngine.class);
+	private static final NumberFormat decimal = new DecimalFormat("#0.00");
+
+	private final LongSupplier nanoClock;
+	private final Sleeper sleeper;
+	private final CuseMetrics metrics = CuseMetrics.getInstance();
+
+	public PollingEngine() {
+		this(System::nanoTime, THREAD_SLEEPER);
+	}
+
+	public PollingEngine(Sleeper sleeper) {
+		this(System::nanoTime, sleeper);
+	}
+
+	/**
+	 * @param nanoClock
+	 *            orologio monotono in nanosecondi
+	 * @param sleeper
+	 *            strategia di attesa
+	 */
+	public PollingEngine(LongSupplier nanoClock, Sleeper sleeper) {
+		super();
+		this.nanoClock = nanoClock;
+		this.sleeper = sleeper;
+	}
+
+	/**
+	 * Ripete l'azione finchè {@link WhileTrueAction#isTrue()} torna TRUE oppure fino alla scadenza
+	 * {@link Times#maxWaitingTime}, obbligatorio: un polling senza scadenza non terminerebbe mai.
+	 *
+	 * @param logMessage
+	 *            messaggio da riportare nel log
+	 * @param action
+	 *            azione da compiere
+	 * @param times
+	 *            tempi del polling
+	 * @return millisecondi trascorsi dall'inizio del polling (esclusa la pausa {@link Times#startAfter})
+	 * @throws PollingTimeoutException
+	 *             se la scadenza arriva prima che l'azione torni FALSE
+	 * @throws IllegalArgumentException
+	 *             se manca {@link Times#maxWaitingTime}
+	 */
+	public long poll(String logMessage, WhileTrueAction action, Times times) throws PollingTimeoutException, IllegalArgumentException {
+
+		if (times.maxWaitingTime == null)
+			throw new IllegalArgumentException("Tempi di attesa invalidi => manca " + Times.MAX_WAITING_TIME + " per il polling \"" + logMessage + "\"");
+
+		log.debug("Inizio polling \"{}\" - {}", logMessage, times);
+
+		if (times.startAfter == null)
+			log.info("{}...", logMessage);
+		else
+			log.info("{}... (comincio dopo {}s)", logMessage, decimal.format((double) times.startAfter / 1000));
+
+		// times.start_after = millisecondi dopo di cui cominciare il polling
+		if (times.startAfter != null && times.startAfter > 0)
+			sleep(times.startAfter);
+
+		long start = nanoClock.getAsLong();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(times.maxWaitingTime);
+		long delay = times.delay();
+
+		while (isTrue(action)) {
+			long now = nanoClock.getAsLong();
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - now);
+			if (remaining <= 0) {
+				metrics.increment(CuseMetrics.POLLING_TIMEOUTS);
+				throw new PollingTimeoutException("Ho aspettato troppo! (limite " + decimal.format((double) times.maxWaitingTime / 1000) + "s)");
+			}
+
+			sleep(Math.min(delay, remaining));
+			log.info("{}... ({}s)", logMessage, decimal.format(elapsedMillis(start) / 1000.0));
+			delay = times.backoff.next(delay, times);
+		}
+
+		return elapsedMillis(start);
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	private boolean isTrue(WhileTrueAction action) {
+		metrics.increment(CuseMetrics.POLLING_ITERATIONS);
+		return action.isTrue();
+	}
+
+	private long elapsedMillis(long start) {
+		return TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - start);
+	}
+
+	private void sleep(long millis) {
+		try {
+			sleeper.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PollingTimeoutException("Polling interrotto", e);
+		}
+	}
+}
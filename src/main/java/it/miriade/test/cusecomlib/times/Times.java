@@ -15,6 +15,20 @@ public class Times {
 	public static final String DELAY = "delay";
 	public static final String MAX_WAITING_TIME = "max_waiting_time";
 	public static final String START_AFTER = "start_after";
+	public static final String BACKOFF = "backoff";
+	public static final String MAX_DELAY = "max_delay";
+	public static final String FACTOR = "factor";
+	public static final String WAKE_ON_DOM_CHANGE = "wake_on_dom_change";
+
+	/**
+	 * Intervallo di default del polling se manca {@link #delay}
+	 */
+	public static final long DEFAULT_DELAY = 250;
+
+	/**
+	 * Moltiplicatore di default per {@link Backoff#EXPONENTIAL} e {@link Backoff#JITTER}
+	 */
+	public static final double DEFAULT_FACTOR = 2.0;
 
 	/**
 	 * Se l'oggetto è in input ad un metodo wait() allora {@link #delay} è il tempo di attesa.<br/>
@@ -36,38 +50,59 @@ public class Times {
 	 */
 	public final Long startAfter;
 
+	/**
+	 * Strategia per calcolare l'intervallo tra una ripetizione e l'altra del polling, di default {@link Backoff#FIXED}
+	 */
+	public final Backoff backoff;
+
+	/**
+	 * Intervallo massimo del polling con {@link Backoff#EXPONENTIAL} e {@link Backoff#JITTER}
+	 */
+	public final Long maxDelay;
+
+	/**
+	 * Moltiplicatore dell'intervallo con {@link Backoff#EXPONENTIAL} e {@link Backoff#JITTER}
+	 */
+	public final Double factor;
+
+	/**
+	 * Se TRUE il polling viene risvegliato non appena il DOM della pagina cambia, invece di attendere tutto l'intervallo
+	 * (vedi {@link DomChangeSleeper})
+	 */
+	public final boolean wakeOnDomChange;
+
 	public Times() {
-		super();
-		this.delay = null;
-		this.maxWaitingTime = null;
-		this.startAfter = null;
+		this(null, null, null, null, null, null, false);
 	}
 
 	public Times(Number delay) {
-		super();
-		this.delay = Long.parseLong(delay.toString());
-		this.maxWaitingTime = null;
-		this.startAfter = null;
+		this(Long.parseLong(delay.toString()), null, null, null, null, null, false);
 	}
 
 	public Times(Number delay, Number maxWaitingTime) {
-		super();
-		this.delay = Long.parseLong(delay.toString());
-		this.maxWaitingTime = Long.parseLong(maxWaitingTime.toString());
-		this.startAfter = null;
+		this(Long.parseLong(delay.toString()), Long.parseLong(maxWaitingTime.toString()), null, null, null, null, false);
 	}
 
 	public Times(Number delay, Number maxWaitingTime, Number startAfter) {
+		this(Long.parseLong(delay.toString()), Long.parseLong(maxWaitingTime.toString()), Long.parseLong(startAfter.toString()), null, null, null, false);
+	}
+
+	public Times(Long delay, Long maxWaitingTime, Long startAfter, Backoff backoff, Long maxDelay, Double factor, boolean wakeOnDomChange) {
 		super();
-		this.delay = Long.parseLong(delay.toString());
-		this.maxWaitingTime = Long.parseLong(maxWaitingTime.toString());
-		this.startAfter = Long.parseLong(startAfter.toString());
+		this.delay = delay;
+		this.maxWaitingTime = maxWaitingTime;
+		this.startAfter = startAfter;
+		this.backoff = backoff == null ? Backoff.FIXED : backoff;
+		this.maxDelay = maxDelay;
+		this.factor = factor;
+		this.wakeOnDomChange = wakeOnDomChange;
 	}
 
 	/**
 	 * Costruisce un {@link Times} con i dati in mappa. La mappa deve contenere le chiavi {@value #DELAY} e
 	 * {@value #MAX_WAITING_TIME} e {@value #START_AFTER}
-	 * rispettivamente con intervallo di attesa, tempo massimo e pausa iniziale.
+	 * rispettivamente con intervallo di attesa, tempo massimo e pausa iniziale. Opzionali {@value #BACKOFF},
+	 * {@value #MAX_DELAY}, {@value #FACTOR} e {@value #WAKE_ON_DOM_CHANGE}, vedi {@link Backoff}.
 	 * 
 	 * @param map
 	 */
@@ -81,6 +116,37 @@ public class Times {
 		this.delay = delay == null ? null : Long.parseLong(delay.toString());
 		this.maxWaitingTime = maxWaitingTime == null ? null : Long.parseLong(maxWaitingTime.toString());
 		this.startAfter = startAfter == null ? null : Long.parseLong(startAfter.toString());
+		Object backoff = map.get(BACKOFF);
+		Number maxDelay = (Number) map.get(MAX_DELAY);
+		Number factor = (Number) map.get(FACTOR);
+		Object wakeOnDomChange = map.get(WAKE_ON_DOM_CHANGE);
+		this.backoff = backoff == null ? Backoff.FIXED : Backoff.parse(backoff.toString());
+		this.maxDelay = maxDelay == null ? null : Long.parseLong(maxDelay.toString());
+		this.factor = factor == null ? null : factor.doubleValue();
+		this.wakeOnDomChange = wakeOnDomChange != null && Boolean.parseBoolean(wakeOnDomChange.toString());
+	}
+
+	/**
+	 * @param maxWaitingTime
+	 *            tempo massimo di attesa del polling
+	 * @return copia con il tempo massimo in input e gli altri tempi invariati
+	 */
+	public Times withMaxWaitingTime(long maxWaitingTime) {
+		return new Times(delay, maxWaitingTime, startAfter, backoff, maxDelay, factor, wakeOnDomChange);
+	}
+
+	/**
+	 * @return {@link #delay} oppure {@value #DEFAULT_DELAY} se mancante
+	 */
+	public long delay() {
+		return delay != null ? delay : DEFAULT_DELAY;
+	}
+
+	/**
+	 * @return {@link #factor} oppure {@value #DEFAULT_FACTOR} se mancante
+	 */
+	public double factor() {
+		return factor != null && factor > 1 ? factor : DEFAULT_FACTOR;
 	}
 
 	@Override
@@ -91,6 +157,14 @@ public class Times {
 			buf.append(", maxWaitingTime: " + maxWaitingTime);
 		if (startAfter != null)
 			buf.append(", startAfter: " + startAfter);
+		if (backoff != Backoff.FIXED)
+			buf.append(", backoff: " + backoff);
+		if (maxDelay != null)
+			buf.append(", maxDelay: " + maxDelay);
+		if (factor != null)
+			buf.append(", factor: " + factor);
+		if (wakeOnDomChange)
+			buf.append(", wakeOnDomChange: " + wakeOnDomChange);
 		buf.append(" }");
 		return buf.toString();
 	}
@@ -16,7 +16,7 @@ import it.miriade.test.cusecomlib.yaml.YamlSupport;
  */
 public class TimesFactory {
 
-	private final Logger log = LoggerFactory.getLogger(getClass());
+	private static final Logger log = LoggerFactory.getLogger(TimesFactory.class);
 
 	private YamlSupport _yaml;
 
@@ -81,18 +81,8 @@ public class TimesFactory {
 		if (args[0] instanceof String) {
 
 			String key = ((String) args[0]).toLowerCase();
-			Map<String, ?> timesMap = yaml().getMap("?.?", CuseDefaultSpec.YAML_SUPPORT_TIMES_PREFIX, key);
-			if (timesMap == null)
-				throw new IllegalArgumentException("Tempi di attesa invalidi => manca la chiave \"" + key + "\" in common.yml");
-
-			try {
-
-				return new Times(timesMap);
-
-			} catch (Exception e) {
-				log.debug(e.getMessage(), e);
-				throw new IllegalArgumentException("Tempi di attesa invalidi => controllare i valori della chiave \"" + key + "\" in common.yml");
-			}
+			// i tempi letti dallo YAML restano in cache finchè lo YAML non viene ricaricato
+			return yaml().cached(CuseDefaultSpec.YAML_SUPPORT_TIMES_PREFIX, key, TimesFactory::load);
 
 		} else {
 
@@ -113,4 +103,23 @@ public class TimesFactory {
 			}
 		}
 	}
-}
\ No newline at end of file
+
+	/*
+	 * Costruisce i tempi di attesa a partire dalla chiave dello YAML. Statico, così che la cache dello YAML non richieda
+	 * un'istanza del loader per ogni lettura
+	 */
+	private static Times load(YamlSupport yaml, String key) {
+		Map<String, ?> timesMap = yaml.getMap("?.?", CuseDefaultSpec.YAML_SUPPORT_TIMES_PREFIX, key);
+		if (timesMap == null)
+			throw new IllegalArgumentException("Tempi di attesa invalidi => manca la chiave \"" + key + "\" in common.yml");
+
+		try {
+
+			return new Times(timesMap);
+
+		} catch (Exception e) {
+			log.debug(e.getMessage(), e);
+			throw new IllegalArgumentException("Tempi di attesa invalidi => controllare i valori della chiave \"" + key + "\" in common.yml");
+		}
+	}
+}
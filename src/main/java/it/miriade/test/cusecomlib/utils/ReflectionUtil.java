@@ -3,6 +3,8 @@ package it.miriade.test.cusecomlib.utils;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,31 +41,57 @@ public class ReflectionUtil extends SecurityManager {
 
 	private final static Logger slog = LoggerFactory.getLogger(ReflectionUtil.class);
 
+	/**
+	 * Per ogni classe cercata, l'esito del confronto con le classi (per nome) incontrate nello stack. Evita di
+	 * ripetere <code>Class.forName</code> sugli stessi frame ad ogni invocazione.
+	 */
+	private static final ConcurrentMap<Class<?>, ConcurrentMap<String, Boolean>> assignableCache = new ConcurrentHashMap<>();
+
 	/**
 	 * Il metodo ritorna lo {@link StackTraceElement} corrispondente al primo oggetto che, percorrendo lo stack delle
 	 * chiamate, è, estende o implementa la classe passata in input. Per percorrere lo stack delle chiamate viene usato
 	 * lo StackTrace del current thread.<br/>
 	 * A differenza di {@link #getCaller(Class)} qui, tornando un {@link StackTraceElement}, abbiamo la possibilità di
-	 * estrarre anche il metodo chiamante e la riga esatta del codice.
+	 * estrarre anche il metodo chiamante e la riga esatta del codice.<br/>
+	 * Le classi dello stack vengono caricate (senza inizializzarle) solo la prima volta che vengono incontrate, poi
+	 * l'esito è in cache.
 	 * 
 	 * @param superClass
 	 * @return
 	 */
 	public static StackTraceElement getStackElement(Class<?> superClass) {
-		slog.trace("Inspecting call hierarchy for a subclass of " + superClass + "...");
-		for (StackTraceElement ste : Thread.currentThread().getStackTrace())
-			try {
-				Class<?> clazz = Class.forName(ste.getClassName());
-				if (superClass == null || superClass.isAssignableFrom(clazz)) {
-					slog.trace("Found " + clazz);
-					return ste;
-				}
-			} catch (Exception e) {
-				slog.error(e.getMessage());
+		slog.trace("Inspecting call hierarchy for a subclass of {}...", superClass);
+		StackTraceElement[] stack = new Throwable().getStackTrace();
+		if (superClass == null)
+			return stack[0];
+		ConcurrentMap<String, Boolean> cache = assignableCache.computeIfAbsent(superClass, key -> new ConcurrentHashMap<>());
+		for (StackTraceElement ste : stack) {
+			Boolean assignable = cache.get(ste.getClassName());
+			if (assignable == null) {
+				assignable = isAssignable(superClass, ste.getClassName());
+				cache.putIfAbsent(ste.getClassName(), assignable);
+			}
+			if (assignable) {
+				slog.trace("Found {}", ste.getClassName());
+				return ste;
 			}
+		}
 		throw new RuntimeException("Subclass of " + superClass + " not found");
 	}
 
+	private static boolean isAssignable(Class<?> superClass, String className) {
+		try {
+			return superClass.isAssignableFrom(Class.forName(className, false, ReflectionUtil.class.getClassLoader()));
+		} catch (Throwable e) {
+			try {
+				return superClass.isAssignableFrom(Class.forName(className, false, Thread.currentThread().getContextClassLoader()));
+			} catch (Throwable e2) {
+				slog.debug("Cannot load class {}: {}", className, e2.getMessage());
+				return false;
+			}
+		}
+	}
+
 	/*
 	 * Formattazione degli StackTraceElement
 	 */
@@ -63,6 +63,10 @@ public class SetupUtil implements CuseDefaultSpec {
 				config.closeBrowser(Boolean.parseBoolean((String) properties.get(CLOSE_BROWSER)));
 			if (properties.containsKey(YAML_SUPPORT_CLASSPATH_DIR))
 				config.yamlClasspathDir((String) properties.get(YAML_SUPPORT_CLASSPATH_DIR));
+			if (properties.containsKey(YAML_HOT_RELOAD))
+				config.yamlHotReload(Boolean.parseBoolean((String) properties.get(YAML_HOT_RELOAD)));
+			if (properties.containsKey(YAML_WATCH_DIR))
+				config.yamlWatchDir((String) properties.get(YAML_WATCH_DIR));
 			if (properties.containsKey(USE_PROPERTY_FILE))
 				config.useProperties((String) properties.get(USE_PROPERTY_FILE));
 			if (properties.containsKey(WHAT_TO_DO_ON_FAIL))
@@ -87,6 +91,54 @@ public class SetupUtil implements CuseDefaultSpec {
 			if (properties.containsKey(WEBDRIVER_WINDOW_POSITION))
 				config.windowPos((String) properties.get(WEBDRIVER_WINDOW_POSITION));
 
+			if (properties.containsKey(WEBDRIVER_POOL_SIZE))
+				config.poolSize(Integer.parseInt((String) properties.get(WEBDRIVER_POOL_SIZE)));
+			if (properties.containsKey(WEBDRIVER_POOL_MAX_AGE))
+				config.poolMaxAge(Double.parseDouble((String) properties.get(WEBDRIVER_POOL_MAX_AGE)));
+			if (properties.containsKey(WEBDRIVER_FAKE_LATENCY))
+				config.fakeLatency(Double.parseDouble((String) properties.get(WEBDRIVER_FAKE_LATENCY)));
+			if (properties.containsKey(WEBDRIVER_SCRIPT_LOCATOR))
+				config.scriptLocator(Boolean.parseBoolean((String) properties.get(WEBDRIVER_SCRIPT_LOCATOR)));
+			if (properties.containsKey(WEBDRIVER_EXPLICIT_WAIT))
+				config.explicitWait(Boolean.parseBoolean((String) properties.get(WEBDRIVER_EXPLICIT_WAIT)));
+			if (properties.containsKey(WEBDRIVER_ACTION_ATTEMPTS))
+				config.actionAttempts(Integer.parseInt((String) properties.get(WEBDRIVER_ACTION_ATTEMPTS)));
+			if (properties.containsKey(WEBDRIVER_ACTION_BACKOFF))
+				config.actionBackoff(Double.parseDouble((String) properties.get(WEBDRIVER_ACTION_BACKOFF)));
+
+			if (properties.containsKey(WEBDRIVER_PAGE_LOAD_STRATEGY))
+				config.pageLoadStrategy((String) properties.get(WEBDRIVER_PAGE_LOAD_STRATEGY));
+
+			if (properties.containsKey(WEBDRIVER_BLOCK_URLS))
+				config.blockUrls((String) properties.get(WEBDRIVER_BLOCK_URLS));
+
+			if (properties.containsKey(WEBDRIVER_BLOCK_UPSTREAM_PROXY))
+				config.blockUpstreamProxy((String) properties.get(WEBDRIVER_BLOCK_UPSTREAM_PROXY));
+
+			if (properties.containsKey(WEBDRIVER_BLOCK_RESOURCES))
+				config.blockResources((String) properties.get(WEBDRIVER_BLOCK_RESOURCES));
+
+			if (properties.containsKey(WEBDRIVER_PROFILE))
+				config.browserProfile((String) properties.get(WEBDRIVER_PROFILE));
+
+			if (properties.containsKey(SCREENSHOTS_DIR))
+				config.screenshotDir((String) properties.get(SCREENSHOTS_DIR));
+			if (properties.containsKey(SCREENSHOTS_QUEUE_SIZE))
+				config.screenshotQueueSize(Integer.parseInt((String) properties.get(SCREENSHOTS_QUEUE_SIZE)));
+			if (properties.containsKey(SCREENSHOTS_MAX_WIDTH))
+				config.screenshotMaxWidth(Integer.parseInt((String) properties.get(SCREENSHOTS_MAX_WIDTH)));
+			if (properties.containsKey(SCREENSHOTS_FORMAT))
+				config.screenshotFormat((String) properties.get(SCREENSHOTS_FORMAT));
+			if (properties.containsKey(SCREENSHOTS_DEDUP_THRESHOLD))
+				config.screenshotDedupThreshold(Integer.parseInt((String) properties.get(SCREENSHOTS_DEDUP_THRESHOLD)));
+
+			if (properties.containsKey(METRICS_FILE))
+				config.metricsFile((String) properties.get(METRICS_FILE));
+			if (properties.containsKey(METRICS_PROMETHEUS_FILE))
+				config.metricsPrometheusFile((String) properties.get(METRICS_PROMETHEUS_FILE));
+			if (properties.containsKey(METRICS_PORT))
+				config.metricsPort(Integer.parseInt((String) properties.get(METRICS_PORT)));
+
 		} catch (IOException e) {
 			log.warn("Loading properties failed! {}", e.getMessage());
 		}
@@ -3,8 +3,13 @@ package it.miriade.test.cusecomlib.yaml;
 import java.io.File;
 import java.io.FileInputStream;
 import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,6 +35,13 @@ import it.miriade.test.cusecomlib.excep.YamlWrongTypeException;
  * int age = yaml.getInteger("data.users[0].age");
  * </pre>
  * 
+ * Al caricamento il documento viene appiattito in un indice immutabile che associa ad ogni chiave completa (es.
+ * <code>data.users[0].name</code>) il suo valore, perciò ogni lettura è un singolo accesso alla mappa. Anche i
+ * template delle chiavi (es. <code>"?.users.?.userid"</code>) vengono compilati una sola volta.<br/>
+ * Documento, indice e oggetti derivati (vedi {@link #cached(String, String, BiFunction)}) formano uno snapshot immutabile che
+ * {@link #reload()} sostituisce in blocco: chi legge vede sempre o il documento precedente o quello nuovo, mai uno
+ * caricato a metà.
+ * 
  * @see <a href="http://yaml.org/spec/">http://yaml.org/spec/</a>
  * @author svaponi
  */
@@ -40,7 +52,13 @@ public class YamlSupport {
 	private String yamlPath;
 	private String yamlName;
 	private boolean throwOnInvalidKey;
-	private Map<String, Object> data;
+	private File yamlFile;
+	private volatile Snapshot snapshot;
+
+	/**
+	 * Cache dei template delle chiavi compilati, condivisa tra tutti gli YAML
+	 */
+	private static final ConcurrentMap<String, String[]> keyTemplates = new ConcurrentHashMap<>();
 
 	/**
 	 * <strong>ATTENZIONE</strong>: il costruttore è definito a livello di accesso package per forzare l'utilizzo di
@@ -75,9 +93,9 @@ public class YamlSupport {
 			URL resource = YamlSupport.class.getClassLoader().getResource(yamlFilePath);
 			if (resource == null)
 				throw new IllegalArgumentException("Missing " + yamlFilePath);
-			File yamlFile = new File(resource.getPath());
+			this.yamlFile = new File(resource.getPath());
 			this.yamlName = StringUtils.stripFilenameExtension(yamlFile.getName());
-			data = (Map<String, Object>) new Yaml().load(new FileInputStream(yamlFile));
+			this.snapshot = load(yamlFile);
 		} catch (Exception e) {
 			throw new IllegalArgumentException("Impossibile leggere YAML file [" + yamlFilePath + "]: " + e.getMessage() + "");
 		}
@@ -91,6 +109,14 @@ public class YamlSupport {
 		return yamlPath;
 	}
 
+	/**
+	 * @return
+	 * 		file YAML letto
+	 */
+	public File getYamlFile() {
+		return yamlFile;
+	}
+
 	/**
 	 * @return
 	 * 		nome dello YAML (nome del file senza estensione)
@@ -110,6 +136,62 @@ public class YamlSupport {
 		return throwOnInvalidKey;
 	}
 
+	/**
+	 * Rilegge il file YAML e sostituisce il documento in un colpo solo, svuotando la cache degli oggetti derivati. Se
+	 * la lettura fallisce (es. file salvato a metà, vuoto o con sintassi errata) resta in uso il documento precedente.
+	 * 
+	 * @return TRUE se il documento è stato sostituito
+	 */
+	public boolean reload() {
+		return reload(yamlFile);
+	}
+
+	/**
+	 * Come {@link #reload()} ma legge il documento da un altro file, es. il sorgente di cui {@link #getYamlFile()} è la
+	 * copia nel classpath
+	 * 
+	 * @param source
+	 * @return TRUE se il documento è stato sostituito
+	 */
+	boolean reload(File source) {
+		try {
+			Snapshot reloaded = load(source);
+			if (reloaded.data == null)
+				throw new IllegalArgumentException("documento vuoto");
+			snapshot = reloaded;
+			log.info("Reloaded YAML file: {}", yamlPath);
+			return true;
+		} catch (Exception e) {
+			log.warn("Impossibile rileggere YAML file [{}]: {}", yamlPath, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Ritorna l'oggetto derivato dal documento associato alla chiave, costruendolo con <code>loader</code> la prima
+	 * volta. La cache è legata al documento corrente, quindi viene svuotata da {@link #reload()}. Serve alle factory
+	 * (es. hooks e tempi di attesa) per non ricostruire ogni volta gli stessi oggetti.<br/>
+	 * Se l'oggetto è già in cache non viene allocato nulla, purchè <code>loader</code> non catturi variabili (es. un
+	 * riferimento ad un costruttore o ad un metodo statico).
+	 * 
+	 * @param namespace
+	 *            tipologia degli oggetti derivati, deve essere univoca tra i diversi utilizzatori
+	 * @param key
+	 *            chiave dell'oggetto derivato
+	 * @param loader
+	 *            costruisce l'oggetto a partire da questo YAML e dalla chiave
+	 * @return oggetto derivato
+	 */
+	public <T> T cached(String namespace, String key, BiFunction<YamlSupport, String, T> loader) {
+		ConcurrentMap<String, Object> derived = snapshot.derived.get(namespace);
+		if (derived == null)
+			derived = snapshot.derived.computeIfAbsent(namespace, n -> new ConcurrentHashMap<>());
+		Object value = derived.get(key);
+		if (value == null)
+			value = derived.computeIfAbsent(key, k -> loader.apply(this, k));
+		return (T) value;
+	}
+
 	/*
 	 * Metodi per navigare la mappa usando la notazione delle property
 	 */
@@ -124,8 +206,15 @@ public class YamlSupport {
 	 *             se la key è invalida o inesistente
 	 */
 	public Object get(String key) throws YamlInvalidKeyException {
+		Snapshot current = snapshot;
+		Object indexed = key == null ? null : current.index.get(key);
+		if (indexed != null) {
+			log.trace("[{}] {} = {}", yamlName, key, indexed);
+			return indexed;
+		}
 		try {
-			Object result = recursiveGet(key, data);
+			// chiave non indicizzata: la navigazione della mappa gestisce i casi particolari (chiave vuota, ecc..)
+			Object result = recursiveGet(key, current.data);
 			log.trace("[{}] {} = {}", yamlName, key, result);
 			return result;
 		} catch (YamlInvalidKeyException e) {
@@ -356,16 +445,75 @@ public class YamlSupport {
 	}
 
 	/**
-	 * Costruisce la key inniettando i paramentri in input
+	 * Costruisce la key inniettando i paramentri in input. Il template viene diviso sui '?' una sola volta e poi
+	 * riusato; gli argomenti sono inseriti letteralmente (anche se contengono caratteri come '$' o '\\'). I '?' in
+	 * eccesso rispetto agli argomenti restano nella key, gli argomenti in eccesso vengono ignorati.
 	 * 
 	 * @param keyTemplate
 	 * @param args
 	 * @return key
 	 */
-	private String buildKey(String keyTemplate, Object... args) {
-		for (Object arg : args)
-			keyTemplate = keyTemplate.replaceFirst("\\?", arg == null ? "" : arg.toString());
-		return keyTemplate;
+	static String buildKey(String keyTemplate, Object... args) {
+		if (args.length == 0)
+			return keyTemplate;
+		String[] parts = keyTemplates.computeIfAbsent(keyTemplate, t -> t.split("\\?", -1));
+		StringBuilder key = new StringBuilder(keyTemplate.length() + 16 * args.length).append(parts[0]);
+		for (int i = 1; i < parts.length; i++) {
+			if (i <= args.length)
+				key.append(args[i - 1] == null ? "" : args[i - 1].toString());
+			else
+				key.append('?');
+			key.append(parts[i]);
+		}
+		return key.toString();
+	}
+
+	private static Snapshot load(File yamlFile) throws Exception {
+		try (FileInputStream input = new FileInputStream(yamlFile)) {
+			Map<String, Object> data = (Map<String, Object>) new Yaml().load(input);
+			return new Snapshot(data, buildIndex(data));
+		}
+	}
+
+	/**
+	 * Appiattisce il documento in un indice immutabile chiave completa -> valore, con le stesse chiavi accettate da
+	 * {@link #recursiveGet(String, Map)}: livelli separati da '.' e elementi delle liste con <code>[i]</code>. I
+	 * valori nulli non vengono indicizzati.
+	 * 
+	 * @param data
+	 * @return
+	 */
+	static Map<String, Object> buildIndex(Map<String, Object> data) {
+		Map<String, Object> index = new HashMap<>();
+		if (data != null)
+			flatten("", data, index);
+		return Collections.unmodifiableMap(index);
+	}
+
+	private static void flatten(String prefix, Map<?, ?> map, Map<String, Object> index) {
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			// le chiavi non stringa (es. numeri) o che contengono '.' e '[' non sono raggiungibili con la notazione delle
+			// property
+			if (!(entry.getKey() instanceof String) || entry.getValue() == null || ((String) entry.getKey()).indexOf('.') >= 0 || ((String) entry.getKey()).indexOf('[') >= 0)
+				continue;
+			String path = prefix + entry.getKey();
+			Object value = entry.getValue();
+			index.put(path, value);
+			if (value instanceof Map)
+				flatten(path + ".", (Map<?, ?>) value, index);
+			else if (value instanceof List) {
+				List<?> list = (List<?>) value;
+				for (int i = 0; i < list.size(); i++) {
+					Object item = list.get(i);
+					if (item == null)
+						continue;
+					String itemPath = path + "[" + i + "]";
+					index.put(itemPath, item);
+					if (item instanceof Map)
+						flatten(itemPath + ".", (Map<?, ?>) item, index);
+				}
+			}
+		}
 	}
 
 	/**
@@ -443,4 +591,21 @@ public class YamlSupport {
 			this.key = key;
 		}
 	}
+
+	/**
+	 * Documento letto dal file insieme al suo indice e agli oggetti derivati.
+	 * 
+	 * @author svaponi
+	 */
+	private static class Snapshot {
+		final Map<String, Object> data;
+		final Map<String, Object> index;
+		final ConcurrentMap<String, ConcurrentMap<String, Object>> derived = new ConcurrentHashMap<>();
+
+		Snapshot(Map<String, Object> data, Map<String, Object> index) {
+			super();
+			this.data = data;
+			this.index = index;
+		}
+	}
 }
@@ -1,34 +1,87 @@
 package it.miriade.test.cusecomlib.yaml;
 
-import java.util.HashMap;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 import it.miriade.test.cusecomlib.CuseDefaultSpec;
 import it.miriade.test.cusecomlib.CuseSetupConfiguration;
 import it.miriade.test.cusecomlib.cucumber.pageobjs.PageObject;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
 import it.miriade.test.cusecomlib.utils.ReflectionUtil;
 
 /**
  * Factory per creare oggetti di tipo {@link YamlSupport}.
- * Inoltre implementa una cache che evita di costruire più volte lo stesso oggetto.
+ * Inoltre implementa una cache che evita di costruire più volte lo stesso oggetto.<br/>
+ * La cache è thread-safe: se più thread chiedono contemporaneamente lo stesso YAML il file viene letto una sola volta
+ * e gli altri thread attendono il risultato. Se la lettura fallisce l'errore non resta in cache, quindi la richiesta
+ * successiva riprova a leggere il file.<br/>
+ * Con {@link CuseSetupConfiguration#yamlHotReload()} gli YAML già letti vengono ricaricati quando il file cambia (vedi
+ * {@link #watch()}).<br/>
+ * Hit, miss, errori e ricaricamenti della cache sono contati nelle {@link CuseMetrics}.
  * 
+ * @see #preload()
  * @author svaponi
  */
-public class YamlSupportFactory {
+public class YamlSupportFactory implements Closeable {
 
 	private final Logger log = LoggerFactory.getLogger(getClass());
-	private final Map<String, YamlSupport> yamls = new HashMap<>();
+	private final ConcurrentMap<String, CompletableFuture<YamlSupport>> yamls = new ConcurrentHashMap<>();
+	private final CuseMetrics metrics = CuseMetrics.getInstance();
 	private static final String YML_EXT = ".yml";
 
+	/**
+	 * Executor per il caricamento in background, creato alla prima invocazione di {@link #preload(String...)}
+	 */
+	private volatile ExecutorService preloader;
+
+	/**
+	 * Attesa in ms dopo una modifica prima di rileggere i file, per raggruppare gli eventi di un singolo salvataggio
+	 */
+	private static final long WATCH_DEBOUNCE = 100;
+
+	/**
+	 * Thread che osserva la cartella degli YAML, vedi {@link #watch()}
+	 */
+	private Thread watcher;
+	private WatchService watchService;
+	private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+
 	private CuseSetupConfiguration config;
 
 	public YamlSupportFactory(CuseSetupConfiguration config) {
 		super();
 		this.config = config;
+		if (config != null && config.yamlHotReload())
+			watch();
 	}
 
 	/**
@@ -52,18 +105,95 @@ public class YamlSupportFactory {
 	 */
 	public YamlSupport build(String yamlName) {
 		String yamlPath = path(yamlName);
-		if (yamls.containsKey(yamlPath))
-			return yamls.get(yamlPath);
+		CompletableFuture<YamlSupport> future = yamls.get(yamlPath);
+		if (future == null) {
+			CompletableFuture<YamlSupport> created = new CompletableFuture<>();
+			future = yamls.putIfAbsent(yamlPath, created);
+			if (future == null) {
+				metrics.increment(CuseMetrics.YAML_CACHE_MISSES);
+				return load(yamlPath, created);
+			}
+		}
+		metrics.increment(CuseMetrics.YAML_CACHE_HITS);
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw new IllegalArgumentException("Failed to build YamlSupport: " + e.getCause().getMessage());
+		}
+	}
+
+	/*
+	 * Legge il file e completa il future. Lo invoca solo il thread che ha inserito il future in cache.
+	 */
+	private YamlSupport load(String yamlPath, CompletableFuture<YamlSupport> future) {
 		try {
 			log.debug("Initializing {}({})", YamlSupport.class.getSimpleName(), yamlPath);
 			YamlSupport yaml = new YamlSupport(yamlPath);
-			yamls.put(yamlPath, yaml);
+			future.complete(yaml);
+			metrics.gauge(CuseMetrics.YAML_CACHE_SIZE).incrementAndGet();
 			return yaml;
 		} catch (Exception e) {
+			metrics.increment(CuseMetrics.YAML_LOAD_FAILURES);
+			yamls.remove(yamlPath, future);
+			future.completeExceptionally(e);
 			throw new IllegalArgumentException("Failed to build YamlSupport: " + e.getMessage());
 		}
 	}
 
+	/**
+	 * Avvia in background la lettura degli YAML che servono all'esecuzione: il comune, quello dell'ambiente
+	 * ({@link CuseSetupConfiguration#targetEnv()}) e tutti gli altri presenti nella cartella degli YAML (quelli dei
+	 * {@link PageObject}). Serve a sovrapporre il parsing degli YAML all'avvio del browser.
+	 * 
+	 * @return future completato quando tutti gli YAML sono stati letti (gli errori vengono ignorati e si ripresenteranno
+	 *         all'invocazione di {@link #build(String)})
+	 */
+	public CompletableFuture<Void> preload() {
+		Set<String> yamlNames = new LinkedHashSet<>();
+		yamlNames.add(CuseDefaultSpec.YAML_SUPPORT_COMMON_FILENAME);
+		yamlNames.add(config.targetEnv());
+		try {
+			Resource[] resources = new PathMatchingResourcePatternResolver().getResources("classpath*:" + path("*"));
+			for (Resource resource : resources)
+				yamlNames.add(resource.getFilename());
+		} catch (Exception e) {
+			log.debug("Cannot list YAML files: {}", e.getMessage());
+		}
+		return preload(yamlNames.toArray(new String[yamlNames.size()]));
+	}
+
+	/**
+	 * Avvia in background la lettura degli YAML in input.
+	 * 
+	 * @param yamlNames
+	 *            nomi degli YAML (estensione è opzionale)
+	 * @return future completato quando tutti gli YAML sono stati letti (gli errori vengono ignorati e si ripresenteranno
+	 *         all'invocazione di {@link #build(String)})
+	 */
+	public CompletableFuture<Void> preload(String... yamlNames) {
+		List<CompletableFuture<?>> futures = new ArrayList<>(yamlNames.length);
+		for (String yamlName : yamlNames)
+			if (!has(yamlName))
+				futures.add(CompletableFuture.runAsync(() -> build(yamlName), preloader()).exceptionally(e -> {
+					log.debug("Cannot preload {}: {}", yamlName, e.getMessage());
+					return null;
+				}));
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+	}
+
+	private ExecutorService preloader() {
+		if (preloader == null)
+			synchronized (this) {
+				if (preloader == null)
+					preloader = Executors.newFixedThreadPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), task -> {
+						Thread thread = new Thread(task, "yaml-preloader");
+						thread.setDaemon(true);
+						return thread;
+					});
+			}
+		return preloader;
+	}
+
 	/**
 	 * Ritorna lo {@link YamlSupport}. Lo YAML si deve chiamare come la classe (nome completo con anche il package +
 	 * estenzione .yml)
@@ -84,8 +214,158 @@ public class YamlSupportFactory {
 	 * @return booleano
 	 */
 	public boolean has(String yamlName) {
-		String yamlPath = path(yamlName);
-		return yamls.containsKey(yamlPath);
+		CompletableFuture<YamlSupport> future = yamls.get(path(yamlName));
+		return future != null && future.isDone() && !future.isCompletedExceptionally();
+	}
+
+	/**
+	 * Rilegge lo YAML se è già in cache, vedi {@link YamlSupport#reload()}. Se non è in cache non fa nulla: verrà letto
+	 * aggiornato alla prima invocazione di {@link #build(String)}.
+	 * 
+	 * @param yamlName
+	 *            nome dello YAML (estensione è opzionale)
+	 * @return TRUE se lo YAML è stato ricaricato
+	 */
+	public boolean reload(String yamlName) {
+		return reload(yamlName, null);
+	}
+
+	/*
+	 * Come reload(String), leggendo il documento da source se non null
+	 */
+	private boolean reload(String yamlName, File source) {
+		if (!has(yamlName))
+			return false;
+		YamlSupport yaml = yamls.get(path(yamlName)).join();
+		boolean reloaded = source == null ? yaml.reload() : yaml.reload(source);
+		if (reloaded)
+			metrics.increment(CuseMetrics.YAML_RELOADS);
+		return reloaded;
+	}
+
+	/**
+	 * Avvia un thread che osserva con un {@link WatchService} la cartella degli YAML e le sue sottocartelle, e ricarica
+	 * gli YAML modificati (vedi {@link #reload(String)}). Invocato dal costruttore se
+	 * {@link CuseSetupConfiguration#yamlHotReload()} è TRUE.<br/>
+	 * La cartella osservata è {@link CuseSetupConfiguration#yamlWatchDir()}, la cartella dei sorgenti, da cui vengono
+	 * riletti gli YAML modificati; se non è indicata viene osservata la cartella nel classpath
+	 * ({@link CuseSetupConfiguration#yamlClasspathDir()}), che con Maven è la copia in <code>target/</code>.<br/>
+	 * <strong>ATTENZIONE</strong>: la cartella deve essere sul file system (non dentro un jar). Il thread va fermato con
+	 * {@link #unwatch()} o {@link #close()}.
+	 * 
+	 * @return TRUE se la cartella è osservata
+	 */
+	public synchronized boolean watch() {
+		if (watcher != null)
+			return true;
+		try {
+			Path dir;
+			if (StringUtils.hasText(config.yamlWatchDir()))
+				dir = Paths.get(config.yamlWatchDir()).toAbsolutePath();
+			else {
+				URL url = YamlSupport.class.getClassLoader().getResource(config.yamlClasspathDir());
+				if (url == null || !"file".equals(url.getProtocol())) {
+					log.warn("Cannot watch YAML dir {}: not a directory", config.yamlClasspathDir());
+					return false;
+				}
+				dir = Paths.get(url.toURI());
+			}
+			if (!Files.isDirectory(dir)) {
+				log.warn("Cannot watch YAML dir {}: not a directory", dir);
+				return false;
+			}
+			watchService = dir.getFileSystem().newWatchService();
+			watchedDirs.clear();
+			register(watchService, dir);
+			Path root = dir;
+			WatchService service = watchService;
+			watcher = new Thread(() -> watchLoop(service, root), "yaml-watcher");
+			watcher.setDaemon(true);
+			watcher.start();
+			log.info("Watching YAML dir {}", dir);
+			return true;
+		} catch (Exception e) {
+			log.warn("Cannot watch YAML dir {}: {}", config.yamlClasspathDir(), e.getMessage());
+			unwatch();
+			return false;
+		}
+	}
+
+	/**
+	 * Ferma il thread avviato da {@link #watch()} e chiude il {@link WatchService}.
+	 */
+	public synchronized void unwatch() {
+		if (watchService != null) {
+			// su alcune piattaforme interrompere take() non basta: chiudere il servizio lo sblocca sempre
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				log.debug("Cannot close YAML watcher: {}", e.getMessage());
+			}
+			watchService = null;
+		}
+		if (watcher != null) {
+			watcher.interrupt();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Ferma il ricaricamento automatico (vedi {@link #unwatch()}) e il caricamento in background (vedi
+	 * {@link #preload()}). Invocato da Spring alla chiusura del contesto.
+	 */
+	@Override
+	public void close() {
+		unwatch();
+		if (preloader != null)
+			preloader.shutdownNow();
+	}
+
+	/*
+	 * Registra la cartella e tutte le sue sottocartelle
+	 */
+	private void register(WatchService service, Path dir) throws IOException {
+		try (Stream<Path> dirs = Files.walk(dir)) {
+			for (Path sub : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator)
+				watchedDirs.put(sub.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY), sub);
+		}
+	}
+
+	private void watchLoop(WatchService service, Path root) {
+		boolean fromSources = StringUtils.hasText(config.yamlWatchDir());
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				Set<Path> changed = new LinkedHashSet<>();
+				WatchKey key = service.take();
+				// un salvataggio può generare più eventi (es. troncamento e scrittura): li raccolgo tutti
+				Thread.sleep(WATCH_DEBOUNCE);
+				do {
+					Path dir = watchedDirs.get(key);
+					for (WatchEvent<?> event : key.pollEvents())
+						if (dir != null && event.context() instanceof Path)
+							changed.add(dir.resolve((Path) event.context()));
+					if (!key.reset())
+						watchedDirs.remove(key);
+				} while ((key = service.poll()) != null);
+
+				for (Path file : changed)
+					if (Files.isDirectory(file))
+						// nuova sottocartella
+						register(service, file);
+					else if (file.getFileName().toString().endsWith(YML_EXT))
+						reload(root.relativize(file).toString().replace(File.separatorChar, '/'), fromSources ? file.toFile() : null);
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			log.debug("YAML watcher stopped");
+		} catch (IOException e) {
+			log.warn("YAML watcher stopped: {}", e.getMessage());
+		} finally {
+			try {
+				service.close();
+			} catch (Exception e) {
+				log.debug(e.getMessage());
+			}
+		}
 	}
 
 	/*
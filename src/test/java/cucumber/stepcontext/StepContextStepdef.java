@@ -0,0 +1,35 @@
+package cucumber.stepcontext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cucumber.api.java.en.Given;
+import cucumber.api.java.en.Then;
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.cucumber.StepContext;
+import it.miriade.test.cusecomlib.cucumber.stepdefs.Stepdef;
+
+/**
+ * Stepdef usato per testare lo {@link StepContext}: registra il contesto visto da ogni step
+ * 
+ * @author svaponi
+ */
+public class StepContextStepdef implements Stepdef {
+
+	public static final List<StepContext> contexts = Collections.synchronizedList(new ArrayList<>());
+	public static final List<String> stepdefNames = Collections.synchronizedList(new ArrayList<>());
+
+	@Given("^the context is recorded$")
+	public void record() {
+		contexts.add(StepContext.current());
+		stepdefNames.add(CuseUtil.getStepdefName());
+	}
+
+	@Then("^the context is recorded from a new thread$")
+	public void recordFromThread() throws InterruptedException {
+		Thread thread = new Thread(this::record);
+		thread.start();
+		thread.join();
+	}
+}
@@ -0,0 +1,281 @@
+package it.miriade.test.cusecomlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.WebDriver;
+
+import com.google.gson.JsonElement;
+
+import it.miriade.test.cusecomlib.enums.Browser;
+import it.miriade.test.cusecomlib.enums.BySelector;
+import it.miriade.test.cusecomlib.enums.FillMode;
+import it.miriade.test.cusecomlib.excep.FormFillException;
+import it.miriade.test.cusecomlib.excep.SeleniumElementNotFoundException;
+import it.miriade.test.cusecomlib.hooks.HtmlHook;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+import it.miriade.test.cusecomlib.selenium.FakeWebDriver;
+import it.miriade.test.cusecomlib.yaml.YamlSupport;
+import it.miriade.test.cusecomlib.yaml.YamlSupportFactory;
+
+/**
+ * Test delle attese, dei tentativi e delle azioni di {@link CuseUtil} sul browser {@link Browser#FAKE}. Le attese usano
+ * un orologio finto: ogni attesa fa avanzare il tempo senza dormire davvero e gli elementi "in ritardo" vengono
+ * aggiunti alla pagina quando l'orologio arriva al momento previsto (vedi {@link #at(long, String)}).
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CuseUtilFakeBrowserTest {
+
+	// pagina di prova
+	static final String PAGE = WebDriver.class.getSimpleName().concat("Resources") + "/fake-page.html";
+
+	private final CuseMetrics metrics = CuseMetrics.getInstance();
+	private final List<Long> sleeps = new ArrayList<>();
+	private final TreeMap<Long, String> scripts = new TreeMap<>();
+	private long now;
+
+	private CuseSetupConfiguration config;
+	private YamlSupportFactory factory;
+	private CuseUtil util;
+
+	@Before
+	public void setup() {
+		config = new CuseSetupConfiguration();
+		config.targetBrowser(Browser.FAKE);
+		config.timeoutFindElement(0.1);
+		config.yamlClasspathDir("cucumber/infocert/yaml/");
+		factory = new YamlSupportFactory(config);
+	}
+
+	@After
+	public void teardown() {
+		if (util != null)
+			util.close();
+	}
+
+	/**
+	 * Avvia il {@link CuseUtil} con l'orologio finto e carica la pagina di prova
+	 */
+	private CuseUtil open(boolean explicitWait, double timeoutFindElement) {
+		config.explicitWait(explicitWait);
+		config.timeoutFindElement(timeoutFindElement);
+		util = new CuseUtil(config, factory, () -> now, millis -> {
+			sleeps.add(millis);
+			now += TimeUnit.MILLISECONDS.toNanos(millis);
+			while (!scripts.isEmpty() && scripts.firstKey() <= elapsed())
+				script(scripts.pollFirstEntry().getValue());
+		});
+		util.loadPage(getClass().getClassLoader().getResource(PAGE).toString());
+		return util;
+	}
+
+	/**
+	 * Esegue lo script quando l'orologio arriva a <code>millis</code>
+	 */
+	private void at(long millis, String script) {
+		scripts.put(millis, script);
+	}
+
+	private void script(String script) {
+		((JavascriptExecutor) util.driver()).executeScript(script);
+	}
+
+	private long elapsed() {
+		return TimeUnit.NANOSECONDS.toMillis(now);
+	}
+
+	private static Map<String, Object> hook(String id) {
+		Map<String, Object> hook = new HashMap<>();
+		hook.put(HtmlHook.BY, "id");
+		hook.put(HtmlHook.EXPR, id);
+		return hook;
+	}
+
+	@Test
+	public void t00_explicit_wait() {
+		open(true, 0.5);
+
+		// i controlli negativi non aspettano il timeout
+		Assert.assertFalse(util.existsBy(BySelector.ID, "missing"));
+		Assert.assertTrue(sleeps.isEmpty());
+
+		// quelli positivi aspettano l'elemento
+		at(200, "var div = document.createElement('div'); div.id = 'late'; div.textContent = 'late'; document.body.appendChild(div);");
+		Assert.assertFalse(util.existsBy(BySelector.ID, "late"));
+		Assert.assertEquals("late", util.findBy(BySelector.ID, "late").get(0).getText());
+		Assert.assertEquals(200, elapsed());
+		Assert.assertEquals(Arrays.asList(100L, 100L), sleeps);
+
+		// fino al timeout dello hook, con l'ultima attesa accorciata
+		Map<String, Object> missing = hook("missing");
+		missing.put(HtmlHook.TIMEOUT, 0.25);
+		now = 0;
+		sleeps.clear();
+		Assert.assertTrue(util.findBy(missing).isEmpty());
+		Assert.assertEquals(250, elapsed());
+		Assert.assertEquals(Arrays.asList(100L, 100L, 50L), sleeps);
+	}
+
+	@Test
+	public void t01_hook_policy() {
+		open(true, 0.5);
+
+		// l'elemento c'è già, ma viene restituito solo dopo essere rimasto fermo
+		Map<String, Object> stable = hook("username");
+		stable.put(HtmlHook.STABLE_FOR, 0.3);
+		stable.put(HtmlHook.POLL, 0.05);
+		Assert.assertEquals(1, util.findBy(stable).size());
+		Assert.assertEquals(300, elapsed());
+
+		// il bottone compare dopo il timeout della ricerca, ma prima della fine dei tentativi
+		now = 0;
+		sleeps.clear();
+		at(300, "var b = document.createElement('button'); b.id = 'slow'; b.onclick = function() { document.getElementById('result').textContent = 'slow'; }; document.body.appendChild(b);");
+		Map<String, Object> slow = hook("slow");
+		slow.put(HtmlHook.TIMEOUT, 0.1);
+		slow.put(HtmlHook.POLL, 0.1);
+		slow.put(HtmlHook.RETRIES, 5);
+		long retries = metrics.counter(CuseMetrics.ACTION_RETRIES);
+		util.clickBy(slow);
+		Assert.assertEquals("slow", util.findBy(BySelector.ID, "result").get(0).getText());
+		Assert.assertEquals(retries + 1, metrics.counter(CuseMetrics.ACTION_RETRIES));
+		Assert.assertEquals(300, elapsed());
+
+		// finiti i tentativi l'elemento non è stato trovato
+		sleeps.clear();
+		Map<String, Object> missing = hook("missing");
+		missing.put(HtmlHook.TIMEOUT, 0);
+		missing.put(HtmlHook.POLL, 0.05);
+		missing.put(HtmlHook.RETRIES, 2);
+		retries = metrics.counter(CuseMetrics.ACTION_RETRIES);
+		try {
+			util.setTextBy(missing, "x");
+			Assert.fail();
+		} catch (SeleniumElementNotFoundException e) {
+			Assert.assertEquals(retries + 2, metrics.counter(CuseMetrics.ACTION_RETRIES));
+			Assert.assertEquals(Arrays.asList(50L, 50L), sleeps);
+		}
+	}
+
+	@Test
+	public void t02_hook_waits_with_implicit_wait() {
+		open(false, 0.1);
+
+		// il timeout dello hook vale anche senza le attese esplicite
+		at(300, "var div = document.createElement('div'); div.id = 'late'; document.body.appendChild(div);");
+		Map<String, Object> late = hook("late");
+		late.put(HtmlHook.TIMEOUT, 2);
+		late.put(HtmlHook.POLL, 0.05);
+		Assert.assertEquals(1, util.findBy(late).size());
+		Assert.assertEquals(300, elapsed());
+
+		// poi l'attesa implicita torna quella di default
+		Assert.assertEquals(100, ((FakeWebDriver) util.driver()).getImplicitWaitMillis());
+	}
+
+	@Test
+	public void t03_fill_form() {
+		open(false, 0.1);
+		YamlSupport yaml = factory.build("fake-form");
+
+		// un solo comando per tutti i campi, con gli eventi input e change
+		Map<String, String> values = new LinkedHashMap<>();
+		values.put("form_username", "mario");
+		values.put("form_notes", "ciao");
+		long roundTrips = metrics.roundTrips("fillForm");
+		util.fillForm(yaml, values, FillMode.FAST);
+		Assert.assertEquals(roundTrips + 1, metrics.roundTrips("fillForm"));
+		Assert.assertEquals("mario", util.findBy(BySelector.ID, "username").get(0).getAttribute("value"));
+		Assert.assertEquals("ciao", util.findBy(BySelector.ID, "echo").get(0).getText());
+
+		// eventi della tastiera compresi, con un solo comando delle azioni W3C per tutti i campi
+		values.put("form_username", "luigi");
+		values.put("form_notes", "salve");
+		long actions = actions();
+		util.fillForm(yaml, values, FillMode.FAITHFUL);
+		Assert.assertEquals(actions + 1, actions());
+		Assert.assertEquals("luigi", util.findBy(BySelector.ID, "username").get(0).getAttribute("value"));
+		Assert.assertEquals("salve", util.findBy(BySelector.ID, "echo").get(0).getText());
+
+		// in ogni modalità, e con qualsiasi numero di campi, il valore va in tutti gli elementi dello hook
+		for (FillMode mode : FillMode.values())
+			for (int fields = 1; fields <= 2; fields++) {
+				Map<String, String> texts = new LinkedHashMap<>();
+				texts.put("form_texts", mode.name() + fields);
+				if (fields > 1)
+					texts.put("form_username", mode.name());
+				util.fillForm(yaml, texts, mode);
+				Assert.assertEquals(mode.name() + fields, util.findBy(BySelector.ID, "notes").get(0).getAttribute("value"));
+				Assert.assertEquals(mode.name() + fields, util.findBy(BySelector.ID, "bio").get(0).getAttribute("value"));
+			}
+
+		// i campi falliti vengono riportati tutti insieme, gli altri sono compilati
+		for (FillMode mode : FillMode.values()) {
+			Map<String, String> broken = new LinkedHashMap<>();
+			broken.put("form_missing", "x");
+			broken.put("form_unknown", "y");
+			broken.put("form_username", mode.name());
+			try {
+				util.fillForm(yaml, broken, mode);
+				Assert.fail();
+			} catch (FormFillException e) {
+				Assert.assertEquals(Arrays.asList("form_missing", "form_unknown"), new ArrayList<>(e.getFailures().keySet()));
+			}
+			Assert.assertEquals(mode.name(), util.findBy(BySelector.ID, "username").get(0).getAttribute("value"));
+		}
+	}
+
+	private long actions() {
+		JsonElement actions = metrics.toJson().getAsJsonObject("commands").get("actions");
+		return actions == null ? 0 : actions.getAsLong();
+	}
+
+	@Test
+	public void t04_action_batch() {
+		open(false, 0.1);
+		HtmlHook username = new HtmlHook(BySelector.ID, "username");
+		HtmlHook confirm = new HtmlHook(BySelector.ID, "confirm");
+
+		// per ogni hook findElements e il filtro degli elementi buoni, poi un solo comando per tutte le azioni
+		long roundTrips = metrics.roundTrips("batch");
+		util.batch().type(username, "mar").keys("io").click(confirm).perform();
+		Assert.assertEquals(roundTrips + 2 * 2 + 1, metrics.roundTrips("batch"));
+		Assert.assertEquals("mario", util.findBy(username).get(0).getAttribute("value"));
+		Assert.assertEquals("click mario", util.findBy(BySelector.ID, "result").get(0).getText());
+
+		// i tasti speciali arrivano all'elemento con il focus
+		util.batch().click(username).pause(10).keys(Keys.ENTER).perform();
+		Assert.assertEquals("submit mario", util.findBy(BySelector.ID, "result").get(0).getText());
+
+		// i modificatori restano premuti fino alla fine del passo: CONTROL+a seleziona tutto, SHIFT scrive maiuscolo
+		util.batch().click(username).keys(Keys.chord(Keys.CONTROL, "a"), "luigi ").keys(Keys.SHIFT, "x", Keys.NULL, "y\uD83D\uDE00").perform();
+		Assert.assertEquals("luigi Xy\uD83D\uDE00", util.findBy(username).get(0).getAttribute("value"));
+		util.findBy(username).get(0).sendKeys(Keys.chord(Keys.CONTROL, "a"), "mario");
+		Assert.assertEquals("mario", util.findBy(username).get(0).getAttribute("value"));
+
+		// se un hook non trova nulla non viene eseguito nessun passo
+		try {
+			util.batch().type(username, "x").click(new HtmlHook(BySelector.ID, "missing")).perform();
+			Assert.fail();
+		} catch (SeleniumElementNotFoundException e) {
+			Assert.assertEquals("mario", util.findBy(username).get(0).getAttribute("value"));
+		}
+	}
+
+}
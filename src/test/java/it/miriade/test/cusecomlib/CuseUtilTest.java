@@ -63,4 +63,9 @@ public class CuseUtilTest {
 		exception.expect(exceptionClass);
 		util.setTextBy("pinco", "pallo");
 	}
+
+	@Test
+	public void t05_merge_into_regex() {
+		Assert.assertEquals("tabs ul > li[heading='my-favorite-tab']", util.mergeIntoRegex("tab_css_selector", "my-favorite-tab"));
+	}
 }
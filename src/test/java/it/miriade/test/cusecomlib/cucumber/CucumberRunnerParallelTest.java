@@ -0,0 +1,180 @@
+package it.miriade.test.cusecomlib.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.enums.Browser;
+
+/**
+ * Test dei metodi di supporto alla esecuzione parallela di {@link CucumberRunner}
+ * 
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CucumberRunnerParallelTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void t00_splitFeatures() {
+		Map<String, Long> features = new LinkedHashMap<>();
+		features.put("a.feature", 10L);
+		features.put("b.feature", 50L);
+		features.put("c.feature", 30L);
+		features.put("d.feature", 20L);
+
+		List<List<String>> groups = CucumberRunner.splitFeatures(features, 2);
+		Assert.assertEquals(2, groups.size());
+		Assert.assertEquals(Arrays.asList("b.feature", "a.feature"), groups.get(0));
+		Assert.assertEquals(Arrays.asList("c.feature", "d.feature"), groups.get(1));
+	}
+
+	@Test
+	public void t01_splitFeaturesMoreThreadsThanFeatures() {
+		Map<String, Long> features = new LinkedHashMap<>();
+		features.put("a.feature", 10L);
+		features.put("b.feature", 50L);
+
+		List<List<String>> groups = CucumberRunner.splitFeatures(features, 8);
+		Assert.assertEquals(2, groups.size());
+		Assert.assertTrue(CucumberRunner.splitFeatures(new LinkedHashMap<>(), 8).isEmpty());
+	}
+
+	@Test
+	public void t02_findFeatures() throws IOException {
+		File dir = tmp.newFolder("features");
+		new File(dir, "sub").mkdirs();
+		Files.write(new File(dir, "one.feature").toPath(), "Feature: one".getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(dir, "sub/two.feature").toPath(), "Feature: two".getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(dir, "readme.txt").toPath(), "no".getBytes(StandardCharsets.UTF_8));
+
+		Map<String, Long> features = CucumberRunner.findFeatures(dir.getPath());
+		Assert.assertEquals(2, features.size());
+		Assert.assertEquals(Long.valueOf(12), features.values().iterator().next());
+
+		// una singola feature non viene suddivisa
+		Assert.assertEquals(1, CucumberRunner.findFeatures(dir.getPath() + "/one.feature:3").size());
+	}
+
+	@Test
+	public void t03_mergeJsonReports() throws IOException {
+		File one = tmp.newFile("one.json");
+		File two = tmp.newFile("two.json");
+		Files.write(one.toPath(), "[{\"id\":\"a\"},{\"id\":\"b\"}]".getBytes(StandardCharsets.UTF_8));
+		Files.write(two.toPath(), "[{\"id\":\"c\"}]".getBytes(StandardCharsets.UTF_8));
+		File target = new File(tmp.getRoot(), "merged/cucumber.json");
+
+		CucumberRunner.mergeJsonReports(Arrays.asList(one, two, new File(tmp.getRoot(), "missing.json")), target);
+
+		JsonArray merged = new JsonParser().parse(new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8)).getAsJsonArray();
+		Assert.assertEquals(3, merged.size());
+		Assert.assertEquals("c", merged.get(2).getAsJsonObject().get("id").getAsString());
+	}
+
+	@Test
+	public void t04_buildArgs() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		List<String> args = CucumberRunner.buildArgs(config, CucumberWorker.pluginsFor(new File("target/w/1")), Arrays.asList("x.feature", "y.feature"));
+		Assert.assertTrue(args.contains("json:target/w/1/cucumber.json"));
+		Assert.assertEquals(Arrays.asList("x.feature", "y.feature"), args.subList(args.size() - 2, args.size()));
+	}
+
+	@Test
+	public void t05_browserWorkers() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.targetBrowsers(Browser.CHROME, Browser.FIREFOX);
+		config.cucumberFeaturesPath("classpath:features");
+		Assert.assertEquals(Arrays.asList(Browser.CHROME, Browser.FIREFOX), config.targetBrowsers());
+
+		List<CucumberWorker> workers = CucumberRunner.browserWorkers(config, config.targetBrowsers());
+		Assert.assertEquals(2, workers.size());
+		Assert.assertEquals("chrome", workers.get(0).id());
+		Assert.assertEquals("FIREFOX", workers.get(1).config().targetBrowser());
+		Assert.assertEquals(new File(CucumberSpec.WORKERS_DIR, "firefox"), workers.get(1).reportDir());
+		Assert.assertEquals(Arrays.asList("classpath:features"), workers.get(1).features());
+		Assert.assertNotSame(config, workers.get(0).config());
+		Assert.assertEquals("CHROME,FIREFOX", config.targetBrowser());
+	}
+
+	@Test
+	public void t06_summarize() throws IOException {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.targetBrowser(Browser.FAKE);
+		CucumberWorker worker = new CucumberWorker("t06-summary", config, Arrays.asList("a.feature"));
+		worker.reportDir().mkdirs();
+		try {
+			String passed = "{\"status\":\"passed\"}", failed = "{\"status\":\"failed\"}", skipped = "{\"status\":\"skipped\"}";
+			String report = "[{\"id\":\"a\",\"elements\":[" //
+					+ "{\"type\":\"background\",\"steps\":[{\"result\":" + passed + "}]}," //
+					+ "{\"type\":\"scenario\",\"steps\":[{\"result\":" + passed + "},{\"result\":" + passed + "}]}," //
+					+ "{\"type\":\"scenario\",\"steps\":[{\"result\":" + passed + "}],\"after\":[{\"result\":" + failed + "}]}," //
+					+ "{\"type\":\"scenario\",\"steps\":[{\"result\":" + passed + "},{\"result\":" + skipped + "}]}]}]";
+			Files.write(worker.jsonReport().toPath(), report.getBytes(StandardCharsets.UTF_8));
+
+			JsonArray summary = CucumberRunner.summarize(Arrays.asList(worker));
+			Assert.assertEquals(1, summary.size());
+			JsonObject item = summary.get(0).getAsJsonObject();
+			Assert.assertEquals("t06-summary", item.get("worker").getAsString());
+			Assert.assertEquals("FAKE", item.get("browser").getAsString());
+			Assert.assertEquals(1, item.get("features").getAsInt());
+			JsonObject scenarios = item.getAsJsonObject("scenarios");
+			Assert.assertEquals(1, scenarios.get("passed").getAsInt());
+			Assert.assertEquals(1, scenarios.get("failed").getAsInt());
+			Assert.assertEquals(1, scenarios.get("skipped").getAsInt());
+		} finally {
+			worker.jsonReport().delete();
+			worker.reportDir().delete();
+		}
+	}
+
+	@Test
+	public void t07_mergeJsonReportsByBrowser() throws IOException {
+		String feature = "[{\"id\":\"login\",\"uri\":\"login.feature\",\"name\":\"Login\",\"line\":1," //
+				+ "\"elements\":[{\"id\":\"login;ok\",\"line\":3,\"tags\":[{\"name\":\"@smoke\",\"line\":2}]}]}]";
+		File chrome = tmp.newFile("chrome.json");
+		File firefox = tmp.newFile("firefox.json");
+		Files.write(chrome.toPath(), feature.getBytes(StandardCharsets.UTF_8));
+		Files.write(firefox.toPath(), feature.getBytes(StandardCharsets.UTF_8));
+		Map<String, File> reports = new LinkedHashMap<>();
+		reports.put("chrome", chrome);
+		reports.put("firefox", firefox);
+		File target = new File(tmp.getRoot(), "browsers/cucumber.json");
+
+		CucumberRunner.mergeJsonReports(reports, target);
+
+		JsonArray merged = new JsonParser().parse(new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8)).getAsJsonArray();
+		Assert.assertEquals(2, merged.size());
+		JsonObject first = merged.get(0).getAsJsonObject(), second = merged.get(1).getAsJsonObject();
+		Assert.assertEquals("chrome;login", first.get("id").getAsString());
+		Assert.assertEquals("firefox;login", second.get("id").getAsString());
+		Assert.assertEquals("firefox/login.feature", second.get("uri").getAsString());
+		Assert.assertEquals("[firefox] Login", second.get("name").getAsString());
+		Assert.assertEquals("@firefox", second.getAsJsonArray("tags").get(0).getAsJsonObject().get("name").getAsString());
+		JsonObject scenario = second.getAsJsonArray("elements").get(0).getAsJsonObject();
+		Assert.assertEquals("firefox;login;ok", scenario.get("id").getAsString());
+		JsonArray tags = scenario.getAsJsonArray("tags");
+		Assert.assertEquals(2, tags.size());
+		Assert.assertEquals("@smoke", tags.get(0).getAsJsonObject().get("name").getAsString());
+		Assert.assertEquals("@firefox", tags.get(1).getAsJsonObject().get("name").getAsString());
+		Assert.assertEquals(3, tags.get(1).getAsJsonObject().get("line").getAsInt());
+	}
+}
@@ -0,0 +1,96 @@
+package it.miriade.test.cusecomlib.cucumber;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import cucumber.stepcontext.StepContextStepdef;
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.cucumber.stepdefs.Stepdef;
+
+/**
+ * Test dello {@link StepContext} e del {@link StepContextPlugin}
+ * 
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class StepContextTest implements Stepdef {
+
+	@After
+	public void teardown() {
+		StepContext.clear();
+	}
+
+	@Test
+	public void t00_fallback_to_stack() {
+		Assert.assertNull(StepContext.current());
+		Assert.assertEquals("StepContextTest#t00_fallback_to_stack", CuseUtil.getStepdefName());
+	}
+
+	@Test
+	public void t01_stepdef_name() {
+		StepContext.set(new StepContext("classpath:f/my.feature", "Feature", "Scenario", "Given something", 12, "CommonStepdef.open_page(String)"));
+		Assert.assertEquals("CommonStepdef#open_page", CuseUtil.getStepdefName());
+		Assert.assertEquals("CommonStepdef#open_page \"Given something\" (my.feature:12)", StepContext.current().describe());
+
+		StepContext.set(new StepContext("f/my.feature", "Feature", "Scenario", "Given something", 12, "CommonJava8Stepdef.java:30"));
+		Assert.assertEquals("CommonJava8Stepdef.java:30", CuseUtil.getStepdefName());
+
+		// step non definito: si torna allo stacktrace
+		StepContext.set(new StepContext("f/my.feature", "Feature", "Scenario", "Given something", 12, null));
+		Assert.assertEquals("StepContextTest#t01_stepdef_name", CuseUtil.getStepdefName());
+	}
+
+	@Test
+	public void t02_propagation() throws Exception {
+		StepContext context = new StepContext("f/my.feature", "Feature", "Scenario", "Given something", 12, "A.b()");
+		StepContext.set(context);
+
+		StepContext[] seen = new StepContext[2];
+		Thread thread = new Thread(() -> seen[0] = StepContext.current());
+		thread.start();
+		thread.join();
+		Assert.assertSame("contesto non ereditato", context, seen[0]);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// il thread del pool viene creato senza contesto
+			StepContext.clear();
+			executor.submit(() -> {
+			}).get();
+			StepContext.set(context);
+			executor.submit(StepContext.wrap(() -> seen[1] = StepContext.current())).get(5, TimeUnit.SECONDS);
+			Assert.assertSame("contesto non propagato", context, seen[1]);
+			Assert.assertNull(executor.submit(StepContext::current).get(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void t03_plugin() throws Exception {
+		StepContextStepdef.contexts.clear();
+		StepContextStepdef.stepdefNames.clear();
+		String[] args = { "--plugin", CucumberSpec.PLUGIN_STEP_CONTEXT, "--glue", "classpath:cucumber/stepcontext", "classpath:cucumber/stepcontext" };
+		byte status = cucumber.api.cli.Main.run(args, Thread.currentThread().getContextClassLoader());
+		Assert.assertEquals(CucumberRunner.success, status);
+
+		Assert.assertEquals(3, StepContextStepdef.contexts.size());
+		StepContext background = StepContextStepdef.contexts.get(0);
+		Assert.assertEquals("Step context", background.getFeature());
+		Assert.assertEquals("Primo scenario", background.getScenario());
+		Assert.assertEquals("Given the context is recorded", background.getStep());
+		Assert.assertEquals(Integer.valueOf(4), background.getStepLine());
+		Assert.assertEquals("When the context is recorded", StepContextStepdef.contexts.get(1).getStep());
+		Assert.assertEquals("Then the context is recorded from a new thread", StepContextStepdef.contexts.get(2).getStep());
+		Assert.assertEquals(Arrays.asList("StepContextStepdef#record", "StepContextStepdef#record", "StepContextStepdef#recordFromThread"), StepContextStepdef.stepdefNames);
+		Assert.assertNull("contesto non rimosso a fine scenario", StepContext.current());
+	}
+}
@@ -1,5 +1,8 @@
 package it.miriade.test.cusecomlib.hooks;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.annotation.PostConstruct;
 
 import org.junit.Assert;
@@ -9,12 +12,14 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
+import org.openqa.selenium.By;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import it.miriade.test.cusecomlib.CuseDefaultSpec;
 import it.miriade.test.cusecomlib.CuseSpringConfiguration;
+import it.miriade.test.cusecomlib.enums.BySelector;
 import it.miriade.test.cusecomlib.excep.YamlInvalidKeyException;
 import it.miriade.test.cusecomlib.hooks.HtmlHookFactory;
 import it.miriade.test.cusecomlib.yaml.YamlSupportFactory;
@@ -53,4 +58,57 @@ public class HtmlHookFactoryTest {
 		exception.expect(YamlInvalidKeyException.class);
 		hookFactory.build("pinco.pallo");
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void t02_registry() {
+		HtmlHook hook = hookFactory.build("login_click");
+		Assert.assertSame("hook non in cache", hook, hookFactory.build("login_click"));
+		Assert.assertEquals(BySelector.CSS, hook.by);
+		Assert.assertEquals(By.cssSelector(".login-btn"), hook.locator());
+		Assert.assertSame("By non precompilato", hook.locator(), hook.locator());
+	}
+
+	@Test
+	public void t03_locator() {
+		Assert.assertEquals(By.id("a"), new HtmlHook(BySelector.ID, "a").locator());
+		Assert.assertEquals(By.xpath("//a"), new HtmlHook("xpath", "//a").locator());
+		Assert.assertEquals(By.partialLinkText("a"), new HtmlHook(":partial_text", "a").locator());
+		exception.expect(IllegalArgumentException.class);
+		new HtmlHook(BySelector.ID, null).locator();
+	}
+
+	@Test
+	public void t04_timeout() {
+		HtmlHook welcome = hookFactory.build("login_welcome");
+		Assert.assertEquals(Double.valueOf(10), welcome.timeout);
+		Assert.assertEquals(Double.valueOf(0.5), welcome.poll);
+		Assert.assertEquals(Double.valueOf(0.2), welcome.stableFor);
+		Assert.assertEquals(Integer.valueOf(2), welcome.retries);
+		Assert.assertTrue(welcome.toString().contains("stable_for: 0.2"));
+		HtmlHook click = hookFactory.build("login_click");
+		Assert.assertNull(click.timeout);
+		Assert.assertNull(click.retries);
+		Assert.assertNull(click.poll);
+		Assert.assertNull(click.stableFor);
+		Map<String, Object> map = new HashMap<>();
+		map.put(HtmlHook.BY, "id");
+		map.put(HtmlHook.EXPR, "a");
+		map.put(HtmlHook.TIMEOUT, "0.5");
+		Assert.assertEquals(Double.valueOf(0.5), new HtmlHook(map).timeout);
+		map.put(HtmlHook.TIMEOUT, -1);
+		exception.expect(IllegalArgumentException.class);
+		new HtmlHook(map);
+	}
+
+	@Test
+	public void t05_retries() {
+		Map<String, Object> map = new HashMap<>();
+		map.put(HtmlHook.BY, "id");
+		map.put(HtmlHook.EXPR, "a");
+		map.put(HtmlHook.RETRIES, "3");
+		Assert.assertEquals(Integer.valueOf(3), new HtmlHook(map).retries);
+		map.put(HtmlHook.RETRIES, 1.5);
+		exception.expect(IllegalArgumentException.class);
+		new HtmlHook(map);
+	}
+}
@@ -0,0 +1,267 @@
+package it.miriade.test.cusecomlib.metrics;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import com.google.gson.JsonObject;
+
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.enums.Browser;
+import it.miriade.test.cusecomlib.enums.BySelector;
+import it.miriade.test.cusecomlib.excep.PollingTimeoutException;
+import it.miriade.test.cusecomlib.excep.SeleniumElementNotFoundException;
+import it.miriade.test.cusecomlib.selenium.FakeWebDriver;
+import it.miriade.test.cusecomlib.times.PollingEngine;
+import it.miriade.test.cusecomlib.times.Times;
+
+/**
+ * Test di {@link CuseMetrics}
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CuseMetricsTest {
+
+	@Before
+	public void setup() {
+		CuseMetrics.getInstance().reset();
+	}
+
+	@Test
+	public void t00_samples() {
+		CuseMetrics metrics = new CuseMetrics();
+		String title = metrics.time("clickBy", "login", () -> {
+			metrics.roundTrip("findElements");
+			metrics.time("findBy", null, () -> metrics.roundTrip("findElements"));
+			metrics.roundTrip("clickElement");
+			return "Home";
+		});
+		metrics.roundTrip("getTitle");
+		Assert.assertEquals("Home", title);
+
+		Assert.assertEquals(1, metrics.operation("clickBy").count());
+		Assert.assertEquals(1, metrics.operation("findBy").count());
+		Assert.assertTrue(metrics.operation("clickBy").max() >= metrics.operation("findBy").max());
+		Assert.assertEquals(1, metrics.hook("login", "clickBy").count());
+		Assert.assertNull(metrics.hook("login", "findBy"));
+		// i round-trip vanno all'operazione più esterna
+		Assert.assertEquals(3, metrics.roundTrips("clickBy"));
+		Assert.assertEquals(0, metrics.roundTrips("findBy"));
+		Assert.assertEquals(1, metrics.roundTrips(CuseMetrics.NO_OPERATION));
+		Assert.assertEquals(4, metrics.roundTrips());
+	}
+
+	@Test
+	public void t01_json() throws Exception {
+		CuseMetrics metrics = new CuseMetrics();
+		metrics.record("loadPage", null, 5_000_000);
+		metrics.record("setTextBy", "username", 2_000_000);
+		metrics.roundTrip("get");
+
+		JsonObject json = metrics.toJson();
+		Assert.assertEquals(1, json.getAsJsonObject("operations").getAsJsonObject("loadPage").get("count").getAsLong());
+		Assert.assertEquals(5.0, json.getAsJsonObject("operations").getAsJsonObject("loadPage").get("max").getAsDouble(), 0.0);
+		Assert.assertTrue(json.getAsJsonObject("hooks").getAsJsonObject("username").has("setTextBy"));
+		Assert.assertEquals(1, json.get("totalRoundTrips").getAsLong());
+
+		File file = Files.createTempFile("metrics", ".json").toFile();
+		try {
+			metrics.writeJson(file);
+			CuseMetrics merged = new CuseMetrics();
+			merged.record("loadPage", null, 1_000_000);
+			merged.mergeJson(file);
+			merged.mergeJson(file);
+			Assert.assertEquals(3, merged.operation("loadPage").count());
+			Assert.assertEquals(1_000_000, merged.operation("loadPage").min());
+			Assert.assertEquals(2, merged.hook("username", "setTextBy").count());
+			Assert.assertEquals(2, merged.roundTrips("other"));
+			Assert.assertEquals(2, merged.roundTrips());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void t02_cuse_util() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.targetBrowser(Browser.FAKE);
+		config.timeoutFindElement(0.1);
+		CuseMetrics metrics = CuseMetrics.getInstance();
+		try (CuseUtil util = new CuseUtil(config)) {
+			FakeWebDriver driver = (FakeWebDriver) util.driver();
+			long commands = driver.getCommandCount(), roundTrips = metrics.roundTrips();
+			util.loadPage(getClass().getClassLoader().getResource("WebDriverResources/fake-page.html").toString());
+			util.setTextBy(BySelector.ID, "username", "svaponi");
+			util.clickBy(BySelector.ID, "confirm");
+			util.waitMillis(1);
+
+			Assert.assertEquals(1, metrics.operation("loadPage").count());
+			Assert.assertEquals(1, metrics.operation("setTextBy").count());
+			Assert.assertEquals(1, metrics.operation("clickBy").count());
+			Assert.assertEquals(2, metrics.operation("findBy").count());
+			Assert.assertTrue(metrics.operation("wait").min() >= 1_000_000);
+			Assert.assertEquals(1, metrics.roundTrips("loadPage"));
+			Assert.assertTrue(metrics.roundTrips("clickBy") >= 2);
+			Assert.assertEquals("ogni comando del driver è contato", driver.getCommandCount() - commands, metrics.roundTrips() - roundTrips);
+		}
+	}
+
+	@Test
+	public void t03_counters_and_gauges() throws Exception {
+		CuseMetrics metrics = new CuseMetrics();
+		metrics.increment(CuseMetrics.ELEMENT_LOOKUPS);
+		metrics.increment(CuseMetrics.ELEMENT_LOOKUPS);
+		metrics.gauge(CuseMetrics.SESSIONS_ACTIVE).incrementAndGet();
+		Assert.assertEquals(2, metrics.counter(CuseMetrics.ELEMENT_LOOKUPS));
+		Assert.assertEquals(0, metrics.counter(CuseMetrics.ELEMENTS_NOT_FOUND));
+
+		JsonObject json = metrics.toJson();
+		Assert.assertEquals(2, json.getAsJsonObject("counters").get(CuseMetrics.ELEMENT_LOOKUPS).getAsLong());
+		Assert.assertEquals(1, json.getAsJsonObject("gauges").get(CuseMetrics.SESSIONS_ACTIVE).getAsLong());
+
+		// i contatori si sommano, i gauge sono dell'altra JVM
+		CuseMetrics merged = new CuseMetrics();
+		merged.merge(json);
+		merged.merge(json);
+		Assert.assertEquals(4, merged.counter(CuseMetrics.ELEMENT_LOOKUPS));
+		Assert.assertEquals(0, merged.gauge(CuseMetrics.SESSIONS_ACTIVE).get());
+
+		// reset azzera i contatori ma non lo stato attuale
+		metrics.reset();
+		Assert.assertEquals(0, metrics.counter(CuseMetrics.ELEMENT_LOOKUPS));
+		Assert.assertEquals(1, metrics.gauge(CuseMetrics.SESSIONS_ACTIVE).get());
+	}
+
+	@Test
+	public void t04_prometheus() throws Exception {
+		CuseMetrics metrics = new CuseMetrics();
+		metrics.increment(CuseMetrics.POLLING_TIMEOUTS);
+		metrics.gauge(CuseMetrics.YAML_CACHE_SIZE).set(3);
+		metrics.record("loadPage", null, 2_000_000_000L);
+		metrics.record("clickBy", "menu \"home\"", 1_000_000);
+		metrics.roundTrip("get");
+
+		String text = metrics.toPrometheus();
+		Assert.assertTrue(text, text.contains("# TYPE cuse_polling_timeouts_total counter\ncuse_polling_timeouts_total 1\n"));
+		Assert.assertTrue(text, text.contains("# TYPE cuse_yaml_cache_size gauge\ncuse_yaml_cache_size 3\n"));
+		Assert.assertTrue(text, text.contains("# TYPE cuse_operation_seconds summary\n"));
+		Assert.assertTrue(text, text.contains("cuse_operation_seconds{operation=\"loadPage\",quantile=\"0.5\"} 2.0\n"));
+		Assert.assertTrue(text, text.contains("cuse_operation_seconds_count{operation=\"loadPage\"} 1\n"));
+		Assert.assertTrue(text, text.contains("cuse_hook_seconds_sum{hook=\"menu \\\"home\\\"\",operation=\"clickBy\"} 0.001\n"));
+		Assert.assertTrue(text, text.contains("cuse_webdriver_commands_total{command=\"get\"} 1\n"));
+		Assert.assertTrue(text, text.contains("cuse_webdriver_round_trips_total{operation=\"other\"} 1\n"));
+
+		File dir = Files.createTempDirectory("metrics").toFile();
+		try {
+			File file = new File(dir, "nested/cuse.prom");
+			metrics.writePrometheus(file);
+			metrics.writePrometheus(file);
+			Assert.assertEquals(text, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+			Assert.assertEquals("nessun file temporaneo", 1, file.getParentFile().list().length);
+		} finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void t05_endpoint() throws Exception {
+		Assert.assertNull(MetricsEndpoint.start(0, CuseMetrics.getInstance()));
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		CuseMetrics metrics = new CuseMetrics();
+		metrics.increment(CuseMetrics.SESSIONS_CREATED);
+		try (MetricsEndpoint endpoint = MetricsEndpoint.start(port, metrics)) {
+			Assert.assertEquals(port, endpoint.port());
+			HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + MetricsEndpoint.PATH).openConnection();
+			Assert.assertEquals(200, connection.getResponseCode());
+			Assert.assertEquals(MetricsEndpoint.CONTENT_TYPE, connection.getContentType());
+			try (InputStream in = connection.getInputStream()) {
+				Assert.assertEquals(metrics.toPrometheus(), IOUtils.toString(in, StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	@Test
+	public void t06_instrumentation() {
+		CuseMetrics metrics = CuseMetrics.getInstance();
+		long active = metrics.gauge(CuseMetrics.SESSIONS_ACTIVE).get();
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.targetBrowser(Browser.FAKE);
+		config.timeoutFindElement(0.1);
+		try (CuseUtil util = new CuseUtil(config)) {
+			util.driver();
+			// se un altro test ha abilitato il pool la sessione può essere riusata
+			Assert.assertEquals(1, metrics.counter(CuseMetrics.SESSIONS_CREATED) + metrics.counter(CuseMetrics.SESSIONS_REUSED));
+			Assert.assertEquals(active + 1, metrics.gauge(CuseMetrics.SESSIONS_ACTIVE).get());
+			Assert.assertEquals(1, metrics.operation(CuseMetrics.SETUP).count());
+
+			util.loadPage(getClass().getClassLoader().getResource("WebDriverResources/fake-page.html").toString());
+			try {
+				util.clickBy(BySelector.ID, "missing");
+				Assert.fail();
+			} catch (SeleniumElementNotFoundException e) {
+				Assert.assertEquals(1, metrics.counter(CuseMetrics.ELEMENT_LOOKUPS));
+				Assert.assertEquals(1, metrics.counter(CuseMetrics.ELEMENTS_NOT_FOUND));
+			}
+		}
+		Assert.assertEquals(1, metrics.counter(CuseMetrics.SESSIONS_QUIT) + metrics.counter(CuseMetrics.SESSIONS_RELEASED));
+		Assert.assertEquals(active, metrics.gauge(CuseMetrics.SESSIONS_ACTIVE).get());
+
+		// orologio finto: ogni attesa fa avanzare il tempo senza dormire
+		long[] now = { 0 };
+		PollingEngine engine = new PollingEngine(() -> now[0], millis -> now[0] += TimeUnit.MILLISECONDS.toNanos(millis));
+		try {
+			engine.poll("timeout", () -> true, new Times(100, 300));
+			Assert.fail();
+		} catch (PollingTimeoutException e) {
+			Assert.assertEquals(4, metrics.counter(CuseMetrics.POLLING_ITERATIONS));
+			Assert.assertEquals(1, metrics.counter(CuseMetrics.POLLING_TIMEOUTS));
+		}
+	}
+
+	@Test
+	public void t07_merged_with_live_files() throws Exception {
+		File dir = Files.createTempDirectory("metrics").toFile();
+		try {
+			CuseMetrics worker = new CuseMetrics();
+			worker.increment(CuseMetrics.ELEMENT_LOOKUPS);
+			worker.record("findBy", "button", TimeUnit.MILLISECONDS.toNanos(5));
+			File file = new File(dir, "metrics.json");
+			worker.writeJson(file);
+			Assert.assertFalse("file temporaneo rimasto", new File(dir, ".metrics.json.tmp").exists());
+
+			CuseMetrics metrics = new CuseMetrics();
+			metrics.increment(CuseMetrics.ELEMENT_LOOKUPS);
+			metrics.gauge(CuseMetrics.SESSIONS_ACTIVE).set(2);
+			CuseMetrics merged = metrics.mergedWith(Arrays.asList(file, new File(dir, "missing.json")));
+			Assert.assertEquals(2, merged.counter(CuseMetrics.ELEMENT_LOOKUPS));
+			Assert.assertEquals(1, merged.operation("findBy").count());
+			Assert.assertEquals(2, merged.gauge(CuseMetrics.SESSIONS_ACTIVE).get());
+			// le metriche correnti non cambiano
+			Assert.assertEquals(1, metrics.counter(CuseMetrics.ELEMENT_LOOKUPS));
+			Assert.assertNull(metrics.operation("findBy"));
+		} finally {
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+}
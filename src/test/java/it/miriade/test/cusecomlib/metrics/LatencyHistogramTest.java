@@ -0,0 +1,71 @@
+package it.miriade.test.cusecomlib.metrics;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Test del {@link LatencyHistogram}
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class LatencyHistogramTest {
+
+	@Test
+	public void t00_buckets() {
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			long value = random.nextInt(1000) + (1L << random.nextInt(40));
+			int index = LatencyHistogram.index(value);
+			Assert.assertTrue(value + " >= " + LatencyHistogram.lowest(index), value >= LatencyHistogram.lowest(index));
+			Assert.assertTrue(value + " <= " + LatencyHistogram.highest(index), value <= LatencyHistogram.highest(index));
+			Assert.assertTrue("precisione " + value, LatencyHistogram.highest(index) - LatencyHistogram.lowest(index) <= value / 50);
+		}
+		Assert.assertEquals(0, LatencyHistogram.index(0));
+		Assert.assertEquals(LatencyHistogram.index(Long.MAX_VALUE), LatencyHistogram.index(1L << 50));
+	}
+
+	@Test
+	public void t01_percentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals(0, histogram.percentile(99));
+		Assert.assertEquals(0, histogram.min());
+		// da 1ms a 1000ms
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1_000_000L);
+		Assert.assertEquals(1000, histogram.count());
+		Assert.assertEquals(1_000_000L, histogram.min());
+		Assert.assertEquals(1_000_000_000L, histogram.max());
+		Assert.assertEquals(500.5e6, histogram.mean(), 1);
+		Assert.assertEquals(500e6, histogram.percentile(50), 500e6 * 0.02);
+		Assert.assertEquals(990e6, histogram.percentile(99), 990e6 * 0.02);
+		Assert.assertEquals(1e9, histogram.percentile(100), 1e9 * 0.02);
+		histogram.record(-5);
+		Assert.assertEquals(0, histogram.min());
+	}
+
+	@Test
+	public void t02_json_and_merge() {
+		LatencyHistogram a = new LatencyHistogram(), b = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			a.record(i * 1000L);
+			b.record(i * 1_000_000L);
+		}
+		LatencyHistogram copy = LatencyHistogram.fromJson(a.toJson());
+		Assert.assertEquals(a.count(), copy.count());
+		Assert.assertEquals(a.percentile(90), copy.percentile(90));
+		Assert.assertEquals(a.max(), copy.max());
+
+		copy.add(b);
+		Assert.assertEquals(200, copy.count());
+		Assert.assertEquals(1000L, copy.min());
+		Assert.assertEquals(100_000_000L, copy.max());
+		Assert.assertEquals(b.percentile(80), copy.percentile(90));
+		Assert.assertEquals(0, LatencyHistogram.fromJson(new LatencyHistogram().toJson()).count());
+	}
+
+}
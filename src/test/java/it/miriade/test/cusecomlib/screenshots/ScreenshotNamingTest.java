@@ -0,0 +1,79 @@
+package it.miriade.test.cusecomlib.screenshots;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import it.miriade.test.cusecomlib.cucumber.StepContext;
+
+/**
+ * Test dello {@link ScreenshotNaming}
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ScreenshotNamingTest {
+
+	static final Clock clock = Clock.fixed(Instant.parse("2017-03-21T10:15:02.042Z"), ZoneId.of("UTC"));
+
+	@Test
+	public void t00_name() {
+		ScreenshotNaming naming = new ScreenshotNaming("target/shots", "2", clock);
+		StepContext context = new StepContext("login.feature", "Login", "Login con utente valido", "Dato apro la pagina", 3, "LoginStepdef.login()");
+		File file = naming.next("LoginStepdef#login", context, "png");
+		Assert.assertEquals(new File("target/shots"), file.getParentFile());
+		Assert.assertTrue(file.getName(), file.getName().matches("LoginStepdef#login\\.Login_con_utente_valido\\.20170321_101502_042\\.w2\\.\\d{4,}\\.png"));
+
+		// senza worker nè scenario
+		file = new ScreenshotNaming("target/shots", null, clock).next("LoginStepdef#login", null, "jpg");
+		Assert.assertTrue(file.getName(), file.getName().matches("LoginStepdef#login\\.20170321_101502_042\\.\\d{4,}\\.jpg"));
+	}
+
+	@Test
+	public void t01_defaults_and_sanitize() {
+		Assert.assertEquals(new File("screenshots/"), new ScreenshotNaming("").dir());
+		Assert.assertEquals(new File("screenshots/"), new ScreenshotNaming(null).dir());
+		Assert.assertEquals("Un_esempio_con_", ScreenshotNaming.sanitize(" Un esempio: con / "));
+		Assert.assertEquals("_", ScreenshotNaming.sanitize(null));
+
+		StepContext context = new StepContext(null, null, "Uno scenario con un nome decisamente troppo lungo per stare nel nome del file", null, null, null);
+		String name = new ScreenshotNaming("x", null, clock).next("Stepdef#m", context, "png").getName();
+		Assert.assertTrue(name, name.startsWith("Stepdef#m." + ScreenshotNaming.sanitize(context.getScenario()).substring(0, ScreenshotNaming.MAX_SCENARIO_LENGTH) + ".2017"));
+	}
+
+	@Test
+	public void t02_unique() throws Exception {
+		// stesso stepdef e stesso millisecondo da più thread e più istanze
+		Set<String> names = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				ScreenshotNaming naming = new ScreenshotNaming("x", "1", clock);
+				futures.add(executor.submit(() -> {
+					for (int j = 0; j < 500; j++)
+						names.add(naming.next("Stepdef#m", null, "png").getName());
+				}));
+			}
+			for (Future<?> future : futures)
+				future.get();
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(8 * 500, names.size());
+	}
+
+}
@@ -0,0 +1,138 @@
+package it.miriade.test.cusecomlib.screenshots;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.cucumber.StepContext;
+import it.miriade.test.cusecomlib.enums.Browser;
+
+/**
+ * Test della {@link ScreenshotPipeline}
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ScreenshotPipelineTest {
+
+	private File dir;
+
+	@Before
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("screenshots").toFile();
+	}
+
+	@After
+	public void teardown() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	static byte[] png(int width, int height, Color color) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(color);
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		return png(image);
+	}
+
+	static byte[] png(BufferedImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void t00_write() throws Exception {
+		byte[] png = png(40, 20, Color.RED);
+		try (ScreenshotPipeline pipeline = new ScreenshotPipeline(4, 0, "png", new ScreenshotStore(dir, -1))) {
+			File file = pipeline.submit(png, new File(dir, "sub/first.png")).get(5, TimeUnit.SECONDS);
+			Assert.assertEquals(new File(dir, "sub/first.png"), file);
+			Assert.assertArrayEquals("png senza ridimensionamento non viene ricodificato", png, Files.readAllBytes(file.toPath()));
+		}
+	}
+
+	@Test
+	public void t01_duplicates() throws Exception {
+		try (ScreenshotPipeline pipeline = new ScreenshotPipeline(4, 0, "png", new ScreenshotStore(dir, -1))) {
+			File first = pipeline.submit(png(40, 20, Color.RED), new File(dir, "first.png")).get(5, TimeUnit.SECONDS);
+			File second = pipeline.submit(png(40, 20, Color.RED), new File(dir, "second.png")).get(5, TimeUnit.SECONDS);
+			File third = pipeline.submit(png(40, 20, Color.BLUE), new File(dir, "third.png")).get(5, TimeUnit.SECONDS);
+			Assert.assertEquals(new File(dir, "second.png"), second);
+			Assert.assertTrue("screenshot identico salvato una sola volta", Files.isSameFile(first.toPath(), second.toPath()));
+			Assert.assertFalse(Files.isSameFile(first.toPath(), third.toPath()));
+			Assert.assertEquals(2, FileUtils.listFiles(new File(dir, ScreenshotStore.OBJECTS_DIR), null, true).size());
+		}
+	}
+
+	@Test
+	public void t02_resize_and_format() throws Exception {
+		try (ScreenshotPipeline pipeline = new ScreenshotPipeline(4, 100, "jpg", new ScreenshotStore(dir, -1))) {
+			Assert.assertEquals("jpg", pipeline.format());
+			File file = pipeline.submit(png(400, 300, Color.GREEN), new File(dir, "resized.jpg")).get(5, TimeUnit.SECONDS);
+			BufferedImage image = ImageIO.read(file);
+			Assert.assertEquals(100, image.getWidth());
+			Assert.assertEquals(75, image.getHeight());
+		}
+		try {
+			new ScreenshotPipeline(4, 0, "unknown", new ScreenshotStore(dir, -1));
+			Assert.fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void t03_backpressure_and_close() throws Exception {
+		List<CompletableFuture<File>> futures = new ArrayList<>();
+		ScreenshotPipeline pipeline = new ScreenshotPipeline(1, 50, "png", new ScreenshotStore(dir, -1));
+		for (int i = 0; i < 10; i++)
+			futures.add(pipeline.submit(png(200, 100, new Color(i * 20, 0, 0)), new File(dir, i + ".png")));
+		pipeline.close();
+		Assert.assertEquals(0, pipeline.pendingCount());
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(futures.get(i).isDone());
+			Assert.assertEquals(50, ImageIO.read(new File(dir, i + ".png")).getWidth());
+		}
+		// dopo la chiusura gli screenshot vengono salvati in modo sincrono
+		Assert.assertTrue(pipeline.submit(png(10, 10, Color.BLACK), new File(dir, "closed.png")).isDone());
+		Assert.assertTrue(pipeline.flush(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void t04_cuse_util() throws Exception {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.targetBrowser(Browser.FAKE);
+		config.screenshotDir(dir.getPath());
+		File screenshot;
+		StepContext.set(new StepContext("screenshot.feature", "Screenshot", "Screenshot", "take a screenshot", 1, getClass().getSimpleName() + ".t04_cuse_util()"));
+		try (CuseUtil util = new CuseUtil(config)) {
+			screenshot = util.takeScreenshotAsync().get(5, TimeUnit.SECONDS);
+		} finally {
+			StepContext.clear();
+		}
+		Assert.assertEquals(dir, screenshot.getParentFile());
+		Assert.assertTrue(screenshot.getName().startsWith(getClass().getSimpleName() + "#t04_cuse_util.Screenshot."));
+		Assert.assertEquals(1, ImageIO.read(screenshot).getWidth());
+	}
+
+}
@@ -0,0 +1,118 @@
+package it.miriade.test.cusecomlib.screenshots;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Test dello {@link ScreenshotStore}
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ScreenshotStoreTest {
+
+	private File dir;
+
+	@Before
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("screenshots").toFile();
+	}
+
+	@After
+	public void teardown() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	/**
+	 * Pagina finta: sfondo sfumato con un riquadro nella posizione indicata
+	 */
+	static BufferedImage page(int boxX, Color box) {
+		BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setPaint(new GradientPaint(0, 0, Color.WHITE, 320, 240, Color.DARK_GRAY));
+		g.fillRect(0, 0, 320, 240);
+		g.setColor(box);
+		g.fillRect(boxX, 80, 80, 80);
+		g.dispose();
+		return image;
+	}
+
+	@Test
+	public void t00_key() {
+		byte[] content = "screenshot".getBytes();
+		Assert.assertEquals(64, ScreenshotStore.key(content, "png:0").length());
+		Assert.assertEquals(ScreenshotStore.key(content, "png:0"), ScreenshotStore.key("screenshot".getBytes(), "png:0"));
+		Assert.assertNotEquals(ScreenshotStore.key(content, "png:0"), ScreenshotStore.key(content, "jpg:0"));
+	}
+
+	@Test
+	public void t01_add_and_link() throws IOException {
+		ScreenshotStore store = new ScreenshotStore(dir, -1);
+		String key = ScreenshotStore.key("one".getBytes(), "png:0");
+		Assert.assertNull(store.find(key, "png"));
+		File blob = store.add(key, "png", "one".getBytes(), null);
+		Assert.assertEquals(blob, store.find(key, "png"));
+		Assert.assertEquals(blob, store.add(key, "png", "one".getBytes(), null));
+
+		File first = store.link(blob, new File(dir, "first.png"));
+		File second = store.link(blob, new File(dir, "nested/second.png"));
+		Assert.assertEquals("one", FileUtils.readFileToString(second));
+		Assert.assertTrue(Files.isSameFile(first.toPath(), second.toPath()));
+
+		// un link esistente viene sostituito
+		File other = store.add(ScreenshotStore.key("two".getBytes(), "png:0"), "png", "two".getBytes(), null);
+		store.link(other, first);
+		Assert.assertEquals("two", FileUtils.readFileToString(first));
+		Assert.assertEquals("one", FileUtils.readFileToString(second));
+	}
+
+	@Test
+	public void t02_fingerprint() {
+		long page = ScreenshotStore.fingerprint(page(40, Color.RED));
+		Assert.assertEquals(page, ScreenshotStore.fingerprint(page(40, Color.RED)));
+		int nearDistance = Long.bitCount(page ^ ScreenshotStore.fingerprint(page(42, Color.RED)));
+		int farDistance = Long.bitCount(page ^ ScreenshotStore.fingerprint(page(200, Color.BLUE)));
+		Assert.assertTrue("near " + nearDistance, nearDistance <= 4);
+		Assert.assertTrue("far " + farDistance, farDistance > 8);
+	}
+
+	@Test
+	public void t03_find_similar() throws IOException {
+		ScreenshotStore exact = new ScreenshotStore(dir, -1);
+		Assert.assertFalse(exact.perceptual());
+		exact.add("aa00", "png", new byte[] { 1 }, 0L);
+		Assert.assertNull(exact.findSimilar(0L));
+
+		ScreenshotStore store = new ScreenshotStore(dir, 4);
+		Assert.assertTrue(store.perceptual());
+		File blob = store.add("bb00", "png", new byte[] { 2 }, 0xFFL);
+		Assert.assertEquals(blob, store.findSimilar(0xF0L));
+		Assert.assertNull(store.findSimilar(0xF00L));
+	}
+
+	@Test
+	public void t04_pipeline() throws Exception {
+		try (ScreenshotPipeline pipeline = new ScreenshotPipeline(4, 0, "png", new ScreenshotStore(dir, 4))) {
+			File first = pipeline.submit(ScreenshotPipelineTest.png(page(40, Color.RED)), new File(dir, "first.png")).get(5, TimeUnit.SECONDS);
+			File near = pipeline.submit(ScreenshotPipelineTest.png(page(42, Color.RED)), new File(dir, "near.png")).get(5, TimeUnit.SECONDS);
+			File far = pipeline.submit(ScreenshotPipelineTest.png(page(200, Color.BLUE)), new File(dir, "far.png")).get(5, TimeUnit.SECONDS);
+			Assert.assertTrue("screenshot quasi identico", Files.isSameFile(first.toPath(), near.toPath()));
+			Assert.assertFalse(Files.isSameFile(first.toPath(), far.toPath()));
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.openqa.selenium.By;
+import org.openqa.selenium.ElementNotVisibleException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+
+/**
+ * Test dell'{@link ActionExecutor} sul {@link FakeWebDriver}: gli elementi diventano stale perchè la pagina li
+ * sostituisce tra la ricerca e l'azione
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ActionExecutorTest {
+
+	// sostituisce il bottone con una copia, come farebbe il re-render di una SPA
+	static final String RERENDER = "var b = document.getElementById('confirm'); b.parentNode.replaceChild(b.cloneNode(true), b);";
+
+	private FakeWebDriver driver;
+	private List<Long> sleeps;
+	private AtomicInteger lookups;
+
+	@Before
+	public void setup() {
+		driver = new FakeWebDriver();
+		driver.get(getClass().getClassLoader().getResource(FakeWebDriverTest.PAGE).toString());
+		sleeps = new ArrayList<>();
+		lookups = new AtomicInteger();
+	}
+
+	@After
+	public void teardown() {
+		driver.quit();
+	}
+
+	private ActionExecutor executor(int attempts, long budget) {
+		return new ActionExecutor(attempts, 50, budget, System::nanoTime, sleeps::add);
+	}
+
+	/**
+	 * @param rerenders
+	 *            numero di ricerche dopo le quali la pagina ridisegna il bottone
+	 */
+	private List<WebElement> confirm(int rerenders) {
+		WebElement el = driver.findElement(By.id("confirm"));
+		if (lookups.incrementAndGet() <= rerenders)
+			driver.executeScript(RERENDER);
+		return Collections.singletonList(el);
+	}
+
+	private String result() {
+		return driver.findElement(By.id("result")).getText();
+	}
+
+	@Test
+	public void t00_stale_element_is_resolved_again() {
+		CuseMetrics metrics = CuseMetrics.getInstance();
+		long retries = metrics.counter(CuseMetrics.ACTION_TRANSIENT_RETRIES);
+		Assert.assertTrue(executor(3, 1000).perform("confirm", () -> confirm(1), WebElement::click));
+		Assert.assertEquals("click", result());
+		Assert.assertEquals(2, lookups.get());
+		Assert.assertEquals(Arrays.asList(50L), sleeps);
+		Assert.assertEquals(retries + 1, metrics.counter(CuseMetrics.ACTION_TRANSIENT_RETRIES));
+	}
+
+	@Test
+	public void t01_attempts_with_backoff() {
+		CuseMetrics metrics = CuseMetrics.getInstance();
+		long failures = metrics.counter(CuseMetrics.ACTION_TRANSIENT_FAILURES);
+		try {
+			executor(4, 1000).perform("confirm", () -> confirm(Integer.MAX_VALUE), WebElement::click);
+			Assert.fail();
+		} catch (StaleElementReferenceException e) {
+			// l'ultimo errore transitorio arriva al chiamante
+		}
+		Assert.assertEquals("", result());
+		Assert.assertEquals(4, lookups.get());
+		// l'attesa raddoppia ad ogni tentativo
+		Assert.assertEquals(Arrays.asList(50L, 100L, 200L), sleeps);
+		Assert.assertEquals(failures + 1, metrics.counter(CuseMetrics.ACTION_TRANSIENT_FAILURES));
+	}
+
+	@Test
+	public void t02_budget() {
+		// l'attesa del primo tentativo supera già il tempo massimo
+		try {
+			executor(10, 10).perform("confirm", () -> confirm(Integer.MAX_VALUE), WebElement::click);
+			Assert.fail();
+		} catch (StaleElementReferenceException e) {
+			// l'ultimo errore transitorio arriva al chiamante
+		}
+		Assert.assertEquals(1, lookups.get());
+		Assert.assertTrue(sleeps.isEmpty());
+	}
+
+	@Test
+	public void t03_done_action_is_not_repeated() {
+		AtomicInteger clicks = new AtomicInteger();
+		List<WebElement> elements = Arrays.asList(driver.findElement(By.id("confirm")), driver.findElement(By.id("username")));
+		Assert.assertTrue(executor(3, 1000).perform("elements", () -> {
+			lookups.incrementAndGet();
+			return elements;
+		}, el -> {
+			if (clicks.incrementAndGet() > 1)
+				throw new StaleElementReferenceException("re-rendered");
+		}));
+		Assert.assertEquals(1, lookups.get());
+		Assert.assertEquals(2, clicks.get());
+		Assert.assertTrue(sleeps.isEmpty());
+
+		// gli errori non transitori non vengono ripetuti
+		Assert.assertFalse(executor(3, 1000).perform("elements", () -> elements, el -> {
+			throw new WebDriverException("boom");
+		}));
+		Assert.assertTrue(sleeps.isEmpty());
+	}
+
+	@Test
+	public void t04_transient() {
+		Assert.assertTrue(ActionExecutor.isTransient(new StaleElementReferenceException("stale")));
+		Assert.assertTrue(ActionExecutor.isTransient(new ElementNotVisibleException("hidden")));
+		Assert.assertTrue(ActionExecutor.isTransient(new WebDriverException("Element is not clickable at point (10, 20). Other element would receive the click")));
+		Assert.assertFalse(ActionExecutor.isTransient(new NoSuchElementException("missing")));
+		Assert.assertFalse(ActionExecutor.isTransient(new WebDriverException("boom")));
+		Assert.assertFalse(ActionExecutor.isTransient(new IllegalStateException("boom")));
+	}
+
+}
@@ -0,0 +1,151 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.enums.Browser;
+
+/**
+ * Test delle {@link BrowserCapabilities}: valori per browser, capabilities costruite e blocco degli URL sul browser
+ * {@link Browser#FAKE}
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BrowserCapabilitiesTest {
+
+	// pagina di prova con script di terze parti
+	static final String PAGE = WebDriver.class.getSimpleName().concat("Resources") + "/fake-blocked-page.html";
+
+	@Test
+	public void t00_for_browser() {
+		Assert.assertEquals("eager", BrowserCapabilities.forBrowser("eager; ie: normal", Browser.CHROME));
+		Assert.assertEquals("normal", BrowserCapabilities.forBrowser("eager; ie: normal", Browser.IE));
+		Assert.assertEquals("none", BrowserCapabilities.forBrowser("Chrome: none ; eager", Browser.CHROME));
+		Assert.assertEquals("", BrowserCapabilities.forBrowser("firefox: images", Browser.CHROME));
+		Assert.assertEquals("", BrowserCapabilities.forBrowser("images; chrome:", Browser.CHROME));
+		Assert.assertEquals("http://*.example.com/*", BrowserCapabilities.forBrowser("http://*.example.com/*", Browser.FIREFOX));
+		Assert.assertEquals("", BrowserCapabilities.forBrowser(null, Browser.FAKE));
+
+		Assert.assertTrue(BrowserCapabilities.matches(BrowserCapabilities.compile(Arrays.asList("*.doubleclick.net")), "https://ad.doubleclick.net/x.js", "ad.doubleclick.net"));
+		Assert.assertTrue(BrowserCapabilities.matches(BrowserCapabilities.compile(Arrays.asList("*google-analytics.com*")), "https://www.google-analytics.com/analytics.js", "www.google-analytics.com"));
+		Assert.assertFalse(BrowserCapabilities.matches(BrowserCapabilities.compile(Arrays.asList("*.doubleclick.net")), "https://example.com/?ref=doubleclick.net", "example.com"));
+
+		// su Chrome per gli URL https valgono solo i pattern sull'host
+		Assert.assertFalse(BrowserCapabilities.hasPath("*google-analytics.com*"));
+		Assert.assertFalse(BrowserCapabilities.hasPath("http://*.example.com/*"));
+		Assert.assertTrue(BrowserCapabilities.hasPath("*.example.com/ads/*"));
+		Assert.assertTrue(BrowserCapabilities.hasPath("https://example.com/*.js"));
+		Assert.assertTrue(BrowserCapabilities.hasPath("*example.com?track=*"));
+	}
+
+	@Test
+	public void t01_capabilities() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.pageLoadStrategy("eager; ie: normal");
+		config.blockUrls("*.doubleclick.net, *google-analytics.com*");
+		config.blockResources("images, FONTS; firefox: images");
+
+		BrowserCapabilities chrome = BrowserCapabilities.of(Browser.CHROME, config);
+		Assert.assertEquals(Arrays.asList("*.doubleclick.net", "*google-analytics.com*"), chrome.blockedUrls());
+		Assert.assertEquals(2, chrome.blockedResources().size());
+		DesiredCapabilities capabilities = chrome.toCapabilities();
+		Assert.assertEquals("chrome", capabilities.getBrowserName());
+		Assert.assertEquals("eager", capabilities.getCapability(CapabilityType.PAGE_LOAD_STRATEGY));
+		Assert.assertTrue(capabilities.getCapability(ChromeOptions.CAPABILITY) instanceof ChromeOptions);
+		Proxy proxy = (Proxy) capabilities.getCapability(CapabilityType.PROXY);
+		Assert.assertEquals(Proxy.ProxyType.PAC, proxy.getProxyType());
+		Assert.assertTrue(proxy.getProxyAutoconfigUrl().startsWith("data:application/x-ns-proxy-autoconfig;base64,"));
+
+		Assert.assertEquals(1, BrowserCapabilities.of(Browser.FIREFOX, config).blockedResources().size());
+
+		DesiredCapabilities ie = BrowserCapabilities.of(Browser.IE, config).toCapabilities();
+		Assert.assertEquals("normal", ie.getCapability(CapabilityType.PAGE_LOAD_STRATEGY));
+		Assert.assertNull(ie.getCapability(CapabilityType.PROXY));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void t02_invalid_strategy() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.pageLoadStrategy("fast");
+		BrowserCapabilities.of(Browser.CHROME, config);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void t03_invalid_resource() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.blockResources("images, scripts");
+		BrowserCapabilities.of(Browser.FIREFOX, config);
+	}
+
+	@Test
+	public void t04_fake_blocks_urls() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.targetBrowser(Browser.FAKE);
+		config.pageLoadStrategy("eager");
+		config.blockUrls("*.example.invalid");
+		try (CuseUtil util = new CuseUtil(config)) {
+			FakeWebDriver driver = (FakeWebDriver) util.driver();
+			Assert.assertEquals("eager", driver.getCapabilities().getCapability(CapabilityType.PAGE_LOAD_STRATEGY));
+			util.loadPage(getClass().getClassLoader().getResource(PAGE).toString());
+			Assert.assertEquals("Blocked page", util.currentTitle());
+			Assert.assertEquals(2, driver.getBlockedCount());
+			Assert.assertEquals("undefined", driver.findElementById("loaded").getText());
+		}
+	}
+
+	@Test
+	public void t05_upstream_proxy() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.blockUrls("*.doubleclick.net");
+		Assert.assertTrue(pac(BrowserCapabilities.of(Browser.CHROME, config)).endsWith(" return 'DIRECT'; }"));
+
+		// gli URL non bloccati passano dal proxy aziendale invece che direttamente
+		config.blockUpstreamProxy("proxy.example.com:3128; firefox: proxy.example.com:8080");
+		BrowserCapabilities chrome = BrowserCapabilities.of(Browser.CHROME, config);
+		Assert.assertEquals("proxy.example.com:3128", chrome.upstreamProxy());
+		String script = pac(chrome);
+		Assert.assertTrue(script.contains("shExpMatch(host, '*.doubleclick.net')) return 'PROXY 127.0.0.1:9';"));
+		Assert.assertTrue(script.endsWith(" return 'PROXY proxy.example.com:3128'; }"));
+		Assert.assertTrue(pac(BrowserCapabilities.of(Browser.FIREFOX, config)).endsWith(" return 'PROXY proxy.example.com:8080'; }"));
+
+		// sessioni con proxy diversi non sono intercambiabili
+		Assert.assertNotEquals(chrome.toString(), BrowserCapabilities.of(Browser.FIREFOX, config).toString());
+	}
+
+	@Test
+	public void t06_media_blocked_by_pac() {
+		// i media vengono davvero bloccati dal PAC, non solo fermati all'avvio
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.blockResources("media");
+		String script = pac(BrowserCapabilities.of(Browser.FIREFOX, config));
+		Assert.assertTrue(script.contains("shExpMatch(url, '*.mp4*')"));
+		Assert.assertTrue(script.contains("shExpMatch(url, '*.webm*')"));
+		Assert.assertTrue(script.endsWith(" return 'DIRECT'; }"));
+		Assert.assertTrue(pac(BrowserCapabilities.of(Browser.CHROME, config)).contains("shExpMatch(url, '*.mp3*')"));
+		Assert.assertTrue(BrowserCapabilities.of(Browser.FIREFOX, config).blockedUrls().isEmpty());
+
+		config.blockResources("images");
+		Assert.assertNull(BrowserCapabilities.of(Browser.FIREFOX, config).toCapabilities().getCapability(CapabilityType.PROXY));
+	}
+
+	private static String pac(BrowserCapabilities capabilities) {
+		Proxy proxy = (Proxy) capabilities.toCapabilities().getCapability(CapabilityType.PROXY);
+		String url = proxy.getProxyAutoconfigUrl();
+		return new String(Base64.getDecoder().decode(url.substring(url.indexOf(',') + 1)), StandardCharsets.UTF_8);
+	}
+
+}
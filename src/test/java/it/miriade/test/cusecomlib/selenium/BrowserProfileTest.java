@@ -0,0 +1,155 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.firefox.FirefoxOptions;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.cucumber.CucumberSpec;
+import it.miriade.test.cusecomlib.enums.Browser;
+import it.miriade.test.cusecomlib.yaml.YamlSupport;
+import it.miriade.test.cusecomlib.yaml.YamlSupportFactory;
+
+/**
+ * Test dei {@link BrowserProfile}: profili predefiniti, profili dello YAML comune e loro applicazione alle opzioni dei
+ * browser
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BrowserProfileTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static CuseSetupConfiguration config() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.yamlClasspathDir("cucumber/infocert/yaml/");
+		return config;
+	}
+
+	private static YamlSupport commonYaml() {
+		return new YamlSupportFactory(config()).getCommonYaml();
+	}
+
+	@Test
+	public void t00_builtin() {
+		BrowserProfile fast = BrowserProfile.of(BrowserProfile.HEADLESS_FAST, null);
+		Assert.assertTrue(fast.headless());
+		Assert.assertTrue(fast.disableBackground());
+		Assert.assertEquals("1366,768", fast.window());
+		Assert.assertEquals("target/browser-cache", fast.cacheDir());
+		Assert.assertTrue(fast.sizesWindow(Browser.CHROME));
+		Assert.assertFalse(fast.sizesWindow(Browser.IE));
+
+		BrowserProfile debug = BrowserProfile.of(BrowserProfile.HEADED_DEBUG, null);
+		Assert.assertFalse(debug.headless());
+		Assert.assertFalse(debug.disableBackground());
+		Assert.assertNull(debug.cacheDir());
+	}
+
+	@Test
+	public void t01_yaml() {
+		YamlSupport yaml = commonYaml();
+
+		// i valori dello YAML sostituiscono quelli predefiniti
+		BrowserProfile fast = BrowserProfile.of(BrowserProfile.HEADLESS_FAST, yaml);
+		Assert.assertTrue(fast.headless());
+		Assert.assertEquals("1920,1080", fast.window());
+
+		BrowserProfile small = BrowserProfile.of("ci-small", yaml);
+		Assert.assertTrue(small.headless());
+		Assert.assertTrue(small.disableBackground());
+		Assert.assertEquals("800,600", small.window());
+		Assert.assertEquals("target/ci-cache", small.cacheDir());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void t02_unknown() {
+		BrowserProfile.of("missing", commonYaml());
+	}
+
+	@Test
+	public void t03_capabilities() throws IOException {
+		CuseSetupConfiguration config = config();
+		BrowserProfile small = BrowserProfile.of("ci-small", commonYaml());
+
+		DesiredCapabilities chrome = BrowserCapabilities.of(Browser.CHROME, config, small).toCapabilities();
+		String options = ((ChromeOptions) chrome.getCapability(ChromeOptions.CAPABILITY)).toJson().toString();
+		Assert.assertTrue(options, options.contains("--headless"));
+		Assert.assertTrue(options, options.contains("--window-size=800,600"));
+		Assert.assertTrue(options, options.contains("--disk-cache-dir="));
+		Assert.assertTrue(options, options.contains("--disable-background-networking"));
+		Assert.assertTrue(options, options.contains("--lang=it-IT"));
+
+		DesiredCapabilities firefox = BrowserCapabilities.of(Browser.FIREFOX, config, small).toCapabilities();
+		options = ((FirefoxOptions) firefox.getCapability(FirefoxOptions.FIREFOX_OPTIONS)).toJson().toString();
+		Assert.assertTrue(options, options.contains("-headless"));
+		Assert.assertTrue(options, options.contains("-private"));
+		Assert.assertTrue(options, options.contains("browser.tabs.remote.autostart"));
+		Assert.assertTrue(options, options.contains("toolkit.telemetry.enabled"));
+
+		// il profilo fa parte della chiave del pool
+		Assert.assertNotEquals(BrowserCapabilities.of(Browser.CHROME, config).toString(), BrowserCapabilities.of(Browser.CHROME, config, small).toString());
+	}
+
+	@Test
+	public void t04_fake_window() {
+		CuseSetupConfiguration config = config();
+		config.targetBrowser(Browser.FAKE);
+		config.browserProfile("headless-fast; fake: ci-small");
+		try (CuseUtil util = new CuseUtil(config, new YamlSupportFactory(config))) {
+			Assert.assertEquals(new Dimension(800, 600), util.driver().manage().window().getSize());
+		}
+	}
+
+	@Test
+	public void t05_session_cache_dir() throws IOException {
+		CuseSetupConfiguration config = config();
+		BrowserProfile small = BrowserProfile.of("ci-small", commonYaml());
+
+		// ogni sessione ha la sua cartella, chiamata con il browser o l'id del worker
+		BrowserCapabilities chrome = BrowserCapabilities.of(Browser.CHROME, config, small);
+		String options = ((ChromeOptions) chrome.toCapabilities().getCapability(ChromeOptions.CAPABILITY)).toJson().toString();
+		File first = chrome.sessionCacheDir();
+		Assert.assertEquals(new File("target/ci-cache").getAbsoluteFile(), first.getParentFile());
+		Assert.assertTrue(first.getName(), first.getName().startsWith("chrome-"));
+		Assert.assertTrue(options, options.contains("--disk-cache-dir=" + first.getPath()));
+		chrome.toCapabilities();
+		Assert.assertNotEquals(first, chrome.sessionCacheDir());
+
+		System.setProperty(CucumberSpec.WORKER_ID, "2");
+		try {
+			Assert.assertTrue(small.sessionCacheDir(Browser.FIREFOX).getName().startsWith("2-"));
+		} finally {
+			System.clearProperty(CucumberSpec.WORKER_ID);
+		}
+		Assert.assertNull(BrowserProfile.of(BrowserProfile.HEADED_DEBUG, null).sessionCacheDir(Browser.CHROME));
+		Assert.assertNull(BrowserCapabilities.of(Browser.CHROME, config).sessionCacheDir());
+	}
+
+	@Test
+	public void t06_cache_deleted_on_quit() throws IOException {
+		CuseSetupConfiguration config = config();
+		config.targetBrowser(Browser.FAKE);
+		File cache = tmp.newFolder("fake-cache");
+		new File(cache, "index").createNewFile();
+		try (CuseUtil util = new CuseUtil(config)) {
+			BrowserProfile.bindCacheDir(util.driver(), cache);
+			util.quitBrowser();
+			Assert.assertFalse(cache.exists());
+		}
+	}
+
+}
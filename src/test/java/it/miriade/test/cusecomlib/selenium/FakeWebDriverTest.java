@@ -0,0 +1,187 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.RemoteWebElement;
+
+import it.miriade.test.cusecomlib.CuseSetupConfiguration;
+import it.miriade.test.cusecomlib.CuseUtil;
+import it.miriade.test.cusecomlib.enums.Browser;
+import it.miriade.test.cusecomlib.enums.BySelector;
+
+/**
+ * Test del {@link FakeWebDriver} su una pagina HTML locale, senza browser nè webdriver
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class FakeWebDriverTest {
+
+	// pagina di prova
+	static final String PAGE = WebDriver.class.getSimpleName().concat("Resources") + "/fake-page.html";
+
+	private FakeWebDriver driver;
+	private String url;
+
+	@Before
+	public void setup() {
+		url = getClass().getClassLoader().getResource(PAGE).toString();
+		driver = new FakeWebDriver();
+		driver.get(url);
+	}
+
+	@After
+	public void teardown() {
+		driver.quit();
+	}
+
+	@Test
+	public void t00_page() {
+		Assert.assertEquals("Fake page", driver.getTitle());
+		Assert.assertEquals(url, driver.getCurrentUrl());
+		Assert.assertTrue(driver.getPageSource().contains("username"));
+		Assert.assertEquals("fake", driver.getCapabilities().getBrowserName());
+	}
+
+	@Test
+	public void t01_find() {
+		Assert.assertEquals("input", driver.findElement(By.id("username")).getTagName());
+		Assert.assertEquals("username", driver.findElement(By.name("username")).getAttribute("id"));
+		Assert.assertEquals(2, driver.findElements(By.cssSelector("ul.menu > li")).size());
+		Assert.assertEquals(2, driver.findElements(By.className("item")).size());
+		Assert.assertEquals(3, driver.findElements(By.xpath("//form//input")).size());
+		Assert.assertEquals(3, driver.findElements(By.tagName("INPUT")).size());
+		Assert.assertEquals("#contacts", driver.findElement(By.linkText("Contatti")).getAttribute("href"));
+		Assert.assertEquals("Home", driver.findElement(By.partialLinkText("Hom")).getText());
+
+		// ricerca relativa ad un elemento
+		WebElement active = driver.findElement(By.cssSelector("li.active"));
+		Assert.assertEquals(1, active.findElements(By.tagName("a")).size());
+		Assert.assertEquals("stesso elemento, stesso id", ((RemoteWebElement) active).getId(), ((RemoteWebElement) driver.findElement(By.cssSelector("li.active"))).getId());
+
+		Assert.assertTrue(driver.findElements(By.id("missing")).isEmpty());
+		try {
+			driver.findElement(By.id("missing"));
+			Assert.fail("Expected NoSuchElementException");
+		} catch (NoSuchElementException e) {
+		}
+	}
+
+	@Test
+	public void t02_state() {
+		Assert.assertTrue(driver.findElement(By.id("username")).isDisplayed());
+		Assert.assertFalse(driver.findElement(By.id("hidden")).isDisplayed());
+		Assert.assertTrue(driver.findElement(By.id("remember")).isSelected());
+		Assert.assertFalse(driver.findElement(By.id("disabled")).isEnabled());
+		Assert.assertTrue(driver.findElement(By.id("username")).isEnabled());
+		Assert.assertNull(driver.findElement(By.id("username")).getAttribute("missing"));
+	}
+
+	@Test
+	public void t03_click_and_send_keys() {
+		WebElement username = driver.findElement(By.id("username"));
+		username.sendKeys("svaponi");
+		Assert.assertEquals("svaponi", username.getAttribute("value"));
+		driver.findElement(By.id("confirm")).click();
+		Assert.assertEquals("click svaponi", driver.findElement(By.id("result")).getText());
+
+		username.clear();
+		username.sendKeys("mario", Keys.ENTER);
+		Assert.assertEquals("submit mario", driver.findElement(By.id("result")).getText());
+	}
+
+	@Test
+	public void t04_execute_script() {
+		JavascriptExecutor js = driver;
+		Assert.assertEquals(3L, js.executeScript("return arguments[0] + arguments[1];", 1, 2));
+		Assert.assertEquals("Fake page", js.executeScript("return document.title;"));
+		Assert.assertNull(js.executeScript("document.title = 'Nuovo titolo';"));
+		Assert.assertEquals("Nuovo titolo", driver.getTitle());
+
+		WebElement username = driver.findElement(By.id("username"));
+		Assert.assertEquals("username", js.executeScript("return arguments[0].id;", username));
+		Object items = js.executeScript("return document.querySelectorAll('li').length;");
+		Assert.assertEquals(2L, items);
+		WebElement result = (WebElement) js.executeScript("return document.getElementById('result');");
+		Assert.assertEquals("div", result.getTagName());
+		Assert.assertEquals(Arrays.asList(1L, "a"), js.executeScript("return [arguments[0][0], 'a'];", Arrays.asList(1, 2)));
+	}
+
+	@Test
+	public void t05_navigation_and_cookies() {
+		WebElement username = driver.findElement(By.id("username"));
+		driver.manage().addCookie(new Cookie("session", "abc"));
+		Assert.assertEquals("abc", driver.manage().getCookieNamed("session").getValue());
+		driver.navigate().refresh();
+		try {
+			username.getTagName();
+			Assert.fail("Expected StaleElementReferenceException");
+		} catch (StaleElementReferenceException e) {
+		}
+		driver.manage().deleteAllCookies();
+		Assert.assertTrue(driver.manage().getCookies().isEmpty());
+	}
+
+	@Test
+	public void t06_implicit_wait() {
+		driver.manage().timeouts().implicitlyWait(300, TimeUnit.MILLISECONDS);
+		((JavascriptExecutor) driver).executeScript("setTimeout(function() { var div = document.createElement('div'); div.id = 'late'; document.body.appendChild(div); }, 100);");
+		Assert.assertEquals("div", driver.findElement(By.id("late")).getTagName());
+
+		long start = System.currentTimeMillis();
+		Assert.assertTrue(driver.findElements(By.id("missing")).isEmpty());
+		Assert.assertTrue(System.currentTimeMillis() - start >= 300);
+	}
+
+	@Test
+	public void t07_latency() {
+		FakeWebDriver slow = new FakeWebDriver(20);
+		try {
+			long commands = slow.getCommandCount();
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < 5; i++)
+				slow.getTitle();
+			Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+			Assert.assertEquals(commands + 5, slow.getCommandCount());
+		} finally {
+			slow.quit();
+		}
+	}
+
+	@Test
+	public void t08_cuse_util() {
+		CuseSetupConfiguration config = new CuseSetupConfiguration();
+		config.targetBrowser(Browser.FAKE);
+		config.timeoutFindElement(0.1);
+		try (CuseUtil util = new CuseUtil(config)) {
+			Assert.assertTrue(util.driver() instanceof FakeWebDriver);
+			Assert.assertEquals(Browser.FAKE, util.driverWrapper().getBrowser());
+			Assert.assertFalse(util.driverWrapper().isRemote());
+			util.loadPage(url);
+			Assert.assertEquals("Fake page", util.currentTitle());
+			util.setTextBy(BySelector.ID, "username", "svaponi");
+			util.clickBy(BySelector.CSS, "#confirm");
+			List<WebElement> result = util.findBy(BySelector.XPATH, "//div[@id='result']");
+			Assert.assertEquals("click svaponi", result.get(0).getText());
+			Assert.assertTrue(util.existsBy(BySelector.TEXT, "Home"));
+			Assert.assertFalse(util.existsBy(BySelector.ID, "missing"));
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+import it.miriade.test.cusecomlib.enums.BySelector;
+
+/**
+ * Unit test di {@link SeleniumScriptUtil} con driver ed elementi finti
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SeleniumScriptUtilTest {
+
+	private final AtomicInteger scripts = new AtomicInteger();
+
+	private WebDriver driver(Object result) {
+		return (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { WebDriver.class, JavascriptExecutor.class }, (proxy, method, args) -> {
+			if (method.getName().equals("executeScript")) {
+				scripts.incrementAndGet();
+				if (result instanceof RuntimeException)
+					throw (RuntimeException) result;
+				return result;
+			}
+			return null;
+		});
+	}
+
+	private WebElement element(boolean good) {
+		return (WebElement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { WebElement.class }, (proxy, method, args) -> {
+			if (method.getName().equals("isDisplayed") || method.getName().equals("isEnabled"))
+				return good;
+			if (method.getName().equals("equals"))
+				return proxy == args[0];
+			return method.getName().equals("hashCode") ? System.identityHashCode(proxy) : null;
+		});
+	}
+
+	@Test
+	public void t00_one_script_for_all_elements() {
+		List<WebElement> elements = Arrays.asList(element(true), element(true), element(true));
+		List<WebElement> good = SeleniumScriptUtil.filterGoodElements(driver(Arrays.asList(true, false, true)), elements, e -> {
+			throw new AssertionError("fallback non atteso");
+		});
+		Assert.assertEquals(1, scripts.get());
+		Assert.assertEquals(Arrays.asList(elements.get(0), elements.get(2)), good);
+	}
+
+	@Test
+	public void t01_fallback_on_script_error() {
+		List<WebElement> elements = Arrays.asList(element(true), element(false));
+		List<WebElement> good = SeleniumScriptUtil.filterGoodElements(driver(new JavascriptException("boom")), elements, e -> e.isDisplayed() && e.isEnabled());
+		Assert.assertEquals(Arrays.asList(elements.get(0)), good);
+	}
+
+	@Test
+	public void t02_fallback_on_unexpected_result() {
+		List<WebElement> elements = Arrays.asList(element(false), element(true));
+		Assert.assertNull(SeleniumScriptUtil.probe(driver(Arrays.asList(true)), elements));
+		List<WebElement> good = SeleniumScriptUtil.filterGoodElements(driver(null), elements, WebElement::isDisplayed);
+		Assert.assertEquals(Arrays.asList(elements.get(1)), good);
+	}
+
+	@Test
+	public void t03_empty_list_no_script() {
+		Assert.assertTrue(SeleniumScriptUtil.filterGoodElements(driver(null), Arrays.asList(), e -> true).isEmpty());
+		Assert.assertEquals(0, scripts.get());
+	}
+
+	@Test
+	public void t04_locate_returns_elements() {
+		List<WebElement> elements = Arrays.asList(element(true));
+		Assert.assertEquals(elements, SeleniumScriptUtil.locate(driver(elements), BySelector.CSS, "a"));
+		Assert.assertNull(SeleniumScriptUtil.locate(driver(Arrays.asList("not an element")), BySelector.CSS, "a"));
+		Assert.assertNull(SeleniumScriptUtil.locate(driver(new JavascriptException("boom")), BySelector.CSS, "a"));
+	}
+
+	@Test
+	public void t06_fallback_only_for_unknown_elements() {
+		List<WebElement> elements = Arrays.asList(element(true), element(false), element(true));
+		AtomicInteger fallbacks = new AtomicInteger();
+		List<WebElement> good = SeleniumScriptUtil.filterGoodElements(driver(Arrays.asList(true, null, null)), elements, e -> {
+			fallbacks.incrementAndGet();
+			return e.isDisplayed();
+		});
+		Assert.assertEquals(2, fallbacks.get());
+		Assert.assertEquals(Arrays.asList(elements.get(0), elements.get(2)), good);
+	}
+
+	/**
+	 * Esegue davvero lo script di ricerca su una pagina, con il motore JavaScript di HtmlUnit
+	 */
+	@Test
+	public void t05_locate_script_semantics() throws Exception {
+		String html = "<html><body>" //
+			+ "<a id='one' class='link x' name='n' href='#'> Home </a>" //
+			+ "<a id='two' class='link' href='#' style='visibility:hidden'>Home page</a>" //
+			+ "<input id='three' name='n' disabled='disabled'/>" //
+			+ "<input id='four' name='n' class='x'/>" //
+			+ "</body></html>";
+		try (WebClient client = new WebClient(BrowserVersion.CHROME)) {
+			MockWebConnection connection = new MockWebConnection();
+			connection.setDefaultResponse(html);
+			client.setWebConnection(connection);
+			HtmlPage page = client.getPage(new URL("http://localhost/"));
+
+			Assert.assertEquals("one,four", locate(page, BySelector.CSS, ".x"));
+			Assert.assertEquals("one", locate(page, BySelector.ID, "one"));
+			Assert.assertEquals("", locate(page, BySelector.ID, "two"));
+			Assert.assertEquals("one", locate(page, BySelector.CLASS, "link"));
+			Assert.assertEquals("one,four", locate(page, BySelector.NAME, "n"));
+			Assert.assertEquals("four", locate(page, BySelector.TAG_NAME, "input"));
+			Assert.assertEquals("one", locate(page, BySelector.TEXT, "Home"));
+			Assert.assertEquals("one", locate(page, BySelector.PARTIAL_TEXT, "Hom"));
+			Assert.assertEquals("one,four", locate(page, BySelector.XPATH, "//*[@name='n']"));
+		}
+	}
+
+	private static String locate(HtmlPage page, BySelector by, String expr) {
+		String js = "(function() { var res = (function() { " + SeleniumScriptUtil.LOCATE_SCRIPT + " }).apply(null, ['" + by.name() + "', \"" + expr + "\"]);"
+			+ " var ids = []; for (var i = 0; i < res.length; i++) ids.push(res[i].id); return ids.join(','); })()";
+		return page.executeJavaScript(js).getJavaScriptResult().toString();
+	}
+}
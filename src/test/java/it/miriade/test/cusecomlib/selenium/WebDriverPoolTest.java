@@ -0,0 +1,123 @@
+package it.miriade.test.cusecomlib.selenium;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Test del {@link WebDriverPool} con un {@link WebDriver} finto che registra i comandi ricevuti
+ *
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class WebDriverPoolTest {
+
+	/**
+	 * Stub del {@link WebDriver}: registra i nomi dei metodi invocati, se <code>broken</code> ogni comando fallisce
+	 */
+	static class StubDriver {
+		final List<String> calls = new ArrayList<>();
+		boolean broken;
+		final WebDriver driver = (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { WebDriver.class }, (proxy, method, args) -> {
+			if (method.getName().equals("hashCode"))
+				return System.identityHashCode(proxy);
+			if (method.getName().equals("equals"))
+				return proxy == args[0];
+			calls.add(method.getName());
+			if (broken)
+				throw new WebDriverException("session deleted");
+			switch (method.getName()) {
+			case "getWindowHandles":
+				return Collections.singleton("main");
+			case "manage":
+			case "switchTo":
+				return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { method.getReturnType() }, (p, m, a) -> {
+					calls.add(m.getName());
+					return m.getReturnType() == WebDriver.class ? proxy : null;
+				});
+			default:
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void t00_miss_then_hit() {
+		WebDriverPool pool = new WebDriverPool(2, 0);
+		StubDriver stub = new StubDriver();
+
+		Assert.assertNull(pool.acquire("CHROME|path"));
+		pool.register(stub.driver);
+		pool.release("CHROME|path", stub.driver);
+		Assert.assertEquals(1, pool.idleCount());
+		Assert.assertTrue(stub.calls.contains("deleteAllCookies"));
+		Assert.assertTrue(stub.calls.contains("get"));
+
+		Assert.assertNull(pool.acquire("FIREFOX|path"));
+		Assert.assertSame(stub.driver, pool.acquire("CHROME|path"));
+		Assert.assertEquals(0, pool.idleCount());
+		Assert.assertEquals(1, pool.hits());
+		Assert.assertEquals(2, pool.misses());
+	}
+
+	@Test
+	public void t01_bounded() {
+		WebDriverPool pool = new WebDriverPool(1, 0);
+		StubDriver one = new StubDriver();
+		StubDriver two = new StubDriver();
+
+		pool.release("k", one.driver);
+		pool.release("k", two.driver);
+		Assert.assertEquals(1, pool.idleCount());
+		Assert.assertEquals(1, pool.evictions());
+		Assert.assertTrue(two.calls.contains("quit"));
+	}
+
+	@Test
+	public void t02_evict_unhealthy() {
+		WebDriverPool pool = new WebDriverPool(1, 0);
+		StubDriver stub = new StubDriver();
+
+		pool.release("k", stub.driver);
+		stub.broken = true;
+		Assert.assertNull(pool.acquire("k"));
+		Assert.assertEquals(1, pool.evictions());
+		Assert.assertEquals(1, pool.misses());
+	}
+
+	@Test
+	public void t03_evict_expired() throws InterruptedException {
+		WebDriverPool pool = new WebDriverPool(1, 1);
+		StubDriver stub = new StubDriver();
+
+		pool.register(stub.driver);
+		Thread.sleep(10);
+		pool.release("k", stub.driver);
+		Assert.assertEquals(0, pool.idleCount());
+		Assert.assertTrue(stub.calls.contains("quit"));
+	}
+
+	@Test
+	public void t04_disabled_and_shutdown() {
+		WebDriverPool pool = new WebDriverPool(0, 0);
+		Assert.assertFalse(pool.isEnabled());
+		StubDriver stub = new StubDriver();
+		pool.release("k", stub.driver);
+		Assert.assertTrue(stub.calls.contains("quit"));
+
+		pool.configure(1, 0);
+		StubDriver idle = new StubDriver();
+		pool.release("k", idle.driver);
+		pool.shutdown();
+		Assert.assertEquals(0, pool.idleCount());
+		Assert.assertTrue(idle.calls.contains("quit"));
+	}
+}
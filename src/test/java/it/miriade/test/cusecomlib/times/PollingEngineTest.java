@@ -0,0 +1,122 @@
+package it.miriade.test.cusecomlib.times;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runners.MethodSorters;
+
+import it.miriade.test.cusecomlib.excep.PollingTimeoutException;
+
+/**
+ * Unit test di {@link PollingEngine} con un orologio finto: ogni attesa ed ogni invocazione dell'azione fanno avanzare
+ * il tempo senza dormire davvero.
+ * 
+ * @author svaponi
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PollingEngineTest {
+
+	@Rule
+	public final ExpectedException exception = ExpectedException.none();
+
+	private long now;
+	private final List<Long> sleeps = new ArrayList<>();
+
+	private PollingEngine engine() {
+		return new PollingEngine(() -> now, millis -> {
+			sleeps.add(millis);
+			now += TimeUnit.MILLISECONDS.toNanos(millis);
+		});
+	}
+
+	private WhileTrueAction trueFor(int n, long costMillis) {
+		AtomicInteger count = new AtomicInteger();
+		return () -> {
+			now += TimeUnit.MILLISECONDS.toNanos(costMillis);
+			return count.getAndIncrement() < n;
+		};
+	}
+
+	@Test
+	public void t00_fixed() {
+		long elapsed = engine().poll("fixed", trueFor(3, 0), new Times(100, 1000));
+		Assert.assertEquals(300, elapsed);
+		Assert.assertEquals(3, sleeps.size());
+	}
+
+	@Test
+	public void t01_exponential() {
+		Times times = new Times(100L, 10000L, null, Backoff.EXPONENTIAL, 500L, 2.0, false);
+		engine().poll("exponential", trueFor(5, 0), times);
+		Assert.assertEquals(Arrays.asList(100L, 200L, 400L, 500L, 500L), sleeps);
+	}
+
+	@Test
+	public void t02_jitter_bounded() {
+		Times times = new Times(100L, 100000L, null, Backoff.JITTER, 800L, 3.0, false);
+		engine().poll("jitter", trueFor(20, 0), times);
+		for (long sleep : sleeps)
+			Assert.assertTrue("sleep " + sleep, sleep >= 100 && sleep <= 800);
+	}
+
+	@Test
+	public void t03_hard_deadline_with_slow_action() {
+		// ogni controllo costa 300ms: il vecchio polling sommava solo gli intervalli e sforava la scadenza
+		try {
+			engine().poll("slow", trueFor(100, 300), new Times(200, 1000));
+			Assert.fail();
+		} catch (PollingTimeoutException e) {
+			Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(now) <= 1000 + 300);
+			Assert.assertTrue(sleeps.stream().allMatch(s -> s <= 200));
+		}
+	}
+
+	@Test
+	public void t04_last_sleep_clamped() {
+		exception.expect(PollingTimeoutException.class);
+		try {
+			engine().poll("clamp", trueFor(100, 0), new Times(400, 1000));
+		} finally {
+			Assert.assertEquals(Arrays.asList(400L, 400L, 200L), sleeps);
+		}
+	}
+
+	@Test
+	public void t05_no_deadline() {
+		Map<String, Object> map = new HashMap<>();
+		map.put(Times.DELAY, 50);
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage(Times.MAX_WAITING_TIME);
+		try {
+			engine().poll("unbounded", trueFor(1000, 0), new Times(map));
+		} finally {
+			Assert.assertTrue(sleeps.isEmpty());
+		}
+	}
+
+	@Test
+	public void t06_times_from_map() {
+		Map<String, Object> map = new HashMap<>();
+		map.put(Times.DELAY, 100);
+		map.put(Times.BACKOFF, "Jitter");
+		map.put(Times.MAX_DELAY, 1000);
+		map.put(Times.FACTOR, 1.5);
+		map.put(Times.WAKE_ON_DOM_CHANGE, true);
+		Times times = new Times(map);
+		Assert.assertEquals(Backoff.JITTER, times.backoff);
+		Assert.assertEquals(Long.valueOf(1000), times.maxDelay);
+		Assert.assertEquals(1.5, times.factor(), 0);
+		Assert.assertTrue(times.wakeOnDomChange);
+		Assert.assertNull(times.maxWaitingTime);
+	}
+}
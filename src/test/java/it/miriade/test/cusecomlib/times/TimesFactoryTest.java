@@ -60,4 +60,14 @@ public class TimesFactoryTest {
 		timesFactory.build("pinco", "pallo");
 	}
 
+	@Test
+	public void t03() {
+		Times times = timesFactory.build("loading_backoff");
+		Assert.assertEquals(Backoff.EXPONENTIAL, times.backoff);
+		Assert.assertEquals(Long.valueOf(100), times.delay);
+		Assert.assertEquals(Long.valueOf(1000), times.maxDelay);
+		Assert.assertTrue(times.wakeOnDomChange);
+		Assert.assertEquals(Backoff.FIXED, timesFactory.build("loading").backoff);
+	}
+
 }
@@ -1,8 +1,22 @@
 package it.miriade.test.cusecomlib.yaml;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Assert;
 import org.junit.FixMethodOrder;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,6 +26,10 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import it.miriade.test.cusecomlib.CuseDefaultSpec;
 import it.miriade.test.cusecomlib.CuseSetupConfiguration;
 import it.miriade.test.cusecomlib.CuseSpringConfiguration;
+import it.miriade.test.cusecomlib.hooks.HtmlHook;
+import it.miriade.test.cusecomlib.hooks.HtmlHookFactory;
+import it.miriade.test.cusecomlib.metrics.CuseMetrics;
+import it.miriade.test.cusecomlib.times.TimesFactory;
 import it.miriade.test.cusecomlib.yaml.YamlSupport;
 import it.miriade.test.cusecomlib.yaml.YamlSupportFactory;
 
@@ -26,6 +44,9 @@ import it.miriade.test.cusecomlib.yaml.YamlSupportFactory;
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class YamlSupportFactoryTest {
 
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
 	@Autowired
 	private YamlSupportFactory factory;
 
@@ -53,4 +74,156 @@ public class YamlSupportFactoryTest {
 
 	}
 
+	@Test
+	public void t01_single_flight() throws Exception {
+		/*
+		 * Più thread chiedono contemporaneamente lo stesso YAML a una factory nuova (quindi non ancora in cache): il file
+		 * deve essere letto una sola volta e tutti devono ricevere la stessa istanza
+		 */
+		YamlSupportFactory factory = new YamlSupportFactory(config);
+		long misses = CuseMetrics.getInstance().counter(CuseMetrics.YAML_CACHE_MISSES);
+		int threads = 8;
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<YamlSupport>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++)
+				futures.add(executor.submit((Callable<YamlSupport>) () -> {
+					start.await();
+					return factory.build(MyPageObject.class);
+				}));
+			start.countDown();
+			YamlSupport first = futures.get(0).get(10, TimeUnit.SECONDS);
+			for (Future<YamlSupport> future : futures)
+				Assert.assertSame(first, future.get(10, TimeUnit.SECONDS));
+			Assert.assertEquals("YAML letto più di una volta", misses + 1, CuseMetrics.getInstance().counter(CuseMetrics.YAML_CACHE_MISSES));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void t02_failure_not_cached() {
+		for (int i = 0; i < 2; i++)
+			try {
+				factory.build("missing_yaml");
+				Assert.fail("Expected IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+				Assert.assertTrue(e.getMessage(), e.getMessage().contains("missing_yaml"));
+			}
+		Assert.assertFalse(factory.has("missing_yaml"));
+	}
+
+	@Test
+	public void t03_preload() throws Exception {
+		factory.preload().get(10, TimeUnit.SECONDS);
+		Assert.assertTrue(factory.has(CuseDefaultSpec.YAML_SUPPORT_COMMON_FILENAME));
+		Assert.assertTrue(factory.has(config.targetEnv()));
+		Assert.assertTrue(factory.has(YamlSupportFactory.getYamlNameByClass(MyPageObject.class)));
+		// gli errori del caricamento in background non vengono propagati
+		factory.preload("missing_yaml").get(10, TimeUnit.SECONDS);
+		Assert.assertFalse(factory.has("missing_yaml"));
+	}
+
+	@Test
+	public void t04_reload() throws Exception {
+		File dir = hotReloadDir();
+		File file = new File(dir, "reload.yml");
+		try {
+			CuseSetupConfiguration hotConfig = new CuseSetupConfiguration();
+			hotConfig.yamlClasspathDir(config.yamlClasspathDir() + dir.getName() + "/");
+			YamlSupportFactory hotFactory = new YamlSupportFactory(hotConfig);
+
+			write(file, "one");
+			YamlSupport yaml = hotFactory.build("reload");
+			HtmlHook hook = HtmlHookFactory.build(yaml, "button");
+			Assert.assertSame("hook non in cache", hook, HtmlHookFactory.build(yaml, "button"));
+			Assert.assertSame("times non in cache", TimesFactory.build(yaml, "wait"), TimesFactory.build(yaml, "wait"));
+
+			write(file, "two");
+			Assert.assertTrue(hotFactory.reload("reload"));
+			Assert.assertEquals("two", yaml.getString("hooks.button.expr"));
+			Assert.assertEquals("two", HtmlHookFactory.build(yaml, "button").expr);
+
+			// documento invalido o vuoto: resta quello precedente
+			Files.write(file.toPath(), "hooks: [".getBytes(StandardCharsets.UTF_8));
+			Assert.assertFalse(yaml.reload());
+			Files.write(file.toPath(), new byte[0]);
+			Assert.assertFalse(yaml.reload());
+			Assert.assertEquals("two", HtmlHookFactory.build(yaml, "button").expr);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void t05_hot_reload() throws Exception {
+		File dir = hotReloadDir();
+		File file = new File(dir, "hot.yml");
+		CuseSetupConfiguration hotConfig = new CuseSetupConfiguration();
+		hotConfig.yamlClasspathDir(config.yamlClasspathDir() + dir.getName() + "/");
+		hotConfig.yamlHotReload(true);
+		YamlSupportFactory hotFactory = null;
+		try {
+			write(file, "one");
+			hotFactory = new YamlSupportFactory(hotConfig);
+			YamlSupport yaml = hotFactory.build("hot");
+			Assert.assertEquals("one", HtmlHookFactory.build(yaml, "button").expr);
+
+			write(file, "two");
+			long deadline = System.currentTimeMillis() + 15000;
+			while (!"two".equals(HtmlHookFactory.build(yaml, "button").expr) && System.currentTimeMillis() < deadline)
+				Thread.sleep(50);
+			Assert.assertEquals("two", HtmlHookFactory.build(yaml, "button").expr);
+			Assert.assertSame(yaml, hotFactory.build("hot"));
+		} finally {
+			if (hotFactory != null)
+				hotFactory.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void t06_hot_reload_from_sources() throws Exception {
+		/*
+		 * La copia nel classpath resta invariata, viene modificato il sorgente in una sottocartella di yaml.watch.dir
+		 */
+		File copy = new File(hotReloadDir(), "nested/src.yml");
+		File source = new File(tmp.newFolder("nested"), "src.yml");
+		copy.getParentFile().mkdirs();
+		CuseSetupConfiguration hotConfig = new CuseSetupConfiguration();
+		hotConfig.yamlClasspathDir(config.yamlClasspathDir() + "hotreload/");
+		hotConfig.yamlHotReload(true);
+		hotConfig.yamlWatchDir(tmp.getRoot().getPath());
+		try (YamlSupportFactory hotFactory = new YamlSupportFactory(hotConfig)) {
+			write(copy, "one");
+			write(source, "one");
+			YamlSupport yaml = hotFactory.build("nested/src");
+			Assert.assertEquals("one", HtmlHookFactory.build(yaml, "button").expr);
+
+			write(source, "two");
+			long deadline = System.currentTimeMillis() + 15000;
+			while (!"two".equals(HtmlHookFactory.build(yaml, "button").expr) && System.currentTimeMillis() < deadline)
+				Thread.sleep(50);
+			Assert.assertEquals("two", HtmlHookFactory.build(yaml, "button").expr);
+		} finally {
+			copy.delete();
+			copy.getParentFile().delete();
+		}
+	}
+
+	/*
+	 * Sotto-cartella (nel classpath) della cartella degli YAML per i file creati dai test
+	 */
+	private File hotReloadDir() throws Exception {
+		File dir = new File(new File(getClass().getClassLoader().getResource(config.yamlClasspathDir()).toURI()), "hotreload");
+		dir.mkdirs();
+		return dir;
+	}
+
+	private static void write(File file, String expr) throws Exception {
+		String yaml = "hooks:\n  button:\n    by: id\n    expr: \"" + expr + "\"\ntimes:\n  wait:\n    delay: 100\n";
+		Files.write(file.toPath(), yaml.getBytes(StandardCharsets.UTF_8));
+	}
+
 }
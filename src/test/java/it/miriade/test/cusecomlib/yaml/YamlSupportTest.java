@@ -1,7 +1,9 @@
 package it.miriade.test.cusecomlib.yaml;
 
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -147,4 +149,48 @@ public class YamlSupportTest {
 
 		// System.out.println("t08_return_null > OK");
 	}
+
+	@Test
+	public void t09_index() {
+		Map<String, Object> nested = new LinkedHashMap<>();
+		nested.put("c", "C");
+		Map<Object, Object> data = new LinkedHashMap<>();
+		data.put("a", nested);
+		data.put("list", Arrays.asList("x", nested, null));
+		data.put("with.dot", "unreachable");
+		data.put("empty", null);
+		data.put(1, "numeric");
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Map<String, Object> index = YamlSupport.buildIndex((Map) data);
+		Assert.assertEquals("C", index.get("a.c"));
+		Assert.assertEquals("x", index.get("list[0]"));
+		Assert.assertEquals("C", index.get("list[1].c"));
+		Assert.assertFalse(index.containsKey("list[2]"));
+		Assert.assertFalse(index.containsKey("with.dot"));
+		Assert.assertFalse(index.containsKey("empty"));
+		Assert.assertFalse(index.containsKey("1"));
+
+		exception.expect(UnsupportedOperationException.class);
+		index.put("a", "b");
+	}
+
+	@Test
+	public void t10_indexed_lookup_same_as_before() {
+		Assert.assertEquals("value4C", arrayYmlThrowOnInvalidKey.get("key1.array2[1].key3.array4[2]"));
+		Assert.assertEquals("value4", arrayYmlThrowOnInvalidKey.get("?.?[?].key3.key4", "key1", "array2", 0));
+		Assert.assertEquals("", arrayYmlThrowOnInvalidKey.get(""));
+		Assert.assertTrue(arrayYmlThrowOnInvalidKey.get("key1") instanceof Map);
+	}
+
+	@Test
+	public void t11_build_key() {
+		Assert.assertEquals("test.users.PIPPO.userid", YamlSupport.buildKey("?.users.?.userid", "test", "PIPPO"));
+		// argomenti inseriti letteralmente (con replaceFirst '$' e '\\' sollevavano eccezione)
+		Assert.assertEquals("a.$1.b\\c", YamlSupport.buildKey("a.?.?", "$1", "b\\c"));
+		// '?' in eccesso restano, argomenti in eccesso ignorati
+		Assert.assertEquals("a..?", YamlSupport.buildKey("a.?.?", (Object) null));
+		Assert.assertEquals("a.b", YamlSupport.buildKey("a.?", "b", "c"));
+		Assert.assertEquals("a.?", YamlSupport.buildKey("a.?"));
+	}
 }
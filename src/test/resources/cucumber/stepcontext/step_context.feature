@@ -0,0 +1,8 @@
+Feature: Step context
+
+	Background:
+		Given the context is recorded
+
+	Scenario: Primo scenario
+		When the context is recorded
+		Then the context is recorded from a new thread